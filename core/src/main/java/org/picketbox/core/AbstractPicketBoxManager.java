@@ -53,6 +53,7 @@ import org.picketbox.core.exceptions.AuthenticationException;
 import org.picketbox.core.exceptions.ConfigurationException;
 import org.picketbox.core.identity.PicketBoxIdentityManager;
 import org.picketbox.core.identity.UserContextPopulator;
+import org.picketbox.core.identity.impl.CachingUserContextPopulator;
 import org.picketbox.core.identity.impl.DefaultUserContextPopulator;
 import org.picketbox.core.logout.event.UserLoggedOutEvent;
 import org.picketbox.core.session.DefaultSessionManager;
@@ -189,6 +190,10 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
         if (this.sessionManager != null) {
             this.sessionManager.stop();
         }
+
+        if (this.eventManager instanceof PicketBoxLifecycle && ((PicketBoxLifecycle) this.eventManager).started()) {
+            ((PicketBoxLifecycle) this.eventManager).stop();
+        }
     }
 
     @Override
@@ -234,8 +239,16 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
 
         this.eventManager = this.configuration.getEventManager().getEventManager();
 
+        if (this.eventManager instanceof PicketBoxLifecycle && !((PicketBoxLifecycle) this.eventManager).started()) {
+            ((PicketBoxLifecycle) this.eventManager).start();
+        }
+
         this.authenticationProvider = new PicketBoxAuthenticationProvider(this);
 
+        if (this.configuration.getAuthentication().getAuthenticationCache() != null) {
+            this.eventManager.addHandler(this.configuration.getAuthentication().getAuthenticationCache());
+        }
+
         if (!this.configuration.getAuthorization().getManagers().isEmpty()) {
             this.authorizationManager = this.configuration.getAuthorization().getManagers().get(0);
         }
@@ -248,6 +261,13 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
 
         if (this.userContextPopulator == null) {
             this.userContextPopulator = new DefaultUserContextPopulator(this.identityManager);
+        } else if (this.userContextPopulator instanceof DefaultUserContextPopulator
+                && ((DefaultUserContextPopulator) this.userContextPopulator).getIdentityManager() == null) {
+            ((DefaultUserContextPopulator) this.userContextPopulator).setIdentityManager(this.identityManager);
+        }
+
+        if (this.userContextPopulator instanceof CachingUserContextPopulator) {
+            this.eventManager.addHandler(this.userContextPopulator);
         }
 
         this.sessionManager = this.configuration.getSessionManager().getManager();
@@ -391,6 +411,9 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
                         if (result == null) {
                             LOGGER.warnf("mechanism [%s] returned a null AuthenticationResult. Unexpected behavior may occur.",
                                     mechanism);
+                        } else if (AuthenticationStatus.SUCCESS.equals(result.getStatus())
+                                || AuthenticationStatus.CONTINUE.equals(result.getStatus())) {
+                            break;
                         }
                     } catch (AuthenticationException e) {
                         throw MESSAGES.authenticationFailed(e);
@@ -84,4 +84,16 @@ public interface PicketBoxLogger extends BasicLogger {
     @Message(id = 510, value = "Using %s : %s")
     void debugInstanceUsage(String string, Object eventManager);
 
+    @LogMessage(level = Logger.Level.ERROR)
+    @Message(id = 511, value = "Error while handling event [%s] with handler [%s].")
+    void errorHandlingEvent(Object event, Object handler, @Cause Throwable t);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 512, value = "Discarding corrupted or incomplete session log records from [%s] at position [%s].")
+    void discardingCorruptedSessionLogRecords(String fileName, long position);
+
+    @LogMessage(level = Logger.Level.ERROR)
+    @Message(id = 513, value = "Error while writing to the session log [%s].")
+    void errorWritingSessionLog(String fileName, @Cause Throwable t);
+
 }
\ No newline at end of file
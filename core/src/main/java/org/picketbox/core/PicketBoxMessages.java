@@ -186,4 +186,7 @@ public interface PicketBoxMessages {
 
     @Message(id = 55, value = "Could not locate current EntityManager using EntityManagerLookupStrategy implementation [%s].")
     IllegalStateException failedToLookupEntityManager(EntityManagerLookupStrategy strategy);
+
+    @Message(id = 56, value = "Unable to compute the nonce signature.")
+    IllegalStateException unableToSignNonce(@Cause Throwable t);
 }
\ No newline at end of file
@@ -23,6 +23,7 @@ package org.picketbox.core;
 
 import java.io.Serializable;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -58,6 +59,12 @@ public class UserContext implements Serializable {
     private Collection<Role> roles = Collections.emptyList();
     private Collection<Group> groups = Collections.emptyList();
 
+    /*
+     * Read-only indexes of role and group names. Rebuilt when the roles or groups change, and lazily after deserialization.
+     */
+    private transient volatile Set<String> roleNames;
+    private transient volatile Set<String> groupNames;
+
     private transient Map<String, Object> contextData = new HashMap<String, Object>();
 
     private transient PicketBoxSession session;
@@ -258,13 +265,7 @@ public class UserContext implements Serializable {
             throw PicketBoxMessages.MESSAGES.userNotAuthenticated();
         }
 
-        for (Role userRole : getRoles()) {
-            if (role.equals(userRole.getName())) {
-                return true;
-            }
-        }
-
-        return false;
+        return getRoleNameIndex().contains(role);
     }
 
     /**
@@ -283,13 +284,7 @@ public class UserContext implements Serializable {
             throw PicketBoxMessages.MESSAGES.userNotAuthenticated();
         }
 
-        for (Group userGroup : getGroups()) {
-            if (group.equals(userGroup.getName())) {
-                return true;
-            }
-        }
-
-        return false;
+        return getGroupNameIndex().contains(group);
     }
 
     /**
@@ -301,19 +296,19 @@ public class UserContext implements Serializable {
         if (this.session != null) {
             session.touch();
         }
-        Set<String> roleNames = new HashSet<String>();
-        for (Role userRole : getRoles()) {
-            roleNames.add(userRole.getName());
-        }
-
-        return Collections.unmodifiableCollection(roleNames);
+        return getRoleNameIndex();
     }
 
     public UserContext setRoles(Collection<Role> roles) {
         if (this.session != null) {
             session.touch();
         }
-        this.roles = roles;
+        if (roles == null) {
+            this.roles = Collections.emptyList();
+        } else {
+            this.roles = new ArrayList<Role>(roles);
+        }
+        this.roleNames = createRoleNameIndex(this.roles);
         return this;
     }
 
@@ -338,16 +333,16 @@ public class UserContext implements Serializable {
         if (this.session != null) {
             session.touch();
         }
-        Set<String> groupNames = new HashSet<String>();
-        for (Group userRole : getGroups()) {
-            groupNames.add(userRole.getName());
-        }
-
-        return Collections.unmodifiableCollection(groupNames);
+        return getGroupNameIndex();
     }
 
     public UserContext setGroups(Collection<Group> groups) {
-        this.groups = groups;
+        if (groups == null) {
+            this.groups = Collections.emptyList();
+        } else {
+            this.groups = new ArrayList<Group>(groups);
+        }
+        this.groupNames = createGroupNameIndex(this.groups);
         return this;
     }
 
@@ -363,6 +358,56 @@ public class UserContext implements Serializable {
         return Collections.unmodifiableCollection(this.groups);
     }
 
+    private Set<String> getRoleNameIndex() {
+        Set<String> index = this.roleNames;
+
+        if (index == null) {
+            index = createRoleNameIndex(this.roles);
+            this.roleNames = index;
+        }
+
+        return index;
+    }
+
+    private Set<String> getGroupNameIndex() {
+        Set<String> index = this.groupNames;
+
+        if (index == null) {
+            index = createGroupNameIndex(this.groups);
+            this.groupNames = index;
+        }
+
+        return index;
+    }
+
+    private static Set<String> createRoleNameIndex(Collection<Role> roles) {
+        if (roles == null || roles.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> index = new HashSet<String>(roles.size() * 2);
+
+        for (Role role : roles) {
+            index.add(role.getName());
+        }
+
+        return Collections.unmodifiableSet(index);
+    }
+
+    private static Set<String> createGroupNameIndex(Collection<Group> groups) {
+        if (groups == null || groups.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> index = new HashSet<String>(groups.size() * 2);
+
+        for (Group group : groups) {
+            index.add(group.getName());
+        }
+
+        return Collections.unmodifiableSet(index);
+    }
+
     protected void setAuthenticationResult(AuthenticationResult result) {
         if (this.session != null) {
             session.touch();
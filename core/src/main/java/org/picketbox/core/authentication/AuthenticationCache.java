@@ -0,0 +1,255 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authentication;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Principal;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import org.picketbox.core.event.EventObserver;
+import org.picketbox.core.identity.event.UserRemovedEvent;
+import org.picketbox.core.identity.event.UserUpdatedEvent;
+import org.picketbox.core.util.BoundedCache;
+import org.picketbox.core.util.BoundedCache.Matcher;
+import org.picketlink.idm.credential.Credentials;
+import org.picketlink.idm.credential.UsernamePasswordCredentials;
+import org.picketlink.idm.model.User;
+
+/**
+ * <p>
+ * Caches the principals of users that were successfully authenticated with a username and password, so repeated stateless
+ * logins do not hit the identity store again.
+ * </p>
+ * <p>
+ * Entries are keyed by username and hold a salted SHA-256 digest of the password, never the password itself. The salt is
+ * generated for each cache instance. Only plain {@link UsernamePasswordCredentials} are cached, failed authentications are
+ * never cached and an entry expires after the configured time to live. The least recently used entries are evicted when the
+ * cache is full.
+ * </p>
+ * <p>
+ * Entries are invalidated when a {@link UserUpdatedEvent} or {@link UserRemovedEvent} is raised for the user. The
+ * {@link org.picketbox.core.PicketBoxManager} registers the cache as an event handler when it is started.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class AuthenticationCache {
+
+    public static final int DEFAULT_MAX_SIZE = BoundedCache.DEFAULT_MAX_SIZE;
+    public static final long DEFAULT_TIME_TO_LIVE = BoundedCache.DEFAULT_TIME_TO_LIVE;
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int SALT_LENGTH = 16;
+
+    private final byte[] salt;
+    private final BoundedCache<String, CachedAuthentication> entries;
+
+    public AuthenticationCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * @param maxSize maximum number of users held by the cache
+     * @param timeToLive time in milliseconds an authentication is trusted without checking the identity store again
+     */
+    public AuthenticationCache(int maxSize, long timeToLive) {
+        this.entries = new BoundedCache<String, CachedAuthentication>(maxSize, timeToLive);
+        this.salt = new byte[SALT_LENGTH];
+
+        new SecureRandom().nextBytes(this.salt);
+    }
+
+    /**
+     * <p>
+     * Returns the cached principal if the given credentials match the ones of a previous successful authentication that did
+     * not expire yet.
+     * </p>
+     *
+     * @param userName
+     * @param credentials
+     * @return the cached principal or null if the authentication must be performed against the identity store.
+     */
+    public Principal lookup(String userName, Credentials credentials) {
+        final byte[] digest = digest(userName, credentials);
+
+        if (digest == null) {
+            return null;
+        }
+
+        CachedAuthentication entry = this.entries.get(userName, new Matcher<CachedAuthentication>() {
+            @Override
+            public boolean matches(CachedAuthentication value) {
+                return MessageDigest.isEqual(value.digest, digest);
+            }
+        });
+
+        if (entry == null) {
+            return null;
+        }
+
+        return entry.principal;
+    }
+
+    /**
+     * <p>
+     * Returns the current generation of the cache, which must be read before the credentials are validated against the
+     * identity store and passed to {@link #put(String, Credentials, Principal, long)}.
+     * </p>
+     *
+     * @return
+     */
+    public long getGeneration() {
+        return this.entries.getGeneration();
+    }
+
+    /**
+     * <p>
+     * Caches a successful authentication. Credentials other than {@link UsernamePasswordCredentials} are ignored. Nothing is
+     * cached if an entry was invalidated since the given generation was read, as the validation may have used credentials that
+     * are no longer valid.
+     * </p>
+     *
+     * @param userName
+     * @param credentials
+     * @param principal
+     * @param generation the value returned by {@link #getGeneration()} before the credentials were validated.
+     */
+    public void put(String userName, Credentials credentials, Principal principal, long generation) {
+        byte[] digest = digest(userName, credentials);
+
+        if (digest == null || principal == null) {
+            return;
+        }
+
+        this.entries.put(userName, new CachedAuthentication(digest, principal), generation);
+    }
+
+    /**
+     * <p>
+     * Removes the cached authentication for the given user.
+     * </p>
+     *
+     * @param userName
+     */
+    public void invalidate(String userName) {
+        this.entries.invalidate(userName);
+    }
+
+    /**
+     * <p>
+     * Removes all cached authentications.
+     * </p>
+     */
+    public void clear() {
+        this.entries.clear();
+    }
+
+    @EventObserver
+    public void onUserUpdated(UserUpdatedEvent event) {
+        invalidate(event.getUser());
+    }
+
+    @EventObserver
+    public void onUserRemoved(UserRemovedEvent event) {
+        invalidate(event.getUser());
+    }
+
+    public int getMaxSize() {
+        return this.entries.getMaxSize();
+    }
+
+    public long getTimeToLive() {
+        return this.entries.getTimeToLive();
+    }
+
+    public int getSize() {
+        return this.entries.getSize();
+    }
+
+    public long getHitCount() {
+        return this.entries.getHitCount();
+    }
+
+    public long getMissCount() {
+        return this.entries.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return this.entries.getEvictionCount();
+    }
+
+    private void invalidate(User user) {
+        if (user != null && user.getLoginName() != null) {
+            invalidate(user.getLoginName());
+        }
+    }
+
+    private byte[] digest(String userName, Credentials credentials) {
+        if (userName == null || credentials == null || !UsernamePasswordCredentials.class.equals(credentials.getClass())) {
+            return null;
+        }
+
+        UsernamePasswordCredentials passwordCredentials = (UsernamePasswordCredentials) credentials;
+
+        if (passwordCredentials.getPassword() == null || passwordCredentials.getPassword().getValue() == null) {
+            return null;
+        }
+
+        ByteBuffer password = UTF8.encode(CharBuffer.wrap(passwordCredentials.getPassword().getValue()));
+
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+
+            messageDigest.update(this.salt);
+            messageDigest.update(userName.getBytes(UTF8));
+            messageDigest.update((byte) 0);
+            messageDigest.update(password);
+
+            return messageDigest.digest();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            if (password.hasArray()) {
+                Arrays.fill(password.array(), (byte) 0);
+            }
+        }
+    }
+
+    private static class CachedAuthentication {
+
+        private final byte[] digest;
+        private final Principal principal;
+
+        CachedAuthentication(byte[] digest, Principal principal) {
+            this.digest = digest;
+            this.principal = principal;
+        }
+    }
+}
@@ -28,6 +28,10 @@ import org.picketbox.core.authentication.credential.UserCredential;
  * <p>
  * This class provides ways to describe a specific authentication use case.
  * </p>
+ * <p>
+ * Mechanisms share their instances across calls to {@link AuthenticationMechanism#getAuthenticationInfo()}, so instances
+ * should not be changed. The setters are only kept for compatibility and will be removed.
+ * </p>
  *
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  *
@@ -36,7 +40,7 @@ public class AuthenticationInfo {
 
     private String name;
     private String description;
-    private Class<? extends UserCredential> supportedCredentials;
+    private final Class<? extends UserCredential> supportedCredentials;
 
     public AuthenticationInfo(String name, String description, Class<? extends UserCredential> supportedCredentials) {
         this.name = name;
@@ -53,7 +57,9 @@ public class AuthenticationInfo {
 
     /**
      * @param name the name to set
+     * @deprecated instances may be shared by mechanisms, create a new instance instead.
      */
+    @Deprecated
     public void setName(String name) {
         this.name = name;
     }
@@ -67,7 +73,9 @@ public class AuthenticationInfo {
 
     /**
      * @param description the description to set
+     * @deprecated instances may be shared by mechanisms, create a new instance instead.
      */
+    @Deprecated
     public void setDescription(String description) {
         this.description = description;
     }
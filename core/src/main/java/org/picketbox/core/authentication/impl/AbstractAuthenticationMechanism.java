@@ -25,6 +25,8 @@ import java.security.Principal;
 import java.util.List;
 
 import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.PicketBoxPrincipal;
+import org.picketbox.core.authentication.AuthenticationCache;
 import org.picketbox.core.authentication.AuthenticationInfo;
 import org.picketbox.core.authentication.AuthenticationMechanism;
 import org.picketbox.core.authentication.AuthenticationResult;
@@ -32,6 +34,9 @@ import org.picketbox.core.authentication.AuthenticationStatus;
 import org.picketbox.core.authentication.credential.UserCredential;
 import org.picketbox.core.exceptions.AuthenticationException;
 import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.credential.Credentials;
+import org.picketlink.idm.credential.Credentials.Status;
+import org.picketlink.idm.model.User;
 
 /**
  * <p>
@@ -53,7 +58,7 @@ public abstract class AbstractAuthenticationMechanism implements AuthenticationM
         List<AuthenticationInfo> authenticationInfo = getAuthenticationInfo();
 
         for (AuthenticationInfo callbackInfo : authenticationInfo) {
-            if (callbackInfo.getSupportedCredentials().equals(credential.getClass())) {
+            if (callbackInfo.getSupportedCredentials().isInstance(credential)) {
                 return true;
             }
         }
@@ -164,4 +169,57 @@ public abstract class AbstractAuthenticationMechanism implements AuthenticationM
     protected IdentityManager getIdentityManager() {
         return this.picketBoxManager.getIdentityManager();
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Returns the {@link AuthenticationCache} configured for the {@link PicketBoxManager}, or null if caching is disabled.
+     * </p>
+     *
+     * @return
+     */
+    protected AuthenticationCache getAuthenticationCache() {
+        return this.picketBoxManager.getConfiguration().getAuthentication().getAuthenticationCache();
+    }
+
+    /**
+     * <p>
+     * Checks if the user exists and the given {@link Credentials} are valid. Successful validations are kept in the
+     * {@link AuthenticationCache}, when one is configured, so subsequent calls with the same credentials do not hit the
+     * identity store.
+     * </p>
+     *
+     * @param userName
+     * @param credentials
+     * @return the authenticated principal or null if the credentials are not valid.
+     */
+    protected Principal validateCredentials(String userName, Credentials credentials) {
+        AuthenticationCache authenticationCache = getAuthenticationCache();
+        long cacheGeneration = 0;
+
+        if (authenticationCache != null) {
+            cacheGeneration = authenticationCache.getGeneration();
+
+            Principal cachedPrincipal = authenticationCache.lookup(userName, credentials);
+
+            if (cachedPrincipal != null) {
+                return cachedPrincipal;
+            }
+        }
+
+        User user = getIdentityManager().getUser(userName);
+
+        getIdentityManager().validateCredentials(credentials);
+
+        if (user != null && credentials.getStatus().equals(Status.VALID)) {
+            Principal principal = new PicketBoxPrincipal(userName);
+
+            if (authenticationCache != null) {
+                authenticationCache.put(userName, credentials, principal, cacheGeneration);
+            }
+
+            return principal;
+        }
+
+        return null;
+    }
+}
@@ -22,11 +22,16 @@
 package org.picketbox.core.authentication.impl;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.picketbox.core.PicketBoxManager;
 import org.picketbox.core.authentication.AuthenticationInfo;
@@ -38,13 +43,20 @@ import org.picketbox.core.authentication.credential.UserCredential;
  * <p>
  * Base class for {@link AuthenticationProvider} implementations.
  * </p>
+ * <p>
+ * Mechanisms are indexed by the credential types they support when the provider is created. A credential is dispatched to the
+ * mechanisms registered for the most specific type it is an instance of: its own class, then its superclasses, then its
+ * interfaces. Mechanisms registered for a more generic type are not used, so a credential with a dedicated mechanism never
+ * falls back to the mechanism of its supertype. The resolution is cached for each concrete credential class.
+ * </p>
  *
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  *
  */
 public abstract class AbstractAuthenticationProvider implements AuthenticationProvider {
 
-    private final Map<Class<? extends UserCredential>, List<AuthenticationMechanism>> mechanisms = new HashMap<Class<? extends UserCredential>, List<AuthenticationMechanism>>();
+    private final Map<Class<? extends UserCredential>, List<AuthenticationMechanism>> mechanisms = new LinkedHashMap<Class<? extends UserCredential>, List<AuthenticationMechanism>>();
+    private final ConcurrentMap<Class<?>, List<AuthenticationMechanism>> resolvedMechanisms = new ConcurrentHashMap<Class<?>, List<AuthenticationMechanism>>();
     private final PicketBoxManager picketboxManager;
 
     public AbstractAuthenticationProvider(PicketBoxManager picketBoxManager) {
@@ -71,7 +83,9 @@ public abstract class AbstractAuthenticationProvider implements AuthenticationPr
                     this.mechanisms.put(supportedCredential, supportedMechanisms);
                 }
 
-                supportedMechanisms.add(authenticationMechanism);
+                if (!supportedMechanisms.contains(authenticationMechanism)) {
+                    supportedMechanisms.add(authenticationMechanism);
+                }
             }
         }
     }
@@ -96,9 +110,25 @@ public abstract class AbstractAuthenticationProvider implements AuthenticationPr
         return mechanisms;
     }
 
+    /**
+     * <p>
+     * Returns the mechanisms registered for the most specific type of the given credential, in the order they were configured.
+     * The returned list is never null and can not be modified.
+     * </p>
+     *
+     * @see org.picketbox.core.authentication.AuthenticationProvider#getMechanisms(org.picketbox.core.authentication.credential.UserCredential)
+     */
     @Override
     public List<AuthenticationMechanism> getMechanisms(UserCredential credential) {
-        return this.mechanisms.get(credential.getClass());
+        Class<?> credentialType = credential.getClass();
+        List<AuthenticationMechanism> credentialMechanisms = this.resolvedMechanisms.get(credentialType);
+
+        if (credentialMechanisms == null) {
+            credentialMechanisms = resolveMechanisms(credentialType);
+            this.resolvedMechanisms.put(credentialType, credentialMechanisms);
+        }
+
+        return credentialMechanisms;
     }
 
     /*
@@ -136,13 +166,50 @@ public abstract class AbstractAuthenticationProvider implements AuthenticationPr
     private List<AuthenticationMechanism> getAllMechanisms() {
         Set<Entry<Class<? extends UserCredential>, List<AuthenticationMechanism>>> entrySet = this.mechanisms.entrySet();
 
-        List<AuthenticationMechanism> supportedMechanisms = new ArrayList<AuthenticationMechanism>();
+        Set<AuthenticationMechanism> supportedMechanisms = new LinkedHashSet<AuthenticationMechanism>();
 
         for (Entry<Class<? extends UserCredential>, List<AuthenticationMechanism>> entry : entrySet) {
             supportedMechanisms.addAll(entry.getValue());
         }
 
-        return supportedMechanisms;
+        return new ArrayList<AuthenticationMechanism>(supportedMechanisms);
+    }
+
+    /**
+     * <p>
+     * Looks for the mechanisms registered for the given credential type, then for its superclasses and then for all its
+     * interfaces. The first type with registered mechanisms wins.
+     * </p>
+     *
+     * @param credentialType
+     * @return
+     */
+    private List<AuthenticationMechanism> resolveMechanisms(Class<?> credentialType) {
+        for (Class<?> type = credentialType; type != null; type = type.getSuperclass()) {
+            List<AuthenticationMechanism> typeMechanisms = this.mechanisms.get(type);
+
+            if (typeMechanisms != null) {
+                return Collections.unmodifiableList(new ArrayList<AuthenticationMechanism>(typeMechanisms));
+            }
+        }
+
+        List<Class<?>> interfaces = new ArrayList<Class<?>>();
+
+        for (Class<?> type = credentialType; type != null; type = type.getSuperclass()) {
+            interfaces.addAll(Arrays.asList(type.getInterfaces()));
+        }
+
+        for (int i = 0; i < interfaces.size(); i++) {
+            List<AuthenticationMechanism> typeMechanisms = this.mechanisms.get(interfaces.get(i));
+
+            if (typeMechanisms != null) {
+                return Collections.unmodifiableList(new ArrayList<AuthenticationMechanism>(typeMechanisms));
+            }
+
+            interfaces.addAll(Arrays.asList(interfaces.get(i).getInterfaces()));
+        }
+
+        return Collections.emptyList();
     }
 
 }
\ No newline at end of file
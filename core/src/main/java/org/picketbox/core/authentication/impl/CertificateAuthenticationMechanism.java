@@ -26,7 +26,7 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.security.Principal;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
@@ -52,15 +52,13 @@ import org.picketlink.idm.credential.X509CertificateCredentials;
  */
 public class CertificateAuthenticationMechanism extends AbstractAuthenticationMechanism {
 
+    private static final List<AuthenticationInfo> AUTHENTICATION_INFO = Collections.singletonList(
+            new AuthenticationInfo("Certificate authentication service.",
+                    "A authentication service using certificates.", CertificateCredential.class));
+
     @Override
     public List<AuthenticationInfo> getAuthenticationInfo() {
-        List<AuthenticationInfo> arrayList = new ArrayList<AuthenticationInfo>();
-
-        arrayList.add(new AuthenticationInfo("Certificate authentication service.",
-                "A authentication service using certificates.", CertificateCredential.class));
-
-        return arrayList;
-
+        return AUTHENTICATION_INFO;
     }
 
     @Override
@@ -25,7 +25,7 @@ package org.picketbox.core.authentication.impl;
 import java.io.Serializable;
 import java.security.GeneralSecurityException;
 import java.security.Principal;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.picketbox.core.PicketBoxPrincipal;
@@ -49,6 +49,9 @@ import org.picketlink.idm.model.User;
  */
 public class OTPAuthenticationMechanism extends AbstractAuthenticationMechanism {
 
+    private static final List<AuthenticationInfo> AUTHENTICATION_INFO = Collections.singletonList(
+            new AuthenticationInfo("OTP Authentication", "Provides OTP authentication.", OTPCredential.class));
+
     private String algorithm = TimeBasedOTP.HMAC_SHA1;
 
     // This is the number of digits in the totp
@@ -59,11 +62,7 @@ public class OTPAuthenticationMechanism extends AbstractAuthenticationMechanism
 
     @Override
     public List<AuthenticationInfo> getAuthenticationInfo() {
-        ArrayList<AuthenticationInfo> info = new ArrayList<AuthenticationInfo>();
-
-        info.add(new AuthenticationInfo("OTP Authentication", "Provides OTP authentication.", OTPCredential.class));
-
-        return info;
+        return AUTHENTICATION_INFO;
     }
 
     @Override
@@ -23,7 +23,7 @@
 package org.picketbox.core.authentication.impl;
 
 import java.security.Principal;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.picketbox.core.PicketBoxPrincipal;
@@ -46,15 +46,13 @@ import org.picketlink.idm.model.User;
  */
 public class TrustedUsernameAuthenticationMechanism extends AbstractAuthenticationMechanism {
 
+    private static final List<AuthenticationInfo> AUTHENTICATION_INFO = Collections.singletonList(
+            new AuthenticationInfo("Trusts the provided username and check if it maps to a valid user account.",
+                    "Trust the provided username and check if it maps to a valid user account.", TrustedUsernameCredential.class));
+
     @Override
     public List<AuthenticationInfo> getAuthenticationInfo() {
-        List<AuthenticationInfo> arrayList = new ArrayList<AuthenticationInfo>();
-
-        arrayList.add(new AuthenticationInfo("Trusts the provided username and check if it maps to a valid user account.",
-                "Trust the provided username and check if it maps to a valid user account.", TrustedUsernameCredential.class));
-
-        return arrayList;
-
+        return AUTHENTICATION_INFO;
     }
 
     @Override
@@ -23,19 +23,15 @@
 package org.picketbox.core.authentication.impl;
 
 import java.security.Principal;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import org.picketbox.core.PicketBoxPrincipal;
 import org.picketbox.core.authentication.AuthenticationInfo;
 import org.picketbox.core.authentication.AuthenticationMechanism;
 import org.picketbox.core.authentication.AuthenticationResult;
 import org.picketbox.core.authentication.credential.UserCredential;
 import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
 import org.picketbox.core.exceptions.AuthenticationException;
-import org.picketlink.idm.credential.Credentials;
-import org.picketlink.idm.credential.Credentials.Status;
-import org.picketlink.idm.model.User;
 
 /**
  * <p>
@@ -47,32 +43,20 @@ import org.picketlink.idm.model.User;
  */
 public class UserNamePasswordAuthenticationMechanism extends AbstractAuthenticationMechanism {
 
+    private static final List<AuthenticationInfo> AUTHENTICATION_INFO = Collections.singletonList(
+            new AuthenticationInfo("Username and Password authentication service.",
+                    "A simple authentication service using a username and password as credentials.",
+                    UsernamePasswordCredential.class));
+
     @Override
     public List<AuthenticationInfo> getAuthenticationInfo() {
-        List<AuthenticationInfo> arrayList = new ArrayList<AuthenticationInfo>();
-
-        arrayList.add(new AuthenticationInfo("Username and Password authentication service.",
-                "A simple authentication service using a username and password as credentials.",
-                UsernamePasswordCredential.class));
-
-        return arrayList;
+        return AUTHENTICATION_INFO;
     }
 
     @Override
     protected Principal doAuthenticate(UserCredential credential, AuthenticationResult result) throws AuthenticationException {
         UsernamePasswordCredential userCredential = (UsernamePasswordCredential) credential;
 
-        // try to retrieve the user from the configured identity store
-        User user = getIdentityManager().getUser(userCredential.getUserName());
-
-        Credentials passwordCredential = userCredential.getCredential();
-
-        getIdentityManager().validateCredentials(passwordCredential);
-
-        if (user != null && passwordCredential.getStatus().equals(Status.VALID)) {
-            return new PicketBoxPrincipal(userCredential.getUserName());
-        }
-
-        return null;
+        return validateCredentials(userCredential.getUserName(), userCredential.getCredential());
     }
 }
\ No newline at end of file
@@ -33,7 +33,8 @@ import org.picketbox.core.authorization.Resource;
  */
 public interface EntitlementsManager {
     /**
-     * Obtain a collection of {@link Entitlement}
+     * Obtain a collection of {@link Entitlement}. Implementations may return a collection that is shared between calls and
+     * throws {@link UnsupportedOperationException} when modified, so callers that need to change it must copy it first.
      *
      * @param resource resource for which we need to check entitlements
      * @param userContext subject (user/process) that is performing an action on the resource
@@ -87,6 +87,10 @@ public class DefaultEntitlementsManager implements EntitlementsManager {
 
     @Override
     public EntitlementCollection entitlements(Resource resource, UserContext userContext) {
+        if (this.store instanceof IndexedEntitlementStore) {
+            return ((IndexedEntitlementStore) this.store).entitlements(resource, userContext);
+        }
+
         EntitlementCollection collection = new EntitlementCollection("ALL");
         collection.add(this.store.entitlements(resource, userContext.getUser()));
         Collection<Role> roles = userContext.getRoles();
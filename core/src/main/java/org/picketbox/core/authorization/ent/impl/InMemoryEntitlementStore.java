@@ -22,9 +22,9 @@
 package org.picketbox.core.authorization.ent.impl;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.picketbox.core.authorization.Resource;
 import org.picketbox.core.authorization.ent.EntitlementCollection;
@@ -38,14 +38,17 @@ import org.picketlink.idm.model.IdentityType;
  * @since Oct 25, 2012
  */
 public class InMemoryEntitlementStore implements EntitlementStore {
-    private Map<Resource, Holder> map = new ConcurrentHashMap<Resource, Holder>();
+    private ConcurrentMap<Resource, Holder> map = new ConcurrentHashMap<Resource, Holder>();
 
     @Override
     public boolean addEntitlements(Resource resource, IdentityType identityType, EntitlementCollection collection) {
         Holder holder = this.map.get(resource);
         if (holder == null) {
-            holder = new Holder();
-            this.map.put(resource, holder);
+            Holder newHolder = new Holder();
+            holder = this.map.putIfAbsent(resource, newHolder);
+            if (holder == null) {
+                holder = newHolder;
+            }
         }
         holder.identityTypeMap.put(identityType, collection);
         return true;
@@ -66,6 +69,6 @@ public class InMemoryEntitlementStore implements EntitlementStore {
 
     private static class Holder implements Serializable {
         private static final long serialVersionUID = 1L;
-        private Map<IdentityType, EntitlementCollection> identityTypeMap = new HashMap<IdentityType, EntitlementCollection>();
+        private Map<IdentityType, EntitlementCollection> identityTypeMap = new ConcurrentHashMap<IdentityType, EntitlementCollection>();
     }
 }
\ No newline at end of file
@@ -0,0 +1,390 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authorization.ent.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.authorization.ent.Entitlement;
+import org.picketbox.core.authorization.ent.EntitlementCollection;
+import org.picketbox.core.authorization.ent.EntitlementStore;
+import org.picketlink.idm.model.Group;
+import org.picketlink.idm.model.IdentityType;
+import org.picketlink.idm.model.Role;
+import org.picketlink.idm.model.User;
+
+/**
+ * <p>
+ * An {@link EntitlementStore} optimized for lookups. The entitlements are kept in an immutable snapshot that is replaced on
+ * every {@link #addEntitlements(Resource, IdentityType, EntitlementCollection)}, so readers never lock and concurrent writers
+ * never lose updates.
+ * </p>
+ * <p>
+ * Stored collections are deduplicated and can not be modified. Equal {@link Entitlement} instances are interned, so the same
+ * entitlement granted to many identity types is held only once. The intern table only holds weak references, so entitlements
+ * no longer granted to any identity type can be garbage collected. The entitlements resulting from a given resource and set of
+ * roles and groups are computed once and memoized until the next change.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class IndexedEntitlementStore implements EntitlementStore {
+
+    public static final int DEFAULT_MAX_MEMO_SIZE = 4096;
+
+    private static final String ALL_ENTITLEMENTS = "ALL";
+
+    private final int maxMemoSize;
+    private final Map<Entitlement, WeakReference<Entitlement>> internedEntitlements =
+            new WeakHashMap<Entitlement, WeakReference<Entitlement>>();
+    private volatile Snapshot snapshot = new Snapshot(Collections.<Resource, Map<IdentityType, EntitlementCollection>> emptyMap());
+
+    public IndexedEntitlementStore() {
+        this(DEFAULT_MAX_MEMO_SIZE);
+    }
+
+    /**
+     * @param maxMemoSize maximum number of memoized resource and role set combinations.
+     */
+    public IndexedEntitlementStore(int maxMemoSize) {
+        if (maxMemoSize <= 0) {
+            throw new IllegalArgumentException("maxMemoSize must be greater than zero.");
+        }
+
+        this.maxMemoSize = maxMemoSize;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.ent.EntitlementStore#addEntitlements(org.picketbox.core.authorization.Resource,
+     * org.picketlink.idm.model.IdentityType, org.picketbox.core.authorization.ent.EntitlementCollection)
+     */
+    @Override
+    public synchronized boolean addEntitlements(Resource resource, IdentityType identityType,
+            EntitlementCollection collection) {
+        Map<Resource, Map<IdentityType, EntitlementCollection>> resources = new HashMap<Resource, Map<IdentityType, EntitlementCollection>>(
+                this.snapshot.resources);
+
+        Map<IdentityType, EntitlementCollection> identityTypes = resources.get(resource);
+
+        if (identityTypes == null) {
+            identityTypes = new HashMap<IdentityType, EntitlementCollection>();
+        } else {
+            identityTypes = new HashMap<IdentityType, EntitlementCollection>(identityTypes);
+        }
+
+        identityTypes.put(identityType, intern(collection));
+        resources.put(resource, Collections.unmodifiableMap(identityTypes));
+
+        this.snapshot = new Snapshot(Collections.unmodifiableMap(resources));
+
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.ent.EntitlementStore#entitlements(org.picketbox.core.authorization.Resource,
+     * org.picketlink.idm.model.IdentityType)
+     */
+    @Override
+    public EntitlementCollection entitlements(Resource resource, IdentityType identityType) {
+        EntitlementCollection collection = this.snapshot.get(resource, identityType);
+
+        if (collection == null) {
+            collection = EntitlementCollection.EMPTY_COLLECTION;
+        }
+
+        return collection;
+    }
+
+    /**
+     * <p>
+     * Returns the entitlements granted for the given {@link Resource} to the user, roles and groups of the
+     * {@link UserContext}. The returned collection can not be modified.
+     * </p>
+     *
+     * @param resource
+     * @param userContext
+     * @return
+     */
+    public EntitlementCollection entitlements(Resource resource, UserContext userContext) {
+        Snapshot current = this.snapshot;
+
+        Collection<Role> roles = userContext.getRoles();
+        Collection<Group> groups = userContext.getGroups();
+
+        MemoKey key = new MemoKey(resource, roles, groups);
+        EntitlementCollection membershipEntitlements = current.memo.get(key);
+
+        if (membershipEntitlements == null) {
+            List<EntitlementCollection> collections = new ArrayList<EntitlementCollection>();
+
+            addEntitlements(current, resource, roles, collections);
+            addEntitlements(current, resource, groups, collections);
+
+            membershipEntitlements = merge(collections);
+
+            if (current.memo.size() >= this.maxMemoSize) {
+                current.memo.clear();
+            }
+
+            current.memo.put(key.copy(), membershipEntitlements);
+        }
+
+        User user = userContext.getUser();
+        EntitlementCollection userEntitlements = null;
+
+        if (user != null) {
+            userEntitlements = current.get(resource, user);
+        }
+
+        if (userEntitlements == null || userEntitlements.getEntitlements().isEmpty()) {
+            return membershipEntitlements;
+        }
+
+        List<EntitlementCollection> collections = new ArrayList<EntitlementCollection>(2);
+
+        collections.add(userEntitlements);
+        collections.add(membershipEntitlements);
+
+        return merge(collections);
+    }
+
+    private void addEntitlements(Snapshot current, Resource resource, Collection<? extends IdentityType> identityTypes,
+            List<EntitlementCollection> collections) {
+        if (identityTypes == null) {
+            return;
+        }
+
+        for (IdentityType identityType : identityTypes) {
+            EntitlementCollection collection = current.get(resource, identityType);
+
+            if (collection != null) {
+                collections.add(collection);
+            }
+        }
+    }
+
+    private EntitlementCollection merge(List<EntitlementCollection> collections) {
+        Set<Entitlement> entitlements = new LinkedHashSet<Entitlement>();
+
+        for (EntitlementCollection collection : collections) {
+            entitlements.addAll(collection.getEntitlements());
+        }
+
+        return new ImmutableEntitlementCollection(ALL_ENTITLEMENTS, entitlements);
+    }
+
+    private EntitlementCollection intern(EntitlementCollection collection) {
+        Set<Entitlement> entitlements = new LinkedHashSet<Entitlement>();
+
+        if (collection != null) {
+            for (Entitlement entitlement : collection.getEntitlements()) {
+                WeakReference<Entitlement> reference = this.internedEntitlements.get(entitlement);
+                Entitlement interned = reference != null ? reference.get() : null;
+
+                if (interned == null) {
+                    interned = entitlement;
+                    this.internedEntitlements.put(entitlement, new WeakReference<Entitlement>(entitlement));
+                }
+
+                entitlements.add(interned);
+            }
+        }
+
+        return new ImmutableEntitlementCollection(collection != null ? collection.getName() : null, entitlements);
+    }
+
+    /**
+     * <p>
+     * An immutable view of the entitlements stored for a {@link Resource}. Memoized results are attached to it, so they are
+     * discarded together with the snapshot.
+     * </p>
+     */
+    private static class Snapshot {
+
+        private final Map<Resource, Map<IdentityType, EntitlementCollection>> resources;
+        private final ConcurrentMap<MemoKey, EntitlementCollection> memo = new ConcurrentHashMap<MemoKey, EntitlementCollection>();
+
+        Snapshot(Map<Resource, Map<IdentityType, EntitlementCollection>> resources) {
+            this.resources = resources;
+        }
+
+        EntitlementCollection get(Resource resource, IdentityType identityType) {
+            Map<IdentityType, EntitlementCollection> identityTypes = this.resources.get(resource);
+
+            if (identityTypes == null) {
+                return null;
+            }
+
+            return identityTypes.get(identityType);
+        }
+    }
+
+    /**
+     * <p>
+     * Memo key for a resource and the roles and groups of a user. Lookups use the collections of the {@link UserContext}
+     * directly, only keys that are stored take a copy of them.
+     * </p>
+     */
+    private static class MemoKey {
+
+        private final Resource resource;
+        private final Collection<? extends IdentityType> roles;
+        private final Collection<? extends IdentityType> groups;
+        private final int hashCode;
+
+        MemoKey(Resource resource, Collection<? extends IdentityType> roles, Collection<? extends IdentityType> groups) {
+            this(resource, roles, groups, hash(resource, roles, groups));
+        }
+
+        private MemoKey(Resource resource, Collection<? extends IdentityType> roles,
+                Collection<? extends IdentityType> groups, int hashCode) {
+            this.resource = resource;
+            this.roles = roles;
+            this.groups = groups;
+            this.hashCode = hashCode;
+        }
+
+        MemoKey copy() {
+            return new MemoKey(this.resource, copy(this.roles), copy(this.groups), this.hashCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof MemoKey)) {
+                return false;
+            }
+
+            MemoKey other = (MemoKey) obj;
+
+            return this.hashCode == other.hashCode && this.resource.equals(other.resource)
+                    && sameElements(this.roles, other.roles) && sameElements(this.groups, other.groups);
+        }
+
+        private static List<IdentityType> copy(Collection<? extends IdentityType> identityTypes) {
+            if (identityTypes == null) {
+                return Collections.emptyList();
+            }
+
+            return new ArrayList<IdentityType>(identityTypes);
+        }
+
+        private static boolean sameElements(Collection<? extends IdentityType> a, Collection<? extends IdentityType> b) {
+            int sizeA = a == null ? 0 : a.size();
+            int sizeB = b == null ? 0 : b.size();
+
+            if (sizeA != sizeB) {
+                return false;
+            }
+
+            if (sizeA == 0) {
+                return true;
+            }
+
+            Iterator<? extends IdentityType> iterA = a.iterator();
+            Iterator<? extends IdentityType> iterB = b.iterator();
+
+            while (iterA.hasNext()) {
+                if (!iterA.next().equals(iterB.next())) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private static int hash(Resource resource, Collection<? extends IdentityType> roles,
+                Collection<? extends IdentityType> groups) {
+            int result = resource.hashCode();
+
+            if (roles != null) {
+                for (IdentityType role : roles) {
+                    result = 31 * result + role.hashCode();
+                }
+            }
+
+            result = 31 * result;
+
+            if (groups != null) {
+                for (IdentityType group : groups) {
+                    result = 31 * result + group.hashCode();
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * <p>
+     * A deduplicated {@link EntitlementCollection} that can not be modified.
+     * </p>
+     */
+    private static class ImmutableEntitlementCollection extends EntitlementCollection {
+
+        private final Set<Entitlement> index;
+
+        ImmutableEntitlementCollection(String name, Set<Entitlement> entitlements) {
+            super(name);
+            this.entitlements = Collections.unmodifiableList(new ArrayList<Entitlement>(entitlements));
+            this.index = new HashSet<Entitlement>(entitlements);
+        }
+
+        @Override
+        public boolean contains(Entitlement entitlement) {
+            return this.index.contains(entitlement);
+        }
+
+        @Override
+        public List<Entitlement> getEntitlements() {
+            return this.entitlements;
+        }
+    }
+}
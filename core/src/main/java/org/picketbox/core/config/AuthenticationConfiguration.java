@@ -24,6 +24,7 @@ package org.picketbox.core.config;
 
 import java.util.List;
 
+import org.picketbox.core.authentication.AuthenticationCache;
 import org.picketbox.core.authentication.AuthenticationMechanism;
 
 /**
@@ -35,12 +36,19 @@ public class AuthenticationConfiguration {
     private EventManagerConfiguration eventManager;
     private List<AuthenticationMechanism> mechanisms;
     private ClientCertConfiguration certConfiguration;
+    private AuthenticationCache authenticationCache;
 
     public AuthenticationConfiguration(List<AuthenticationMechanism> mechanisms, EventManagerConfiguration eventManager,
             ClientCertConfiguration certConfiguration) {
+        this(mechanisms, eventManager, certConfiguration, null);
+    }
+
+    public AuthenticationConfiguration(List<AuthenticationMechanism> mechanisms, EventManagerConfiguration eventManager,
+            ClientCertConfiguration certConfiguration, AuthenticationCache authenticationCache) {
         this.eventManager = eventManager;
         this.mechanisms = mechanisms;
         this.certConfiguration = certConfiguration;
+        this.authenticationCache = authenticationCache;
     }
 
     /**
@@ -64,4 +72,13 @@ public class AuthenticationConfiguration {
     public ClientCertConfiguration getCertConfiguration() {
         return this.certConfiguration;
     }
+
+    /**
+     * Get the cache used to skip repeated username/password validations, or null if it is disabled
+     *
+     * @return
+     */
+    public AuthenticationCache getAuthenticationCache() {
+        return this.authenticationCache;
+    }
 }
\ No newline at end of file
@@ -22,6 +22,8 @@
 
 package org.picketbox.core.config;
 
+import org.picketbox.core.session.SessionExpirationScheduler;
+import org.picketbox.core.session.SessionIdGenerator;
 import org.picketbox.core.session.SessionManager;
 import org.picketbox.core.session.SessionStore;
 
@@ -34,11 +36,50 @@ public class SessionManagerConfig {
     private SessionManager manager;
     private SessionStore store;
     private int sessionTimeout;
+    private SessionExpirationScheduler expirationScheduler;
+    private int sweepInterval;
+    private int sweepBatchSize;
+    private long touchInterval;
+    private SessionIdGenerator sessionIdGenerator;
 
     public SessionManagerConfig(SessionManager manager, SessionStore store, int sessionTimeout) {
+        this(manager, store, sessionTimeout, null, 0, 0, 0);
+    }
+
+    public SessionManagerConfig(SessionManager manager, SessionStore store, int sessionTimeout,
+            SessionExpirationScheduler expirationScheduler, int sweepInterval, int sweepBatchSize) {
+        this(manager, store, sessionTimeout, expirationScheduler, sweepInterval, sweepBatchSize, 0);
+    }
+
+    public SessionManagerConfig(SessionManager manager, SessionStore store, int sessionTimeout,
+            SessionExpirationScheduler expirationScheduler, int sweepInterval, int sweepBatchSize, long touchInterval) {
+        this(manager, store, sessionTimeout, expirationScheduler, sweepInterval, sweepBatchSize, touchInterval, null);
+    }
+
+    public SessionManagerConfig(SessionManager manager, SessionStore store, int sessionTimeout,
+            SessionExpirationScheduler expirationScheduler, int sweepInterval, int sweepBatchSize, long touchInterval,
+            SessionIdGenerator sessionIdGenerator) {
         this.manager = manager;
         this.store = store;
         this.sessionTimeout = sessionTimeout;
+        this.expirationScheduler = expirationScheduler;
+        this.sweepInterval = sweepInterval;
+        this.sweepBatchSize = sweepBatchSize;
+        this.touchInterval = touchInterval;
+        this.sessionIdGenerator = sessionIdGenerator;
+    }
+
+    /**
+     * <p>
+     * Creates a copy of the given configuration. Useful for subclasses that only add some specific configuration.
+     * </p>
+     *
+     * @param configuration
+     */
+    protected SessionManagerConfig(SessionManagerConfig configuration) {
+        this(configuration.getManager(), configuration.getStore(), configuration.getSessionTimeout(), configuration
+                .getExpirationScheduler(), configuration.getSweepInterval(), configuration.getSweepBatchSize(), configuration
+                .getTouchInterval(), configuration.getSessionIdGenerator());
     }
 
     public SessionManager getManager() {
@@ -53,4 +94,30 @@ public class SessionManagerConfig {
         return this.sessionTimeout;
     }
 
+    public SessionExpirationScheduler getExpirationScheduler() {
+        return this.expirationScheduler;
+    }
+
+    /**
+     * @return the delay, in seconds, between two batches of the session store sweeper. Zero disables the sweeper.
+     */
+    public int getSweepInterval() {
+        return this.sweepInterval;
+    }
+
+    public int getSweepBatchSize() {
+        return this.sweepBatchSize;
+    }
+
+    /**
+     * @return the minimum interval, in milliseconds, between two touch events for the same session. Zero disables coalescing.
+     */
+    public long getTouchInterval() {
+        return this.touchInterval;
+    }
+
+    public SessionIdGenerator getSessionIdGenerator() {
+        return this.sessionIdGenerator;
+    }
+
 }
@@ -25,6 +25,7 @@ package org.picketbox.core.config.builder;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.picketbox.core.authentication.AuthenticationCache;
 import org.picketbox.core.authentication.AuthenticationMechanism;
 import org.picketbox.core.authentication.impl.CertificateAuthenticationMechanism;
 import org.picketbox.core.authentication.impl.OTPAuthenticationMechanism;
@@ -42,6 +43,7 @@ public class AuthenticationConfigurationBuilder extends AbstractConfigurationBui
 
     protected List<AuthenticationMechanism> mechanisms;
     protected ClientCertConfigurationBuilder certAuthentication;
+    protected AuthenticationCache authenticationCache;
 
     public AuthenticationConfigurationBuilder(ConfigurationBuilder builder) {
         super(builder);
@@ -54,6 +56,31 @@ public class AuthenticationConfigurationBuilder extends AbstractConfigurationBui
         return this;
     }
 
+    /**
+     * Enable the {@link AuthenticationCache} using the default size and time to live.
+     *
+     * @return
+     */
+    public AuthenticationConfigurationBuilder authenticationCache() {
+        return authenticationCache(AuthenticationCache.DEFAULT_MAX_SIZE, AuthenticationCache.DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Enable the {@link AuthenticationCache}.
+     *
+     * @param maxSize maximum number of cached users
+     * @param timeToLiveInMillis time a successful authentication is reused without checking the identity store
+     * @return
+     */
+    public AuthenticationConfigurationBuilder authenticationCache(int maxSize, long timeToLiveInMillis) {
+        return authenticationCache(new AuthenticationCache(maxSize, timeToLiveInMillis));
+    }
+
+    public AuthenticationConfigurationBuilder authenticationCache(AuthenticationCache authenticationCache) {
+        this.authenticationCache = authenticationCache;
+        return this;
+    }
+
     public ClientCertConfigurationBuilder clientCert() {
         return this.certAuthentication;
     }
@@ -69,6 +96,6 @@ public class AuthenticationConfigurationBuilder extends AbstractConfigurationBui
     @Override
     public AuthenticationConfiguration doBuild() {
         return new AuthenticationConfiguration(this.mechanisms, this.builder.eventManager().build(),
-                this.certAuthentication.build());
+                this.certAuthentication.build(), this.authenticationCache);
     }
 }
\ No newline at end of file
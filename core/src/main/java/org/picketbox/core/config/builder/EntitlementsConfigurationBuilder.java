@@ -26,6 +26,7 @@ import org.picketbox.core.authorization.Resource;
 import org.picketbox.core.authorization.ent.EntitlementCollection;
 import org.picketbox.core.authorization.ent.EntitlementStore;
 import org.picketbox.core.authorization.ent.impl.InMemoryEntitlementStore;
+import org.picketbox.core.authorization.ent.impl.IndexedEntitlementStore;
 import org.picketbox.core.config.ConfigurationBuilder;
 import org.picketbox.core.config.EntitlementsConfiguration;
 import org.picketlink.idm.model.IdentityType;
@@ -55,6 +56,15 @@ public class EntitlementsConfigurationBuilder extends AbstractConfigurationBuild
         return this;
     }
 
+    /**
+     * Use an {@link IndexedEntitlementStore}, optimized for concurrent lookups.
+     *
+     * @return
+     */
+    public EntitlementsConfigurationBuilder indexedStore() {
+        return store(new IndexedEntitlementStore());
+    }
+
     @Override
     protected EntitlementsConfiguration doBuild() {
         return this.configuration;
@@ -27,7 +27,9 @@ import java.util.List;
 
 import org.picketbox.core.config.ConfigurationBuilder;
 import org.picketbox.core.config.EventManagerConfiguration;
+import org.picketbox.core.event.AsynchronousEventManager;
 import org.picketbox.core.event.DefaultEventManager;
+import org.picketbox.core.event.EventOverflowPolicy;
 import org.picketbox.core.event.PicketBoxEventManager;
 
 /**
@@ -38,6 +40,10 @@ public class EventManagerConfigurationBuilder extends AbstractConfigurationBuild
 
     private PicketBoxEventManager manager;
     private List<Object> handlers;
+    private boolean asynchronous;
+    private int workers = AsynchronousEventManager.DEFAULT_WORKERS;
+    private int queueSize = AsynchronousEventManager.DEFAULT_QUEUE_SIZE;
+    private EventOverflowPolicy overflowPolicy = EventOverflowPolicy.BLOCK;
 
     public EventManagerConfigurationBuilder(ConfigurationBuilder builder) {
         super(builder);
@@ -52,7 +58,11 @@ public class EventManagerConfigurationBuilder extends AbstractConfigurationBuild
     @Override
     protected void setDefaults() {
         if (this.manager == null) {
-            this.manager = new DefaultEventManager(this.handlers);
+            if (this.asynchronous) {
+                this.manager = new AsynchronousEventManager(this.handlers, this.workers, this.queueSize, this.overflowPolicy);
+            } else {
+                this.manager = new DefaultEventManager(this.handlers);
+            }
         }
     }
 
@@ -66,6 +76,58 @@ public class EventManagerConfigurationBuilder extends AbstractConfigurationBuild
         return this;
     }
 
+    /**
+     * <p>
+     * Uses an {@link AsynchronousEventManager}. Only handlers annotated with <code>@EventObserver(async = true)</code> are
+     * invoked asynchronously.
+     * </p>
+     *
+     * @return
+     */
+    public EventManagerConfigurationBuilder asynchronous() {
+        this.asynchronous = true;
+        return this;
+    }
+
+    /**
+     * <p>
+     * Number of threads delivering asynchronous events. Each thread consumes its own queue.
+     * </p>
+     *
+     * @param workers
+     * @return
+     */
+    public EventManagerConfigurationBuilder workers(int workers) {
+        this.workers = workers;
+        return this;
+    }
+
+    /**
+     * <p>
+     * Maximum number of events waiting to be delivered in each queue.
+     * </p>
+     *
+     * @param queueSize
+     * @return
+     */
+    public EventManagerConfigurationBuilder queueSize(int queueSize) {
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    /**
+     * <p>
+     * What to do when an event can not be queued because the queue is full. Defaults to {@link EventOverflowPolicy#BLOCK}.
+     * </p>
+     *
+     * @param overflowPolicy
+     * @return
+     */
+    public EventManagerConfigurationBuilder overflowPolicy(EventOverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
     /*
      * (non-Javadoc)
      *
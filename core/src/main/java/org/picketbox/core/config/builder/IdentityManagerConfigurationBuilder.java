@@ -26,6 +26,7 @@ import org.picketbox.core.config.ConfigurationBuilder;
 import org.picketbox.core.config.GlobalIdentityManagerConfiguration;
 import org.picketbox.core.config.IdentityManagerConfiguration;
 import org.picketbox.core.identity.UserContextPopulator;
+import org.picketbox.core.identity.impl.CachingUserContextPopulator;
 import org.picketlink.idm.IdentityManager;
 
 /**
@@ -95,4 +96,25 @@ public class IdentityManagerConfigurationBuilder extends AbstractConfigurationBu
         return this;
     }
 
+    /**
+     * Use a {@link CachingUserContextPopulator} with the default size and time to live.
+     *
+     * @return
+     */
+    public IdentityManagerConfigurationBuilder cachingUserPopulator() {
+        return cachingUserPopulator(CachingUserContextPopulator.DEFAULT_MAX_SIZE,
+                CachingUserContextPopulator.DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Use a {@link CachingUserContextPopulator}.
+     *
+     * @param maxSize maximum number of cached users
+     * @param timeToLiveInMillis time the user, roles and groups are kept without checking the identity store
+     * @return
+     */
+    public IdentityManagerConfigurationBuilder cachingUserPopulator(int maxSize, long timeToLiveInMillis) {
+        return userPopulator(new CachingUserContextPopulator(maxSize, timeToLiveInMillis));
+    }
+
 }
@@ -27,6 +27,8 @@ import org.picketbox.core.config.ConfigurationBuilder;
 import org.picketbox.core.config.SessionManagerConfig;
 import org.picketbox.core.session.FileSessionStore;
 import org.picketbox.core.session.InMemorySessionStore;
+import org.picketbox.core.session.SessionExpirationScheduler;
+import org.picketbox.core.session.SessionIdGenerator;
 import org.picketbox.core.session.SessionManager;
 import org.picketbox.core.session.SessionStore;
 
@@ -39,6 +41,11 @@ public class SessionManagerConfigurationBuilder extends AbstractConfigurationBui
     private SessionManager manager;
     private SessionStore store;
     private int sessionTimeout;
+    private SessionExpirationScheduler expirationScheduler;
+    private int sweepInterval;
+    private int sweepBatchSize = 1000;
+    private long touchInterval;
+    private SessionIdGenerator sessionIdGenerator;
 
     public SessionManagerConfigurationBuilder(ConfigurationBuilder configurationBuilder) {
         super(configurationBuilder);
@@ -55,6 +62,34 @@ public class SessionManagerConfigurationBuilder extends AbstractConfigurationBui
         return this;
     }
 
+    /**
+     * Create a bounded {@link InMemorySessionStore}. The least recently used sessions are evicted when the store is full.
+     *
+     * @param maxSessions maximum number of sessions
+     * @return
+     */
+    public SessionManagerConfigurationBuilder inMemorySessionStore(int maxSessions) {
+        return inMemorySessionStore(maxSessions, InMemorySessionStore.DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Create a bounded {@link InMemorySessionStore}. The least recently used sessions are evicted when the store is full.
+     *
+     * @param maxSessions maximum number of sessions
+     * @param concurrencyLevel number of shards used to split the sessions
+     * @return
+     */
+    public SessionManagerConfigurationBuilder inMemorySessionStore(int maxSessions, int concurrencyLevel) {
+        if (this.store == null) {
+            this.store = new InMemorySessionStore(maxSessions, concurrencyLevel);
+        }
+        if (this.store instanceof InMemorySessionStore == false) {
+            throw PicketBoxMessages.MESSAGES.wrongSessionStore(this.store.getClass().getName());
+        }
+
+        return this;
+    }
+
     /**
      * Create a {@link FileSessionStore}
      *
@@ -98,12 +133,72 @@ public class SessionManagerConfigurationBuilder extends AbstractConfigurationBui
         return this;
     }
 
+    /**
+     * Defines the {@link SessionExpirationScheduler} used to expire sessions. If not provided a
+     * {@link org.picketbox.core.session.TimingWheelSessionExpirationScheduler} is used.
+     *
+     * @param expirationScheduler
+     * @return
+     */
+    public SessionManagerConfigurationBuilder expirationScheduler(SessionExpirationScheduler expirationScheduler) {
+        this.expirationScheduler = expirationScheduler;
+        return this;
+    }
+
+    /**
+     * Enables a background task that walks the session store looking for idle sessions. Useful when the store holds sessions
+     * that were not created by this instance, like persistent or replicated stores.
+     *
+     * @param intervalInSeconds delay between two batches. Zero disables the sweeper.
+     * @return
+     */
+    public SessionManagerConfigurationBuilder sweepInterval(int intervalInSeconds) {
+        this.sweepInterval = intervalInSeconds;
+        return this;
+    }
+
+    /**
+     * Defines how many sessions are checked by each execution of the session store sweeper.
+     *
+     * @param batchSize
+     * @return
+     */
+    public SessionManagerConfigurationBuilder sweepBatchSize(int batchSize) {
+        this.sweepBatchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Coalesces the touch events raised for a session, so at most one event is raised per interval. The session last access time
+     * is always updated.
+     *
+     * @param intervalInMillis minimum interval between two touch events. Zero raises an event for every touch.
+     * @return
+     */
+    public SessionManagerConfigurationBuilder touchInterval(long intervalInMillis) {
+        this.touchInterval = intervalInMillis;
+        return this;
+    }
+
+    /**
+     * Defines the {@link SessionIdGenerator} used to create the identifiers of new sessions. If not provided a
+     * {@link org.picketbox.core.session.SecureRandomSessionIdGenerator} is used.
+     *
+     * @param sessionIdGenerator
+     * @return
+     */
+    public SessionManagerConfigurationBuilder sessionIdGenerator(SessionIdGenerator sessionIdGenerator) {
+        this.sessionIdGenerator = sessionIdGenerator;
+        return this;
+    }
+
     @Override
     protected void setDefaults() {
     }
 
     @Override
     protected SessionManagerConfig doBuild() {
-        return new SessionManagerConfig(this.manager, this.store, this.sessionTimeout);
+        return new SessionManagerConfig(this.manager, this.store, this.sessionTimeout, this.expirationScheduler,
+                this.sweepInterval, this.sweepBatchSize, this.touchInterval, this.sessionIdGenerator);
     }
 }
\ No newline at end of file
@@ -0,0 +1,391 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.event;
+
+import static org.picketbox.core.PicketBoxLogger.LOGGER;
+import static org.picketbox.core.PicketBoxMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.picketbox.core.PicketBoxLifecycle;
+
+/**
+ * <p>
+ * {@link PicketBoxEventManager} that delivers events asynchronously to the handlers annotated with
+ * <code>@EventObserver(async = true)</code>. All other handlers are still invoked in the thread raising the event.
+ * </p>
+ * <p>
+ * Asynchronous deliveries are queued in bounded queues, each one consumed by a single worker thread. All events for a given
+ * handler instance go to the same queue, so a handler receives its events in the order they were raised. When a queue is full
+ * the configured {@link EventOverflowPolicy} is applied.
+ * </p>
+ * <p>
+ * Events raised before this manager is started or after it is stopped are delivered synchronously.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AsynchronousEventManager extends DefaultEventManager implements PicketBoxLifecycle {
+
+    public static final int DEFAULT_WORKERS = 2;
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private static final Delivery SHUTDOWN = new Delivery(null, null);
+
+    private final int workers;
+    private final int queueSize;
+    private final EventOverflowPolicy overflowPolicy;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Number of threads currently handing deliveries to the queues. {@link #stop()} waits for them before stopping the workers.
+     */
+    private final AtomicInteger inFlightDispatches = new AtomicInteger();
+    private final Object inFlightLock = new Object();
+
+    /*
+     * Guards start and stop. The manager's own monitor is also taken by handler registration and resolution, which the
+     * workers may need while stop waits for them.
+     */
+    private final Object lifecycleLock = new Object();
+
+    private volatile List<BlockingQueue<Delivery>> queues;
+    private List<Thread> workerThreads;
+
+    private volatile boolean started;
+
+    public AsynchronousEventManager(List<Object> handlers) {
+        this(handlers, DEFAULT_WORKERS, DEFAULT_QUEUE_SIZE, EventOverflowPolicy.BLOCK);
+    }
+
+    public AsynchronousEventManager(List<Object> handlers, int workers, int queueSize, EventOverflowPolicy overflowPolicy) {
+        super(handlers);
+
+        if (workers <= 0) {
+            throw new IllegalArgumentException("The number of workers must be greater than zero.");
+        }
+
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("The queue size must be greater than zero.");
+        }
+
+        if (overflowPolicy == null) {
+            throw MESSAGES.invalidNullArgument("Overflow Policy");
+        }
+
+        this.workers = workers;
+        this.queueSize = queueSize;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.event.DefaultEventManager#dispatch(org.picketbox.core.event.EventHandlerDefinition,
+     * java.lang.Object)
+     */
+    @Override
+    protected void dispatch(EventHandlerDefinition handler, Object event) {
+        if (!handler.isAsync()) {
+            invoke(handler, event);
+            return;
+        }
+
+        boolean queued = false;
+
+        // registers this dispatch before checking the state, so stop() either waits for it or this dispatch sees it stopped
+        this.inFlightDispatches.incrementAndGet();
+
+        try {
+            List<BlockingQueue<Delivery>> currentQueues = this.queues;
+
+            if (this.started && currentQueues != null) {
+                queued = enqueue(currentQueues, handler, event);
+            }
+        } finally {
+            if (this.inFlightDispatches.decrementAndGet() == 0 && !this.started) {
+                synchronized (this.inFlightLock) {
+                    this.inFlightLock.notifyAll();
+                }
+            }
+        }
+
+        // handlers are never invoked while registered as in flight, they may stop this manager
+        if (!queued) {
+            invoke(handler, event);
+        }
+    }
+
+    /**
+     * <p>
+     * Hands the delivery to the queue of the handler, applying the {@link EventOverflowPolicy} if the queue is full.
+     * </p>
+     *
+     * @return false if the event must be delivered by the calling thread.
+     */
+    private boolean enqueue(List<BlockingQueue<Delivery>> currentQueues, EventHandlerDefinition handler, Object event) {
+        BlockingQueue<Delivery> queue = currentQueues.get((System.identityHashCode(handler.getInstance()) & 0x7fffffff)
+                % currentQueues.size());
+        Delivery delivery = new Delivery(handler, event);
+
+        if (queue.offer(delivery)) {
+            return true;
+        }
+
+        switch (this.overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(delivery);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    this.droppedCount.incrementAndGet();
+                }
+                return true;
+            case CALLER_RUNS:
+                return false;
+            default:
+                this.droppedCount.incrementAndGet();
+                LOGGER.tracef("Event queue is full. Dropping event [%s] for handler [%s].", event, handler.getInstance());
+                return true;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.PicketBoxLifecycle#start()
+     */
+    @Override
+    public void start() {
+        synchronized (this.lifecycleLock) {
+            if (this.started) {
+                throw MESSAGES.instanceAlreadyStarted();
+            }
+
+            List<BlockingQueue<Delivery>> newQueues = new ArrayList<BlockingQueue<Delivery>>(this.workers);
+
+            this.workerThreads = new ArrayList<Thread>(this.workers);
+
+            for (int i = 0; i < this.workers; i++) {
+                BlockingQueue<Delivery> queue = new ArrayBlockingQueue<Delivery>(this.queueSize);
+                Thread thread = new Thread(new Worker(queue), "picketbox-event-" + (i + 1));
+
+                thread.setDaemon(true);
+
+                newQueues.add(queue);
+                this.workerThreads.add(thread);
+            }
+
+            this.queues = newQueues;
+
+            for (Thread thread : this.workerThreads) {
+                thread.start();
+            }
+
+            this.started = true;
+        }
+    }
+
+    /**
+     * <p>
+     * Stops the worker threads. Events already queued, or being queued by other threads, are delivered before this method
+     * returns. Events raised afterwards are delivered synchronously.
+     * </p>
+     *
+     * @see org.picketbox.core.PicketBoxLifecycle#stop()
+     */
+    @Override
+    public void stop() {
+        synchronized (this.lifecycleLock) {
+            if (!this.started) {
+                throw MESSAGES.instanceAlreadyStopped();
+            }
+
+            this.started = false;
+
+            // the workers are still running, so dispatches blocked on a full queue can complete
+            awaitInFlightDispatches();
+
+            List<BlockingQueue<Delivery>> currentQueues = this.queues;
+
+            try {
+                for (BlockingQueue<Delivery> queue : currentQueues) {
+                    queue.put(SHUTDOWN);
+                }
+
+                for (Thread thread : this.workerThreads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            // deliveries left behind if the stopping thread was interrupted are delivered by the stopping thread
+            for (BlockingQueue<Delivery> queue : currentQueues) {
+                List<Delivery> remaining = new ArrayList<Delivery>();
+
+                queue.drainTo(remaining);
+
+                for (Delivery delivery : remaining) {
+                    if (delivery != SHUTDOWN) {
+                        invoke(delivery.handler, delivery.event);
+                    }
+                }
+            }
+
+            this.queues = null;
+            this.workerThreads = null;
+        }
+    }
+
+    /**
+     * <p>
+     * Waits until no other thread is handing deliveries to the queues.
+     * </p>
+     */
+    private void awaitInFlightDispatches() {
+        boolean interrupted = false;
+
+        synchronized (this.inFlightLock) {
+            while (this.inFlightDispatches.get() > 0) {
+                try {
+                    this.inFlightLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.PicketBoxLifecycle#started()
+     */
+    @Override
+    public boolean started() {
+        return this.started;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.PicketBoxLifecycle#stopped()
+     */
+    @Override
+    public boolean stopped() {
+        return !this.started;
+    }
+
+    /**
+     * <p>
+     * Returns the number of events waiting to be delivered.
+     * </p>
+     *
+     * @return
+     */
+    public int getQueueDepth() {
+        List<BlockingQueue<Delivery>> currentQueues = this.queues;
+        int depth = 0;
+
+        if (currentQueues != null) {
+            for (BlockingQueue<Delivery> queue : currentQueues) {
+                depth += queue.size();
+            }
+        }
+
+        return depth;
+    }
+
+    /**
+     * <p>
+     * Returns the number of events discarded because a queue was full.
+     * </p>
+     *
+     * @return
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    public EventOverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * <p>
+     * An event waiting to be delivered to a handler.
+     * </p>
+     */
+    private static final class Delivery {
+
+        private final EventHandlerDefinition handler;
+        private final Object event;
+
+        Delivery(EventHandlerDefinition handler, Object event) {
+            this.handler = handler;
+            this.event = event;
+        }
+    }
+
+    /**
+     * <p>
+     * Consumes a single queue until the shutdown marker is found.
+     * </p>
+     */
+    private final class Worker implements Runnable {
+
+        private final BlockingQueue<Delivery> queue;
+
+        Worker(BlockingQueue<Delivery> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Delivery delivery = this.queue.take();
+
+                    if (delivery == SHUTDOWN) {
+                        return;
+                    }
+
+                    invoke(delivery.handler, delivery.event);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
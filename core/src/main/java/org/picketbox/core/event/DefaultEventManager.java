@@ -22,20 +22,52 @@
 
 package org.picketbox.core.event;
 
+import static org.picketbox.core.PicketBoxLogger.LOGGER;
+
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * <p>
  * Default Implementation of the {@link PicketBoxEventManager}
+ * </p>
+ * <p>
+ * An event is delivered to all handlers observing its type or any of its supertypes, including interfaces. The handlers for
+ * each concrete event type are resolved once and cached. Handler arrays are never modified after being published, they are
+ * replaced when a handler is added or removed, so events can be raised while handlers are being registered.
+ * </p>
  *
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  */
 public class DefaultEventManager implements PicketBoxEventManager {
 
-    private Map<Object, List<EventHandlerDefinition>> observers = new HashMap<Object, List<EventHandlerDefinition>>();
+    private static final EventHandlerDefinition[] NO_HANDLERS = new EventHandlerDefinition[0];
+
+    /*
+     * Handlers keyed by the event type declared by the observer method.
+     */
+    private final ConcurrentMap<Class<?>, EventHandlerDefinition[]> observers =
+        new ConcurrentHashMap<Class<?>, EventHandlerDefinition[]>();
+
+    /*
+     * Handlers resolved for each concrete event type. Cleared every time a handler is added or removed.
+     */
+    private final ConcurrentMap<Class<?>, EventHandlerDefinition[]> resolvedObservers =
+        new ConcurrentHashMap<Class<?>, EventHandlerDefinition[]>();
+
+    /*
+     * Handler instances already registered, compared by identity.
+     */
+    private final Set<Object> handlers = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
 
     public DefaultEventManager(List<Object> handlers) {
         for (Object handler : handlers) {
@@ -51,28 +83,58 @@ public class DefaultEventManager implements PicketBoxEventManager {
      */
     @Override
     public void raiseEvent(Object event) {
-        List<EventHandlerDefinition> handlers = this.observers.get(event.getClass());
-
-        if (handlers == null) {
-            handlers = this.observers.get(event.getClass().getSuperclass());
+        for (EventHandlerDefinition handler : resolveHandlers(event.getClass())) {
+            dispatch(handler, event);
         }
+    }
 
-        if (handlers != null) {
-            for (EventHandlerDefinition handler : handlers) {
-                try {
-                    Method methodHandler = handler.getMethodHandler();
-                    Object handlerInstance = handler.getInstance();
+    /**
+     * <p>
+     * Delivers the given event to the given handler. This implementation always invokes the handler in the caller thread.
+     * Subclasses can override this method to change how events are delivered.
+     * </p>
+     *
+     * @param handler
+     * @param event
+     */
+    protected void dispatch(EventHandlerDefinition handler, Object event) {
+        invoke(handler, event);
+    }
 
-                    methodHandler.invoke(handlerInstance, event);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+    /**
+     * <p>
+     * Invokes the given handler. Exceptions thrown by the handler are logged and never propagated to the caller.
+     * </p>
+     *
+     * @param handler
+     * @param event
+     */
+    protected void invoke(EventHandlerDefinition handler, Object event) {
+        try {
+            handler.getMethodHandler().invoke(handler.getInstance(), event);
+        } catch (InvocationTargetException e) {
+            LOGGER.errorHandlingEvent(event, handler.getInstance(), e.getCause());
+        } catch (Exception e) {
+            LOGGER.errorHandlingEvent(event, handler.getInstance(), e);
         }
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.event.PicketBoxEventManager#hasObservers(java.lang.Class)
+     */
+    @Override
+    public boolean hasObservers(Class<?> eventType) {
+        return resolveHandlers(eventType).length > 0;
+    }
+
     @Override
-    public void addHandler(Object handler) {
+    public synchronized void addHandler(Object handler) {
+        if (!this.handlers.add(handler)) {
+            return;
+        }
+
         Method[] declaredMethods = handler.getClass().getDeclaredMethods();
 
         for (Method method : declaredMethods) {
@@ -90,14 +152,135 @@ public class DefaultEventManager implements PicketBoxEventManager {
 
             Class<? extends Object> eventType = parameterTypes[0];
 
-            if (!this.observers.containsKey(eventType)) {
-                this.observers.put(eventType, new ArrayList<EventHandlerDefinition>());
+            try {
+                // avoids the access checks on every invocation
+                method.setAccessible(true);
+            } catch (SecurityException e) {
+                LOGGER.tracef("could not suppress access checks for event handler method [%s].", method);
+            }
+
+            EventHandlerDefinition[] currentHandlers = this.observers.get(eventType);
+
+            if (currentHandlers == null) {
+                currentHandlers = NO_HANDLERS;
             }
 
-            List<EventHandlerDefinition> handlers = this.observers.get(eventType);
+            EventHandlerDefinition[] newHandlers = new EventHandlerDefinition[currentHandlers.length + 1];
+
+            System.arraycopy(currentHandlers, 0, newHandlers, 0, currentHandlers.length);
+
+            newHandlers[currentHandlers.length] = new EventHandlerDefinition(eventType, handler, method, eventHandler.async());
 
-            handlers.add(new EventHandlerDefinition(eventType, handler, method));
+            this.observers.put(eventType, newHandlers);
         }
+
+        this.resolvedObservers.clear();
     }
 
-}
\ No newline at end of file
+    @Override
+    public synchronized void removeHandler(Object handler) {
+        if (!this.handlers.remove(handler)) {
+            return;
+        }
+
+        for (Map.Entry<Class<?>, EventHandlerDefinition[]> entry : this.observers.entrySet()) {
+            List<EventHandlerDefinition> remainingHandlers = new ArrayList<EventHandlerDefinition>();
+
+            for (EventHandlerDefinition definition : entry.getValue()) {
+                if (definition.getInstance() != handler) {
+                    remainingHandlers.add(definition);
+                }
+            }
+
+            if (remainingHandlers.isEmpty()) {
+                this.observers.remove(entry.getKey());
+            } else if (remainingHandlers.size() != entry.getValue().length) {
+                this.observers.put(entry.getKey(),
+                        remainingHandlers.toArray(new EventHandlerDefinition[remainingHandlers.size()]));
+            }
+        }
+
+        this.resolvedObservers.clear();
+    }
+
+    /**
+     * <p>
+     * Returns the handlers for the given event type, resolving and caching them if necessary.
+     * </p>
+     *
+     * @param eventType
+     * @return
+     */
+    private EventHandlerDefinition[] resolveHandlers(Class<?> eventType) {
+        EventHandlerDefinition[] resolvedHandlers = this.resolvedObservers.get(eventType);
+
+        if (resolvedHandlers == null) {
+            resolvedHandlers = resolveAndCacheHandlers(eventType);
+        }
+
+        return resolvedHandlers;
+    }
+
+    /**
+     * <p>
+     * Synchronized with {@link #addHandler(Object)} and {@link #removeHandler(Object)}, so a resolution based on outdated
+     * observers is never cached.
+     * </p>
+     *
+     * @param eventType
+     * @return
+     */
+    private synchronized EventHandlerDefinition[] resolveAndCacheHandlers(Class<?> eventType) {
+        EventHandlerDefinition[] resolvedHandlers = this.resolvedObservers.get(eventType);
+
+        if (resolvedHandlers != null) {
+            return resolvedHandlers;
+        }
+
+        List<EventHandlerDefinition> handlers = new ArrayList<EventHandlerDefinition>();
+
+        for (Class<?> type : getTypeHierarchy(eventType)) {
+            EventHandlerDefinition[] typeHandlers = this.observers.get(type);
+
+            if (typeHandlers != null) {
+                for (EventHandlerDefinition handler : typeHandlers) {
+                    handlers.add(handler);
+                }
+            }
+        }
+
+        resolvedHandlers = handlers.isEmpty() ? NO_HANDLERS : handlers.toArray(new EventHandlerDefinition[handlers.size()]);
+
+        this.resolvedObservers.put(eventType, resolvedHandlers);
+
+        return resolvedHandlers;
+    }
+
+    /**
+     * <p>
+     * Returns the given type followed by its superclasses and then by all the interfaces they implement.
+     * </p>
+     *
+     * @param eventType
+     * @return
+     */
+    private Set<Class<?>> getTypeHierarchy(Class<?> eventType) {
+        Set<Class<?>> hierarchy = new LinkedHashSet<Class<?>>();
+
+        for (Class<?> type = eventType; type != null; type = type.getSuperclass()) {
+            hierarchy.add(type);
+        }
+
+        List<Class<?>> types = new ArrayList<Class<?>>(hierarchy);
+
+        for (int i = 0; i < types.size(); i++) {
+            for (Class<?> interfaceType : types.get(i).getInterfaces()) {
+                if (hierarchy.add(interfaceType)) {
+                    types.add(interfaceType);
+                }
+            }
+        }
+
+        return hierarchy;
+    }
+}
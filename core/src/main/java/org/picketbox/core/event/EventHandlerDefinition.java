@@ -37,11 +37,17 @@ public class EventHandlerDefinition {
     private Object instance;
     private Method methodHandler;
     private Class<?> event;
+    private boolean async;
 
     public EventHandlerDefinition(Class<?> event, Object instance, Method handler) {
+        this(event, instance, handler, false);
+    }
+
+    public EventHandlerDefinition(Class<?> event, Object instance, Method handler, boolean async) {
         this.event = event;
         this.instance = instance;
         this.methodHandler = handler;
+        this.async = async;
     }
 
     public Object getInstance() {
@@ -55,4 +61,8 @@ public class EventHandlerDefinition {
     public Class<?> getEvent() {
         return this.event;
     }
+
+    public boolean isAsync() {
+        return this.async;
+    }
 }
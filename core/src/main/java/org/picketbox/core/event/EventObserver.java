@@ -42,4 +42,13 @@ import java.lang.annotation.Target;
 @Documented
 public @interface EventObserver {
 
+    /**
+     * <p>
+     * Indicates that events should be delivered to this handler asynchronously, when supported by the event manager. Handlers
+     * are invoked synchronously by default.
+     * </p>
+     *
+     * @return
+     */
+    boolean async() default false;
 }
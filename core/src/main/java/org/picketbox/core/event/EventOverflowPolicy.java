@@ -0,0 +1,55 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.event;
+
+/**
+ * <p>
+ * Defines what an {@link AsynchronousEventManager} does when an event can not be queued because the queue is full.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public enum EventOverflowPolicy {
+
+    /**
+     * <p>
+     * The thread raising the event waits until there is space in the queue.
+     * </p>
+     */
+    BLOCK,
+
+    /**
+     * <p>
+     * The event is discarded for the handler and the drop counter is incremented.
+     * </p>
+     */
+    DROP,
+
+    /**
+     * <p>
+     * The handler is invoked synchronously in the thread raising the event.
+     * </p>
+     */
+    CALLER_RUNS
+
+}
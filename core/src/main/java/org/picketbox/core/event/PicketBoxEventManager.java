@@ -45,8 +45,32 @@ public interface PicketBoxEventManager {
      * <p>
      * Adds a event handler. Handler instances should have methods annotated with the {@link EventObserver} annotation.
      * </p>
+     * <p>
+     * Adding the same handler instance more than once has no effect.
+     * </p>
      *
      * @param defaultSessionEventHandler
      */
     void addHandler(Object handler);
+
+    /**
+     * <p>
+     * Removes a event handler previously added, so it is no longer notified about new events. Removing a handler that was not
+     * added has no effect.
+     * </p>
+     *
+     * @param handler
+     */
+    void removeHandler(Object handler);
+
+    /**
+     * <p>
+     * Indicates if there is at least one handler observing the given event type or any of its supertypes. Callers can use this
+     * method to avoid creating events that nobody will handle.
+     * </p>
+     *
+     * @param eventType
+     * @return
+     */
+    boolean hasObservers(Class<?> eventType);
 }
@@ -22,7 +22,10 @@
 
 package org.picketbox.core.identity;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import javax.persistence.EntityManager;
 
@@ -34,6 +37,7 @@ import org.picketbox.core.config.JPAIdentityManagerConfiguration;
 import org.picketbox.core.identity.event.GroupCreatedEvent;
 import org.picketbox.core.identity.event.GroupRemovedEvent;
 import org.picketbox.core.identity.event.GroupUpdatedEvent;
+import org.picketbox.core.identity.event.MembershipChangedEvent;
 import org.picketbox.core.identity.event.RoleCreatedEvent;
 import org.picketbox.core.identity.event.RoleRemovedEvent;
 import org.picketbox.core.identity.event.RoleUpdatedEvent;
@@ -47,6 +51,7 @@ import org.picketlink.idm.credential.Credentials;
 import org.picketlink.idm.internal.DefaultIdentityManager;
 import org.picketlink.idm.internal.DefaultIdentityStoreInvocationContextFactory;
 import org.picketlink.idm.model.Agent;
+import org.picketlink.idm.model.Attribute;
 import org.picketlink.idm.model.Group;
 import org.picketlink.idm.model.IdentityType;
 import org.picketlink.idm.model.Realm;
@@ -69,6 +74,15 @@ import org.picketlink.idm.spi.StoreFactory;
  */
 public class PicketBoxIdentityManager implements IdentityManager {
 
+    /**
+     * <p>
+     * Prefix of the attributes holding values computed from the credentials of an agent, like the HA1 used by the HTTP Digest
+     * authentication. These attributes are removed whenever the credentials are updated, so a value computed from an old
+     * credential can not be used to authenticate.
+     * </p>
+     */
+    public static final String CREDENTIAL_ATTRIBUTE_PREFIX = "credential:";
+
     private static final long serialVersionUID = 8582047228661746675L;
 
     private PicketBoxManager picketboxManager;
@@ -196,6 +210,8 @@ public class PicketBoxIdentityManager implements IdentityManager {
     @Override
     public void removeFromGroup(Agent member, Group group) {
         this.delegate.removeFromGroup(member, group);
+
+        raiseEvent(new MembershipChangedEvent(member, null, group));
     }
 
     @Override
@@ -218,6 +234,8 @@ public class PicketBoxIdentityManager implements IdentityManager {
     @Override
     public void revokeGroupRole(Agent member, Role role, Group group) {
         this.delegate.revokeGroupRole(member, role, group);
+
+        raiseEvent(new MembershipChangedEvent(member, role, group));
     }
 
     @Override
@@ -228,11 +246,15 @@ public class PicketBoxIdentityManager implements IdentityManager {
     @Override
     public void grantRole(IdentityType identityType, Role role) {
         this.delegate.grantRole(identityType, role);
+
+        raiseEvent(new MembershipChangedEvent(identityType, role, null));
     }
 
     @Override
     public void revokeRole(IdentityType identityType, Role role) {
         this.delegate.revokeRole(identityType, role);
+
+        raiseEvent(new MembershipChangedEvent(identityType, role, null));
     }
 
     @Override
@@ -247,12 +269,24 @@ public class PicketBoxIdentityManager implements IdentityManager {
 
     @Override
     public void updateCredential(Agent agent, Object value) {
+        removeCredentialAttributes(agent);
+
         this.delegate.updateCredential(agent, value);
+
+        if (User.class.isInstance(agent)) {
+            raiseEvent(new UserUpdatedEvent((User) agent));
+        }
     }
 
     @Override
     public void updateCredential(Agent agent, Object value, Date effectiveDate, Date expiryDate) {
+        removeCredentialAttributes(agent);
+
         this.delegate.updateCredential(agent, value, effectiveDate, expiryDate);
+
+        if (User.class.isInstance(agent)) {
+            raiseEvent(new UserUpdatedEvent((User) agent));
+        }
     }
 
     /*
@@ -307,16 +341,22 @@ public class PicketBoxIdentityManager implements IdentityManager {
     @Override
     public void add(Relationship value) {
         delegate.add(value);
+
+        raiseEvent(new MembershipChangedEvent(value));
     }
 
     @Override
     public void update(Relationship value) {
         delegate.update(value);
+
+        raiseEvent(new MembershipChangedEvent(value));
     }
 
     @Override
     public void remove(Relationship value) {
         delegate.remove(value);
+
+        raiseEvent(new MembershipChangedEvent(value));
     }
 
     @Override
@@ -329,6 +369,34 @@ public class PicketBoxIdentityManager implements IdentityManager {
         return delegate.createRelationshipQuery(relationshipType);
     }
 
+    /**
+     * <p>
+     * Removes the attributes computed from the current credentials of the agent. They are removed before the credentials are
+     * changed, so they are never left in place if the update fails halfway.
+     * </p>
+     *
+     * @param agent
+     */
+    private void removeCredentialAttributes(Agent agent) {
+        List<String> names = new ArrayList<String>();
+
+        for (Attribute<? extends Serializable> attribute : agent.getAttributes()) {
+            if (attribute.getName().startsWith(CREDENTIAL_ATTRIBUTE_PREFIX)) {
+                names.add(attribute.getName());
+            }
+        }
+
+        if (names.isEmpty()) {
+            return;
+        }
+
+        for (String name : names) {
+            agent.removeAttribute(name);
+        }
+
+        this.delegate.update(agent);
+    }
+
     private void raiseEvent(Object event) {
         this.picketboxManager.getEventManager().raiseEvent(event);
     }
@@ -336,10 +404,14 @@ public class PicketBoxIdentityManager implements IdentityManager {
     @Override
     public void addToGroup(Agent agent, Group group) {
         delegate.addToGroup(agent, group);
+
+        raiseEvent(new MembershipChangedEvent(agent, null, group));
     }
 
     @Override
     public void grantGroupRole(Agent member, Role role, Group group) {
         delegate.grantGroupRole(member, role, group);
+
+        raiseEvent(new MembershipChangedEvent(member, role, group));
     }
 }
\ No newline at end of file
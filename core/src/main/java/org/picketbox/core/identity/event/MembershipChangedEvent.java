@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.identity.event;
+
+import org.picketlink.idm.model.Group;
+import org.picketlink.idm.model.IdentityType;
+import org.picketlink.idm.model.Relationship;
+import org.picketlink.idm.model.Role;
+
+/**
+ * <p>
+ * This class represents a event fired when a role is granted or revoked, or when a group membership is added or removed.
+ * </p>
+ * <p>
+ * Changes made through a {@link Relationship} only provide the relationship, in this case the member, role and group are
+ * null and observers must assume that any identity may be affected.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class MembershipChangedEvent {
+
+    private IdentityType member;
+    private Role role;
+    private Group group;
+    private Relationship relationship;
+
+    public MembershipChangedEvent(IdentityType member, Role role, Group group) {
+        this.member = member;
+        this.role = role;
+        this.group = group;
+    }
+
+    public MembershipChangedEvent(Relationship relationship) {
+        this.relationship = relationship;
+    }
+
+    public IdentityType getMember() {
+        return this.member;
+    }
+
+    public Role getRole() {
+        return this.role;
+    }
+
+    public Group getGroup() {
+        return this.group;
+    }
+
+    public Relationship getRelationship() {
+        return this.relationship;
+    }
+
+}
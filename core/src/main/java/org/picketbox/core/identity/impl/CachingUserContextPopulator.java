@@ -0,0 +1,229 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.identity.impl;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.List;
+
+import org.picketbox.core.PicketBoxMessages;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.event.EventObserver;
+import org.picketbox.core.identity.event.GroupRemovedEvent;
+import org.picketbox.core.identity.event.GroupUpdatedEvent;
+import org.picketbox.core.identity.event.MembershipChangedEvent;
+import org.picketbox.core.identity.event.RoleRemovedEvent;
+import org.picketbox.core.identity.event.RoleUpdatedEvent;
+import org.picketbox.core.identity.event.UserRemovedEvent;
+import org.picketbox.core.identity.event.UserUpdatedEvent;
+import org.picketbox.core.util.BoundedCache;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.model.Group;
+import org.picketlink.idm.model.Role;
+import org.picketlink.idm.model.User;
+
+/**
+ * <p>
+ * A {@link DefaultUserContextPopulator} that keeps the user, roles and groups loaded from the identity store for a configured
+ * amount of time. Logins of a cached user do not hit the identity store at all. On a miss the user and its memberships are
+ * loaded together and stored as a single entry.
+ * </p>
+ * <p>
+ * Entries are evicted when a {@link UserUpdatedEvent}, {@link UserRemovedEvent} or {@link MembershipChangedEvent} is raised
+ * for the user. Role and group changes, as well as membership changes of groups or made through relationships, evict all
+ * entries, given that they may affect any user. The {@link org.picketbox.core.PicketBoxManager} registers
+ * this populator as an event handler when it is started.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class CachingUserContextPopulator extends DefaultUserContextPopulator {
+
+    public static final int DEFAULT_MAX_SIZE = BoundedCache.DEFAULT_MAX_SIZE;
+    public static final long DEFAULT_TIME_TO_LIVE = BoundedCache.DEFAULT_TIME_TO_LIVE;
+
+    private final BoundedCache<String, CachedIdentity> entries;
+
+    public CachingUserContextPopulator() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * <p>
+     * Creates a populator without an {@link IdentityManager}. The {@link org.picketbox.core.PicketBoxManager} sets its own
+     * identity manager when it is started.
+     * </p>
+     *
+     * @param maxSize maximum number of cached users
+     * @param timeToLive time in milliseconds the loaded information is kept
+     */
+    public CachingUserContextPopulator(int maxSize, long timeToLive) {
+        this(null, maxSize, timeToLive);
+    }
+
+    public CachingUserContextPopulator(IdentityManager identityManager, int maxSize, long timeToLive) {
+        super(identityManager);
+        this.entries = new BoundedCache<String, CachedIdentity>(maxSize, timeToLive);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.identity.impl.DefaultUserContextPopulator#getIdentity(org.picketbox.core.UserContext)
+     */
+    @Override
+    public UserContext getIdentity(UserContext authenticatedUserContext) {
+        if (authenticatedUserContext == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("authenticatedUserContext");
+        }
+
+        Principal principal = authenticatedUserContext.getPrincipal();
+        String userName = principal.getName();
+
+        long loadGeneration = this.entries.getGeneration();
+        CachedIdentity identity = this.entries.get(userName);
+
+        if (identity == null) {
+            identity = loadIdentity(userName);
+
+            if (identity.user != null) {
+                this.entries.put(userName, identity, loadGeneration);
+            }
+        }
+
+        authenticatedUserContext.setUser(identity.user);
+        authenticatedUserContext.setRoles(identity.roles);
+        authenticatedUserContext.setGroups(identity.groups);
+
+        return authenticatedUserContext;
+    }
+
+    /**
+     * <p>
+     * Removes the cached information for the given user.
+     * </p>
+     *
+     * @param userName
+     */
+    public void invalidate(String userName) {
+        this.entries.invalidate(userName);
+    }
+
+    /**
+     * <p>
+     * Removes all cached information.
+     * </p>
+     */
+    public void clear() {
+        this.entries.clear();
+    }
+
+    @EventObserver
+    public void onUserUpdated(UserUpdatedEvent event) {
+        invalidate(event.getUser());
+    }
+
+    @EventObserver
+    public void onUserRemoved(UserRemovedEvent event) {
+        invalidate(event.getUser());
+    }
+
+    @EventObserver
+    public void onMembershipChanged(MembershipChangedEvent event) {
+        if (event.getMember() instanceof User) {
+            invalidate((User) event.getMember());
+        } else {
+            clear();
+        }
+    }
+
+    @EventObserver
+    public void onRoleUpdated(RoleUpdatedEvent event) {
+        clear();
+    }
+
+    @EventObserver
+    public void onRoleRemoved(RoleRemovedEvent event) {
+        clear();
+    }
+
+    @EventObserver
+    public void onGroupUpdated(GroupUpdatedEvent event) {
+        clear();
+    }
+
+    @EventObserver
+    public void onGroupRemoved(GroupRemovedEvent event) {
+        clear();
+    }
+
+    public int getMaxSize() {
+        return this.entries.getMaxSize();
+    }
+
+    public long getTimeToLive() {
+        return this.entries.getTimeToLive();
+    }
+
+    public int getSize() {
+        return this.entries.getSize();
+    }
+
+    public long getHitCount() {
+        return this.entries.getHitCount();
+    }
+
+    public long getMissCount() {
+        return this.entries.getMissCount();
+    }
+
+    private void invalidate(User user) {
+        if (user != null && user.getLoginName() != null) {
+            invalidate(user.getLoginName());
+        }
+    }
+
+    private CachedIdentity loadIdentity(String userName) {
+        User storedUser = getIdentityManager().getUser(userName);
+
+        if (storedUser == null) {
+            return new CachedIdentity(null, Collections.<Role> emptyList(), Collections.<Group> emptyList());
+        }
+
+        return new CachedIdentity(storedUser, getRoles(storedUser), getGroups(storedUser));
+    }
+
+    private static class CachedIdentity {
+
+        private final User user;
+        private final List<Role> roles;
+        private final List<Group> groups;
+
+        CachedIdentity(User user, List<Role> roles, List<Group> groups) {
+            this.user = user;
+            this.roles = roles;
+            this.groups = groups;
+        }
+    }
+}
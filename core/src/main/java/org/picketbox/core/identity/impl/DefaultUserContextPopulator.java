@@ -74,7 +74,7 @@ public class DefaultUserContextPopulator implements UserContextPopulator {
         return authenticatedUserContext;
     }
 
-    private List<Group> getGroups(User storedUser) {
+    protected List<Group> getGroups(User storedUser) {
         IdentityQuery<Group> groupQuery = getIdentityManager().createIdentityQuery(Group.class);
 
         groupQuery.setParameter(Role.HAS_MEMBER, storedUser);
@@ -82,7 +82,7 @@ public class DefaultUserContextPopulator implements UserContextPopulator {
         return groupQuery.getResultList();
     }
 
-    private List<Role> getRoles(User userFromIDM) {
+    protected List<Role> getRoles(User userFromIDM) {
         IdentityQuery<Role> query = getIdentityManager().createIdentityQuery(Role.class);
 
         query.setParameter(Role.ROLE_OF, userFromIDM);
@@ -0,0 +1,348 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.nonce;
+
+import static org.picketbox.core.PicketBoxMessages.MESSAGES;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.picketbox.core.util.Base64;
+
+/**
+ * <p>
+ * A {@link NonceGenerator} that creates self-validating nonces. Each nonce carries the time it was issued, random bytes and an
+ * HMAC-SHA256 signature over both, so any server that knows the secret can check if a nonce is genuine and fresh without
+ * remembering the nonces it issued. Servers behind a load balancer only need to share the same secret.
+ * </p>
+ * <p>
+ * Nonces are not signed with the secret itself but with a key derived from it for each key rotation interval. The interval a
+ * nonce belongs to is given by its timestamp, so all the servers rotate their keys at the same time without any coordination.
+ * </p>
+ * <p>
+ * A nonce can be used many times while it is fresh. Use a {@link NonceReplayFilter} to detect replayed requests.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class HMACNonceGenerator implements NonceGenerator {
+
+    /**
+     * <p>
+     * Default interval, in milliseconds, after which a new signing key is used.
+     * </p>
+     */
+    public static final long DEFAULT_KEY_ROTATION_INTERVAL = 60 * 60 * 1000;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final byte[] KEY_DERIVATION_LABEL = "PicketBox HMAC nonce key".getBytes();
+
+    // how far in the future a timestamp can be, to tolerate clock differences between servers
+    private static final long MAX_CLOCK_SKEW = 30 * 1000;
+
+    private static final int TIMESTAMP_LENGTH = 8;
+    private static final int RANDOM_LENGTH = 16;
+    private static final int SIGNATURE_LENGTH = 24;
+    private static final int NONCE_LENGTH = TIMESTAMP_LENGTH + RANDOM_LENGTH + SIGNATURE_LENGTH;
+
+    private static final ThreadLocal<SecureRandom> random = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            return new SecureRandom();
+        }
+    };
+
+    private static final ThreadLocal<Mac> hmac = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                return Mac.getInstance(HMAC_ALGORITHM);
+            } catch (GeneralSecurityException e) {
+                throw MESSAGES.unableToSignNonce(e);
+            }
+        }
+    };
+
+    private final SecretKeySpec secret;
+    private final long keyRotationInterval;
+
+    private volatile SigningKey currentKey;
+    private volatile SigningKey previousKey;
+
+    /**
+     * <p>
+     * Creates a generator with a random secret. Only this instance can validate the nonces it creates.
+     * </p>
+     */
+    public HMACNonceGenerator() {
+        this(createRandomSecret());
+    }
+
+    /**
+     * <p>
+     * Creates a generator with the given secret. All the generators created with the same secret accept each other's nonces.
+     * </p>
+     *
+     * @param secret
+     */
+    public HMACNonceGenerator(byte[] secret) {
+        this(secret, DEFAULT_KEY_ROTATION_INTERVAL);
+    }
+
+    public HMACNonceGenerator(byte[] secret, long keyRotationInterval) {
+        if (secret == null || secret.length < 16) {
+            throw new IllegalArgumentException("The nonce secret must have at least 16 bytes.");
+        }
+
+        if (keyRotationInterval <= 0) {
+            throw new IllegalArgumentException("The key rotation interval must be greater than zero.");
+        }
+
+        this.secret = new SecretKeySpec(secret.clone(), HMAC_ALGORITHM);
+        this.keyRotationInterval = keyRotationInterval;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.nonce.NonceGenerator#get()
+     */
+    @Override
+    public String get() {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        long timestamp = System.currentTimeMillis();
+
+        writeLong(timestamp, nonce, 0);
+
+        byte[] randomBytes = new byte[RANDOM_LENGTH];
+
+        random.get().nextBytes(randomBytes);
+
+        System.arraycopy(randomBytes, 0, nonce, TIMESTAMP_LENGTH, RANDOM_LENGTH);
+        System.arraycopy(sign(timestamp, nonce), 0, nonce, TIMESTAMP_LENGTH + RANDOM_LENGTH, SIGNATURE_LENGTH);
+
+        return Base64.encodeBytes(nonce, Base64.DONT_BREAK_LINES);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.nonce.NonceGenerator#hasExpired(java.lang.String, long)
+     */
+    @Override
+    public boolean hasExpired(String nonceValue, long maxValue) {
+        return verify(nonceValue, maxValue) != NonceStatus.VALID;
+    }
+
+    /**
+     * <p>
+     * Checks if the given nonce was signed with the secret of this generator and if it was issued less than
+     * <code>maxValid</code> milliseconds ago.
+     * </p>
+     *
+     * @param nonceValue
+     * @param maxValid
+     * @return {@link NonceStatus#INVALID} if the nonce is malformed or its signature does not match,
+     *         {@link NonceStatus#STALE} if it is genuine but too old.
+     */
+    public NonceStatus verify(String nonceValue, long maxValid) {
+        byte[] nonce = decode(nonceValue);
+
+        if (nonce == null) {
+            return NonceStatus.INVALID;
+        }
+
+        long timestamp = readLong(nonce, 0);
+        long now = System.currentTimeMillis();
+
+        if (timestamp > now + MAX_CLOCK_SKEW) {
+            return NonceStatus.INVALID;
+        }
+
+        byte[] signature = sign(timestamp, nonce);
+        byte[] receivedSignature = new byte[SIGNATURE_LENGTH];
+
+        System.arraycopy(nonce, TIMESTAMP_LENGTH + RANDOM_LENGTH, receivedSignature, 0, SIGNATURE_LENGTH);
+
+        if (!MessageDigest.isEqual(signature, receivedSignature)) {
+            return NonceStatus.INVALID;
+        }
+
+        if (now - timestamp > maxValid) {
+            return NonceStatus.STALE;
+        }
+
+        return NonceStatus.VALID;
+    }
+
+    /**
+     * <p>
+     * Decodes the given nonce. Returns null if the value is not a nonce created by this class in its canonical encoding, so
+     * different strings can never represent the same nonce.
+     * </p>
+     *
+     * @param nonceValue
+     * @return
+     */
+    private byte[] decode(String nonceValue) {
+        if (nonceValue == null || nonceValue.length() != (NONCE_LENGTH / 3) * 4) {
+            return null;
+        }
+
+        byte[] nonce;
+
+        try {
+            nonce = Base64.decode(nonceValue);
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        if (nonce == null || nonce.length != NONCE_LENGTH || !Base64.encodeBytes(nonce, Base64.DONT_BREAK_LINES).equals(nonceValue)) {
+            return null;
+        }
+
+        return nonce;
+    }
+
+    /**
+     * <p>
+     * Signs the timestamp and the random bytes of the given nonce.
+     * </p>
+     *
+     * @param timestamp
+     * @param nonce
+     * @return
+     */
+    private byte[] sign(long timestamp, byte[] nonce) {
+        Mac mac = hmac.get();
+
+        try {
+            mac.init(getSigningKey(timestamp / this.keyRotationInterval));
+        } catch (GeneralSecurityException e) {
+            throw MESSAGES.unableToSignNonce(e);
+        }
+
+        mac.update(nonce, 0, TIMESTAMP_LENGTH + RANDOM_LENGTH);
+
+        byte[] signature = new byte[SIGNATURE_LENGTH];
+
+        System.arraycopy(mac.doFinal(), 0, signature, 0, SIGNATURE_LENGTH);
+
+        return signature;
+    }
+
+    /**
+     * <p>
+     * Returns the key used to sign nonces issued during the given rotation interval. The keys for the last two intervals are
+     * kept, the others are derived again when needed.
+     * </p>
+     *
+     * @param interval
+     * @return
+     */
+    private SecretKeySpec getSigningKey(long interval) {
+        SigningKey current = this.currentKey;
+
+        if (current != null && current.interval == interval) {
+            return current.key;
+        }
+
+        SigningKey previous = this.previousKey;
+
+        if (previous != null && previous.interval == interval) {
+            return previous.key;
+        }
+
+        SigningKey key = new SigningKey(interval, deriveKey(interval));
+
+        synchronized (this) {
+            if (this.currentKey == null || interval > this.currentKey.interval) {
+                this.previousKey = this.currentKey;
+                this.currentKey = key;
+            } else if (this.previousKey == null || interval > this.previousKey.interval) {
+                this.previousKey = key;
+            }
+        }
+
+        return key.key;
+    }
+
+    private SecretKeySpec deriveKey(long interval) {
+        Mac mac = hmac.get();
+
+        try {
+            mac.init(this.secret);
+        } catch (GeneralSecurityException e) {
+            throw MESSAGES.unableToSignNonce(e);
+        }
+
+        byte[] intervalBytes = new byte[8];
+
+        writeLong(interval, intervalBytes, 0);
+
+        mac.update(KEY_DERIVATION_LABEL);
+        mac.update(intervalBytes);
+
+        return new SecretKeySpec(mac.doFinal(), HMAC_ALGORITHM);
+    }
+
+    private static byte[] createRandomSecret() {
+        byte[] secret = new byte[32];
+
+        random.get().nextBytes(secret);
+
+        return secret;
+    }
+
+    private static void writeLong(long value, byte[] target, int offset) {
+        for (int i = 7; i >= 0; i--) {
+            target[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long readLong(byte[] source, int offset) {
+        long value = 0;
+
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (source[offset + i] & 0xff);
+        }
+
+        return value;
+    }
+
+    private static class SigningKey {
+
+        private final long interval;
+        private final SecretKeySpec key;
+
+        SigningKey(long interval, SecretKeySpec key) {
+            this.interval = interval;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.nonce;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * {@link NonceStore} implementation that keeps the nonces in memory.
+ * </p>
+ * <p>
+ * Each scope holds at most a fixed number of nonces. When a new nonce is stored for a scope that is full, the oldest nonce of
+ * that scope is discarded. Expired nonces are still reported as {@link NonceStatus#STALE} for another validity period and are
+ * removed after that, either when their scope is used or by a sweep over all the scopes that runs every few stores. Scopes
+ * left without nonces are removed by the same sweep.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class InMemoryNonceStore implements NonceStore {
+
+    /**
+     * <p>
+     * The default number of nonces kept for each scope.
+     * </p>
+     */
+    public static final int DEFAULT_MAX_NONCES_PER_SCOPE = 16;
+
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final ConcurrentMap<String, Scope> scopes = new ConcurrentHashMap<String, Scope>();
+    private final AtomicInteger storeCount = new AtomicInteger();
+    private final int maxNoncesPerScope;
+
+    public InMemoryNonceStore() {
+        this(DEFAULT_MAX_NONCES_PER_SCOPE);
+    }
+
+    public InMemoryNonceStore(int maxNoncesPerScope) {
+        if (maxNoncesPerScope <= 0) {
+            throw new IllegalArgumentException("The maximum number of nonces per scope must be greater than zero.");
+        }
+
+        this.maxNoncesPerScope = maxNoncesPerScope;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.nonce.NonceStore#store(java.lang.String, java.lang.String, long)
+     */
+    @Override
+    public void store(String scope, String nonce, long maxValid) {
+        long now = System.currentTimeMillis();
+
+        while (true) {
+            Scope nonces = this.scopes.get(scope);
+
+            if (nonces == null) {
+                Scope newScope = new Scope();
+
+                nonces = this.scopes.putIfAbsent(scope, newScope);
+
+                if (nonces == null) {
+                    nonces = newScope;
+                }
+            }
+
+            if (nonces.add(nonce, now, maxValid, this.maxNoncesPerScope)) {
+                break;
+            }
+
+            // the scope was discarded concurrently by a sweep, retry with a new one
+            this.scopes.remove(scope, nonces);
+        }
+
+        if (this.storeCount.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            sweep(now);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.nonce.NonceStore#validate(java.lang.String, java.lang.String)
+     */
+    @Override
+    public NonceStatus validate(String scope, String nonce) {
+        Scope nonces = this.scopes.get(scope);
+
+        if (nonces == null) {
+            return NonceStatus.INVALID;
+        }
+
+        return nonces.validate(nonce, System.currentTimeMillis());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.nonce.NonceStore#acceptNonceCount(java.lang.String, java.lang.String, long)
+     */
+    @Override
+    public boolean acceptNonceCount(String scope, String nonce, long nonceCount) {
+        Scope nonces = this.scopes.get(scope);
+
+        return nonces != null && nonces.acceptNonceCount(nonce, nonceCount, System.currentTimeMillis());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.nonce.NonceStore#remove(java.lang.String)
+     */
+    @Override
+    public void remove(String scope) {
+        Scope nonces = this.scopes.remove(scope);
+
+        if (nonces != null) {
+            nonces.discard();
+        }
+    }
+
+    /**
+     * <p>
+     * Removes the nonces that are no longer reported as stale and the scopes left without nonces.
+     * </p>
+     */
+    public void purgeExpired() {
+        sweep(System.currentTimeMillis());
+    }
+
+    /**
+     * <p>
+     * Returns the number of scopes with nonces.
+     * </p>
+     *
+     * @return
+     */
+    public int getScopeCount() {
+        return this.scopes.size();
+    }
+
+    /**
+     * <p>
+     * Returns the number of nonces kept for the given scope.
+     * </p>
+     *
+     * @param scope
+     * @return
+     */
+    public int getNonceCount(String scope) {
+        Scope nonces = this.scopes.get(scope);
+
+        if (nonces == null) {
+            return 0;
+        }
+
+        return nonces.size();
+    }
+
+    private void sweep(long now) {
+        for (Entry<String, Scope> entry : this.scopes.entrySet()) {
+            Scope nonces = entry.getValue();
+
+            if (nonces.discardIfEmpty(now)) {
+                this.scopes.remove(entry.getKey(), nonces);
+            }
+        }
+    }
+
+    private static class StoredNonce {
+
+        private final long expiration;
+        private final long removal;
+        private long lastNonceCount;
+
+        StoredNonce(long issued, long maxValid) {
+            this.expiration = issued + maxValid;
+            this.removal = this.expiration + maxValid;
+        }
+    }
+
+    /**
+     * <p>
+     * The nonces issued for a single scope, oldest first.
+     * </p>
+     */
+    private static class Scope {
+
+        private final Map<String, StoredNonce> nonces = new LinkedHashMap<String, StoredNonce>();
+        private boolean discarded;
+
+        synchronized boolean add(String nonce, long now, long maxValid, int maxNonces) {
+            if (this.discarded) {
+                return false;
+            }
+
+            purge(now);
+
+            Iterator<StoredNonce> iterator = this.nonces.values().iterator();
+
+            while (this.nonces.size() >= maxNonces && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+
+            this.nonces.put(nonce, new StoredNonce(now, maxValid));
+
+            return true;
+        }
+
+        synchronized NonceStatus validate(String nonce, long now) {
+            StoredNonce storedNonce = this.nonces.get(nonce);
+
+            if (storedNonce == null) {
+                return NonceStatus.INVALID;
+            }
+
+            if (now > storedNonce.expiration) {
+                if (now > storedNonce.removal) {
+                    this.nonces.remove(nonce);
+                    return NonceStatus.INVALID;
+                }
+
+                return NonceStatus.STALE;
+            }
+
+            return NonceStatus.VALID;
+        }
+
+        synchronized boolean acceptNonceCount(String nonce, long nonceCount, long now) {
+            StoredNonce storedNonce = this.nonces.get(nonce);
+
+            if (storedNonce == null || now > storedNonce.expiration || nonceCount <= storedNonce.lastNonceCount) {
+                return false;
+            }
+
+            storedNonce.lastNonceCount = nonceCount;
+
+            return true;
+        }
+
+        synchronized int size() {
+            return this.nonces.size();
+        }
+
+        synchronized boolean discardIfEmpty(long now) {
+            purge(now);
+
+            if (this.nonces.isEmpty()) {
+                this.discarded = true;
+            }
+
+            return this.discarded;
+        }
+
+        synchronized void discard() {
+            this.discarded = true;
+            this.nonces.clear();
+        }
+
+        private void purge(long now) {
+            Iterator<StoredNonce> iterator = this.nonces.values().iterator();
+
+            while (iterator.hasNext()) {
+                if (now > iterator.next().removal) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.nonce;
+
+import java.security.SecureRandom;
+
+/**
+ * <p>
+ * Detects values, usually a nonce and its nonce count, that were already seen during a time window. Values are recorded in two
+ * Bloom filters covering consecutive windows. When a new window starts the oldest filter is dropped, so each value is
+ * remembered for at least one window and the memory used does not grow with the number of requests.
+ * </p>
+ * <p>
+ * Like any Bloom filter it never misses a value seen during the last window, but it may report, with a small probability, a
+ * value as seen when it was not. The filter is local to the server it runs on.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class NonceReplayFilter {
+
+    /**
+     * <p>
+     * Default number of values expected during a single window.
+     * </p>
+     */
+    public static final int DEFAULT_EXPECTED_VALUES = 10000;
+
+    /**
+     * <p>
+     * Default probability of reporting a value as seen when it was not.
+     * </p>
+     */
+    public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.00001;
+
+    private final long window;
+    private final int bitCount;
+    private final int hashCount;
+    private final long seed;
+
+    private Window current;
+    private Window previous;
+
+    /**
+     * <p>
+     * Creates a filter that remembers values for at least the given window, in milliseconds.
+     * </p>
+     *
+     * @param window
+     */
+    public NonceReplayFilter(long window) {
+        this(window, DEFAULT_EXPECTED_VALUES, DEFAULT_FALSE_POSITIVE_PROBABILITY);
+    }
+
+    public NonceReplayFilter(long window, int expectedValues, double falsePositiveProbability) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("The window must be greater than zero.");
+        }
+
+        if (expectedValues <= 0) {
+            throw new IllegalArgumentException("The number of expected values must be greater than zero.");
+        }
+
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("The false positive probability must be between zero and one.");
+        }
+
+        double ln2 = Math.log(2);
+        long bits = (long) Math.ceil(-expectedValues * Math.log(falsePositiveProbability) / (ln2 * ln2));
+
+        this.window = window;
+        this.bitCount = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, bits));
+        this.hashCount = Math.max(1, (int) Math.round((double) this.bitCount / expectedValues * ln2));
+        this.seed = new SecureRandom().nextLong();
+    }
+
+    /**
+     * <p>
+     * Records the given value and checks if it was already seen.
+     * </p>
+     *
+     * @param value
+     * @return true if the value was not seen during the last window.
+     */
+    public boolean firstUse(String value) {
+        long hash = hash(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32) | 1;
+
+        synchronized (this) {
+            Window window = getWindow(System.currentTimeMillis());
+
+            if (this.previous != null && this.previous.containsAll(hash1, hash2, this.hashCount, this.bitCount)) {
+                return false;
+            }
+
+            return window.addAll(hash1, hash2, this.hashCount, this.bitCount);
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the window for the given time, dropping the windows that are too old.
+     * </p>
+     *
+     * @param now
+     * @return
+     */
+    private Window getWindow(long now) {
+        long index = now / this.window;
+
+        if (this.current == null || this.current.index != index) {
+            if (this.current != null && this.current.index == index - 1) {
+                this.previous = this.current;
+            } else {
+                this.previous = null;
+            }
+
+            this.current = new Window(index, this.bitCount);
+        }
+
+        return this.current;
+    }
+
+    /**
+     * <p>
+     * A seeded 64 bit FNV-1a hash followed by a final mix, so values can not be chosen to collide without knowing the seed.
+     * </p>
+     *
+     * @param value
+     * @return
+     */
+    private long hash(String value) {
+        long hash = 0xcbf29ce484222325L ^ this.seed;
+
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+    private static class Window {
+
+        private final long index;
+        private final long[] bits;
+
+        Window(long index, int bitCount) {
+            this.index = index;
+            this.bits = new long[(bitCount + 63) >>> 6];
+        }
+
+        boolean containsAll(int hash1, int hash2, int hashCount, int bitCount) {
+            for (int i = 0; i < hashCount; i++) {
+                int bit = ((hash1 + i * hash2) & Integer.MAX_VALUE) % bitCount;
+
+                if ((this.bits[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * <p>
+         * Sets the bits for a value.
+         * </p>
+         *
+         * @return true if at least one bit was not set before.
+         */
+        boolean addAll(int hash1, int hash2, int hashCount, int bitCount) {
+            boolean added = false;
+
+            for (int i = 0; i < hashCount; i++) {
+                int bit = ((hash1 + i * hash2) & Integer.MAX_VALUE) % bitCount;
+                long mask = 1L << bit;
+
+                if ((this.bits[bit >>> 6] & mask) == 0) {
+                    this.bits[bit >>> 6] |= mask;
+                    added = true;
+                }
+            }
+
+            return added;
+        }
+    }
+}
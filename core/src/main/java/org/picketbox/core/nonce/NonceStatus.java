@@ -0,0 +1,49 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.nonce;
+
+/**
+ * <p>
+ * The possible results when a nonce is checked against a {@link NonceStore}.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public enum NonceStatus {
+
+    /**
+     * The nonce was issued for the scope and is still valid.
+     */
+    VALID,
+
+    /**
+     * The nonce was issued for the scope but it has expired. Clients may retry with a new nonce.
+     */
+    STALE,
+
+    /**
+     * The nonce is unknown for the scope.
+     */
+    INVALID
+
+}
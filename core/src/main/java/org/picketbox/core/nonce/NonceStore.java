@@ -0,0 +1,84 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.nonce;
+
+/**
+ * <p>
+ * Keeps track of the nonces issued by the server. Nonces are grouped by a scope, usually the id of the session the nonce was
+ * issued for, and expire after a given time. For each nonce the store also tracks the highest nonce count used by the client,
+ * so a request can not be replayed with the same nonce count.
+ * </p>
+ * <p>
+ * Implementations must be thread-safe.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public interface NonceStore {
+
+    /**
+     * <p>
+     * Stores a nonce issued for the given scope.
+     * </p>
+     *
+     * @param scope
+     * @param nonce
+     * @param maxValid how long, in milliseconds, the nonce is valid.
+     */
+    void store(String scope, String nonce, long maxValid);
+
+    /**
+     * <p>
+     * Checks if the given nonce was issued for the scope and if it is still valid.
+     * </p>
+     *
+     * @param scope
+     * @param nonce
+     * @return
+     */
+    NonceStatus validate(String scope, String nonce);
+
+    /**
+     * <p>
+     * Records the nonce count sent by a client for a valid nonce. A nonce count is only accepted if it is greater than any
+     * nonce count previously accepted for the same nonce.
+     * </p>
+     *
+     * @param scope
+     * @param nonce
+     * @param nonceCount
+     * @return true if the nonce is still valid and the nonce count was not used before.
+     */
+    boolean acceptNonceCount(String scope, String nonce, long nonceCount);
+
+    /**
+     * <p>
+     * Removes all the nonces issued for the given scope. This method should be called when the scope ends, for example when the
+     * session is invalidated.
+     * </p>
+     *
+     * @param scope
+     */
+    void remove(String scope);
+
+}
@@ -0,0 +1,105 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.nonce;
+
+/**
+ * <p>
+ * {@link NonceStore} implementation for nonces created by a {@link HMACNonceGenerator}. Nothing is stored for the issued
+ * nonces, they are validated by checking their signature and age. Any server configured with the same secret can validate
+ * them, whatever the server that issued them.
+ * </p>
+ * <p>
+ * Without state the highest nonce count can not be tracked for each nonce. If a {@link NonceReplayFilter} is provided, each
+ * pair of nonce and nonce count is accepted only once by this server. Otherwise any nonce count is accepted while the nonce is
+ * fresh.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class StatelessNonceStore implements NonceStore {
+
+    private final HMACNonceGenerator nonceGenerator;
+    private final long maxValid;
+    private final NonceReplayFilter replayFilter;
+
+    public StatelessNonceStore(HMACNonceGenerator nonceGenerator, long maxValid) {
+        this(nonceGenerator, maxValid, null);
+    }
+
+    public StatelessNonceStore(HMACNonceGenerator nonceGenerator, long maxValid, NonceReplayFilter replayFilter) {
+        if (nonceGenerator == null) {
+            throw new IllegalArgumentException("A nonce generator must be provided.");
+        }
+
+        this.nonceGenerator = nonceGenerator;
+        this.maxValid = maxValid;
+        this.replayFilter = replayFilter;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.nonce.NonceStore#store(java.lang.String, java.lang.String, long)
+     */
+    @Override
+    public void store(String scope, String nonce, long maxValid) {
+        // nonces are self-validating, nothing to store.
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.nonce.NonceStore#validate(java.lang.String, java.lang.String)
+     */
+    @Override
+    public NonceStatus validate(String scope, String nonce) {
+        return this.nonceGenerator.verify(nonce, this.maxValid);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.nonce.NonceStore#acceptNonceCount(java.lang.String, java.lang.String, long)
+     */
+    @Override
+    public boolean acceptNonceCount(String scope, String nonce, long nonceCount) {
+        if (this.nonceGenerator.verify(nonce, this.maxValid) != NonceStatus.VALID) {
+            return false;
+        }
+
+        return this.replayFilter == null || this.replayFilter.firstUse(nonce + ':' + nonceCount);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.nonce.NonceStore#remove(java.lang.String)
+     */
+    @Override
+    public void remove(String scope) {
+    }
+
+    public HMACNonceGenerator getNonceGenerator() {
+        return this.nonceGenerator;
+    }
+}
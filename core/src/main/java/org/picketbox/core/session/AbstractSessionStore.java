@@ -22,13 +22,32 @@
 package org.picketbox.core.session;
 
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.picketbox.core.AbstractPicketBoxLifeCycle;
+import org.picketbox.core.exceptions.PicketBoxSessionException;
 
 /**
+ * <p>
  * Abstract class for implementations of {@link SessionStore}
+ * </p>
+ * <p>
+ * Sessions are split among a fixed number of shards, each one guarded by its own lock, so concurrent requests for different
+ * sessions rarely contend. A maximum number of sessions can be provided for the whole store. When it is exceeded the least
+ * recently used session among all shards is evicted: each shard keeps its sessions in access order, so only the eldest session
+ * of each shard needs to be compared. Evicted sessions are expired, which raises a
+ * {@link org.picketbox.core.session.event.SessionExpiredEvent}.
+ * </p>
  *
  * @author Pedro Silva
  * @author anil saldhana
@@ -36,7 +55,72 @@ import org.picketbox.core.AbstractPicketBoxLifeCycle;
  */
 public abstract class AbstractSessionStore extends AbstractPicketBoxLifeCycle implements SessionStore {
 
-    protected Map<Serializable, PicketBoxSession> sessions = new HashMap<Serializable, PicketBoxSession>();
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * <p>
+     * Live view of the stored sessions, kept for subclasses written before the store was sharded. Changes made through this
+     * map are applied to the shards.
+     * </p>
+     *
+     * @deprecated use {@link #load(SessionId)}, {@link #store(PicketBoxSession)}, {@link #remove(SessionId)} and
+     *             {@link #getSessions()} instead.
+     */
+    @Deprecated
+    protected Map<Serializable, PicketBoxSession> sessions = new SessionsView();
+
+    private final Shard[] shards;
+    private final int shardShift;
+    private final int maxSessions;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Serializes evictions, so concurrent writers never evict more sessions than needed.
+     */
+    private final Object evictionLock = new Object();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * <p>
+     * Creates an unbounded store.
+     * </p>
+     */
+    protected AbstractSessionStore() {
+        this(0, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param maxSessions the maximum number of sessions in the whole store. Zero means unbounded.
+     * @param concurrencyLevel the number of shards. Rounded up to the next power of two.
+     */
+    protected AbstractSessionStore(int maxSessions, int concurrencyLevel) {
+        if (maxSessions < 0) {
+            throw new IllegalArgumentException("maxSessions must not be negative.");
+        }
+
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel must be greater than zero.");
+        }
+
+        int shardBits = 0;
+
+        while ((1 << shardBits) < concurrencyLevel) {
+            shardBits++;
+        }
+
+        int shardCount = 1 << shardBits;
+
+        this.shards = new Shard[shardCount];
+        this.shardShift = 32 - shardBits;
+        this.maxSessions = maxSessions;
+
+        for (int i = 0; i < shardCount; i++) {
+            this.shards[i] = new Shard();
+        }
+    }
 
     /*
      * (non-Javadoc)
@@ -45,7 +129,15 @@ public abstract class AbstractSessionStore extends AbstractPicketBoxLifeCycle im
      */
     @Override
     public PicketBoxSession load(SessionId<? extends Serializable> key) {
-        return this.sessions.get(key.getId());
+        PicketBoxSession session = get(key.getId());
+
+        if (session != null) {
+            this.hitCount.incrementAndGet();
+        } else {
+            this.missCount.incrementAndGet();
+        }
+
+        return session;
     }
 
     /*
@@ -55,7 +147,7 @@ public abstract class AbstractSessionStore extends AbstractPicketBoxLifeCycle im
      */
     @Override
     public void store(PicketBoxSession session) {
-        this.sessions.put(session.getId().getId(), session);
+        put(session.getId().getId(), session);
     }
 
     /*
@@ -65,7 +157,7 @@ public abstract class AbstractSessionStore extends AbstractPicketBoxLifeCycle im
      */
     @Override
     public void remove(SessionId<? extends Serializable> id) {
-        this.sessions.remove(id.getId());
+        remove(id.getId());
     }
 
     /*
@@ -75,7 +167,71 @@ public abstract class AbstractSessionStore extends AbstractPicketBoxLifeCycle im
      */
     @Override
     public void update(PicketBoxSession session) {
-        this.sessions.put(session.getId().getId(), session);
+        put(session.getId().getId(), session);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#getSessions()
+     */
+    @Override
+    public Collection<PicketBoxSession> getSessions() {
+        List<PicketBoxSession> sessions = new ArrayList<PicketBoxSession>();
+
+        for (Shard shard : this.shards) {
+            synchronized (shard) {
+                for (SessionEntry entry : shard.sessions.values()) {
+                    sessions.add(entry.session);
+                }
+            }
+        }
+
+        return sessions;
+    }
+
+    /**
+     * <p>
+     * Returns the number of stored sessions.
+     * </p>
+     *
+     * @return
+     */
+    public int getSize() {
+        return this.size.get();
+    }
+
+    /**
+     * <p>
+     * Returns how many times a session was found when loading it.
+     * </p>
+     *
+     * @return
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * <p>
+     * Returns how many times a session was not found when loading it.
+     * </p>
+     *
+     * @return
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * <p>
+     * Returns how many sessions were evicted because the store was full.
+     * </p>
+     *
+     * @return
+     */
+    public long getEvictionCount() {
+        return this.evictionCount.get();
     }
 
     @Override
@@ -84,8 +240,253 @@ public abstract class AbstractSessionStore extends AbstractPicketBoxLifeCycle im
 
     @Override
     protected void doStop() {
-        this.sessions.clear();
-        this.sessions = null;
+        for (Shard shard : this.shards) {
+            synchronized (shard) {
+                this.size.addAndGet(-shard.sessions.size());
+                shard.sessions.clear();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Called when a session is evicted because the store was full. By default the session is expired.
+     * </p>
+     *
+     * @param session
+     */
+    protected void onEviction(PicketBoxSession session) {
+        if (session.isValid()) {
+            try {
+                session.expire();
+            } catch (PicketBoxSessionException e) {
+                // the session was concurrently invalidated
+            }
+        }
+    }
+
+    private PicketBoxSession get(Object id) {
+        Shard shard = getShard(id);
+
+        synchronized (shard) {
+            SessionEntry entry = shard.sessions.get(id);
+
+            if (entry == null) {
+                return null;
+            }
+
+            entry.accessTime = System.nanoTime();
+
+            return entry.session;
+        }
+    }
+
+    private PicketBoxSession put(Serializable id, PicketBoxSession session) {
+        Shard shard = getShard(id);
+        SessionEntry previous = null;
+
+        synchronized (shard) {
+            previous = shard.sessions.put(id, new SessionEntry(session));
+        }
+
+        if (previous == null) {
+            this.size.incrementAndGet();
+            evictIfFull();
+            return null;
+        }
+
+        return previous.session;
+    }
+
+    private PicketBoxSession remove(Object id) {
+        Shard shard = getShard(id);
+        SessionEntry entry = null;
+
+        synchronized (shard) {
+            entry = shard.sessions.remove(id);
+        }
+
+        if (entry == null) {
+            return null;
+        }
+
+        this.size.decrementAndGet();
+
+        return entry.session;
+    }
+
+    /**
+     * <p>
+     * Evicts the least recently used sessions until the store is within its bound. Only one shard lock is held at a time, the
+     * eldest session of each shard is compared to find the least recently used one.
+     * </p>
+     */
+    private void evictIfFull() {
+        if (this.maxSessions == 0 || this.size.get() <= this.maxSessions) {
+            return;
+        }
+
+        List<PicketBoxSession> evictedSessions = new ArrayList<PicketBoxSession>();
+
+        synchronized (this.evictionLock) {
+            while (this.size.get() > this.maxSessions) {
+                Shard victimShard = null;
+                long oldestAccessTime = 0;
+
+                for (Shard shard : this.shards) {
+                    synchronized (shard) {
+                        if (!shard.sessions.isEmpty()) {
+                            long accessTime = shard.sessions.values().iterator().next().accessTime;
+
+                            if (victimShard == null || accessTime - oldestAccessTime < 0) {
+                                victimShard = shard;
+                                oldestAccessTime = accessTime;
+                            }
+                        }
+                    }
+                }
+
+                if (victimShard == null) {
+                    break;
+                }
+
+                synchronized (victimShard) {
+                    Iterator<SessionEntry> iterator = victimShard.sessions.values().iterator();
+
+                    // the eldest session may have changed since it was compared, any session from this shard is old enough
+                    if (iterator.hasNext()) {
+                        evictedSessions.add(iterator.next().session);
+                        iterator.remove();
+                        this.size.decrementAndGet();
+                    }
+                }
+            }
+        }
+
+        // events are raised outside the locks, handlers may call the store back
+        for (PicketBoxSession evictedSession : evictedSessions) {
+            this.evictionCount.incrementAndGet();
+            onEviction(evictedSession);
+        }
+    }
+
+    private Shard getShard(Object id) {
+        if (this.shards.length == 1) {
+            return this.shards[0];
+        }
+
+        // uses the high bits, the low bits are used by the map inside each shard
+        return this.shards[(id.hashCode() * 0x9E3779B9) >>> this.shardShift];
     }
 
-}
\ No newline at end of file
+    private static class Shard {
+
+        private final LinkedHashMap<Object, SessionEntry> sessions = new LinkedHashMap<Object, SessionEntry>(16, 0.75f, true);
+    }
+
+    private static class SessionEntry {
+
+        private final PicketBoxSession session;
+
+        /**
+         * Last time the session was stored or loaded, guarded by the lock of the shard.
+         */
+        private long accessTime = System.nanoTime();
+
+        SessionEntry(PicketBoxSession session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * <p>
+     * {@link Map} view backed by the shards. Iterating over it returns a snapshot of the stored sessions.
+     * </p>
+     */
+    private class SessionsView extends AbstractMap<Serializable, PicketBoxSession> {
+
+        @Override
+        public PicketBoxSession get(Object key) {
+            return AbstractSessionStore.this.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public PicketBoxSession put(Serializable key, PicketBoxSession value) {
+            return AbstractSessionStore.this.put(key, value);
+        }
+
+        @Override
+        public PicketBoxSession remove(Object key) {
+            return AbstractSessionStore.this.remove(key);
+        }
+
+        @Override
+        public int size() {
+            return getSize();
+        }
+
+        @Override
+        public void clear() {
+            doStop();
+        }
+
+        @Override
+        public Set<Map.Entry<Serializable, PicketBoxSession>> entrySet() {
+            final List<Map.Entry<Serializable, PicketBoxSession>> entries = new ArrayList<Map.Entry<Serializable, PicketBoxSession>>();
+
+            for (Shard shard : AbstractSessionStore.this.shards) {
+                synchronized (shard) {
+                    for (Map.Entry<Object, SessionEntry> entry : shard.sessions.entrySet()) {
+                        entries.add(new SimpleImmutableEntry<Serializable, PicketBoxSession>((Serializable) entry.getKey(),
+                                entry.getValue().session));
+                    }
+                }
+            }
+
+            return new AbstractSet<Map.Entry<Serializable, PicketBoxSession>>() {
+
+                @Override
+                public Iterator<Map.Entry<Serializable, PicketBoxSession>> iterator() {
+                    final Iterator<Map.Entry<Serializable, PicketBoxSession>> iterator = entries.iterator();
+
+                    return new Iterator<Map.Entry<Serializable, PicketBoxSession>>() {
+
+                        private Map.Entry<Serializable, PicketBoxSession> current;
+
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<Serializable, PicketBoxSession> next() {
+                            this.current = iterator.next();
+                            return this.current;
+                        }
+
+                        @Override
+                        public void remove() {
+                            if (this.current == null) {
+                                throw new IllegalStateException();
+                            }
+
+                            iterator.remove();
+                            SessionsView.this.remove(this.current.getKey());
+                            this.current = null;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return entries.size();
+                }
+            };
+        }
+    }
+}
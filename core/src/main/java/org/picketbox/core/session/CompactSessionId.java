@@ -0,0 +1,188 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * {@link SessionId} holding 128 random bits as two longs. Being its own identifier, stores keyed by {@link #getId()} compare
+ * and hash two longs instead of a string.
+ * </p>
+ * <p>
+ * The identifier is encoded as a 22 characters URL-safe Base64 string (RFC 4648, without padding) by {@link #toString()}, and
+ * decoded by {@link #decode(String)}.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class CompactSessionId implements SessionId<CompactSessionId> {
+
+    private static final long serialVersionUID = 6072373826581722441L;
+
+    private static final int ENCODED_LENGTH = 22;
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private static final int[] DECODING_TABLE = new int[128];
+
+    static {
+        Arrays.fill(DECODING_TABLE, -1);
+
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODING_TABLE[ALPHABET[i]] = i;
+        }
+    }
+
+    private final long mostSignificantBits;
+    private final long leastSignificantBits;
+
+    public CompactSessionId(long mostSignificantBits, long leastSignificantBits) {
+        this.mostSignificantBits = mostSignificantBits;
+        this.leastSignificantBits = leastSignificantBits;
+    }
+
+    /**
+     * <p>
+     * Decodes an identifier previously encoded by {@link #toString()}.
+     * </p>
+     *
+     * @param encoded
+     * @return
+     * @throws IllegalArgumentException if the given string is not a valid encoded identifier.
+     */
+    public static CompactSessionId decode(String encoded) {
+        if (encoded == null || encoded.length() != ENCODED_LENGTH) {
+            throw new IllegalArgumentException("Invalid session id: " + encoded);
+        }
+
+        long high = 0;
+        long low = 0;
+
+        // 21 characters carry 126 bits, the last one carries the remaining 2 bits in its most significant positions
+        for (int i = 0; i < ENCODED_LENGTH; i++) {
+            char c = encoded.charAt(i);
+            int value = c < 128 ? DECODING_TABLE[c] : -1;
+
+            if (value < 0 || (i == ENCODED_LENGTH - 1 && (value & 0xF) != 0)) {
+                throw new IllegalArgumentException("Invalid session id: " + encoded);
+            }
+
+            int bits = i == ENCODED_LENGTH - 1 ? 2 : 6;
+
+            if (bits == 2) {
+                value >>>= 4;
+            }
+
+            high = (high << bits) | (low >>> (64 - bits));
+            low = (low << bits) | value;
+        }
+
+        return new CompactSessionId(high, low);
+    }
+
+    /**
+     * <p>
+     * Returns this instance, which is the identifier.
+     * </p>
+     *
+     * @see org.picketbox.core.session.SessionId#getId()
+     */
+    @Override
+    public CompactSessionId getId() {
+        return this;
+    }
+
+    public long getMostSignificantBits() {
+        return this.mostSignificantBits;
+    }
+
+    public long getLeastSignificantBits() {
+        return this.leastSignificantBits;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof CompactSessionId)) {
+            return false;
+        }
+
+        CompactSessionId other = (CompactSessionId) obj;
+
+        return this.mostSignificantBits == other.mostSignificantBits && this.leastSignificantBits == other.leastSignificantBits;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = this.mostSignificantBits ^ this.leastSignificantBits;
+
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * <p>
+     * Returns the URL-safe encoding of this identifier.
+     * </p>
+     */
+    @Override
+    public String toString() {
+        char[] encoded = new char[ENCODED_LENGTH];
+
+        // the first 21 characters take 6 bits each, from the most significant bit on
+        for (int i = 0; i < ENCODED_LENGTH - 1; i++) {
+            encoded[i] = ALPHABET[getBits(i * 6, 6)];
+        }
+
+        // the last character holds the remaining 2 bits followed by zeros
+        encoded[ENCODED_LENGTH - 1] = ALPHABET[getBits(126, 2) << 4];
+
+        return new String(encoded);
+    }
+
+    /**
+     * <p>
+     * Returns <code>count</code> bits starting at the given bit offset, counted from the most significant bit.
+     * </p>
+     */
+    private int getBits(int offset, int count) {
+        int mask = (1 << count) - 1;
+        int end = offset + count;
+
+        if (end <= 64) {
+            return (int) (this.mostSignificantBits >>> (64 - end)) & mask;
+        }
+
+        if (offset >= 64) {
+            return (int) (this.leastSignificantBits >>> (128 - end)) & mask;
+        }
+
+        // the bits span both longs
+        int lowBits = end - 64;
+
+        return (int) ((this.mostSignificantBits << lowBits) | (this.leastSignificantBits >>> (64 - lowBits))) & mask;
+    }
+}
@@ -58,12 +58,19 @@ public class DefaultSessionEventHandler {
 
     @EventObserver
     public void onGetAttribute(SessionGetAttributeEvent event) {
-        PicketBoxSession storedSession = this.sessionManager.retrieve(event.getSession().getId());
+        PicketBoxSession session = event.getSession();
+        PicketBoxSession storedSession = this.sessionManager.retrieve(session.getId());
 
         if (storedSession != null) {
             try {
-                event.getSession().setAttribute(event.getAttributeName(),
-                        storedSession.getAttributes().get(event.getAttributeName()));
+                Object storedValue = storedSession.getAttributes().get(event.getAttributeName());
+
+                // setting the attribute updates the store, which is not needed if the value did not change
+                if (storedSession == session || storedValue == session.getAttributes().get(event.getAttributeName())) {
+                    return;
+                }
+
+                session.setAttribute(event.getAttributeName(), storedValue);
             } catch (PicketBoxSessionException e) {
                 throw new IllegalStateException("Unable to update session with stored attribute.", e);
             }
@@ -22,6 +22,7 @@
 
 package org.picketbox.core.session;
 
+import static org.picketbox.core.PicketBoxLogger.LOGGER;
 import static org.picketbox.core.PicketBoxMessages.MESSAGES;
 
 import java.io.Serializable;
@@ -30,7 +31,7 @@ import org.picketbox.core.AbstractPicketBoxLifeCycle;
 import org.picketbox.core.PicketBoxManager;
 import org.picketbox.core.UserContext;
 import org.picketbox.core.config.PicketBoxConfiguration;
-import org.picketbox.core.event.PicketBoxEventManager;
+import org.picketbox.core.exceptions.PicketBoxSessionException;
 import org.picketbox.core.session.event.SessionCreatedEvent;
 
 /**
@@ -42,6 +43,9 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
 
     private SessionStore sessionStore;
     private final SessionExpirationManager sessionExpirationManager;
+    private SessionStoreSweeper sessionStoreSweeper;
+    private long touchInterval;
+    private SessionIdGenerator sessionIdGenerator;
     private PicketBoxManager picketBoxManager;
     private DefaultSessionEventHandler defaultSessionEventHandler = new DefaultSessionEventHandler(this);
 
@@ -56,13 +60,26 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
         PicketBoxConfiguration configuration = this.picketBoxManager.getConfiguration();
 
         this.sessionExpirationManager = new SessionExpirationManager(configuration);
+        this.sessionExpirationManager.setSessionManager(this);
         this.sessionStore = configuration.getSessionManager().getStore();
 
         if (this.sessionStore == null) {
             this.sessionStore = new InMemorySessionStore();
         }
 
-        registerDefaultEventHandler();
+        this.touchInterval = configuration.getSessionManager().getTouchInterval();
+        this.sessionIdGenerator = configuration.getSessionManager().getSessionIdGenerator();
+
+        if (this.sessionIdGenerator == null) {
+            this.sessionIdGenerator = new SecureRandomSessionIdGenerator();
+        }
+
+        int sweepInterval = configuration.getSessionManager().getSweepInterval();
+
+        if (sweepInterval > 0) {
+            this.sessionStoreSweeper = new SessionStoreSweeper(this, this.sessionStore, sweepInterval * 1000L, configuration
+                    .getSessionManager().getSweepBatchSize());
+        }
     }
 
     @Override
@@ -71,9 +88,7 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
 
         PicketBoxSession session = doCreateSession(authenticatedUserContext);
 
-        PicketBoxEventManager eventManager = this.picketBoxManager.getEventManager();
-
-        session.setEventManager(eventManager);
+        attach(session);
 
         fireEvent(new SessionCreatedEvent(session));
 
@@ -92,8 +107,6 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
 
         this.sessionExpirationManager.setTimer(session);
 
-        eventManager.addHandler(sessionExpirationManager); // Let the session expiration manager listen on session events
-
         return session;
     }
 
@@ -104,7 +117,17 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
         PicketBoxSession session = this.sessionStore.load(id);
 
         if (session != null) {
-            session.setEventManager(this.picketBoxManager.getEventManager());
+            attach(session);
+
+            // sessions are expired lazily, there is no need to wait for the scheduler or the sweeper
+            if (expireIfIdle(session)) {
+                return null;
+            }
+
+            // stores may return a new instance on every load, the scheduler must check the one being used
+            if (session.isValid()) {
+                this.sessionExpirationManager.setTimer(session);
+            }
         }
 
         return session;
@@ -133,6 +156,7 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
         checkIfStarted();
 
         if (session != null) {
+            this.sessionExpirationManager.cancelTimer(session);
             this.sessionStore.remove(session.getId());
         }
     }
@@ -144,17 +168,74 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
         this.sessionStore.update(session);
     }
 
+    /**
+     * <p>
+     * Creates a new session. The identifier is generated by the configured {@link SessionIdGenerator}.
+     * </p>
+     *
+     * @param authenticatedUserContext
+     * @return
+     */
     protected PicketBoxSession doCreateSession(UserContext authenticatedUserContext) {
-        return new PicketBoxSession(authenticatedUserContext, new DefaultSessionId());
+        return new PicketBoxSession(authenticatedUserContext, this.sessionIdGenerator.generate());
+    }
+
+    /**
+     * <p>
+     * Binds the given session to this manager's event manager and touch configuration.
+     * </p>
+     *
+     * @param session
+     */
+    private void attach(PicketBoxSession session) {
+        session.setEventManager(this.picketBoxManager.getEventManager());
+        session.setTouchInterval(this.touchInterval);
+    }
+
+    /**
+     * <p>
+     * Expires the given session if it was not accessed within the configured timeout.
+     * </p>
+     *
+     * @param session
+     * @return true if the session was expired.
+     */
+    boolean expireIfIdle(PicketBoxSession session) {
+        if (!session.isValid() || !this.sessionExpirationManager.isExpired(session)) {
+            return false;
+        }
+
+        session.setEventManager(this.picketBoxManager.getEventManager());
+
+        try {
+            session.expire();
+        } catch (PicketBoxSessionException e) {
+            // the session was concurrently invalidated
+            LOGGER.tracef("session [%s] already invalidated.", session);
+        }
+
+        return true;
     }
 
     @Override
     protected void doStart() {
+        registerDefaultEventHandler();
+
         this.sessionStore.start();
+        this.sessionExpirationManager.start();
+
+        if (this.sessionStoreSweeper != null) {
+            this.sessionStoreSweeper.start();
+        }
     }
 
     @Override
     protected void doStop() {
+        if (this.sessionStoreSweeper != null) {
+            this.sessionStoreSweeper.stop();
+        }
+
+        this.sessionExpirationManager.stop();
         this.sessionStore.stop();
     }
 
@@ -171,7 +252,8 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
 
     /**
      * <p>
-     * Registers the default implementation for {@link SessionEventHandler}.
+     * Registers the default implementation for {@link SessionEventHandler}. Registering it again when the manager is restarted
+     * has no effect.
      * </p>
      */
     private void registerDefaultEventHandler() {
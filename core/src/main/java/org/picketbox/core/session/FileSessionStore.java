@@ -19,76 +19,376 @@
  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
+
 package org.picketbox.core.session;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import static org.picketbox.core.PicketBoxLogger.LOGGER;
+
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.picketbox.core.PicketBoxMessages;
-import org.picketbox.core.util.StreamUtil;
 
 /**
- * A {@link SessionStore} that serializes/deserializes sessions from a file
+ * <p>
+ * A {@link SessionStore} that keeps the sessions in memory and writes every change to an append-only log on disk.
+ * </p>
+ * <p>
+ * Changes are queued and written by a background thread, which syncs the log to the disk once for each batch of records
+ * (group commit). The log is split into segments that are periodically compacted into a checkpoint by another background
+ * thread. The sessions are restored by replaying the checkpoint and the remaining segments when the store is created. See
+ * {@link SessionLog} for the file layout.
+ * </p>
+ * <p>
+ * Changes made to a session after it was stored are only written when the session is stored or updated again.
+ * </p>
+ * <p>
+ * A batch that can not be written is retried a few times. If it still fails the store stops accepting changes: storing,
+ * updating or removing sessions throws an {@link IllegalStateException} carrying the original failure.
+ * </p>
  *
  * @author anil saldhana
  * @since Aug 22, 2012
  */
 public class FileSessionStore extends AbstractSessionStore {
+
+    public static final int DEFAULT_SYNC_BATCH_SIZE = 256;
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 4;
+
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+    private static final long WRITE_RETRY_DELAY = 100;
+    private static final ByteBuffer SHUTDOWN = ByteBuffer.allocate(0);
+
     private String sessionFileName = "PBOXSESSION.DAT";
+    private final int syncBatchSize;
+    private final int compactionThreshold;
+    private final SessionLog log;
+
+    /*
+     * Guarantees that records are queued in the same order the changes are applied to the memory.
+     */
+    private final Object appendLock = new Object();
+
+    private final BlockingQueue<ByteBuffer> pendingRecords = new LinkedBlockingQueue<ByteBuffer>(QUEUE_CAPACITY);
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    /**
+     * The error that prevented a batch from being written. Once set, no more changes are accepted.
+     */
+    private volatile IOException writeFailure;
+
+    private Thread writerThread;
+    private ExecutorService compactionExecutor;
 
     public FileSessionStore() {
-        loadFromFile();
+        this("PBOXSESSION.DAT");
     }
 
     public FileSessionStore(String sessionFileName) {
+        this(sessionFileName, DEFAULT_SYNC_BATCH_SIZE, DEFAULT_MAX_SEGMENT_SIZE, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param sessionFileName the checkpoint file name. Log segments are created in the same directory.
+     * @param syncBatchSize the maximum number of records written between two syncs to the disk.
+     * @param maxSegmentSize the size, in bytes, after which a new log segment is started.
+     * @param compactionThreshold the number of closed log segments that triggers a compaction.
+     */
+    public FileSessionStore(String sessionFileName, int syncBatchSize, long maxSegmentSize, int compactionThreshold) {
         if (sessionFileName == null) {
             throw PicketBoxMessages.MESSAGES.invalidNullArgument("sessionFileName");
         }
+
+        if (syncBatchSize <= 0) {
+            throw new IllegalArgumentException("syncBatchSize must be greater than zero.");
+        }
+
+        if (maxSegmentSize <= 0) {
+            throw new IllegalArgumentException("maxSegmentSize must be greater than zero.");
+        }
+
+        if (compactionThreshold <= 0) {
+            throw new IllegalArgumentException("compactionThreshold must be greater than zero.");
+        }
+
         this.sessionFileName = sessionFileName;
+        this.syncBatchSize = syncBatchSize;
+        this.compactionThreshold = compactionThreshold;
+        this.log = new SessionLog(sessionFileName, maxSegmentSize);
+
         loadFromFile();
     }
 
+    @Override
+    public void store(PicketBoxSession session) {
+        checkWritable();
+
+        ByteBuffer record = encode(SessionLog.STORE, session);
+
+        synchronized (this.appendLock) {
+            super.store(session);
+            append(record);
+        }
+    }
+
+    @Override
+    public void update(PicketBoxSession session) {
+        checkWritable();
+
+        ByteBuffer record = encode(SessionLog.STORE, session);
+
+        synchronized (this.appendLock) {
+            super.update(session);
+            append(record);
+        }
+    }
+
+    @Override
+    public void remove(SessionId<? extends Serializable> id) {
+        checkWritable();
+
+        ByteBuffer record = encode(SessionLog.REMOVE, id);
+
+        synchronized (this.appendLock) {
+            super.remove(id);
+            append(record);
+        }
+    }
+
+    @Override
+    protected void onEviction(PicketBoxSession session) {
+        append(encode(SessionLog.REMOVE, session.getId()));
+        super.onEviction(session);
+    }
+
+    @Override
+    protected void doStart() {
+        super.doStart();
+
+        try {
+            this.log.open();
+        } catch (IOException e) {
+            throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.sessionFileName, e);
+        }
+
+        this.compactionExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("picketbox-session-compaction"));
+        this.writerThread = new DaemonThreadFactory("picketbox-session-log").newThread(new Writer());
+        this.writerThread.start();
+    }
+
+    /**
+     * <p>
+     * Writes the pending records and closes the log. Sessions are not copied to the checkpoint, they are restored from the log
+     * segments the next time the store is created.
+     * </p>
+     */
     @Override
     protected void doStop() {
+        try {
+            this.pendingRecords.put(SHUTDOWN);
+            this.writerThread.join();
+
+            this.compactionExecutor.shutdown();
+            this.compactionExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            this.log.close();
+        } catch (IOException e) {
+            LOGGER.errorWritingSessionLog(this.sessionFileName, e);
+        }
+
         super.doStop();
-        storeToFile();
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * <p>
+     * Restores the sessions by replaying the log.
+     * </p>
+     */
     protected void loadFromFile() {
-        ObjectInputStream ois = null;
         try {
-            File file = new File(this.sessionFileName);
-            if (file.exists() == false) {
-                return; // If there is no session file, return as the store will create one
-            }
-            ois = new ObjectInputStream(new FileInputStream(file));
-            this.sessions.clear();
-            this.sessions.putAll((Map<? extends Serializable, ? extends PicketBoxSession>) ois.readObject());
+            this.log.replay(new SessionLog.Listener() {
+                @Override
+                public void onStore(PicketBoxSession session) {
+                    FileSessionStore.super.store(session);
+                }
+
+                @Override
+                public void onRemove(SessionId<? extends Serializable> id) {
+                    FileSessionStore.super.remove(id);
+                }
+            });
         } catch (IOException e) {
             throw PicketBoxMessages.MESSAGES.unableToLoadFromFile(this.sessionFileName, e);
-        } catch (ClassNotFoundException e) {
-            throw PicketBoxMessages.MESSAGES.unableToLoadFromFile(this.sessionFileName, e);
-        } finally {
-            StreamUtil.safeClose(ois);
         }
     }
 
+    /**
+     * <p>
+     * Compacts the closed log segments into the checkpoint file.
+     * </p>
+     */
     protected void storeToFile() {
-        ObjectOutputStream oos = null;
         try {
-            oos = new ObjectOutputStream(new FileOutputStream(this.sessionFileName));
-            oos.writeObject(this.sessions);
+            synchronized (this.log) {
+                long lastClosedSegment = this.log.getLastClosedSegment();
+
+                if (lastClosedSegment > 0) {
+                    this.log.checkpoint(getSessions(), lastClosedSegment);
+                }
+            }
         } catch (IOException e) {
             throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.sessionFileName, e);
-        } finally {
-            StreamUtil.safeClose(oos);
         }
     }
-}
\ No newline at end of file
+
+    private ByteBuffer encode(byte type, Serializable payload) {
+        try {
+            return SessionLog.encode(type, payload);
+        } catch (IOException e) {
+            throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.sessionFileName, e);
+        }
+    }
+
+    private void append(ByteBuffer record) {
+        try {
+            this.pendingRecords.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.sessionFileName, e);
+        }
+
+        // the writer discards the records queued after it failed
+        checkWritable();
+    }
+
+    /**
+     * <p>
+     * Checks if the log can still be written.
+     * </p>
+     *
+     * @throws IllegalStateException if a batch of records could not be written.
+     */
+    private void checkWritable() throws IllegalStateException {
+        IOException failure = this.writeFailure;
+
+        if (failure != null) {
+            throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.sessionFileName, failure);
+        }
+    }
+
+    private void scheduleCompaction() {
+        if (this.compacting.compareAndSet(false, true)) {
+            this.compactionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        storeToFile();
+                    } catch (IllegalStateException e) {
+                        LOGGER.errorWritingSessionLog(FileSessionStore.this.sessionFileName, e);
+                    } finally {
+                        FileSessionStore.this.compacting.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * <p>
+     * Writes the queued records in batches, syncing the log once per batch.
+     * </p>
+     */
+    private class Writer implements Runnable {
+
+        @Override
+        public void run() {
+            List<ByteBuffer> batch = new ArrayList<ByteBuffer>(syncBatchSize);
+            boolean shutdown = false;
+
+            while (!shutdown) {
+                try {
+                    batch.add(pendingRecords.take());
+                } catch (InterruptedException e) {
+                    shutdown = true;
+                }
+
+                pendingRecords.drainTo(batch, syncBatchSize - 1);
+
+                for (Iterator<ByteBuffer> iterator = batch.iterator(); iterator.hasNext();) {
+                    if (iterator.next() == SHUTDOWN) {
+                        iterator.remove();
+                        shutdown = true;
+                    }
+                }
+
+                if (!batch.isEmpty()) {
+                    if (writeFailure == null) {
+                        write(batch);
+                    }
+
+                    batch.clear();
+                }
+
+                if (!shutdown && writeFailure == null && log.getClosedSegmentCount() >= compactionThreshold) {
+                    scheduleCompaction();
+                }
+            }
+        }
+
+        /**
+         * <p>
+         * Writes and syncs the batch, retrying a few times. If the batch can not be written the store stops accepting changes.
+         * </p>
+         *
+         * @param batch
+         */
+        private void write(List<ByteBuffer> batch) {
+            boolean appended = false;
+            IOException failure = null;
+
+            for (int attempt = 1; attempt <= MAX_WRITE_ATTEMPTS; attempt++) {
+                try {
+                    // records already appended are not appended again when only the sync failed
+                    if (!appended) {
+                        log.append(batch);
+                        appended = true;
+                    }
+
+                    log.sync();
+
+                    return;
+                } catch (IOException e) {
+                    failure = e;
+                    LOGGER.errorWritingSessionLog(sessionFileName, e);
+                }
+
+                if (attempt < MAX_WRITE_ATTEMPTS) {
+                    try {
+                        Thread.sleep(WRITE_RETRY_DELAY * attempt);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+
+            writeFailure = failure;
+        }
+    }
+}
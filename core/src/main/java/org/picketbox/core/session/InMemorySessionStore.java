@@ -28,4 +28,37 @@ package org.picketbox.core.session;
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  */
 public class InMemorySessionStore extends AbstractSessionStore {
+
+    /**
+     * <p>
+     * Creates an unbounded store.
+     * </p>
+     */
+    public InMemorySessionStore() {
+        super();
+    }
+
+    /**
+     * <p>
+     * Creates a store that holds at most the given number of sessions. The least recently used sessions are evicted when the
+     * store is full.
+     * </p>
+     *
+     * @param maxSessions
+     */
+    public InMemorySessionStore(int maxSessions) {
+        super(maxSessions, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * <p>
+     * Creates a store that holds at most the given number of sessions, split among the given number of shards.
+     * </p>
+     *
+     * @param maxSessions
+     * @param concurrencyLevel
+     */
+    public InMemorySessionStore(int maxSessions, int concurrencyLevel) {
+        super(maxSessions, concurrencyLevel);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,752 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.picketbox.core.AbstractPicketBoxLifeCycle;
+import org.picketbox.core.PicketBoxMessages;
+import org.picketbox.core.util.StreamUtil;
+
+/**
+ * <p>
+ * A {@link SessionStore} that keeps the serialized sessions outside the Java heap, in direct buffers or in a memory-mapped
+ * file. Useful for very large populations of mostly idle sessions, which would otherwise put a lot of pressure on the garbage
+ * collector.
+ * </p>
+ * <p>
+ * The memory is split into slabs of fixed size blocks. A serialized session takes as many blocks as needed, which do not have
+ * to be contiguous, so the memory never gets fragmented. Only a small index entry is kept on the heap for each session, keyed
+ * by a compact form of the session id. The most recently used sessions are also kept materialized in a small on-heap cache.
+ * Sessions evicted from the cache are serialized again, so changes made to them, including their last access time, are not
+ * lost. The cache can not be disabled, as accessing a session only updates the instance returned by the store.
+ * </p>
+ * <p>
+ * The sessions are not kept across restarts, even when a memory-mapped file is used.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class OffHeapSessionStore extends AbstractPicketBoxLifeCycle implements SessionStore {
+
+    public static final int DEFAULT_BLOCK_SIZE = 512;
+    public static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+    public static final long DEFAULT_MAX_MEMORY = 256L * 1024 * 1024;
+    public static final int DEFAULT_HOT_CACHE_SIZE = 1000;
+
+    private static final int LOCK_COUNT = 64;
+
+    private final int blockSize;
+    private final int blocksPerSlab;
+    private final int maxSlabs;
+    private final File mappedFile;
+
+    private final ConcurrentMap<Object, Entry> index = new ConcurrentHashMap<Object, Entry>();
+    private final Object[] locks = new Object[LOCK_COUNT];
+
+    /*
+     * Block allocation. Guarded by the allocator lock.
+     */
+    private final Object allocatorLock = new Object();
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+    private int[] freeBlocks = new int[0];
+    private int freeBlockCount;
+    private FileChannel mappedChannel;
+
+    /*
+     * Materialized sessions. Guarded by its own monitor.
+     */
+    private final HotSessions hotSessions;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public OffHeapSessionStore() {
+        this(DEFAULT_MAX_MEMORY, DEFAULT_HOT_CACHE_SIZE);
+    }
+
+    /**
+     * @param maxMemory the maximum number of bytes used to store sessions outside the heap.
+     * @param hotCacheSize the maximum number of sessions kept materialized on the heap.
+     */
+    public OffHeapSessionStore(long maxMemory, int hotCacheSize) {
+        this(null, maxMemory, hotCacheSize, DEFAULT_BLOCK_SIZE, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param mappedFileName the file mapped into memory to store the sessions. It is recreated when the store starts and
+     *        deleted when the store stops.
+     * @param maxMemory the maximum size of the mapped file.
+     * @param hotCacheSize the maximum number of sessions kept materialized on the heap.
+     */
+    public OffHeapSessionStore(String mappedFileName, long maxMemory, int hotCacheSize) {
+        this(mappedFileName, maxMemory, hotCacheSize, DEFAULT_BLOCK_SIZE, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param mappedFileName the file mapped into memory, or null to use direct buffers.
+     * @param maxMemory the maximum number of bytes used to store sessions.
+     * @param hotCacheSize the maximum number of sessions kept materialized on the heap. Must be greater than zero.
+     * @param blockSize the size of each block. Sessions bigger than the block size use many blocks.
+     * @param slabSize the size of each slab. Slabs are allocated when needed.
+     */
+    public OffHeapSessionStore(String mappedFileName, long maxMemory, int hotCacheSize, int blockSize, int slabSize) {
+        if (blockSize <= 0 || slabSize < blockSize) {
+            throw new IllegalArgumentException("The slab size must be greater than or equal to the block size.");
+        }
+
+        if (maxMemory < slabSize) {
+            throw new IllegalArgumentException("maxMemory must be greater than or equal to the slab size.");
+        }
+
+        // accesses only update the materialized instance, so a session that is not cached would look idle
+        if (hotCacheSize <= 0) {
+            throw new IllegalArgumentException("hotCacheSize must be greater than zero.");
+        }
+
+        this.blockSize = blockSize;
+        this.blocksPerSlab = slabSize / blockSize;
+        this.maxSlabs = (int) Math.min(Integer.MAX_VALUE / this.blocksPerSlab, maxMemory / slabSize);
+        this.hotSessions = new HotSessions(hotCacheSize);
+
+        if (mappedFileName != null) {
+            this.mappedFile = new File(mappedFileName);
+        } else {
+            this.mappedFile = null;
+        }
+
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            this.locks[i] = new Object();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#load(org.picketbox.core.session.SessionId)
+     */
+    @Override
+    public PicketBoxSession load(SessionId<? extends Serializable> key) {
+        Object id = toKey(key.getId());
+        PicketBoxSession session = this.hotSessions.get(id);
+
+        if (session == null) {
+            session = materializeAndCache(id);
+
+            if (session == null) {
+                this.missCount.incrementAndGet();
+                return null;
+            }
+        }
+
+        this.hitCount.incrementAndGet();
+
+        return session;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#store(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public void store(PicketBoxSession session) {
+        Object id = toKey(session.getId().getId());
+        byte[] bytes = serialize(session);
+        Object evictedId;
+
+        synchronized (getLock(id)) {
+            write(id, bytes, false);
+            evictedId = this.hotSessions.put(id, session);
+        }
+
+        writeBack(evictedId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#remove(org.picketbox.core.session.SessionId)
+     */
+    @Override
+    public void remove(SessionId<? extends Serializable> id) {
+        Object key = toKey(id.getId());
+
+        synchronized (getLock(key)) {
+            Entry entry = this.index.remove(key);
+
+            if (entry != null) {
+                free(entry);
+            }
+
+            this.hotSessions.remove(key);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#update(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public void update(PicketBoxSession session) {
+        store(session);
+    }
+
+    /**
+     * <p>
+     * Returns a snapshot of all the sessions. Every session not in the on-heap cache is deserialized, so this method should be
+     * used sparingly with large populations.
+     * </p>
+     *
+     * @see org.picketbox.core.session.SessionStore#getSessions()
+     */
+    @Override
+    public Collection<PicketBoxSession> getSessions() {
+        List<PicketBoxSession> sessions = new ArrayList<PicketBoxSession>(this.index.size());
+
+        for (Object id : this.index.keySet()) {
+            PicketBoxSession session = this.hotSessions.get(id);
+
+            if (session == null) {
+                session = materialize(id);
+            }
+
+            if (session != null) {
+                sessions.add(session);
+            }
+        }
+
+        return sessions;
+    }
+
+    /**
+     * <p>
+     * Returns the number of stored sessions.
+     * </p>
+     *
+     * @return
+     */
+    public int getSize() {
+        return this.index.size();
+    }
+
+    /**
+     * <p>
+     * Returns the number of bytes currently used by serialized sessions, including the unused space of their last block.
+     * </p>
+     *
+     * @return
+     */
+    public long getUsedMemory() {
+        synchronized (this.allocatorLock) {
+            return ((long) this.slabs.length * this.blocksPerSlab - this.freeBlockCount) * this.blockSize;
+        }
+    }
+
+    /**
+     * <p>
+     * Returns how many times a session was found when loading it.
+     * </p>
+     *
+     * @return
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * <p>
+     * Returns how many times a session was not found when loading it.
+     * </p>
+     *
+     * @return
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    @Override
+    protected void doStart() {
+        if (this.mappedFile != null) {
+            try {
+                this.mappedFile.delete();
+                this.mappedChannel = new RandomAccessFile(this.mappedFile, "rw").getChannel();
+            } catch (IOException e) {
+                throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.mappedFile.getPath(), e);
+            }
+        }
+    }
+
+    @Override
+    protected void doStop() {
+        this.hotSessions.clear();
+        this.index.clear();
+
+        synchronized (this.allocatorLock) {
+            this.slabs = new ByteBuffer[0];
+            this.freeBlocks = new int[0];
+            this.freeBlockCount = 0;
+
+            if (this.mappedChannel != null) {
+                try {
+                    this.mappedChannel.close();
+                } catch (IOException e) {
+                    // nothing else to do, the file is deleted anyway
+                }
+
+                this.mappedChannel = null;
+                this.mappedFile.delete();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Serializes a session evicted from the on-heap cache, so changes made to it while it was materialized are not lost.
+     * Nothing is written if the session was removed, or stored again, after it was evicted.
+     * </p>
+     *
+     * @param id the id of the evicted session, or null if no session was evicted.
+     */
+    private void writeBack(Object id) {
+        if (id == null) {
+            return;
+        }
+
+        PicketBoxSession session = this.hotSessions.get(id);
+
+        if (session == null) {
+            return;
+        }
+
+        byte[] bytes = session.isValid() ? serialize(session) : null;
+
+        synchronized (getLock(id)) {
+            if (this.hotSessions.removeEvicted(id, session) && bytes != null) {
+                write(id, bytes, true);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Writes the serialized session to newly allocated blocks and releases the blocks of the previous version.
+     * </p>
+     *
+     * @param id
+     * @param bytes
+     * @param onlyIfPresent if true, nothing is written when the session was removed.
+     */
+    private void write(Object id, byte[] bytes, boolean onlyIfPresent) {
+        synchronized (getLock(id)) {
+            if (onlyIfPresent && !this.index.containsKey(id)) {
+                return;
+            }
+
+            int[] blocks = allocate((bytes.length + this.blockSize - 1) / this.blockSize);
+            ByteBuffer[] currentSlabs = this.slabs;
+
+            for (int i = 0; i < blocks.length; i++) {
+                int offset = i * this.blockSize;
+                ByteBuffer block = getBlock(currentSlabs, blocks[i]);
+
+                block.put(bytes, offset, Math.min(this.blockSize, bytes.length - offset));
+            }
+
+            Entry previous = this.index.put(id, new Entry(blocks, bytes.length));
+
+            if (previous != null) {
+                free(previous);
+            }
+        }
+    }
+
+    private PicketBoxSession materialize(Object id) {
+        while (true) {
+            Entry entry = this.index.get(id);
+
+            if (entry == null) {
+                return null;
+            }
+
+            byte[] bytes = read(id, entry);
+
+            if (bytes != null) {
+                return deserialize(bytes);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Deserializes the session and caches it on the heap. The session is only cached if it was not changed, removed or cached
+     * by another thread in the meantime, otherwise the lookup is done again.
+     * </p>
+     *
+     * @param id
+     * @return the cached session, or null if there is no session with the given id.
+     */
+    private PicketBoxSession materializeAndCache(Object id) {
+        while (true) {
+            Entry entry = this.index.get(id);
+
+            if (entry == null) {
+                return null;
+            }
+
+            byte[] bytes = read(id, entry);
+
+            if (bytes == null) {
+                continue;
+            }
+
+            PicketBoxSession session = deserialize(bytes);
+            Object evictedId;
+
+            synchronized (getLock(id)) {
+                if (this.index.get(id) != entry) {
+                    continue;
+                }
+
+                PicketBoxSession cached = this.hotSessions.get(id);
+
+                if (cached != null) {
+                    return cached;
+                }
+
+                evictedId = this.hotSessions.put(id, session);
+            }
+
+            writeBack(evictedId);
+
+            return session;
+        }
+    }
+
+    /**
+     * <p>
+     * Copies the serialized session out of its blocks.
+     * </p>
+     *
+     * @param id
+     * @param entry the index entry the blocks are read from.
+     * @return the serialized session, or null if the entry was replaced or removed, so its blocks may have been reused.
+     */
+    private byte[] read(Object id, Entry entry) {
+        synchronized (getLock(id)) {
+            if (this.index.get(id) != entry) {
+                return null;
+            }
+
+            byte[] bytes = new byte[entry.length];
+
+            ByteBuffer[] currentSlabs = this.slabs;
+
+            for (int i = 0; i < entry.blocks.length; i++) {
+                int offset = i * this.blockSize;
+                ByteBuffer block = getBlock(currentSlabs, entry.blocks[i]);
+
+                block.get(bytes, offset, Math.min(this.blockSize, bytes.length - offset));
+            }
+
+            return bytes;
+        }
+    }
+
+    private int[] allocate(int count) {
+        int[] blocks = new int[Math.max(count, 1)];
+
+        synchronized (this.allocatorLock) {
+            checkIfStarted();
+
+            while (this.freeBlockCount < blocks.length) {
+                addSlab();
+            }
+
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = this.freeBlocks[--this.freeBlockCount];
+            }
+        }
+
+        return blocks;
+    }
+
+    private void free(Entry entry) {
+        synchronized (this.allocatorLock) {
+            if (this.freeBlocks.length == 0) {
+                // the store was stopped
+                return;
+            }
+
+            for (int block : entry.blocks) {
+                this.freeBlocks[this.freeBlockCount++] = block;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Adds a new slab and makes its blocks available. Must be called holding the allocator lock.
+     * </p>
+     */
+    private void addSlab() {
+        int slabCount = this.slabs.length;
+
+        if (slabCount >= this.maxSlabs) {
+            throw new IllegalStateException("The off-heap session store is full.");
+        }
+
+        int slabSize = this.blocksPerSlab * this.blockSize;
+        ByteBuffer slab;
+
+        if (this.mappedChannel != null) {
+            try {
+                slab = this.mappedChannel.map(FileChannel.MapMode.READ_WRITE, (long) slabCount * slabSize, slabSize);
+            } catch (IOException e) {
+                throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.mappedFile.getPath(), e);
+            }
+        } else {
+            slab = ByteBuffer.allocateDirect(slabSize);
+        }
+
+        ByteBuffer[] newSlabs = new ByteBuffer[slabCount + 1];
+
+        System.arraycopy(this.slabs, 0, newSlabs, 0, slabCount);
+        newSlabs[slabCount] = slab;
+
+        int[] newFreeBlocks = new int[newSlabs.length * this.blocksPerSlab];
+
+        System.arraycopy(this.freeBlocks, 0, newFreeBlocks, 0, this.freeBlockCount);
+
+        // pushed in reverse order so blocks are handed out from the start of the slab
+        for (int i = this.blocksPerSlab - 1; i >= 0; i--) {
+            newFreeBlocks[this.freeBlockCount++] = slabCount * this.blocksPerSlab + i;
+        }
+
+        this.freeBlocks = newFreeBlocks;
+        this.slabs = newSlabs;
+    }
+
+    /**
+     * <p>
+     * Returns a view of the given block. Views have their own position, so many threads can use different blocks of the same
+     * slab.
+     * </p>
+     */
+    private ByteBuffer getBlock(ByteBuffer[] currentSlabs, int block) {
+        ByteBuffer view = currentSlabs[block / this.blocksPerSlab].duplicate();
+        int position = (block % this.blocksPerSlab) * this.blockSize;
+
+        view.limit(position + this.blockSize);
+        view.position(position);
+
+        return view;
+    }
+
+    private Object getLock(Object id) {
+        int hash = id.hashCode();
+
+        return this.locks[(hash ^ (hash >>> 16)) & (LOCK_COUNT - 1)];
+    }
+
+    private byte[] serialize(PicketBoxSession session) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(this.blockSize);
+        ObjectOutputStream oos = null;
+
+        try {
+            oos = new ObjectOutputStream(bos);
+            oos.writeObject(session);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not serialize session " + session.getId(), e);
+        } finally {
+            StreamUtil.safeClose(oos);
+        }
+
+        return bos.toByteArray();
+    }
+
+    private PicketBoxSession deserialize(byte[] bytes) {
+        ObjectInputStream ois = null;
+
+        try {
+            ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            return (PicketBoxSession) ois.readObject();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not deserialize session.", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Could not deserialize session.", e);
+        } finally {
+            StreamUtil.safeClose(ois);
+        }
+    }
+
+    /**
+     * <p>
+     * Returns a compact key for the given session id. Ids in the canonical {@link UUID} form are kept as two longs instead of a
+     * 36 characters string.
+     * </p>
+     *
+     * @param id
+     * @return
+     */
+    private static Object toKey(Serializable id) {
+        if (id instanceof String && ((String) id).length() == 36) {
+            try {
+                UUID uuid = UUID.fromString((String) id);
+
+                // only the canonical form, so different strings never share the same key
+                if (uuid.toString().equals(id)) {
+                    return uuid;
+                }
+            } catch (IllegalArgumentException e) {
+                // not an uuid
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * <p>
+     * Blocks holding a serialized session.
+     * </p>
+     */
+    private static final class Entry {
+
+        private final int[] blocks;
+        private final int length;
+
+        Entry(int[] blocks, int length) {
+            this.blocks = blocks;
+            this.length = length;
+        }
+    }
+
+    /**
+     * <p>
+     * Least recently used sessions kept materialized on the heap. Sessions are cached and removed while holding the lock of
+     * their id, together with the change to the index. Evicted sessions are still returned by {@link #get(Object)} until they
+     * are written back, which is done by the caller outside the lock.
+     * </p>
+     */
+    private final class HotSessions {
+
+        private final int capacity;
+        private final LinkedHashMap<Object, PicketBoxSession> sessions;
+        private final Map<Object, PicketBoxSession> evictedSessions = new HashMap<Object, PicketBoxSession>();
+
+        private Object evictedId;
+
+        @SuppressWarnings("serial")
+        HotSessions(int capacity) {
+            this.capacity = capacity;
+            this.sessions = new LinkedHashMap<Object, PicketBoxSession>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, PicketBoxSession> eldest) {
+                    if (size() > HotSessions.this.capacity) {
+                        HotSessions.this.evictedId = eldest.getKey();
+                        HotSessions.this.evictedSessions.put(eldest.getKey(), eldest.getValue());
+                        return true;
+                    }
+
+                    return false;
+                }
+            };
+        }
+
+        synchronized PicketBoxSession get(Object id) {
+            PicketBoxSession session = this.sessions.get(id);
+
+            if (session == null) {
+                session = this.evictedSessions.get(id);
+            }
+
+            return session;
+        }
+
+        /**
+         * <p>
+         * Caches the given session, replacing any other instance with the same id.
+         * </p>
+         *
+         * @return the id of the session evicted to make room, which must be written back, or null.
+         */
+        synchronized Object put(Object id, PicketBoxSession session) {
+            this.evictedSessions.remove(id);
+            this.sessions.put(id, session);
+
+            Object evicted = this.evictedId;
+
+            this.evictedId = null;
+
+            return evicted;
+        }
+
+        /**
+         * <p>
+         * Forgets an evicted session before it is written back.
+         * </p>
+         *
+         * @return false if the session was removed or replaced after it was evicted, so it must not be written back.
+         */
+        synchronized boolean removeEvicted(Object id, PicketBoxSession session) {
+            if (this.evictedSessions.get(id) != session) {
+                return false;
+            }
+
+            this.evictedSessions.remove(id);
+
+            return true;
+        }
+
+        synchronized void remove(Object id) {
+            this.sessions.remove(id);
+            this.evictedSessions.remove(id);
+        }
+
+        synchronized void clear() {
+            this.sessions.clear();
+            this.evictedSessions.clear();
+        }
+    }
+}
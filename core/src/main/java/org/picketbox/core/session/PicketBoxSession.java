@@ -21,12 +21,15 @@
  */
 package org.picketbox.core.session;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import org.picketbox.core.PicketBoxMessages;
 import org.picketbox.core.UserContext;
@@ -48,6 +51,9 @@ public class PicketBoxSession implements Serializable {
 
     private static final long serialVersionUID = 2149908831443524877L;
 
+    private static final AtomicLongFieldUpdater<PicketBoxSession> lastTouchedEventTimeUpdater = AtomicLongFieldUpdater
+            .newUpdater(PicketBoxSession.class, "lastTouchedEventTime");
+
     protected ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<String, Object>();
 
     protected ConcurrentMap<String, Object> applicationAttributes = new ConcurrentHashMap<String, Object>();
@@ -56,8 +62,11 @@ public class PicketBoxSession implements Serializable {
     protected boolean invalid = false;
     protected UserContext userContext;
     private Date creationDate = new Date();
+    private volatile long lastAccessedTime = this.creationDate.getTime();
+    private volatile long lastTouchedEventTime;
 
     private transient PicketBoxEventManager eventManager;
+    private transient long touchInterval;
 
     public PicketBoxSession() {
         this(new DefaultSessionId());
@@ -104,6 +113,8 @@ public class PicketBoxSession implements Serializable {
     public void setAttribute(final String key, final Object val) throws PicketBoxSessionException {
         checkIfIsInvalid();
 
+        this.lastAccessedTime = System.currentTimeMillis();
+
         this.attributes.put(key, val);
 
         this.eventManager.raiseEvent(new SessionSetAttributeEvent(this, key, val));
@@ -130,6 +141,8 @@ public class PicketBoxSession implements Serializable {
     public Object getAttribute(final String key) throws PicketBoxSessionException {
         checkIfIsInvalid();
 
+        this.lastAccessedTime = System.currentTimeMillis();
+
         this.eventManager.raiseEvent(new SessionGetAttributeEvent(this, key));
 
         return this.attributes.get(key);
@@ -206,7 +219,7 @@ public class PicketBoxSession implements Serializable {
      */
     public void invalidate(boolean raiseEvent) throws PicketBoxSessionException {
         checkIfIsInvalid();
-        if (raiseEvent) {
+        if (raiseEvent && this.eventManager != null) {
             this.eventManager.raiseEvent(new SessionInvalidatedEvent(this));
         }
         this.attributes.clear();
@@ -217,10 +230,36 @@ public class PicketBoxSession implements Serializable {
     }
 
     /**
-     * Method to indicate that there was a operation that touches the session and thereby extending the session expiry
+     * Method to indicate that there was a operation that touches the session and thereby extending the session expiry.
+     *
+     * <p>
+     * The last access time is always updated, but a {@link SessionTouchedEvent} is raised at most once per touch interval and
+     * never while a {@link SessionTouchBatch} is open for the current thread.
+     * </p>
      */
     public void touch() {
-        if (this.eventManager != null) {
+        long now = System.currentTimeMillis();
+
+        // avoids writing to the shared field when many accessors are called within the same millisecond
+        if (this.lastAccessedTime != now) {
+            this.lastAccessedTime = now;
+        }
+
+        if (this.eventManager == null || SessionTouchBatch.record(this)) {
+            return;
+        }
+
+        if (this.touchInterval > 0) {
+            long lastTouchedEventTime = this.lastTouchedEventTime;
+
+            // only the thread that moves the timestamp forward raises the event
+            if (now - lastTouchedEventTime < this.touchInterval
+                    || !lastTouchedEventTimeUpdater.compareAndSet(this, lastTouchedEventTime, now)) {
+                return;
+            }
+        }
+
+        if (this.eventManager.hasObservers(SessionTouchedEvent.class)) {
             this.eventManager.raiseEvent(new SessionTouchedEvent(this));
         }
     }
@@ -232,7 +271,9 @@ public class PicketBoxSession implements Serializable {
      */
     public void expire() throws PicketBoxSessionException {
         invalidate();
-        this.eventManager.raiseEvent(new SessionExpiredEvent(this));
+        if (this.eventManager != null) {
+            this.eventManager.raiseEvent(new SessionExpiredEvent(this));
+        }
     }
 
     /**
@@ -249,6 +290,31 @@ public class PicketBoxSession implements Serializable {
         return this.creationDate;
     }
 
+    /**
+     * <p>
+     * Returns the last time this session was accessed, in milliseconds. The session is considered accessed when it is touched
+     * or when one of its attributes is read or written.
+     * </p>
+     *
+     * @return
+     */
+    public long getLastAccessedTime() {
+        return this.lastAccessedTime;
+    }
+
+    /**
+     * <p>
+     * Checks if the session was not accessed for longer than the given interval.
+     * </p>
+     *
+     * @param maxInactiveIntervalInMillis
+     * @return true if the interval is positive and was exceeded.
+     */
+    public boolean isExpired(long maxInactiveIntervalInMillis) {
+        return maxInactiveIntervalInMillis > 0
+                && System.currentTimeMillis() - this.lastAccessedTime > maxInactiveIntervalInMillis;
+    }
+
     /**
      * <p>
      * Checks if the session is invalid.
@@ -265,6 +331,36 @@ public class PicketBoxSession implements Serializable {
         this.eventManager = eventManager;
     }
 
+    /**
+     * <p>
+     * Defines the minimum interval, in milliseconds, between two {@link SessionTouchedEvent} for this session. Zero raises an
+     * event for every touch.
+     * </p>
+     *
+     * @param touchInterval
+     */
+    protected void setTouchInterval(long touchInterval) {
+        this.touchInterval = touchInterval;
+    }
+
+    /**
+     * <p>
+     * Sessions serialized before the last access time was tracked have no value for it. They are considered accessed when
+     * they are read, otherwise they would expire on the first check.
+     * </p>
+     *
+     * @param in
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        if (this.lastAccessedTime == 0) {
+            this.lastAccessedTime = System.currentTimeMillis();
+        }
+    }
+
     @Override
     public String toString() {
         return "SessionId: " + this.id + " / Creation Date: " + getCreationDate();
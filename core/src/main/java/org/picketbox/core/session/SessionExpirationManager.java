@@ -21,104 +21,105 @@
  */
 package org.picketbox.core.session;
 
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.WeakHashMap;
-
-import org.jboss.logging.Logger;
+import org.picketbox.core.AbstractPicketBoxLifeCycle;
 import org.picketbox.core.PicketBoxMessages;
 import org.picketbox.core.config.PicketBoxConfiguration;
-import org.picketbox.core.event.EventObserver;
-import org.picketbox.core.exceptions.PicketBoxSessionException;
-import org.picketbox.core.session.event.SessionGetAttributeEvent;
-import org.picketbox.core.session.event.SessionSetAttributeEvent;
 
 /**
- * A manager capable of creating PicketBox sessions
+ * A manager capable of expiring PicketBox sessions. The expiration itself is delegated to the configured
+ * {@link SessionExpirationScheduler}.
  *
  * @author anil saldhana
  * @since Jul 16, 2012
  */
-public class SessionExpirationManager {
-
-    private Logger log = Logger.getLogger(SessionExpirationManager.class);
-
-    private static Timer timer = new Timer();
+public class SessionExpirationManager extends AbstractPicketBoxLifeCycle {
 
     private final long expiryValue;
 
-    private WeakHashMap<String, SessionTimerTask> timerMap = new WeakHashMap<String, SessionTimerTask>();
+    private final SessionExpirationScheduler scheduler;
 
     public SessionExpirationManager(PicketBoxConfiguration configuration) {
         this.expiryValue = configuration.getSessionManager().getSessionTimeout() * 60 * 1000;
+
+        SessionExpirationScheduler configuredScheduler = configuration.getSessionManager().getExpirationScheduler();
+
+        if (configuredScheduler == null) {
+            configuredScheduler = new TimingWheelSessionExpirationScheduler();
+        }
+
+        this.scheduler = configuredScheduler;
     }
 
     /**
-     * Set a timer for the configured delay. If the delay is <= 0 no task will be scheduled.
+     * Set a timer for the configured delay. If the delay is <= 0 no task will be scheduled. Accessing the session afterwards
+     * does not require a new timer, the scheduler checks the last access time of the session before expiring it.
      *
      * @param session
      */
     void setTimer(final PicketBoxSession session) {
-        if (this.expiryValue <= 0) {
-            return;
-        }
-
         handleSessionExpiration(session);
     }
 
-    @EventObserver
-    public void handleEvents(Object event) {
-        PicketBoxSession session = null;
-        if (event instanceof SessionSetAttributeEvent) {
-            SessionSetAttributeEvent ssae = (SessionSetAttributeEvent) event;
-            session = ssae.getSession();
-        } else if (event instanceof SessionGetAttributeEvent) {
-            SessionGetAttributeEvent sgae = (SessionGetAttributeEvent) event;
-            session = sgae.getSession();
+    /**
+     * Cancel the timer previously set for the given session, if any.
+     *
+     * @param session
+     */
+    void cancelTimer(final PicketBoxSession session) {
+        if (isExpirationEnabled()) {
+            this.scheduler.cancel(session);
         }
+    }
 
-        if (session != null) {
-            handleSessionExpiration(session);
+    /**
+     * Checks if the given session was not accessed within the configured timeout.
+     *
+     * @param session
+     * @return
+     */
+    boolean isExpired(final PicketBoxSession session) {
+        return session.isExpired(this.expiryValue);
+    }
+
+    /**
+     * Lets the scheduler retrieve the current instance of a session from the given manager before expiring it.
+     *
+     * @param sessionManager
+     */
+    void setSessionManager(final SessionManager sessionManager) {
+        if (this.scheduler instanceof TimingWheelSessionExpirationScheduler) {
+            ((TimingWheelSessionExpirationScheduler) this.scheduler).setSessionManager(sessionManager);
         }
     }
 
-    public class SessionTimerTask extends TimerTask {
-        private PicketBoxSession session = null;
+    public SessionExpirationScheduler getScheduler() {
+        return this.scheduler;
+    }
 
-        public SessionTimerTask(PicketBoxSession session) {
-            this.session = session;
+    @Override
+    protected void doStart() {
+        if (isExpirationEnabled()) {
+            this.scheduler.start();
         }
+    }
 
-        public SessionId<?> getID() {
-            return session.getId();
+    @Override
+    protected void doStop() {
+        if (this.scheduler.started()) {
+            this.scheduler.stop();
         }
+    }
 
-        @Override
-        public void run() {
-            if (session.isValid()) {
-                try {
-                    session.expire();
-                } catch (PicketBoxSessionException e) {
-                    log.error("Session Expiry Error:", e);
-                }
-            }
-        }
+    private boolean isExpirationEnabled() {
+        return this.expiryValue > 0;
     }
 
     private void handleSessionExpiration(PicketBoxSession session) {
         if (session == null)
             throw PicketBoxMessages.MESSAGES.invalidNullArgument("Session");
 
-        // Get the timertask
-        String key = session.getId().getId().toString();
-
-        SessionTimerTask sessionTimerTask = timerMap.get(key);
-        if (sessionTimerTask != null) {
-            sessionTimerTask.cancel();
+        if (isExpirationEnabled()) {
+            this.scheduler.schedule(session, this.expiryValue);
         }
-
-        sessionTimerTask = new SessionTimerTask(session);
-        timerMap.put(session.getId().getId().toString(), sessionTimerTask);
-        timer.schedule(sessionTimerTask, this.expiryValue);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,63 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import org.picketbox.core.PicketBoxLifecycle;
+
+/**
+ * <p>
+ * SPI for components that are responsible for tracking when {@link PicketBoxSession} instances should be expired. The
+ * {@link DefaultSessionManager} starts and stops the configured scheduler along with its own lifecycle.
+ * </p>
+ * <p>
+ * Sessions are scheduled when they are created and again when they are retrieved, as stores may return a different instance
+ * every time. Implementations should rely on {@link PicketBoxSession#getLastAccessedTime()} of the latest instance to find
+ * out if a session was accessed since it was scheduled, instead of expecting a new call for every access.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ * @see TimingWheelSessionExpirationScheduler
+ */
+public interface SessionExpirationScheduler extends PicketBoxLifecycle {
+
+    /**
+     * <p>
+     * Schedules the expiration of the given {@link PicketBoxSession} once it is not accessed for the specified timeout. If the
+     * session is already scheduled the given instance and timeout replace the ones it was scheduled with.
+     * </p>
+     *
+     * @param session
+     * @param timeoutInMillis
+     */
+    void schedule(PicketBoxSession session, long timeoutInMillis);
+
+    /**
+     * <p>
+     * Cancels any pending expiration for the given {@link PicketBoxSession}.
+     * </p>
+     *
+     * @param session
+     */
+    void cancel(PicketBoxSession session);
+}
@@ -0,0 +1,511 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import static org.picketbox.core.PicketBoxLogger.LOGGER;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.picketbox.core.util.StreamUtil;
+
+/**
+ * <p>
+ * Append-only log of session changes used by the {@link FileSessionStore}.
+ * </p>
+ * <p>
+ * Changes are appended to numbered segment files named <code>&lt;fileName&gt;.&lt;segment&gt;</code>. A new segment is
+ * started every time the log is opened or when the active segment grows beyond the maximum size. The file named
+ * <code>&lt;fileName&gt;</code> is a checkpoint holding every live session at some point in time and the number of the last
+ * segment it covers. The state is rebuilt by reading the checkpoint and then the segments it does not cover, in order.
+ * </p>
+ * <p>
+ * Each record is written as its length, a CRC32 checksum, its type and the serialized payload. Replay stops at the first
+ * incomplete or corrupted record, which is what a crash in the middle of a write leaves behind.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+class SessionLog {
+
+    static final byte STORE = 1;
+    static final byte REMOVE = 2;
+
+    private static final int CHECKPOINT_MAGIC = 0x50424F58;
+    private static final int SERIALIZATION_MAGIC = 0xACED0005;
+    private static final int RECORD_HEADER_SIZE = 9;
+
+    private final File checkpointFile;
+    private final long maxSegmentSize;
+
+    private volatile long coveredSegment;
+    private volatile long activeSegment;
+    private FileChannel activeChannel;
+    private long activeSize;
+
+    SessionLog(String fileName, long maxSegmentSize) {
+        this.checkpointFile = new File(fileName).getAbsoluteFile();
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * <p>
+     * Callback used to rebuild the state while replaying the log.
+     * </p>
+     */
+    interface Listener {
+
+        void onStore(PicketBoxSession session);
+
+        void onRemove(SessionId<? extends Serializable> id);
+
+    }
+
+    /**
+     * <p>
+     * Replays the checkpoint and all the segments not covered by it.
+     * </p>
+     *
+     * @param listener
+     * @throws IOException
+     */
+    void replay(Listener listener) throws IOException {
+        this.coveredSegment = 0;
+
+        if (this.checkpointFile.exists()) {
+            replayCheckpoint(listener);
+        }
+
+        long lastSegment = this.coveredSegment;
+
+        for (Long segment : listSegments()) {
+            if (segment > this.coveredSegment) {
+                replayFile(getSegmentFile(segment), listener, true);
+            }
+
+            lastSegment = Math.max(lastSegment, segment);
+        }
+
+        this.activeSegment = lastSegment;
+    }
+
+    /**
+     * <p>
+     * Starts a new segment for the records appended from now on. An empty checkpoint is created if none exists.
+     * </p>
+     *
+     * @throws IOException
+     */
+    void open() throws IOException {
+        if (!this.checkpointFile.exists()) {
+            checkpoint(Collections.<PicketBoxSession> emptyList(), this.coveredSegment);
+        }
+
+        roll();
+    }
+
+    /**
+     * <p>
+     * Appends the given records to the active segment. The records are not guaranteed to be on disk until {@link #sync()} is
+     * called. If writing fails, the records written partially are removed and the buffers are rewound, so the same records
+     * can be appended again.
+     * </p>
+     *
+     * @param records
+     * @throws IOException
+     */
+    void append(List<ByteBuffer> records) throws IOException {
+        if (this.activeSize >= this.maxSegmentSize) {
+            roll();
+        }
+
+        ByteBuffer[] buffers = records.toArray(new ByteBuffer[records.size()]);
+        long remaining = 0;
+
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+
+        long startPosition = this.activeChannel.position();
+        long startSize = this.activeSize;
+
+        this.activeSize += remaining;
+
+        try {
+            while (remaining > 0) {
+                remaining -= this.activeChannel.write(buffers);
+            }
+        } catch (IOException e) {
+            // removes the records written partially, so the same records can be appended again
+            for (ByteBuffer buffer : buffers) {
+                buffer.rewind();
+            }
+
+            this.activeSize = startSize;
+
+            try {
+                this.activeChannel.truncate(startPosition);
+                this.activeChannel.position(startPosition);
+            } catch (IOException ignored) {
+                // keeps the original failure, the caller decides whether to append the records again
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * <p>
+     * Forces the records appended so far to the disk.
+     * </p>
+     *
+     * @throws IOException
+     */
+    void sync() throws IOException {
+        this.activeChannel.force(false);
+    }
+
+    void close() throws IOException {
+        if (this.activeChannel != null) {
+            try {
+                sync();
+            } finally {
+                this.activeChannel.close();
+                this.activeChannel = null;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the number of segments that are no longer written and are not yet covered by the checkpoint.
+     * </p>
+     *
+     * @return
+     */
+    long getClosedSegmentCount() {
+        return Math.max(0, this.activeSegment - 1 - this.coveredSegment);
+    }
+
+    /**
+     * <p>
+     * Returns the number of the last segment that is no longer written.
+     * </p>
+     *
+     * @return
+     */
+    long getLastClosedSegment() {
+        return this.activeSegment - 1;
+    }
+
+    /**
+     * <p>
+     * Writes a new checkpoint with the given sessions, replacing the current one, and deletes the segments it covers. The given
+     * sessions must have been taken after all the covered segments were closed.
+     * </p>
+     *
+     * @param sessions
+     * @param lastCoveredSegment
+     * @throws IOException
+     */
+    void checkpoint(Collection<PicketBoxSession> sessions, long lastCoveredSegment) throws IOException {
+        File temporaryFile = new File(this.checkpointFile.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(temporaryFile);
+
+        try {
+            FileChannel channel = fos.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(12);
+
+            header.putInt(CHECKPOINT_MAGIC).putLong(lastCoveredSegment).flip();
+
+            writeFully(channel, header);
+
+            for (PicketBoxSession session : sessions) {
+                writeFully(channel, encode(STORE, session));
+            }
+
+            channel.force(false);
+        } finally {
+            StreamUtil.safeClose(fos);
+        }
+
+        if (!temporaryFile.renameTo(this.checkpointFile)) {
+            // some platforms do not replace existing files when renaming
+            this.checkpointFile.delete();
+
+            if (!temporaryFile.renameTo(this.checkpointFile)) {
+                throw new IOException("Could not replace checkpoint file " + this.checkpointFile);
+            }
+        }
+
+        this.coveredSegment = lastCoveredSegment;
+
+        for (Long segment : listSegments()) {
+            if (segment <= lastCoveredSegment) {
+                getSegmentFile(segment).delete();
+            }
+        }
+    }
+
+    String getFileName() {
+        return this.checkpointFile.getPath();
+    }
+
+    /**
+     * <p>
+     * Encodes a record with the given type and payload.
+     * </p>
+     *
+     * @param type
+     * @param payload
+     * @return
+     * @throws IOException if the payload can not be serialized.
+     */
+    static ByteBuffer encode(byte type, Serializable payload) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+
+        try {
+            oos.writeObject(payload);
+        } finally {
+            StreamUtil.safeClose(oos);
+        }
+
+        byte[] bytes = bos.toByteArray();
+        CRC32 crc = new CRC32();
+
+        crc.update(type);
+        crc.update(bytes);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bytes.length);
+
+        record.putInt(bytes.length).putInt((int) crc.getValue()).put(type).put(bytes).flip();
+
+        return record;
+    }
+
+    private void roll() throws IOException {
+        close();
+
+        long segment = this.activeSegment + 1;
+
+        this.activeChannel = new FileOutputStream(getSegmentFile(segment), true).getChannel();
+        this.activeSize = 0;
+        this.activeSegment = segment;
+    }
+
+    private void replayCheckpoint(Listener listener) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(this.checkpointFile)));
+        int magic;
+
+        try {
+            magic = dis.readInt();
+
+            if (magic == CHECKPOINT_MAGIC) {
+                this.coveredSegment = dis.readLong();
+            }
+        } catch (EOFException e) {
+            return;
+        } finally {
+            StreamUtil.safeClose(dis);
+        }
+
+        if (magic == CHECKPOINT_MAGIC) {
+            replayFile(this.checkpointFile, listener, false);
+        } else if (magic == SERIALIZATION_MAGIC) {
+            replayLegacyFile(listener);
+        } else {
+            throw new IOException("Unknown session file format: " + this.checkpointFile);
+        }
+    }
+
+    private void replayFile(File file, Listener listener, boolean truncateOnError) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        long position = 0;
+        boolean corrupted = false;
+
+        try {
+            if (!truncateOnError) {
+                dis.skipBytes(12);
+                position = 12;
+            }
+
+            while (true) {
+                int length;
+
+                try {
+                    length = dis.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                try {
+                    int checksum = dis.readInt();
+                    byte type = dis.readByte();
+
+                    if (length < 0 || length > file.length()) {
+                        corrupted = true;
+                        break;
+                    }
+
+                    byte[] bytes = new byte[length];
+
+                    dis.readFully(bytes);
+
+                    CRC32 crc = new CRC32();
+
+                    crc.update(type);
+                    crc.update(bytes);
+
+                    if ((int) crc.getValue() != checksum) {
+                        corrupted = true;
+                        break;
+                    }
+
+                    apply(type, bytes, listener);
+                } catch (EOFException e) {
+                    corrupted = true;
+                    break;
+                }
+
+                position += RECORD_HEADER_SIZE + length;
+            }
+        } finally {
+            StreamUtil.safeClose(dis);
+        }
+
+        if (corrupted) {
+            LOGGER.discardingCorruptedSessionLogRecords(file.getPath(), position);
+
+            if (truncateOnError) {
+                truncate(file, position);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void apply(byte type, byte[] bytes, Listener listener) throws IOException {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+
+        try {
+            Object payload = ois.readObject();
+
+            if (type == STORE) {
+                listener.onStore((PicketBoxSession) payload);
+            } else if (type == REMOVE) {
+                listener.onRemove((SessionId<? extends Serializable>) payload);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Could not read session log record: " + e.getMessage());
+        } finally {
+            StreamUtil.safeClose(ois);
+        }
+    }
+
+    /**
+     * <p>
+     * Reads a file written by previous versions of the {@link FileSessionStore}, which serialized the whole session map.
+     * </p>
+     *
+     * @param listener
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    private void replayLegacyFile(Listener listener) throws IOException {
+        ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(this.checkpointFile)));
+
+        try {
+            Map<Serializable, PicketBoxSession> storedSessions = (Map<Serializable, PicketBoxSession>) ois.readObject();
+
+            for (PicketBoxSession session : storedSessions.values()) {
+                listener.onStore(session);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Could not read session file: " + e.getMessage());
+        } finally {
+            StreamUtil.safeClose(ois);
+        }
+    }
+
+    private void truncate(File file, long position) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+        try {
+            raf.setLength(position);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private List<Long> listSegments() {
+        File directory = this.checkpointFile.getParentFile();
+        String prefix = this.checkpointFile.getName() + ".";
+        List<Long> segments = new ArrayList<Long>();
+        String[] names = directory.list();
+
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(prefix)) {
+                    try {
+                        segments.add(Long.valueOf(name.substring(prefix.length())));
+                    } catch (NumberFormatException e) {
+                        // not a segment, like the temporary checkpoint file
+                    }
+                }
+            }
+        }
+
+        Collections.sort(segments);
+
+        return segments;
+    }
+
+    private File getSegmentFile(long segment) {
+        return new File(this.checkpointFile.getPath() + "." + segment);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
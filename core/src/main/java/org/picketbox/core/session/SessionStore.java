@@ -23,6 +23,7 @@
 package org.picketbox.core.session;
 
 import java.io.Serializable;
+import java.util.Collection;
 
 import org.picketbox.core.PicketBoxLifecycle;
 
@@ -71,4 +72,14 @@ public interface SessionStore extends PicketBoxLifecycle {
      */
     void update(PicketBoxSession session);
 
+    /**
+     * <p>
+     * Returns a snapshot of the stored {@link PicketBoxSession} instances. Changes made to the store after this method returns
+     * are not reflected in the returned collection.
+     * </p>
+     *
+     * @return
+     */
+    Collection<PicketBoxSession> getSessions();
+
 }
\ No newline at end of file
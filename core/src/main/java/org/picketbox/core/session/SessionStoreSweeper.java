@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import static org.picketbox.core.PicketBoxLogger.LOGGER;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.picketbox.core.AbstractPicketBoxLifeCycle;
+
+/**
+ * <p>
+ * Periodically walks a {@link SessionStore} looking for sessions that were not accessed within the configured timeout. Each
+ * execution checks at most one batch of sessions, continuing from where the previous execution stopped. A new snapshot of the
+ * store is taken once all sessions from the previous one were checked.
+ * </p>
+ * <p>
+ * The sweeper complements the {@link SessionExpirationScheduler}, which only knows about the sessions created by the local
+ * {@link DefaultSessionManager}. Sessions restored from a persistent store or replicated from other nodes are only expired by
+ * the sweeper or lazily, when they are retrieved.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+class SessionStoreSweeper extends AbstractPicketBoxLifeCycle {
+
+    private final DefaultSessionManager sessionManager;
+    private final SessionStore sessionStore;
+    private final long sweepInterval;
+    private final int batchSize;
+
+    private ScheduledExecutorService executor;
+    private Iterator<PicketBoxSession> cursor = Collections.<PicketBoxSession> emptyList().iterator();
+
+    /**
+     * @param sessionManager the session manager used to expire sessions.
+     * @param sessionStore the store to be checked.
+     * @param sweepIntervalInMillis delay between two batches.
+     * @param batchSize maximum number of sessions checked on each execution.
+     */
+    SessionStoreSweeper(DefaultSessionManager sessionManager, SessionStore sessionStore, long sweepIntervalInMillis,
+            int batchSize) {
+        if (sweepIntervalInMillis <= 0) {
+            throw new IllegalArgumentException("sweepIntervalInMillis must be greater than zero.");
+        }
+
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than zero.");
+        }
+
+        this.sessionManager = sessionManager;
+        this.sessionStore = sessionStore;
+        this.sweepInterval = sweepIntervalInMillis;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * <p>
+     * Checks the next batch of sessions and expires the ones that were not accessed within the timeout.
+     * </p>
+     *
+     * @return the number of expired sessions.
+     */
+    int sweep() {
+        if (!this.cursor.hasNext()) {
+            this.cursor = this.sessionStore.getSessions().iterator();
+        }
+
+        int expiredSessions = 0;
+
+        for (int i = 0; i < this.batchSize && this.cursor.hasNext(); i++) {
+            if (this.sessionManager.expireIfIdle(this.cursor.next())) {
+                expiredSessions++;
+            }
+        }
+
+        return expiredSessions;
+    }
+
+    @Override
+    protected void doStart() {
+        this.executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("picketbox-session-sweeper"));
+
+        this.executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweep();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Session Expiry Error:", e);
+                }
+            }
+        }, this.sweepInterval, this.sweepInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void doStop() {
+        this.executor.shutdownNow();
+        this.executor = null;
+        this.cursor = Collections.<PicketBoxSession> emptyList().iterator();
+    }
+}
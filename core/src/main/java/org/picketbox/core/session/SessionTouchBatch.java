@@ -0,0 +1,129 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Groups all the touches made to sessions by the current thread, usually during a single request. While a batch is open
+ * {@link PicketBoxSession#touch()} still updates the last access time, but no {@link
+ * org.picketbox.core.session.event.SessionTouchedEvent} is raised. When the outermost batch ends each session touched during
+ * the batch is touched once more.
+ * </p>
+ * <p>
+ * Batches can be nested. Every call to {@link #begin()} must be followed by a call to {@link #end()} in a finally block.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class SessionTouchBatch {
+
+    private static final ThreadLocal<SessionTouchBatch> currentBatch = new ThreadLocal<SessionTouchBatch>();
+
+    private final List<PicketBoxSession> touchedSessions = new ArrayList<PicketBoxSession>(2);
+    private int depth;
+
+    private SessionTouchBatch() {
+    }
+
+    /**
+     * <p>
+     * Opens a batch for the current thread.
+     * </p>
+     */
+    public static void begin() {
+        SessionTouchBatch batch = currentBatch.get();
+
+        if (batch == null) {
+            batch = new SessionTouchBatch();
+            currentBatch.set(batch);
+        }
+
+        batch.depth++;
+    }
+
+    /**
+     * <p>
+     * Closes the batch opened by the last call to {@link #begin()}. If this is the outermost batch, the sessions touched during
+     * the batch are touched again so their events are raised.
+     * </p>
+     *
+     * @throws IllegalStateException if there is no batch for the current thread.
+     */
+    public static void end() {
+        SessionTouchBatch batch = currentBatch.get();
+
+        if (batch == null) {
+            throw new IllegalStateException("No session touch batch for the current thread.");
+        }
+
+        if (--batch.depth > 0) {
+            return;
+        }
+
+        currentBatch.remove();
+
+        for (PicketBoxSession session : batch.touchedSessions) {
+            session.touch();
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if there is a batch for the current thread.
+     * </p>
+     *
+     * @return
+     */
+    public static boolean isActive() {
+        return currentBatch.get() != null;
+    }
+
+    /**
+     * <p>
+     * Records a touch to the given session if there is a batch for the current thread.
+     * </p>
+     *
+     * @param session
+     * @return true if the touch was recorded and its event should not be raised now.
+     */
+    static boolean record(PicketBoxSession session) {
+        SessionTouchBatch batch = currentBatch.get();
+
+        if (batch == null) {
+            return false;
+        }
+
+        for (PicketBoxSession touchedSession : batch.touchedSessions) {
+            if (touchedSession == session) {
+                return true;
+            }
+        }
+
+        batch.touchedSessions.add(session);
+
+        return true;
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import static org.picketbox.core.PicketBoxLogger.LOGGER;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.picketbox.core.AbstractPicketBoxLifeCycle;
+import org.picketbox.core.exceptions.PicketBoxSessionException;
+
+/**
+ * <p>
+ * Default {@link SessionExpirationScheduler} implementation based on a hashed timing wheel.
+ * </p>
+ * <p>
+ * Each scheduled session is represented by a single entry that is placed in one of the wheel slots. The deadline of an entry
+ * is derived from {@link PicketBoxSession#getLastAccessedTime()} when the ticker thread reaches its slot, so accessing a
+ * session never requires rescheduling it: if the session was accessed in the meantime the entry is just moved to a later slot.
+ * Expired sessions are handed to a bounded pool of worker threads so a slow expiration does not delay the ticker.
+ * </p>
+ * <p>
+ * Stores may return a different instance of a session on every load, so the instance held by an entry is replaced whenever
+ * the session is scheduled again. When a {@link SessionManager} is set, the worker threads also retrieve the session from it
+ * before expiring it, so a session accessed through another instance is rescheduled instead of expired.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class TimingWheelSessionExpirationScheduler extends AbstractPicketBoxLifeCycle implements SessionExpirationScheduler {
+
+    public static final long DEFAULT_TICK_DURATION = 1000;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+    public static final int DEFAULT_WORKERS = 2;
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private final long tickDuration;
+    private final int wheelSize;
+    private final int workers;
+    private final int queueSize;
+
+    private final ConcurrentMap<Serializable, ExpirationEntry> entries = new ConcurrentHashMap<Serializable, ExpirationEntry>();
+    private final Queue<ExpirationEntry> pendingEntries = new ConcurrentLinkedQueue<ExpirationEntry>();
+
+    /*
+     * Wheel state. Only accessed by the ticker thread once the scheduler is started.
+     */
+    private List<LinkedList<ExpirationEntry>> wheel;
+    private long startTime;
+    private long tick;
+
+    private ScheduledExecutorService ticker;
+    private ThreadPoolExecutor expirationWorkers;
+
+    private volatile SessionManager sessionManager;
+
+    public TimingWheelSessionExpirationScheduler() {
+        this(DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE, DEFAULT_WORKERS, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * @param tickDurationInMillis the duration of each tick. Sessions are expired with this precision.
+     * @param wheelSize the number of slots. Rounded up to the next power of two.
+     * @param workers the number of threads used to expire sessions.
+     * @param queueSize the maximum number of expirations waiting for a worker thread. When the queue is full the ticker thread
+     *        performs the expiration itself.
+     */
+    public TimingWheelSessionExpirationScheduler(long tickDurationInMillis, int wheelSize, int workers, int queueSize) {
+        if (tickDurationInMillis <= 0) {
+            throw new IllegalArgumentException("tickDurationInMillis must be greater than zero.");
+        }
+
+        if (wheelSize <= 0) {
+            throw new IllegalArgumentException("wheelSize must be greater than zero.");
+        }
+
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers must be greater than zero.");
+        }
+
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("queueSize must be greater than zero.");
+        }
+
+        int normalizedWheelSize = 1;
+
+        while (normalizedWheelSize < wheelSize) {
+            normalizedWheelSize <<= 1;
+        }
+
+        this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDurationInMillis);
+        this.wheelSize = normalizedWheelSize;
+        this.workers = workers;
+        this.queueSize = queueSize;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionExpirationScheduler#schedule(org.picketbox.core.session.PicketBoxSession, long)
+     */
+    @Override
+    public void schedule(PicketBoxSession session, long timeoutInMillis) {
+        checkIfStarted();
+
+        Serializable key = session.getId().getId();
+
+        ExpirationEntry entry = this.entries.get(key);
+
+        if (entry != null && !entry.done) {
+            entry.session = session;
+            entry.timeout = timeoutInMillis;
+            return;
+        }
+
+        entry = new ExpirationEntry(key, session, timeoutInMillis);
+
+        ExpirationEntry previous = this.entries.put(key, entry);
+
+        if (previous != null) {
+            previous.done = true;
+        }
+
+        this.pendingEntries.add(entry);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionExpirationScheduler#cancel(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public void cancel(PicketBoxSession session) {
+        ExpirationEntry entry = this.entries.remove(session.getId().getId());
+
+        if (entry != null) {
+            entry.done = true;
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the number of sessions currently scheduled for expiration.
+     * </p>
+     *
+     * @return
+     */
+    public int getScheduledCount() {
+        return this.entries.size();
+    }
+
+    /**
+     * <p>
+     * Sets the {@link SessionManager} used to retrieve the current instance of a session before it is expired. The
+     * {@link DefaultSessionManager} sets itself when it creates the scheduler.
+     * </p>
+     *
+     * @param sessionManager
+     */
+    public void setSessionManager(SessionManager sessionManager) {
+        this.sessionManager = sessionManager;
+    }
+
+    @Override
+    protected void doStart() {
+        this.wheel = new ArrayList<LinkedList<ExpirationEntry>>(this.wheelSize);
+
+        for (int i = 0; i < this.wheelSize; i++) {
+            this.wheel.add(new LinkedList<ExpirationEntry>());
+        }
+
+        this.startTime = System.nanoTime();
+        this.tick = 0;
+
+        this.expirationWorkers = new ThreadPoolExecutor(this.workers, this.workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(this.queueSize), new DaemonThreadFactory("picketbox-session-expiration"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("picketbox-session-expiration-ticker"));
+
+        this.ticker.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    advance();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Session Expiry Error:", e);
+                }
+            }
+        }, this.tickDuration, this.tickDuration, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    protected void doStop() {
+        this.ticker.shutdownNow();
+        this.expirationWorkers.shutdown();
+
+        this.ticker = null;
+        this.expirationWorkers = null;
+
+        this.entries.clear();
+        this.pendingEntries.clear();
+        this.wheel = null;
+    }
+
+    /**
+     * <p>
+     * Processes all the slots whose tick has elapsed since the last execution.
+     * </p>
+     */
+    private void advance() {
+        long now = System.nanoTime();
+
+        ExpirationEntry pendingEntry = null;
+
+        while ((pendingEntry = this.pendingEntries.poll()) != null) {
+            if (!pendingEntry.done) {
+                place(pendingEntry, now);
+            }
+        }
+
+        while (now - this.startTime >= (this.tick + 1) * this.tickDuration) {
+            List<ExpirationEntry> renewedEntries = processSlot(now);
+
+            this.tick++;
+
+            for (ExpirationEntry renewedEntry : renewedEntries) {
+                place(renewedEntry, now);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Expires the entries from the current slot whose session was not accessed within the timeout. Entries whose session was
+     * accessed since they were placed are removed from the slot and returned, so they can be placed again once the tick is
+     * advanced.
+     * </p>
+     *
+     * @param now
+     * @return
+     */
+    private List<ExpirationEntry> processSlot(long now) {
+        List<ExpirationEntry> renewedEntries = new ArrayList<ExpirationEntry>();
+        Iterator<ExpirationEntry> iterator = this.wheel.get((int) (this.tick & (this.wheelSize - 1))).iterator();
+
+        while (iterator.hasNext()) {
+            ExpirationEntry entry = iterator.next();
+
+            if (entry.done) {
+                iterator.remove();
+            } else if (entry.remainingRounds > 0) {
+                entry.remainingRounds--;
+            } else {
+                iterator.remove();
+
+                if (entry.session.isExpired(entry.timeout)) {
+                    expire(entry);
+                } else {
+                    renewedEntries.add(entry);
+                }
+            }
+        }
+
+        return renewedEntries;
+    }
+
+    private void place(ExpirationEntry entry, long now) {
+        long remaining = entry.session.getLastAccessedTime() + entry.timeout - System.currentTimeMillis();
+        long deadline = now + TimeUnit.MILLISECONDS.toNanos(Math.max(remaining, 0));
+        long targetTick = Math.max((deadline - this.startTime) / this.tickDuration, this.tick);
+
+        entry.remainingRounds = (targetTick - this.tick) / this.wheelSize;
+
+        this.wheel.get((int) (targetTick & (this.wheelSize - 1))).add(entry);
+    }
+
+    private void expire(final ExpirationEntry entry) {
+        entry.done = true;
+
+        this.entries.remove(entry.key, entry);
+
+        this.expirationWorkers.execute(new Runnable() {
+            @Override
+            public void run() {
+                PicketBoxSession session = entry.session;
+                SessionManager currentSessionManager = TimingWheelSessionExpirationScheduler.this.sessionManager;
+
+                if (currentSessionManager != null) {
+                    // stores may return a new instance on every load, only the current one tells if the session is in use
+                    session = currentSessionManager.retrieve(session.getId());
+
+                    if (session == null) {
+                        return;
+                    }
+                }
+
+                if (!session.isValid()) {
+                    return;
+                }
+
+                // the session may have been accessed while the expiration was waiting for a worker
+                if (!session.isExpired(entry.timeout)) {
+                    reschedule(session, entry.timeout);
+                    return;
+                }
+
+                try {
+                    session.expire();
+                } catch (PicketBoxSessionException e) {
+                    LOGGER.error("Session Expiry Error:", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Schedules again a session that was accessed after its entry was found expired, unless the scheduler was stopped.
+     * </p>
+     *
+     * @param session
+     * @param timeoutInMillis
+     */
+    private void reschedule(PicketBoxSession session, long timeoutInMillis) {
+        if (started()) {
+            schedule(session, timeoutInMillis);
+        }
+    }
+
+    private static class ExpirationEntry {
+
+        private final Serializable key;
+        private volatile PicketBoxSession session;
+        private volatile long timeout;
+        private volatile boolean done;
+        private long remainingRounds;
+
+        ExpirationEntry(Serializable key, PicketBoxSession session, long timeout) {
+            this.key = key;
+            this.session = session;
+            this.timeout = timeout;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A thread safe cache holding a bounded number of entries for a configured amount of time. The least recently used entries
+ * are evicted when the cache is full and an entry expires after the time to live.
+ * </p>
+ * <p>
+ * Values are usually loaded from a slower source while the cache may be invalidated concurrently. To avoid caching outdated
+ * values, the {@link #getGeneration()} must be read before the value is loaded and passed to
+ * {@link #put(Object, Object, long)}. Nothing is cached if an entry was invalidated or the cache cleared in the meantime.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+public class BoundedCache<K, V> {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    public static final long DEFAULT_TIME_TO_LIVE = 5 * 60 * 1000L;
+
+    private final int maxSize;
+    private final long timeToLive;
+    private final Map<K, CacheEntry<V>> entries;
+
+    /**
+     * Incremented on every invalidation so values loaded before it are not cached.
+     */
+    private long generation;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public BoundedCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * @param maxSize maximum number of entries held by the cache
+     * @param timeToLive time in milliseconds an entry is kept
+     */
+    public BoundedCache(final int maxSize, long timeToLive) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than zero.");
+        }
+
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be greater than zero.");
+        }
+
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > maxSize) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * Returns the value cached for the given key.
+     * </p>
+     *
+     * @param key
+     * @return the value or null if there is no entry for the key or it expired.
+     */
+    public V get(K key) {
+        return get(key, null);
+    }
+
+    /**
+     * <p>
+     * Returns the value cached for the given key if it is accepted by the given {@link Matcher}. A value that is not accepted
+     * is counted as a miss, but kept in the cache.
+     * </p>
+     *
+     * @param key
+     * @param matcher the matcher to check the value or null to accept any value.
+     * @return the value or null if there is no entry for the key, it expired or it was not accepted.
+     */
+    public V get(K key, Matcher<? super V> matcher) {
+        CacheEntry<V> entry;
+
+        synchronized (this.entries) {
+            entry = this.entries.get(key);
+
+            if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+                this.entries.remove(key);
+                entry = null;
+            }
+        }
+
+        if (entry == null || (matcher != null && !matcher.matches(entry.value))) {
+            this.missCount.incrementAndGet();
+            return null;
+        }
+
+        this.hitCount.incrementAndGet();
+
+        return entry.value;
+    }
+
+    /**
+     * <p>
+     * Returns the current generation of the cache, which must be read before a value is loaded and passed to
+     * {@link #put(Object, Object, long)}.
+     * </p>
+     *
+     * @return
+     */
+    public long getGeneration() {
+        synchronized (this.entries) {
+            return this.generation;
+        }
+    }
+
+    /**
+     * <p>
+     * Caches the given value. Nothing is cached if an entry was invalidated since the given generation was read, as the value
+     * may be outdated.
+     * </p>
+     *
+     * @param key
+     * @param value
+     * @param generation the value returned by {@link #getGeneration()} before the value was loaded.
+     */
+    public void put(K key, V value, long generation) {
+        if (key == null || value == null) {
+            return;
+        }
+
+        CacheEntry<V> entry = new CacheEntry<V>(value, System.currentTimeMillis() + this.timeToLive);
+
+        synchronized (this.entries) {
+            if (generation == this.generation) {
+                this.entries.put(key, entry);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Removes the entry for the given key.
+     * </p>
+     *
+     * @param key
+     */
+    public void invalidate(K key) {
+        synchronized (this.entries) {
+            this.generation++;
+            this.entries.remove(key);
+        }
+    }
+
+    /**
+     * <p>
+     * Removes all entries.
+     * </p>
+     */
+    public void clear() {
+        synchronized (this.entries) {
+            this.generation++;
+            this.entries.clear();
+        }
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    public long getTimeToLive() {
+        return this.timeToLive;
+    }
+
+    public int getSize() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * <p>
+     * Checks if a cached value can be used for a lookup, for values that depend on more than the key.
+     * </p>
+     *
+     * @param <V>
+     */
+    public interface Matcher<V> {
+
+        boolean matches(V value);
+
+    }
+
+    private static class CacheEntry<V> {
+
+        private final V value;
+        private final long expiration;
+
+        CacheEntry(V value, long expiration) {
+            this.value = value;
+            this.expiration = expiration;
+        }
+
+        boolean isExpired(long now) {
+            return now >= this.expiration;
+        }
+    }
+}
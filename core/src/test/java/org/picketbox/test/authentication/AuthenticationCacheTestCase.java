@@ -0,0 +1,206 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.PicketBoxPrincipal;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.AuthenticationCache;
+import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.credential.Password;
+import org.picketlink.idm.credential.UsernamePasswordCredentials;
+import org.picketlink.idm.model.SimpleUser;
+
+/**
+ * <p>
+ * Tests the {@link AuthenticationCache}.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class AuthenticationCacheTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if repeated logins with the same credentials are served from the cache.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRepeatedAuthentication() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache();
+        PicketBoxManager picketBoxManager = createManager(cache);
+
+        assertTrue(authenticate(picketBoxManager, "admin", "admin").isAuthenticated());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getSize());
+
+        UserContext authenticatedUser = authenticate(picketBoxManager, "admin", "admin");
+
+        assertTrue(authenticatedUser.isAuthenticated());
+        assertEquals("admin", authenticatedUser.getPrincipal().getName());
+        assertRoles(authenticatedUser);
+        assertEquals(1, cache.getHitCount());
+
+        assertFalse(authenticate(picketBoxManager, "admin", "wrong").isAuthenticated());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    /**
+     * <p>
+     * Tests if a cached authentication is discarded when the user credentials change.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInvalidationOnCredentialUpdate() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache();
+        PicketBoxManager picketBoxManager = createManager(cache);
+
+        assertTrue(authenticate(picketBoxManager, "admin", "admin").isAuthenticated());
+        assertEquals(1, cache.getSize());
+
+        IdentityManager identityManager = picketBoxManager.getIdentityManager();
+
+        identityManager.updateCredential(identityManager.getUser("admin"), new Password("changed".toCharArray()));
+
+        assertEquals(0, cache.getSize());
+        assertFalse(authenticate(picketBoxManager, "admin", "admin").isAuthenticated());
+        assertTrue(authenticate(picketBoxManager, "admin", "changed").isAuthenticated());
+    }
+
+    /**
+     * <p>
+     * Tests if a cached authentication is discarded when the user is removed.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInvalidationOnUserRemoval() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache();
+        PicketBoxManager picketBoxManager = createManager(cache);
+        IdentityManager identityManager = picketBoxManager.getIdentityManager();
+
+        SimpleUser mary = new SimpleUser("mary");
+
+        identityManager.add(mary);
+        identityManager.updateCredential(mary, new Password("mary".toCharArray()));
+
+        assertTrue(authenticate(picketBoxManager, "mary", "mary").isAuthenticated());
+        assertEquals(1, cache.getSize());
+
+        identityManager.remove(identityManager.getUser("mary"));
+
+        assertEquals(0, cache.getSize());
+        assertFalse(authenticate(picketBoxManager, "mary", "mary").isAuthenticated());
+    }
+
+    /**
+     * <p>
+     * Tests the expiration and eviction of cached entries.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExpirationAndEviction() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(1, 50);
+
+        cache.put("admin", credentials("admin", "admin"), new PicketBoxPrincipal("admin"), cache.getGeneration());
+
+        assertNotNull(cache.lookup("admin", credentials("admin", "admin")));
+        assertNull(cache.lookup("admin", credentials("admin", "wrong")));
+
+        cache.put("mary", credentials("mary", "mary"), new PicketBoxPrincipal("mary"), cache.getGeneration());
+
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.lookup("admin", credentials("admin", "admin")));
+
+        Thread.sleep(100);
+
+        assertNull(cache.lookup("mary", credentials("mary", "mary")));
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    /**
+     * <p>
+     * Tests if an authentication validated before an invalidation is not cached.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPutAfterInvalidation() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache();
+        long generation = cache.getGeneration();
+
+        // the credentials are changed while the old ones are being validated
+        cache.invalidate("admin");
+
+        cache.put("admin", credentials("admin", "admin"), new PicketBoxPrincipal("admin"), generation);
+
+        assertEquals(0, cache.getSize());
+        assertNull(cache.lookup("admin", credentials("admin", "admin")));
+
+        cache.put("admin", credentials("admin", "admin"), new PicketBoxPrincipal("admin"), cache.getGeneration());
+
+        assertEquals(1, cache.getSize());
+    }
+
+    private PicketBoxManager createManager(AuthenticationCache cache) {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.authentication().authenticationCache(cache);
+
+        return createManager(builder);
+    }
+
+    private UserContext authenticate(PicketBoxManager picketBoxManager, String userName, String password) throws Exception {
+        UserContext authenticatingUser = new UserContext();
+
+        authenticatingUser.setCredential(new UsernamePasswordCredential(userName, password));
+
+        return picketBoxManager.authenticate(authenticatingUser);
+    }
+
+    private UsernamePasswordCredentials credentials(String userName, String password) {
+        return new UsernamePasswordCredentials(userName, new Password(password.toCharArray()));
+    }
+}
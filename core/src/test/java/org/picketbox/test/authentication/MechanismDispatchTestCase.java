@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.AuthenticationMechanism;
+import org.picketbox.core.authentication.credential.OTPCredential;
+import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
+import org.picketbox.core.authentication.impl.OTPAuthenticationMechanism;
+import org.picketbox.core.authentication.impl.PicketBoxAuthenticationProvider;
+import org.picketbox.core.authentication.impl.UserNamePasswordAuthenticationMechanism;
+import org.picketbox.core.exceptions.AuthenticationException;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+
+/**
+ * <p>
+ * Tests how credentials are dispatched to the configured authentication mechanisms.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class MechanismDispatchTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if a credential subclass without a dedicated mechanism is handled by the mechanism of its supertype.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCredentialSubclass() throws Exception {
+        PicketBoxManager picketBoxManager = createManager();
+        PicketBoxAuthenticationProvider provider = new PicketBoxAuthenticationProvider(picketBoxManager);
+
+        List<AuthenticationMechanism> mechanisms = provider.getMechanisms(new ExtendedCredential("admin", "admin"));
+
+        assertEquals(1, mechanisms.size());
+        assertTrue(mechanisms.get(0) instanceof UserNamePasswordAuthenticationMechanism);
+        assertSame(mechanisms, provider.getMechanisms(new ExtendedCredential("admin", "admin")));
+
+        UserContext authenticatingUser = new UserContext();
+
+        authenticatingUser.setCredential(new ExtendedCredential("admin", "admin"));
+
+        UserContext authenticatedUser = picketBoxManager.authenticate(authenticatingUser);
+
+        assertNotNull(authenticatedUser);
+        assertTrue(authenticatedUser.isAuthenticated());
+    }
+
+    /**
+     * <p>
+     * Tests if an {@link OTPCredential} is only handled by the OTP mechanism, even though it is also a
+     * {@link UsernamePasswordCredential}.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMostSpecificTypeWins() throws Exception {
+        PicketBoxManager picketBoxManager = createManager();
+        PicketBoxAuthenticationProvider provider = new PicketBoxAuthenticationProvider(picketBoxManager);
+
+        List<AuthenticationMechanism> mechanisms = provider.getMechanisms(new OTPCredential("admin", "admin", "123456"));
+
+        assertEquals(1, mechanisms.size());
+        assertTrue(mechanisms.get(0) instanceof OTPAuthenticationMechanism);
+
+        UserContext authenticatingUser = new UserContext();
+
+        authenticatingUser.setCredential(new OTPCredential("admin", "admin", "123456"));
+
+        UserContext authenticatedUser = picketBoxManager.authenticate(authenticatingUser);
+
+        assertNotNull(authenticatedUser);
+        assertFalse(authenticatedUser.isAuthenticated());
+    }
+
+    /**
+     * <p>
+     * Tests if a credential without any mechanism is rejected.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUnsupportedCredential() throws Exception {
+        PicketBoxManager picketBoxManager = createManager();
+        PicketBoxAuthenticationProvider provider = new PicketBoxAuthenticationProvider(picketBoxManager);
+
+        assertTrue(provider.getMechanisms(new CustomCredential("admin")).isEmpty());
+
+        UserContext authenticatingUser = new UserContext();
+
+        authenticatingUser.setCredential(new CustomCredential("admin"));
+
+        try {
+            picketBoxManager.authenticate(authenticatingUser);
+            fail("Credential is not supported by any mechanism.");
+        } catch (AuthenticationException e) {
+        }
+    }
+
+    public static class ExtendedCredential extends UsernamePasswordCredential {
+
+        public ExtendedCredential(String userName, String password) {
+            super(userName, password);
+        }
+
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.authorization.ent;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authorization.ent.Entitlement;
+import org.picketbox.core.authorization.ent.EntitlementCollection;
+import org.picketbox.core.authorization.ent.EntitlementsManager;
+import org.picketbox.core.authorization.ent.impl.IndexedEntitlementStore;
+import org.picketbox.core.authorization.ent.impl.SimpleEntitlement;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+import org.picketbox.test.authorization.ent.FileDirectoryEntitlementsUseCase.FileResource;
+import org.picketlink.idm.model.Group;
+import org.picketlink.idm.model.Role;
+import org.picketlink.idm.model.SimpleGroup;
+import org.picketlink.idm.model.SimpleRole;
+import org.picketlink.idm.model.SimpleUser;
+import org.picketlink.idm.model.User;
+
+/**
+ * <p>
+ * Tests the {@link IndexedEntitlementStore}.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class IndexedEntitlementStoreTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    private final Entitlement read = new SimpleEntitlement("read");
+    private final Entitlement write = new SimpleEntitlement("write");
+    private final Entitlement execute = new SimpleEntitlement("execute");
+
+    private final User anil = new SimpleUser("anil");
+    private final Role employee = new SimpleRole("employee");
+    private final Group jboss = new SimpleGroup("1", new SimpleGroup("jboss"));
+
+    /**
+     * <p>
+     * Tests if the entitlements of the user, roles and groups are combined and deduplicated.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEntitlements() throws Exception {
+        EntitlementsManager entitlementsManager = createEntitlementsManager();
+        FileResource fileA = new FileResource("filea");
+
+        EntitlementCollection entitlements = entitlementsManager.entitlements(fileA, createUserContext(this.anil));
+
+        assertTrue(entitlements.contains(this.read));
+        assertTrue(entitlements.contains(this.write));
+        assertTrue(entitlements.contains(this.execute));
+        assertEquals(3, entitlements.getEntitlements().size());
+
+        entitlements = entitlementsManager.entitlements(fileA, createUserContext(new SimpleUser("Bond")));
+
+        assertTrue(entitlements.contains(this.read));
+        assertTrue(entitlements.contains(this.write));
+        assertFalse(entitlements.contains(this.execute));
+        assertEquals(2, entitlements.getEntitlements().size());
+
+        UserContext userContext = new UserContext();
+
+        userContext.setUser(new SimpleUser("baduser"));
+
+        assertTrue(entitlementsManager.entitlements(fileA, userContext).getEntitlements().isEmpty());
+    }
+
+    /**
+     * <p>
+     * Tests if the same roles and groups share the computed entitlements and if they can not be modified.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMemoizedEntitlements() throws Exception {
+        EntitlementsManager entitlementsManager = createEntitlementsManager();
+        FileResource fileA = new FileResource("filea");
+
+        EntitlementCollection first = entitlementsManager.entitlements(fileA, createUserContext(new SimpleUser("Bond")));
+        EntitlementCollection second = entitlementsManager.entitlements(fileA, createUserContext(new SimpleUser("Bill")));
+
+        assertSame(first, second);
+
+        try {
+            first.add(this.execute);
+            fail("Entitlements must not be modified.");
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if concurrent writers do not lose entitlements.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentAddEntitlements() throws Exception {
+        final IndexedEntitlementStore store = new IndexedEntitlementStore();
+        final EntitlementCollection collection = EntitlementCollection.create("r", new Entitlement[] { this.read });
+        final int threadCount = 8;
+        final int resourcesPerThread = 100;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < threadCount; i++) {
+            final int thread = i;
+
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (int j = 0; j < resourcesPerThread; j++) {
+                        store.addEntitlements(new FileResource(thread + "-" + j), employee, collection);
+                    }
+                }
+            };
+
+            threads.add(writer);
+            writer.start();
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < threadCount; i++) {
+            for (int j = 0; j < resourcesPerThread; j++) {
+                assertTrue(store.entitlements(new FileResource(i + "-" + j), this.employee).contains(this.read));
+            }
+        }
+    }
+
+    private EntitlementsManager createEntitlementsManager() {
+        EntitlementCollection rwx = EntitlementCollection.create("rwx", new Entitlement[] { this.read, this.write,
+                this.execute });
+        EntitlementCollection rw = EntitlementCollection.create("rw", new Entitlement[] { this.read, this.write });
+        EntitlementCollection r = EntitlementCollection.create("r", new Entitlement[] { this.read });
+
+        FileResource fileA = new FileResource("filea");
+
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.authorization().entitlements().indexedStore();
+        builder.authorization().entitlements().add(fileA, this.anil, rwx);
+        builder.authorization().entitlements().add(fileA, this.employee, rw);
+        builder.authorization().entitlements().add(fileA, this.jboss, r);
+
+        PicketBoxManager picketBoxManager = createManager(builder);
+
+        return picketBoxManager.getEntitlementsManager();
+    }
+
+    private UserContext createUserContext(User user) {
+        List<Role> roles = new ArrayList<Role>();
+
+        roles.add(this.employee);
+
+        List<Group> groups = new ArrayList<Group>();
+
+        groups.add(this.jboss);
+
+        UserContext userContext = new UserContext();
+
+        userContext.setUser(user).setRoles(roles).setGroups(groups);
+
+        return userContext;
+    }
+}
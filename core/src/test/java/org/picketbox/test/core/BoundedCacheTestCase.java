@@ -0,0 +1,153 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.core;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+import org.junit.Test;
+import org.picketbox.core.util.BoundedCache;
+import org.picketbox.core.util.BoundedCache.Matcher;
+
+/**
+ * <p>
+ * Tests the {@link BoundedCache}.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class BoundedCacheTestCase {
+
+    /**
+     * <p>
+     * Tests if the least recently used entries are evicted when the cache is full.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEviction() throws Exception {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(2, 60000);
+
+        cache.put("a", "1", cache.getGeneration());
+        cache.put("b", "2", cache.getGeneration());
+
+        assertEquals("1", cache.get("a"));
+
+        cache.put("c", "3", cache.getGeneration());
+
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * <p>
+     * Tests if entries expire after the time to live.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExpiration() throws Exception {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 50);
+
+        cache.put("a", "1", cache.getGeneration());
+
+        assertEquals("1", cache.get("a"));
+
+        Thread.sleep(100);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * <p>
+     * Tests if values not accepted by a {@link Matcher} are counted as misses and kept in the cache.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMatcher() throws Exception {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 60000);
+
+        cache.put("a", "1", cache.getGeneration());
+
+        assertNull(cache.get("a", new Matcher<String>() {
+            @Override
+            public boolean matches(String value) {
+                return value.equals("2");
+            }
+        }));
+
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getMissCount());
+        assertEquals("1", cache.get("a"));
+    }
+
+    /**
+     * <p>
+     * Tests if values loaded before an invalidation are not cached.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPutAfterInvalidation() throws Exception {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 60000);
+        long generation = cache.getGeneration();
+
+        cache.invalidate("a");
+        cache.put("a", "1", generation);
+
+        assertNull(cache.get("a"));
+
+        generation = cache.getGeneration();
+
+        cache.clear();
+        cache.put("a", "1", generation);
+
+        assertNull(cache.get("a"));
+
+        cache.put("a", "1", cache.getGeneration());
+
+        assertEquals("1", cache.get("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxSize() throws Exception {
+        new BoundedCache<String, String>(0, 60000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTimeToLive() throws Exception {
+        new BoundedCache<String, String>(10, 0);
+    }
+}
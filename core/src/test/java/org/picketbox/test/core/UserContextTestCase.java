@@ -52,4 +52,34 @@ public class UserContextTestCase {
     public void testNonExistentRole() throws Exception {
         assertFalse(this.userContext.getRoleNames().contains("guest"));
     }
+
+    @Test
+    public void testHasRole() throws Exception {
+        UserContext authenticatedUserContext = new UserContext() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean isAuthenticated() {
+                return true;
+            }
+        };
+
+        Collection<Role> roles = buildRoles(this.roleNames);
+
+        authenticatedUserContext.setRoles(roles);
+
+        assertTrue(authenticatedUserContext.hasRole("manager"));
+        assertFalse(authenticatedUserContext.hasRole("guest"));
+
+        // changes to the original collection are not visible
+        roles.add(new SimpleRole("guest"));
+
+        assertFalse(authenticatedUserContext.hasRole("guest"));
+
+        authenticatedUserContext.setRoles(roles);
+
+        assertTrue(authenticatedUserContext.hasRole("guest"));
+        assertTrue(authenticatedUserContext.getRoleNames().contains("guest"));
+    }
 }
@@ -0,0 +1,372 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.event;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.event.AsynchronousEventManager;
+import org.picketbox.core.event.EventObserver;
+import org.picketbox.core.event.EventOverflowPolicy;
+import org.picketbox.core.session.event.SessionGetAttributeEvent;
+import org.picketbox.core.session.event.SessionSetAttributeEvent;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+
+/**
+ * <p>
+ * Tests the {@link AsynchronousEventManager}.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class AsynchronousEventManagerTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if only handlers marked as asynchronous are invoked by the worker threads.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAsynchronousDelivery() throws Exception {
+        AsynchronousEventManager eventManager = new AsynchronousEventManager(new ArrayList<Object>());
+        AsyncEventHandler asyncHandler = new AsyncEventHandler(new CountDownLatch(0), 1);
+        SyncEventHandler syncHandler = new SyncEventHandler();
+
+        eventManager.addHandler(asyncHandler);
+        eventManager.addHandler(syncHandler);
+
+        eventManager.start();
+
+        try {
+            eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+
+            assertTrue(asyncHandler.delivered.await(5, TimeUnit.SECONDS));
+            assertNotSame(Thread.currentThread(), asyncHandler.thread);
+            assertSame(Thread.currentThread(), syncHandler.thread);
+        } finally {
+            eventManager.stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if events are dropped and counted when the queue is full and the policy is {@link EventOverflowPolicy#DROP}.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDropWhenQueueIsFull() throws Exception {
+        AsynchronousEventManager eventManager = new AsynchronousEventManager(new ArrayList<Object>(), 1, 1,
+                EventOverflowPolicy.DROP);
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncEventHandler handler = new AsyncEventHandler(release, 2);
+
+        eventManager.addHandler(handler);
+
+        eventManager.start();
+
+        try {
+            // the first event is taken by the worker, which blocks. The second fills the queue.
+            eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+            assertTrue(handler.started.await(5, TimeUnit.SECONDS));
+            eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+
+            assertEquals(1, eventManager.getQueueDepth());
+
+            eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+            eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+
+            assertEquals(2, eventManager.getDroppedCount());
+
+            release.countDown();
+
+            assertTrue(handler.delivered.await(5, TimeUnit.SECONDS));
+        } finally {
+            eventManager.stop();
+        }
+
+        assertEquals(0, eventManager.getQueueDepth());
+    }
+
+    /**
+     * <p>
+     * Tests if the caller thread invokes the handler when the queue is full and the policy is
+     * {@link EventOverflowPolicy#CALLER_RUNS}.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCallerRunsWhenQueueIsFull() throws Exception {
+        AsynchronousEventManager eventManager = new AsynchronousEventManager(new ArrayList<Object>(), 1, 1,
+                EventOverflowPolicy.CALLER_RUNS);
+        CountDownLatch blockWorker = new CountDownLatch(1);
+        AsyncEventHandler blockingHandler = new AsyncEventHandler(blockWorker, 1);
+
+        eventManager.addHandler(blockingHandler);
+
+        eventManager.start();
+
+        try {
+            eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+            assertTrue(blockingHandler.started.await(5, TimeUnit.SECONDS));
+
+            // fills the queue
+            eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+
+            // the queue is full, so the handler should run in this thread
+            eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+
+            assertSame(Thread.currentThread(), blockingHandler.thread);
+            assertEquals(0, eventManager.getDroppedCount());
+
+            blockWorker.countDown();
+        } finally {
+            eventManager.stop();
+        }
+
+        assertEquals(3, blockingHandler.count.get());
+    }
+
+    /**
+     * <p>
+     * Tests if {@link AsynchronousEventManager#stop()} waits for a dispatch blocked on a full queue, so its event is still
+     * delivered, and if events raised after the manager is stopped are delivered synchronously.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStopWithBlockedDispatch() throws Exception {
+        final AsynchronousEventManager eventManager = new AsynchronousEventManager(new ArrayList<Object>(), 1, 1,
+                EventOverflowPolicy.BLOCK);
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncEventHandler handler = new AsyncEventHandler(release, 3);
+
+        eventManager.addHandler(handler);
+
+        eventManager.start();
+
+        // the first event is taken by the worker, which blocks. The second fills the queue.
+        eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+        assertTrue(handler.started.await(5, TimeUnit.SECONDS));
+        eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+
+        Thread blockedDispatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+            }
+        });
+
+        blockedDispatcher.start();
+        awaitWaiting(blockedDispatcher);
+
+        Thread stopper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                eventManager.stop();
+            }
+        });
+
+        stopper.start();
+        awaitWaiting(stopper);
+
+        release.countDown();
+
+        stopper.join(5000);
+        blockedDispatcher.join(5000);
+
+        assertTrue(handler.delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(3, handler.count.get());
+        assertEquals(0, eventManager.getDroppedCount());
+
+        eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+
+        assertEquals(4, handler.count.get());
+        assertSame(Thread.currentThread(), handler.thread);
+    }
+
+    /**
+     * <p>
+     * Tests if {@link AsynchronousEventManager#stop()} completes when a queued handler raises an event of a type that was not
+     * raised before, which requires the handlers for that type to be resolved.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStopWhileHandlerRaisesNewEventType() throws Exception {
+        final AsynchronousEventManager eventManager = new AsynchronousEventManager(new ArrayList<Object>(), 1, 1,
+                EventOverflowPolicy.BLOCK);
+        CountDownLatch release = new CountDownLatch(1);
+        RaisingEventHandler handler = new RaisingEventHandler(eventManager, release);
+
+        eventManager.addHandler(handler);
+
+        eventManager.start();
+
+        eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+        assertTrue(handler.started.await(5, TimeUnit.SECONDS));
+
+        Thread stopper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                eventManager.stop();
+            }
+        });
+
+        stopper.start();
+        awaitWaiting(stopper);
+
+        release.countDown();
+
+        stopper.join(5000);
+
+        assertFalse(stopper.isAlive());
+        assertTrue(handler.raised.await(5, TimeUnit.SECONDS));
+        assertTrue(eventManager.stopped());
+    }
+
+    /**
+     * <p>
+     * Tests if the asynchronous event manager is selected by the configuration and started with the {@link PicketBoxManager}.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConfiguration() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.eventManager().asynchronous().workers(1).queueSize(10).overflowPolicy(EventOverflowPolicy.DROP);
+
+        PicketBoxManager picketBoxManager = createManager(builder);
+
+        assertTrue(picketBoxManager.getEventManager() instanceof AsynchronousEventManager);
+
+        AsynchronousEventManager eventManager = (AsynchronousEventManager) picketBoxManager.getEventManager();
+
+        assertTrue(eventManager.started());
+        assertEquals(EventOverflowPolicy.DROP, eventManager.getOverflowPolicy());
+
+        picketBoxManager.stop();
+
+        assertTrue(eventManager.stopped());
+    }
+
+    private void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    /**
+     * <p>
+     * Handler that blocks the first invocation until released.
+     * </p>
+     */
+    public static class AsyncEventHandler {
+
+        private final CountDownLatch release;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch delivered;
+        private volatile Thread thread;
+        private final AtomicInteger count = new AtomicInteger();
+
+        public AsyncEventHandler(CountDownLatch release, int expectedEvents) {
+            this.release = release;
+            this.delivered = new CountDownLatch(expectedEvents);
+        }
+
+        @EventObserver(async = true)
+        public void onSetAttribute(SessionSetAttributeEvent event) throws InterruptedException {
+            // counted before signaling the start, so only the first delivery can wait for the release
+            int current = this.count.incrementAndGet();
+
+            this.thread = Thread.currentThread();
+            this.started.countDown();
+
+            if (current == 1) {
+                this.release.await(5, TimeUnit.SECONDS);
+            }
+
+            this.delivered.countDown();
+        }
+    }
+
+    /**
+     * <p>
+     * Handler that raises a new type of event once released.
+     * </p>
+     */
+    public static class RaisingEventHandler {
+
+        private final AsynchronousEventManager eventManager;
+        private final CountDownLatch release;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch raised = new CountDownLatch(1);
+
+        public RaisingEventHandler(AsynchronousEventManager eventManager, CountDownLatch release) {
+            this.eventManager = eventManager;
+            this.release = release;
+        }
+
+        @EventObserver(async = true)
+        public void onSetAttribute(SessionSetAttributeEvent event) throws InterruptedException {
+            this.started.countDown();
+            this.release.await(5, TimeUnit.SECONDS);
+            this.eventManager.raiseEvent(new SessionGetAttributeEvent(null, "name"));
+            this.raised.countDown();
+        }
+    }
+
+    public static class SyncEventHandler {
+
+        private volatile Thread thread;
+
+        @EventObserver
+        public void onSetAttribute(SessionSetAttributeEvent event) {
+            this.thread = Thread.currentThread();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.event;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.picketbox.core.event.DefaultEventManager;
+import org.picketbox.core.event.EventObserver;
+import org.picketbox.core.event.PicketBoxEventManager;
+import org.picketbox.core.session.event.AbstractSessionEvent;
+import org.picketbox.core.session.event.SessionSetAttributeEvent;
+import org.picketbox.core.session.event.SessionTouchedEvent;
+
+/**
+ * <p>
+ * Tests the dispatch of events to handlers observing the event type or any of its supertypes.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class EventDispatchTestCase {
+
+    /**
+     * <p>
+     * Tests if handlers observing superclasses and interfaces of an event are invoked.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDispatchToSupertypes() throws Exception {
+        PicketBoxEventManager eventManager = new DefaultEventManager(new ArrayList<Object>());
+        HierarchyEventHandler handler = new HierarchyEventHandler();
+
+        eventManager.addHandler(handler);
+
+        eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+
+        assertEquals(1, handler.exactCount);
+        assertEquals(1, handler.superclassCount);
+        assertEquals(1, handler.objectCount);
+
+        eventManager.raiseEvent(new SerializableEvent());
+
+        assertEquals(1, handler.exactCount);
+        assertEquals(1, handler.superclassCount);
+        assertEquals(2, handler.objectCount);
+        assertEquals(1, handler.interfaceCount);
+    }
+
+    /**
+     * <p>
+     * Tests if handlers added after an event type was already dispatched are also invoked.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testHandlerAddedAfterDispatch() throws Exception {
+        PicketBoxEventManager eventManager = new DefaultEventManager(new ArrayList<Object>());
+
+        assertFalse(eventManager.hasObservers(SessionTouchedEvent.class));
+
+        eventManager.raiseEvent(new SessionTouchedEvent(null));
+
+        HierarchyEventHandler handler = new HierarchyEventHandler();
+
+        eventManager.addHandler(handler);
+
+        assertTrue(eventManager.hasObservers(SessionTouchedEvent.class));
+
+        eventManager.raiseEvent(new SessionTouchedEvent(null));
+
+        assertEquals(1, handler.superclassCount);
+    }
+
+    /**
+     * <p>
+     * Tests if an exception thrown by a handler does not prevent the other handlers from being invoked.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFailingHandlerDoesNotStopDispatch() throws Exception {
+        PicketBoxEventManager eventManager = new DefaultEventManager(new ArrayList<Object>());
+        HierarchyEventHandler handler = new HierarchyEventHandler();
+
+        eventManager.addHandler(new FailingEventHandler());
+        eventManager.addHandler(handler);
+
+        eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+
+        assertEquals(1, handler.exactCount);
+    }
+
+    public static class SerializableEvent implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    public static class HierarchyEventHandler {
+
+        private int exactCount;
+        private int superclassCount;
+        private int interfaceCount;
+        private int objectCount;
+
+        @EventObserver
+        public void onSetAttribute(SessionSetAttributeEvent event) {
+            this.exactCount++;
+        }
+
+        @EventObserver
+        public void onSessionEvent(AbstractSessionEvent event) {
+            this.superclassCount++;
+        }
+
+        @EventObserver
+        public void onSerializable(Serializable event) {
+            this.interfaceCount++;
+        }
+
+        @EventObserver
+        public void onEvent(Object event) {
+            this.objectCount++;
+        }
+    }
+
+    public static class FailingEventHandler {
+
+        @EventObserver
+        public void onSetAttribute(SessionSetAttributeEvent event) {
+            throw new IllegalStateException("failing handler");
+        }
+    }
+}
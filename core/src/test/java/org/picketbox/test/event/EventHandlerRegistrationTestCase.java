@@ -0,0 +1,176 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.event;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.event.DefaultEventManager;
+import org.picketbox.core.event.EventObserver;
+import org.picketbox.core.event.PicketBoxEventManager;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionManager;
+import org.picketbox.core.session.event.SessionSetAttributeEvent;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+
+/**
+ * <p>
+ * Tests that event handlers are registered only once, no matter how many times they are added or how many sessions are
+ * created.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class EventHandlerRegistrationTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if adding the same handler instance more than once has no effect.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAddHandlerIsIdempotent() throws Exception {
+        PicketBoxEventManager eventManager = new DefaultEventManager(new ArrayList<Object>());
+        CountingEventHandler handler = new CountingEventHandler();
+
+        eventManager.addHandler(handler);
+        eventManager.addHandler(handler);
+        eventManager.addHandler(handler);
+
+        eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+
+        assertEquals(1, handler.getCount());
+    }
+
+    /**
+     * <p>
+     * Tests if a removed handler is no longer notified, while the other handlers still are.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRemoveHandler() throws Exception {
+        PicketBoxEventManager eventManager = new DefaultEventManager(new ArrayList<Object>());
+        CountingEventHandler removedHandler = new CountingEventHandler();
+        CountingEventHandler handler = new CountingEventHandler();
+
+        eventManager.addHandler(removedHandler);
+        eventManager.addHandler(handler);
+
+        eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+
+        eventManager.removeHandler(removedHandler);
+        eventManager.removeHandler(removedHandler);
+
+        eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+
+        assertEquals(1, removedHandler.getCount());
+        assertEquals(2, handler.getCount());
+
+        eventManager.removeHandler(handler);
+
+        assertFalse(eventManager.hasObservers(SessionSetAttributeEvent.class));
+
+        // a removed handler can be added again
+        eventManager.addHandler(removedHandler);
+        eventManager.raiseEvent(new SessionSetAttributeEvent(null, "name", "value"));
+
+        assertEquals(2, removedHandler.getCount());
+    }
+
+    /**
+     * <p>
+     * Tests if the number of handlers invoked for a session attribute change stays the same after many logins and after the
+     * session manager is restarted.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDispatchStaysFlatAfterManyLogins() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+        CountingEventHandler handler = new CountingEventHandler();
+
+        builder.sessionManager().inMemorySessionStore().eventManager().handler(handler);
+
+        PicketBoxManager picketBoxManager = createManager(builder);
+        SessionManager sessionManager = picketBoxManager.getSessionManager();
+
+        PicketBoxSession session = createSession(sessionManager);
+
+        session.setAttribute("name", "value");
+
+        assertEquals(1, handler.getCount());
+
+        for (int i = 0; i < 100000; i++) {
+            createSession(sessionManager);
+        }
+
+        sessionManager.stop();
+        sessionManager.start();
+
+        session = createSession(sessionManager);
+
+        session.setAttribute("name", "value");
+
+        assertEquals(2, handler.getCount());
+    }
+
+    private PicketBoxSession createSession(SessionManager sessionManager) {
+        UserContext subject = new UserContext() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean isAuthenticated() {
+                return true;
+            }
+        };
+
+        return sessionManager.create(subject);
+    }
+
+    public static class CountingEventHandler {
+
+        private int count;
+
+        @EventObserver
+        public void onSetAttribute(SessionSetAttributeEvent event) {
+            this.count++;
+        }
+
+        public int getCount() {
+            return this.count;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.identity;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.identity.impl.CachingUserContextPopulator;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.model.SimpleRole;
+
+/**
+ * <p>
+ * Tests the {@link CachingUserContextPopulator}.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class CachingUserContextPopulatorTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if the user information is loaded once and reused by subsequent logins.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCachedIdentity() throws Exception {
+        CachingUserContextPopulator populator = new CachingUserContextPopulator();
+        PicketBoxManager picketBoxManager = createManager(populator);
+
+        UserContext authenticatedUser = authenticate(picketBoxManager);
+
+        assertRoles(authenticatedUser);
+        assertGroups(authenticatedUser);
+        assertEquals(1, populator.getMissCount());
+        assertEquals(1, populator.getSize());
+
+        authenticatedUser = authenticate(picketBoxManager);
+
+        assertRoles(authenticatedUser);
+        assertGroups(authenticatedUser);
+        assertEquals("admin", authenticatedUser.getUser().getLoginName());
+        assertEquals(1, populator.getHitCount());
+    }
+
+    /**
+     * <p>
+     * Tests if membership changes evict the cached information.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEvictionOnMembershipChange() throws Exception {
+        CachingUserContextPopulator populator = new CachingUserContextPopulator();
+        PicketBoxManager picketBoxManager = createManager(populator);
+        IdentityManager identityManager = picketBoxManager.getIdentityManager();
+
+        assertFalse(authenticate(picketBoxManager).hasRole("manager"));
+        assertEquals(1, populator.getSize());
+
+        SimpleRole manager = new SimpleRole("manager");
+
+        identityManager.add(manager);
+        identityManager.grantRole(identityManager.getUser("admin"), manager);
+
+        assertEquals(0, populator.getSize());
+        assertTrue(authenticate(picketBoxManager).hasRole("manager"));
+        assertEquals(2, populator.getMissCount());
+    }
+
+    /**
+     * <p>
+     * Tests if membership changes of groups evict all the cached information.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEvictionOnGroupMembershipChange() throws Exception {
+        CachingUserContextPopulator populator = new CachingUserContextPopulator();
+        PicketBoxManager picketBoxManager = createManager(populator);
+        IdentityManager identityManager = picketBoxManager.getIdentityManager();
+
+        authenticate(picketBoxManager);
+
+        assertEquals(1, populator.getSize());
+
+        SimpleRole manager = new SimpleRole("manager");
+
+        identityManager.add(manager);
+        identityManager.grantRole(identityManager.getGroup("PicketBox Group"), manager);
+
+        assertEquals(0, populator.getSize());
+    }
+
+    /**
+     * <p>
+     * Tests if expired entries are loaded again.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExpiration() throws Exception {
+        CachingUserContextPopulator populator = new CachingUserContextPopulator(10, 50);
+        PicketBoxManager picketBoxManager = createManager(populator);
+
+        authenticate(picketBoxManager);
+
+        Thread.sleep(100);
+
+        assertRoles(authenticate(picketBoxManager));
+        assertEquals(0, populator.getHitCount());
+        assertEquals(2, populator.getMissCount());
+    }
+
+    private PicketBoxManager createManager(CachingUserContextPopulator populator) {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.identityManager().userPopulator(populator);
+
+        return createManager(builder);
+    }
+
+    private UserContext authenticate(PicketBoxManager picketBoxManager) throws Exception {
+        UserContext authenticatingUser = new UserContext();
+
+        authenticatingUser.setCredential(new UsernamePasswordCredential("admin", "admin"));
+
+        UserContext authenticatedUser = picketBoxManager.authenticate(authenticatingUser);
+
+        assertTrue(authenticatedUser.isAuthenticated());
+
+        return authenticatedUser;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.nonce;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import org.junit.Test;
+import org.picketbox.core.nonce.HMACNonceGenerator;
+import org.picketbox.core.nonce.NonceReplayFilter;
+import org.picketbox.core.nonce.NonceStatus;
+import org.picketbox.core.nonce.StatelessNonceStore;
+
+/**
+ * <p>
+ * Tests the {@link HMACNonceGenerator} and the {@link StatelessNonceStore}.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class HMACNonceGeneratorTestCase {
+
+    private static final byte[] SECRET = "a shared secret for all the nodes".getBytes();
+
+    private static final long MAX_VALID = 60 * 1000;
+
+    @Test
+    public void testVerify() throws Exception {
+        HMACNonceGenerator nonceGenerator = new HMACNonceGenerator(SECRET);
+        String nonce = nonceGenerator.get();
+
+        assertEquals(NonceStatus.VALID, nonceGenerator.verify(nonce, MAX_VALID));
+        assertFalse(nonceGenerator.hasExpired(nonce, MAX_VALID));
+        assertFalse(nonce.equals(nonceGenerator.get()));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        HMACNonceGenerator nonceGenerator = new HMACNonceGenerator(SECRET);
+        String nonce = nonceGenerator.get();
+
+        Thread.sleep(20);
+
+        assertEquals(NonceStatus.STALE, nonceGenerator.verify(nonce, 1));
+        assertTrue(nonceGenerator.hasExpired(nonce, 1));
+    }
+
+    @Test
+    public void testSharedSecret() throws Exception {
+        HMACNonceGenerator node1 = new HMACNonceGenerator(SECRET);
+        HMACNonceGenerator node2 = new HMACNonceGenerator(SECRET);
+        HMACNonceGenerator otherCluster = new HMACNonceGenerator("a different secret for other nodes".getBytes());
+
+        String nonce = node1.get();
+
+        assertEquals(NonceStatus.VALID, node2.verify(nonce, MAX_VALID));
+        assertEquals(NonceStatus.INVALID, otherCluster.verify(nonce, MAX_VALID));
+    }
+
+    @Test
+    public void testTamperedNonce() throws Exception {
+        HMACNonceGenerator nonceGenerator = new HMACNonceGenerator(SECRET);
+        String nonce = nonceGenerator.get();
+
+        for (int i = 0; i < nonce.length(); i++) {
+            char replacement = nonce.charAt(i) == 'A' ? 'B' : 'A';
+            String tampered = nonce.substring(0, i) + replacement + nonce.substring(i + 1);
+
+            assertEquals(NonceStatus.INVALID, nonceGenerator.verify(tampered, MAX_VALID));
+        }
+
+        assertEquals(NonceStatus.INVALID, nonceGenerator.verify(nonce + "=", MAX_VALID));
+        assertEquals(NonceStatus.INVALID, nonceGenerator.verify(nonce.substring(1), MAX_VALID));
+        assertEquals(NonceStatus.INVALID, nonceGenerator.verify("not a nonce", MAX_VALID));
+        assertEquals(NonceStatus.INVALID, nonceGenerator.verify(null, MAX_VALID));
+        assertTrue(nonceGenerator.hasExpired("not a nonce", MAX_VALID));
+    }
+
+    @Test
+    public void testKeyRotation() throws Exception {
+        HMACNonceGenerator nonceGenerator = new HMACNonceGenerator(SECRET, 10);
+        String nonce = nonceGenerator.get();
+
+        // a few keys later the nonce is still verified with the key of its own interval
+        Thread.sleep(50);
+
+        nonceGenerator.get();
+
+        assertEquals(NonceStatus.VALID, nonceGenerator.verify(nonce, MAX_VALID));
+        assertEquals(NonceStatus.VALID, new HMACNonceGenerator(SECRET, 10).verify(nonce, MAX_VALID));
+        assertEquals(NonceStatus.INVALID, new HMACNonceGenerator(SECRET, 20).verify(nonceGenerator.get(), MAX_VALID));
+    }
+
+    @Test
+    public void testStatelessNonceStore() throws Exception {
+        HMACNonceGenerator nonceGenerator = new HMACNonceGenerator(SECRET);
+        StatelessNonceStore store = new StatelessNonceStore(nonceGenerator, MAX_VALID);
+        String nonce = nonceGenerator.get();
+
+        // the scope is irrelevant, any node validates the nonce
+        assertEquals(NonceStatus.VALID, store.validate("session1", nonce));
+        assertEquals(NonceStatus.VALID, store.validate("session2", nonce));
+        assertTrue(store.acceptNonceCount("session1", nonce, 1));
+        assertTrue(store.acceptNonceCount("session1", nonce, 1));
+        assertFalse(store.acceptNonceCount("session1", "forged", 1));
+    }
+
+    @Test
+    public void testReplayFilter() throws Exception {
+        HMACNonceGenerator nonceGenerator = new HMACNonceGenerator(SECRET);
+        StatelessNonceStore store = new StatelessNonceStore(nonceGenerator, MAX_VALID, new NonceReplayFilter(MAX_VALID));
+        String nonce = nonceGenerator.get();
+
+        assertTrue(store.acceptNonceCount("session1", nonce, 1));
+        assertFalse(store.acceptNonceCount("session1", nonce, 1));
+        assertTrue(store.acceptNonceCount("session1", nonce, 2));
+        assertTrue(store.acceptNonceCount("session1", nonceGenerator.get(), 1));
+    }
+
+    @Test
+    public void testReplayFilterWindow() throws Exception {
+        NonceReplayFilter replayFilter = new NonceReplayFilter(20);
+
+        assertTrue(replayFilter.firstUse("nonce:1"));
+        assertFalse(replayFilter.firstUse("nonce:1"));
+
+        // values are forgotten after two windows
+        Thread.sleep(60);
+
+        assertTrue(replayFilter.firstUse("nonce:1"));
+    }
+
+    @Test
+    public void testReplayFilterFalsePositives() throws Exception {
+        NonceReplayFilter replayFilter = new NonceReplayFilter(MAX_VALID, 10000, 0.001);
+        int falsePositives = 0;
+
+        for (int i = 0; i < 10000; i++) {
+            if (!replayFilter.firstUse("nonce" + i + ":1")) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue("Too many false positives: " + falsePositives, falsePositives < 100);
+    }
+}
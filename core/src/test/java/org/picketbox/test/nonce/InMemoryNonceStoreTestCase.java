@@ -0,0 +1,213 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.nonce;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.picketbox.core.nonce.InMemoryNonceStore;
+import org.picketbox.core.nonce.NonceStatus;
+import org.picketbox.core.nonce.UUIDNonceGenerator;
+
+/**
+ * <p>
+ * Tests the {@link InMemoryNonceStore}.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class InMemoryNonceStoreTestCase {
+
+    private static final long MAX_VALID = 60 * 1000;
+
+    @Test
+    public void testValidate() throws Exception {
+        InMemoryNonceStore store = new InMemoryNonceStore();
+
+        store.store("session1", "nonce1", MAX_VALID);
+
+        assertEquals(NonceStatus.VALID, store.validate("session1", "nonce1"));
+        assertEquals(NonceStatus.INVALID, store.validate("session1", "nonce2"));
+        assertEquals(NonceStatus.INVALID, store.validate("session2", "nonce1"));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        InMemoryNonceStore store = new InMemoryNonceStore();
+
+        store.store("session1", "nonce1", 50);
+
+        Thread.sleep(80);
+
+        assertEquals(NonceStatus.STALE, store.validate("session1", "nonce1"));
+        assertFalse(store.acceptNonceCount("session1", "nonce1", 1));
+
+        Thread.sleep(50);
+
+        assertEquals(NonceStatus.INVALID, store.validate("session1", "nonce1"));
+
+        store.purgeExpired();
+
+        assertEquals(0, store.getScopeCount());
+    }
+
+    @Test
+    public void testNonceCountReplay() throws Exception {
+        InMemoryNonceStore store = new InMemoryNonceStore();
+
+        store.store("session1", "nonce1", MAX_VALID);
+
+        assertTrue(store.acceptNonceCount("session1", "nonce1", 1));
+        assertFalse(store.acceptNonceCount("session1", "nonce1", 1));
+        assertTrue(store.acceptNonceCount("session1", "nonce1", 3));
+        assertFalse(store.acceptNonceCount("session1", "nonce1", 2));
+        assertFalse(store.acceptNonceCount("session1", "unknown", 1));
+    }
+
+    @Test
+    public void testMaxNoncesPerScope() throws Exception {
+        InMemoryNonceStore store = new InMemoryNonceStore(4);
+
+        for (int i = 0; i < 10; i++) {
+            store.store("session1", "nonce" + i, MAX_VALID);
+        }
+
+        assertEquals(4, store.getNonceCount("session1"));
+
+        // the oldest nonces are discarded first
+        assertEquals(NonceStatus.INVALID, store.validate("session1", "nonce5"));
+        assertEquals(NonceStatus.VALID, store.validate("session1", "nonce6"));
+        assertEquals(NonceStatus.VALID, store.validate("session1", "nonce9"));
+    }
+
+    @Test
+    public void testRemoveScope() throws Exception {
+        InMemoryNonceStore store = new InMemoryNonceStore();
+
+        store.store("session1", "nonce1", MAX_VALID);
+        store.store("session2", "nonce2", MAX_VALID);
+
+        store.remove("session1");
+
+        assertEquals(NonceStatus.INVALID, store.validate("session1", "nonce1"));
+        assertEquals(NonceStatus.VALID, store.validate("session2", "nonce2"));
+        assertEquals(1, store.getScopeCount());
+
+        store.store("session1", "nonce3", MAX_VALID);
+
+        assertEquals(NonceStatus.VALID, store.validate("session1", "nonce3"));
+    }
+
+    /**
+     * <p>
+     * Tests if the store keeps consistent and bounded when nonces are stored, validated and removed concurrently.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final InMemoryNonceStore store = new InMemoryNonceStore(8);
+        final UUIDNonceGenerator nonceGenerator = new UUIDNonceGenerator();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicInteger acceptedCounts = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+
+        // every session is shared by two threads
+        final int threadCount = 8;
+        final int sessionCount = threadCount / 2 * 8;
+
+        for (int i = 0; i < threadCount; i++) {
+            final int threadIndex = i;
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        latch.await();
+
+                        for (int j = 0; j < 5000; j++) {
+                            String scope = "session" + (threadIndex / 2 * 8 + j % 8);
+                            String nonce = nonceGenerator.get();
+
+                            store.store(scope, nonce, MAX_VALID);
+
+                            NonceStatus status = store.validate(scope, nonce);
+
+                            if (status == NonceStatus.STALE) {
+                                throw new IllegalStateException("Nonce expired too early.");
+                            }
+
+                            // the same nonce count can only be accepted once, whatever the thread
+                            if (store.acceptNonceCount(scope, nonce, 1)) {
+                                acceptedCounts.incrementAndGet();
+                            }
+
+                            if (store.acceptNonceCount(scope, nonce, 1)) {
+                                throw new IllegalStateException("Nonce count accepted twice.");
+                            }
+
+                            if (j % 100 == 0) {
+                                store.remove(scope);
+                            }
+
+                            if (store.getNonceCount(scope) > 8) {
+                                throw new IllegalStateException("Too many nonces for scope " + scope);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            });
+
+            thread.start();
+            threads.add(thread);
+        }
+
+        latch.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertTrue(acceptedCounts.get() > 0);
+        assertTrue(store.getScopeCount() <= sessionCount);
+
+        for (int i = 0; i < sessionCount; i++) {
+            assertTrue(store.getNonceCount("session" + i) <= 8);
+        }
+    }
+}
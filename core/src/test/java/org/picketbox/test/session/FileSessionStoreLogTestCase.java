@@ -0,0 +1,173 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.session.DefaultSessionId;
+import org.picketbox.core.session.FileSessionStore;
+import org.picketbox.core.session.PicketBoxSession;
+
+/**
+ * <p>
+ * Tests how the {@link FileSessionStore} restores sessions from its log.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class FileSessionStoreLogTestCase {
+
+    private File directory;
+    private String fileName;
+
+    @Before
+    public void onSetup() throws Exception {
+        this.directory = File.createTempFile("pbox-sessions", "");
+        this.directory.delete();
+        this.directory.mkdirs();
+        this.fileName = new File(this.directory, "sessions.dat").getPath();
+    }
+
+    @After
+    public void onFinish() throws Exception {
+        for (File file : this.directory.listFiles()) {
+            file.delete();
+        }
+
+        this.directory.delete();
+    }
+
+    /**
+     * <p>
+     * Tests if stored, updated and removed sessions are restored after a restart.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRestoreAfterRestart() throws Exception {
+        FileSessionStore store = new FileSessionStore(this.fileName);
+
+        store.start();
+
+        PicketBoxSession kept = createSession();
+        PicketBoxSession removed = createSession();
+
+        store.store(kept);
+        store.store(removed);
+        store.remove(removed.getId());
+
+        store.stop();
+
+        FileSessionStore restoredStore = new FileSessionStore(this.fileName);
+
+        assertEquals(1, restoredStore.getSize());
+        assertNotNull(restoredStore.load(kept.getId()));
+        assertNull(restoredStore.load(removed.getId()));
+    }
+
+    /**
+     * <p>
+     * Tests if many sessions are restored after the log is split into segments and compacted.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRestoreAfterCompaction() throws Exception {
+        int sessionCount = 10000;
+        FileSessionStore store = new FileSessionStore(this.fileName, 64, 64 * 1024, 2);
+
+        store.start();
+
+        for (int i = 0; i < sessionCount; i++) {
+            PicketBoxSession session = createSession();
+
+            store.store(session);
+
+            if (i % 2 == 0) {
+                store.remove(session.getId());
+            }
+        }
+
+        store.stop();
+
+        FileSessionStore restoredStore = new FileSessionStore(this.fileName, 64, 64 * 1024, 2);
+
+        assertEquals(sessionCount / 2, restoredStore.getSize());
+        assertTrue(new File(this.fileName).exists());
+    }
+
+    /**
+     * <p>
+     * Tests if an incomplete record at the end of the log, like the one left by a crash, is discarded.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDiscardIncompleteRecord() throws Exception {
+        FileSessionStore store = new FileSessionStore(this.fileName);
+
+        store.start();
+
+        PicketBoxSession session = createSession();
+
+        store.store(session);
+        store.store(createSession());
+
+        store.stop();
+
+        File segment = new File(this.fileName + ".1");
+
+        assertTrue(segment.exists());
+
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+
+        try {
+            raf.setLength(raf.length() - 10);
+        } finally {
+            raf.close();
+        }
+
+        FileSessionStore restoredStore = new FileSessionStore(this.fileName);
+
+        assertEquals(1, restoredStore.getSize());
+        assertNotNull(restoredStore.load(session.getId()));
+    }
+
+    private PicketBoxSession createSession() {
+        return new PicketBoxSession(new UserContext(), new DefaultSessionId());
+    }
+}
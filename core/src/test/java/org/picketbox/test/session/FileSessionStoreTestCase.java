@@ -78,5 +78,12 @@ public class FileSessionStoreTestCase {
         assertTrue(file.exists());
         file.delete();
         assertFalse(file.exists());
+
+        // removes the log segments
+        for (File segment : new File(".").getAbsoluteFile().listFiles()) {
+            if (segment.getName().startsWith("PBOXSESSION.DAT.")) {
+                segment.delete();
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,264 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.session.DefaultSessionId;
+import org.picketbox.core.session.InMemorySessionStore;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionManager;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+
+/**
+ * <p>
+ * Tests the bounded {@link InMemorySessionStore}.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class InMemorySessionStoreTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    private SessionManager sessionManager;
+    private InMemorySessionStore sessionStore;
+    private MockSessionEventHandler eventHandler;
+
+    @Before
+    public void onSetup() {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        this.eventHandler = new MockSessionEventHandler();
+
+        builder.sessionManager().inMemorySessionStore(2, 1).eventManager().handler(this.eventHandler);
+
+        PicketBoxManager picketBoxManager = createManager(builder);
+
+        this.sessionManager = picketBoxManager.getSessionManager();
+        this.sessionStore = (InMemorySessionStore) picketBoxManager.getConfiguration().getSessionManager().getStore();
+    }
+
+    /**
+     * <p>
+     * Tests if the least recently used session is evicted and expired when the store is full.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEviction() throws Exception {
+        PicketBoxSession firstSession = createSession();
+        PicketBoxSession secondSession = createSession();
+
+        assertNotNull(this.sessionManager.retrieve(firstSession.getId()));
+
+        PicketBoxSession thirdSession = createSession();
+
+        assertEquals(2, this.sessionStore.getSize());
+        assertEquals(1, this.sessionStore.getEvictionCount());
+
+        assertFalse(secondSession.isValid());
+        assertTrue(this.eventHandler.onExpirationCalled);
+        assertNull(this.sessionManager.retrieve(secondSession.getId()));
+
+        assertTrue(firstSession.isValid());
+        assertTrue(thirdSession.isValid());
+    }
+
+    /**
+     * <p>
+     * Tests if the maximum number of sessions is enforced for the whole store, regardless of how sessions are distributed
+     * among the shards.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBoundWithManyShards() throws Exception {
+        InMemorySessionStore store = new InMemorySessionStore(100, 16);
+
+        store.start();
+
+        for (int i = 0; i < 100; i++) {
+            store.store(new PicketBoxSession(new DefaultSessionId()));
+        }
+
+        assertEquals(100, store.getSize());
+        assertEquals(0, store.getEvictionCount());
+
+        for (int i = 0; i < 50; i++) {
+            store.store(new PicketBoxSession(new DefaultSessionId()));
+        }
+
+        assertEquals(100, store.getSize());
+        assertEquals(50, store.getEvictionCount());
+        assertEquals(100, store.getSessions().size());
+
+        store.stop();
+    }
+
+    /**
+     * <p>
+     * Tests if the least recently used session of the whole store is evicted, not the one from the shard receiving the new
+     * session.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEvictionAcrossShards() throws Exception {
+        InMemorySessionStore store = new InMemorySessionStore(4, 4);
+        List<PicketBoxSession> sessions = new ArrayList<PicketBoxSession>();
+
+        store.start();
+
+        for (int i = 0; i < 4; i++) {
+            PicketBoxSession session = new PicketBoxSession(new DefaultSessionId());
+
+            sessions.add(session);
+            store.store(session);
+            Thread.sleep(2);
+        }
+
+        // the second session becomes the least recently used
+        assertNotNull(store.load(sessions.get(0).getId()));
+
+        store.store(new PicketBoxSession(new DefaultSessionId()));
+
+        assertEquals(4, store.getSize());
+        assertNull(store.load(sessions.get(1).getId()));
+        assertNotNull(store.load(sessions.get(0).getId()));
+        assertNotNull(store.load(sessions.get(2).getId()));
+        assertNotNull(store.load(sessions.get(3).getId()));
+
+        store.stop();
+    }
+
+    /**
+     * <p>
+     * Tests the hit and miss counters.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStatistics() throws Exception {
+        PicketBoxSession session = createSession();
+
+        long hitCount = this.sessionStore.getHitCount();
+        long missCount = this.sessionStore.getMissCount();
+
+        this.sessionStore.load(session.getId());
+        this.sessionStore.load(new DefaultSessionId());
+
+        assertEquals(hitCount + 1, this.sessionStore.getHitCount());
+        assertEquals(missCount + 1, this.sessionStore.getMissCount());
+    }
+
+    /**
+     * <p>
+     * Tests if the store keeps consistent when accessed concurrently.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final InMemorySessionStore store = new InMemorySessionStore(1000, 16);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+
+        store.start();
+
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        latch.await();
+
+                        for (int j = 0; j < 2000; j++) {
+                            PicketBoxSession session = new PicketBoxSession(new DefaultSessionId());
+
+                            store.store(session);
+                            store.load(session.getId());
+
+                            if (j % 2 == 0) {
+                                store.remove(session.getId());
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            });
+
+            thread.start();
+            threads.add(thread);
+        }
+
+        latch.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertTrue(store.getSize() <= 1000);
+        assertTrue(store.getEvictionCount() >= 8 * 1000 - store.getSize());
+
+        store.stop();
+
+        assertEquals(0, store.getSize());
+    }
+
+    private PicketBoxSession createSession() {
+        UserContext subject = new UserContext() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean isAuthenticated() {
+                return true;
+            }
+        };
+
+        return this.sessionManager.create(subject);
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.session.DefaultSessionId;
+import org.picketbox.core.session.OffHeapSessionStore;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionManager;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+
+/**
+ * <p>
+ * Tests the {@link OffHeapSessionStore}.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class OffHeapSessionStoreTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if sessions evicted from the on-heap cache are serialized with their latest state.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEvictedSessionsAreWrittenBack() throws Exception {
+        OffHeapSessionStore store = new OffHeapSessionStore(1024 * 1024, 2);
+
+        store.start();
+
+        PicketBoxSession session = createSession();
+
+        store.store(session);
+
+        session.setApplicationStateAttributes("name", "value");
+
+        // pushes the first session out of the cache
+        store.store(createSession());
+        store.store(createSession());
+
+        PicketBoxSession loadedSession = store.load(session.getId());
+
+        assertNotNull(loadedSession);
+        assertFalse(session == loadedSession);
+        assertEquals("value", loadedSession.getApplicationStateAttributes("name"));
+        assertEquals(3, store.getSize());
+        assertEquals(3, store.getSessions().size());
+
+        store.stop();
+    }
+
+    /**
+     * <p>
+     * Tests if the memory used by removed sessions is reused.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMemoryIsReused() throws Exception {
+        OffHeapSessionStore store = new OffHeapSessionStore(null, 64 * 1024, 1, 512, 64 * 1024);
+
+        store.start();
+
+        for (int i = 0; i < 10000; i++) {
+            PicketBoxSession session = createSession();
+
+            store.store(session);
+
+            assertNotNull(store.load(session.getId()));
+
+            store.remove(session.getId());
+
+            assertNull(store.load(session.getId()));
+        }
+
+        assertEquals(0, store.getSize());
+        assertEquals(0, store.getUsedMemory());
+
+        store.stop();
+    }
+
+    /**
+     * <p>
+     * Tests if the store fails when there is no memory left.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testStoreIsFull() throws Exception {
+        OffHeapSessionStore store = new OffHeapSessionStore(null, 4 * 1024, 1, 512, 4 * 1024);
+
+        store.start();
+
+        try {
+            for (int i = 0; i < 1000; i++) {
+                store.store(createSession());
+            }
+        } finally {
+            store.stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if the on-heap cache can not be disabled. Sessions accessed through instances that are not cached would be
+     * expired while in use.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testHotCacheIsRequired() throws Exception {
+        new OffHeapSessionStore(1024 * 1024, 0);
+    }
+
+    /**
+     * <p>
+     * Tests if sessions are properly stored in a memory-mapped file.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMemoryMappedFile() throws Exception {
+        File file = File.createTempFile("pbox-sessions", ".slab");
+        OffHeapSessionStore store = new OffHeapSessionStore(file.getPath(), 1024 * 1024, 1);
+
+        store.start();
+
+        PicketBoxSession session = createSession();
+
+        store.store(session);
+
+        assertTrue(file.length() > 0);
+        assertNotNull(store.load(session.getId()));
+
+        store.stop();
+
+        assertFalse(file.exists());
+    }
+
+    /**
+     * <p>
+     * Tests if the store can be used by the session manager.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSessionManager() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().store(new OffHeapSessionStore());
+
+        PicketBoxManager picketBoxManager = createManager(builder);
+        SessionManager sessionManager = picketBoxManager.getSessionManager();
+
+        PicketBoxSession session = sessionManager.create(new AuthenticatedUserContext());
+
+        assertNotNull(sessionManager.retrieve(session.getId()));
+
+        sessionManager.remove(session);
+
+        assertNull(sessionManager.retrieve(session.getId()));
+    }
+
+    private PicketBoxSession createSession() {
+        return new PicketBoxSession(new UserContext(), new DefaultSessionId());
+    }
+
+    /**
+     * <p>
+     * Serializable {@link UserContext}. Anonymous classes would also serialize the test instance.
+     * </p>
+     */
+    public static class AuthenticatedUserContext extends UserContext {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean isAuthenticated() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+import org.picketbox.core.session.PicketBoxSession;
+
+/**
+ * <p>
+ * Tests the serialization of {@link PicketBoxSession} instances.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class PicketBoxSessionSerializationTestCase {
+
+    private static final long TIMEOUT = 60000;
+
+    @Test
+    public void testLastAccessedTimeIsKept() throws Exception {
+        PicketBoxSession session = new PicketBoxSession();
+
+        PicketBoxSession deserialized = copy(session);
+
+        assertEquals(session.getLastAccessedTime(), deserialized.getLastAccessedTime());
+    }
+
+    /**
+     * <p>
+     * Sessions serialized before the last access time was tracked are read with a zero value and must not be expired.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSessionWithoutLastAccessedTime() throws Exception {
+        PicketBoxSession session = new PicketBoxSession();
+
+        Field lastAccessedTime = PicketBoxSession.class.getDeclaredField("lastAccessedTime");
+
+        lastAccessedTime.setAccessible(true);
+        lastAccessedTime.setLong(session, 0);
+
+        assertTrue(session.isExpired(TIMEOUT));
+
+        long before = System.currentTimeMillis();
+        PicketBoxSession deserialized = copy(session);
+
+        assertTrue(deserialized.getLastAccessedTime() >= before);
+        assertFalse(deserialized.isExpired(TIMEOUT));
+    }
+
+    private PicketBoxSession copy(PicketBoxSession session) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+
+        out.writeObject(session);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+
+        try {
+            return (PicketBoxSession) in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.session.CompactSessionId;
+import org.picketbox.core.session.DefaultSessionId;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SecureRandomSessionIdGenerator;
+import org.picketbox.core.session.SessionId;
+import org.picketbox.core.session.SessionIdGenerator;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+
+/**
+ * <p>
+ * Tests the {@link CompactSessionId} and the {@link SessionIdGenerator} configuration.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class SessionIdTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if identifiers are encoded as 22 URL-safe characters and properly decoded.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEncoding() throws Exception {
+        SecureRandomSessionIdGenerator generator = new SecureRandomSessionIdGenerator();
+
+        for (int i = 0; i < 10000; i++) {
+            CompactSessionId id = generator.generate();
+            String encoded = id.toString();
+
+            assertEquals(22, encoded.length());
+            assertTrue(encoded.matches("[A-Za-z0-9_-]+"));
+            assertEquals(id, CompactSessionId.decode(encoded));
+            assertEquals(id.hashCode(), CompactSessionId.decode(encoded).hashCode());
+        }
+
+        assertEquals("AAAAAAAAAAAAAAAAAAAAAA", new CompactSessionId(0, 0).toString());
+        assertEquals("_____________________w", new CompactSessionId(-1, -1).toString());
+    }
+
+    /**
+     * <p>
+     * Tests if invalid encoded identifiers are rejected.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInvalidEncoding() throws Exception {
+        String[] invalidIds = new String[] { null, "", "AAAA", "AAAAAAAAAAAAAAAAAAAAA=", "AAAAAAAAAAAAAAAAAAAAA_" };
+
+        for (String invalidId : invalidIds) {
+            try {
+                CompactSessionId.decode(invalidId);
+                fail("Expected invalid id: " + invalidId);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if concurrent threads never get the same identifier.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentGeneration() throws Exception {
+        final SecureRandomSessionIdGenerator generator = new SecureRandomSessionIdGenerator();
+        final Set<CompactSessionId> ids = Collections.newSetFromMap(new ConcurrentHashMap<CompactSessionId, Boolean>());
+        final int threadCount = 8;
+        final int idsPerThread = 10000;
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < idsPerThread; j++) {
+                            ids.add(generator.generate());
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals(threadCount * idsPerThread, ids.size());
+    }
+
+    /**
+     * <p>
+     * Tests if the session manager uses the configured {@link SessionIdGenerator}, and the {@link CompactSessionId} by
+     * default.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSessionManagerGenerator() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().inMemorySessionStore();
+
+        PicketBoxManager picketBoxManager = createManager(builder);
+
+        PicketBoxSession session = picketBoxManager.getSessionManager().create(new UserContext());
+
+        assertTrue(session.getId() instanceof CompactSessionId);
+        assertSame(session, picketBoxManager.getSessionManager().retrieve(
+                CompactSessionId.decode(session.getId().toString())));
+
+        final SessionId<String> fixedId = new DefaultSessionId("fixed");
+        builder = new ConfigurationBuilder();
+
+        builder.sessionManager().inMemorySessionStore().sessionIdGenerator(new SessionIdGenerator() {
+            @Override
+            public SessionId<? extends Serializable> generate() {
+                return fixedId;
+            }
+        });
+
+        picketBoxManager = createManager(builder);
+
+        session = picketBoxManager.getSessionManager().create(new UserContext());
+
+        assertSame(fixedId, session.getId());
+        assertFalse(session.getId() instanceof CompactSessionId);
+    }
+}
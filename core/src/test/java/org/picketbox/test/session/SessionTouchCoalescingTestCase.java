@@ -0,0 +1,162 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.event.EventObserver;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionTouchBatch;
+import org.picketbox.core.session.event.SessionTouchedEvent;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+
+/**
+ * <p>
+ * Tests how many {@link SessionTouchedEvent} are raised by {@link UserContext#hasRole(String)} with and without touch
+ * coalescing.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class SessionTouchCoalescingTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    private static final int CHECKS = 10000;
+
+    /**
+     * <p>
+     * Tests if every role check raises a touch event when coalescing is disabled.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWithoutCoalescing() throws Exception {
+        TouchCountingEventHandler handler = new TouchCountingEventHandler();
+        UserContext userContext = createUserContext(handler, 0);
+
+        for (int i = 0; i < CHECKS; i++) {
+            userContext.hasRole("admin");
+        }
+
+        assertTrue(handler.count >= CHECKS);
+    }
+
+    /**
+     * <p>
+     * Tests if only one touch event is raised within the touch interval.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWithCoalescing() throws Exception {
+        TouchCountingEventHandler handler = new TouchCountingEventHandler();
+        UserContext userContext = createUserContext(handler, 60000);
+        long lastAccessedTime = userContext.getSession().getLastAccessedTime();
+
+        Thread.sleep(5);
+
+        for (int i = 0; i < CHECKS; i++) {
+            userContext.hasRole("admin");
+        }
+
+        // the session may have already been touched while being created
+        assertTrue(handler.count <= 1);
+        assertTrue(userContext.getSession().getLastAccessedTime() > lastAccessedTime);
+    }
+
+    /**
+     * <p>
+     * Tests if touch events are suppressed while a batch is open and raised once when it ends.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBatch() throws Exception {
+        TouchCountingEventHandler handler = new TouchCountingEventHandler();
+        UserContext userContext = createUserContext(handler, 0);
+
+        SessionTouchBatch.begin();
+
+        try {
+            SessionTouchBatch.begin();
+
+            try {
+                for (int i = 0; i < CHECKS; i++) {
+                    userContext.hasRole("admin");
+                }
+            } finally {
+                SessionTouchBatch.end();
+            }
+
+            assertEquals(0, handler.count);
+        } finally {
+            SessionTouchBatch.end();
+        }
+
+        assertEquals(1, handler.count);
+    }
+
+    private UserContext createUserContext(TouchCountingEventHandler handler, long touchInterval) {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().inMemorySessionStore().touchInterval(touchInterval).eventManager().handler(handler);
+
+        PicketBoxManager picketBoxManager = createManager(builder);
+
+        UserContext userContext = new UserContext() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean isAuthenticated() {
+                return true;
+            }
+        };
+
+        PicketBoxSession session = picketBoxManager.getSessionManager().create(userContext);
+
+        assertEquals(session, userContext.getSession());
+
+        handler.count = 0;
+
+        return userContext;
+    }
+
+    public static class TouchCountingEventHandler {
+
+        private int count;
+
+        @EventObserver
+        public void onTouch(SessionTouchedEvent event) {
+            this.count++;
+        }
+    }
+}
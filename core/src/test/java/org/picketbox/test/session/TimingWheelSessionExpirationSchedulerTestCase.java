@@ -0,0 +1,291 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.session.DefaultSessionId;
+import org.picketbox.core.session.InMemorySessionStore;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionId;
+import org.picketbox.core.session.SessionManager;
+import org.picketbox.core.session.TimingWheelSessionExpirationScheduler;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+import org.picketbox.test.session.OffHeapSessionStoreTestCase.AuthenticatedUserContext;
+
+/**
+ * <p>
+ * Tests the {@link TimingWheelSessionExpirationScheduler}.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class TimingWheelSessionExpirationSchedulerTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    private SessionManager sessionManager;
+    private TimingWheelSessionExpirationScheduler scheduler;
+
+    @Before
+    public void onSetup() {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().inMemorySessionStore();
+
+        PicketBoxManager picketBoxManager = createManager(builder);
+
+        this.sessionManager = picketBoxManager.getSessionManager();
+
+        this.scheduler = new TimingWheelSessionExpirationScheduler(10, 8, 1, 16);
+        this.scheduler.start();
+    }
+
+    @After
+    public void onFinish() {
+        this.scheduler.stop();
+    }
+
+    /**
+     * <p>
+     * Tests if the session is expired after the timeout.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSessionExpiration() throws Exception {
+        PicketBoxSession session = createSession();
+
+        this.scheduler.schedule(session, 100);
+
+        assertEquals(1, this.scheduler.getScheduledCount());
+
+        Thread.sleep(500);
+
+        assertFalse(session.isValid());
+        assertNull(this.sessionManager.retrieve(session.getId()));
+        assertEquals(0, this.scheduler.getScheduledCount());
+    }
+
+    /**
+     * <p>
+     * Tests if accessing the session postpones its expiration. The timeout is bigger than a full rotation of the wheel.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSessionRenewal() throws Exception {
+        PicketBoxSession session = createSession();
+
+        this.scheduler.schedule(session, 200);
+
+        for (int i = 0; i < 10; i++) {
+            session.touch();
+            Thread.sleep(50);
+        }
+
+        assertTrue(session.isValid());
+        assertNotNull(this.sessionManager.retrieve(session.getId()));
+        assertEquals(1, this.scheduler.getScheduledCount());
+
+        Thread.sleep(600);
+
+        assertFalse(session.isValid());
+    }
+
+    /**
+     * <p>
+     * Tests if a cancelled session is not expired.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCancelExpiration() throws Exception {
+        PicketBoxSession session = createSession();
+
+        this.scheduler.schedule(session, 100);
+        this.scheduler.cancel(session);
+
+        Thread.sleep(300);
+
+        assertTrue(session.isValid());
+        assertEquals(0, this.scheduler.getScheduledCount());
+    }
+
+    /**
+     * <p>
+     * Tests if a session accessed after the ticker found it expired, but before a worker expires it, is scheduled again.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSessionAccessedBeforeExpiration() throws Exception {
+        final AtomicBoolean accessed = new AtomicBoolean();
+
+        PicketBoxSession session = new PicketBoxSession(new DefaultSessionId()) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean isExpired(long maxInactiveIntervalInMillis) {
+                // the first check is done by the ticker, the session is accessed right after it
+                if (accessed.compareAndSet(false, true)) {
+                    touch();
+                    return true;
+                }
+
+                return super.isExpired(maxInactiveIntervalInMillis);
+            }
+        };
+
+        this.scheduler.schedule(session, 200);
+
+        Thread.sleep(300);
+
+        assertTrue(accessed.get());
+        assertTrue(session.isValid());
+        assertEquals(1, this.scheduler.getScheduledCount());
+
+        Thread.sleep(400);
+
+        assertFalse(session.isValid());
+        assertEquals(0, this.scheduler.getScheduledCount());
+    }
+
+    /**
+     * <p>
+     * Tests if a session accessed through the copies returned by its store is not expired, although the instance it was
+     * scheduled with is never accessed.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStoreReturningCopies() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().store(new CopyingSessionStore());
+
+        SessionManager copyingSessionManager = createManager(builder).getSessionManager();
+
+        this.scheduler.setSessionManager(copyingSessionManager);
+
+        PicketBoxSession session = copyingSessionManager.create(new AuthenticatedUserContext());
+
+        this.scheduler.schedule(session, 200);
+
+        for (int i = 0; i < 10; i++) {
+            PicketBoxSession copy = copyingSessionManager.retrieve(session.getId());
+
+            assertNotNull(copy);
+
+            copy.touch();
+            copyingSessionManager.update(copy);
+
+            Thread.sleep(50);
+        }
+
+        assertEquals(1, this.scheduler.getScheduledCount());
+
+        Thread.sleep(600);
+
+        assertEquals(0, this.scheduler.getScheduledCount());
+        assertNull(copyingSessionManager.retrieve(session.getId()));
+    }
+
+    private PicketBoxSession createSession() {
+        UserContext subject = new UserContext() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean isAuthenticated() {
+                return true;
+            }
+        };
+
+        return this.sessionManager.create(subject);
+    }
+
+    /**
+     * <p>
+     * Stores and returns copies of the sessions, as stores that keep them serialized do.
+     * </p>
+     */
+    public static class CopyingSessionStore extends InMemorySessionStore {
+
+        @Override
+        public PicketBoxSession load(SessionId<? extends Serializable> key) {
+            return copy(super.load(key));
+        }
+
+        @Override
+        public void store(PicketBoxSession session) {
+            super.store(copy(session));
+        }
+
+        @Override
+        public void update(PicketBoxSession session) {
+            super.update(copy(session));
+        }
+
+        private PicketBoxSession copy(PicketBoxSession session) {
+            if (session == null) {
+                return null;
+            }
+
+            try {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                ObjectOutputStream oos = new ObjectOutputStream(bos);
+
+                oos.writeObject(session);
+                oos.close();
+
+                return (PicketBoxSession) new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray())).readObject();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+}
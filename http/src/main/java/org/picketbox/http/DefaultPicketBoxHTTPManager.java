@@ -22,6 +22,7 @@
 
 package org.picketbox.http;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
@@ -30,10 +31,17 @@ import javax.servlet.http.HttpSession;
 
 import org.picketbox.core.AbstractPicketBoxManager;
 import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.PicketBoxMessages;
 import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.AuthenticationMechanism;
 import org.picketbox.core.authorization.Resource;
 import org.picketbox.core.config.PicketBoxConfiguration;
+import org.picketbox.core.exceptions.ConfigurationException;
+import org.picketbox.http.authentication.AbstractHTTPAuthentication;
+import org.picketbox.http.authentication.HA1Cache;
+import org.picketbox.http.authentication.HTTPMechanismConfiguration;
 import org.picketbox.http.authorization.resource.WebResource;
+import org.picketbox.http.config.HTTPAuthenticationConfiguration;
 import org.picketbox.http.config.PicketBoxHTTPConfiguration;
 import org.picketbox.http.resource.ProtectedResource;
 import org.picketbox.http.resource.ProtectedResourceManager;
@@ -50,6 +58,11 @@ public class DefaultPicketBoxHTTPManager extends AbstractPicketBoxManager implem
     @SuppressWarnings("rawtypes")
     private ProtectedResourceManager protectedResourceManager;
 
+    /*
+     * The HA1 cache currently registered as an event handler, replaced when the authentication configuration is reloaded.
+     */
+    private HA1Cache ha1Cache;
+
     public DefaultPicketBoxHTTPManager(PicketBoxHTTPConfiguration configuration) {
         super(configuration);
     }
@@ -60,7 +73,6 @@ public class DefaultPicketBoxHTTPManager extends AbstractPicketBoxManager implem
      * @see org.picketbox.core.AbstractPicketBoxManager#doPreAuthentication(org.picketbox.core.PicketBoxSecurityContext,
      * org.picketbox.core.authentication.AuthenticationCallbackHandler)
      */
-    @SuppressWarnings("unchecked")
     @Override
     protected boolean doPreAuthentication(UserContext subject) {
         if (this.protectedResourceManager == null) {
@@ -69,17 +81,13 @@ public class DefaultPicketBoxHTTPManager extends AbstractPicketBoxManager implem
 
         HTTPUserContext httpUserContext = (HTTPUserContext) subject;
 
-        ProtectedResource protectedResource = this.protectedResourceManager.getProtectedResource(createWebResource(
-                httpUserContext.getRequest(), httpUserContext.getResponse()));
-
-        return protectedResource.requiresAuthentication();
+        return getProtectedResource(httpUserContext.getRequest(), httpUserContext.getResponse()).requiresAuthentication();
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public boolean authorize(UserContext subject, Resource resource) {
         if (this.protectedResourceManager != null && subject != null) {
-            ProtectedResource protectedResource = this.protectedResourceManager.getProtectedResource(resource);
+            ProtectedResource protectedResource = getProtectedResource(resource);
 
             if (protectedResource.requiresAuthorization() && subject.isAuthenticated()) {
                 if (!protectedResource.isAllowed(subject)) {
@@ -93,6 +101,56 @@ public class DefaultPicketBoxHTTPManager extends AbstractPicketBoxManager implem
         return true;
     }
 
+    /**
+     * <p>
+     * Returns the {@link ProtectedResource} for the given request. If the request is bound to a {@link HTTPSecurityExchange}
+     * the resource is resolved only once and reused for the rest of the request.
+     * </p>
+     *
+     * @param request
+     * @param response
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private ProtectedResource getProtectedResource(HttpServletRequest request, HttpServletResponse response) {
+        HTTPSecurityExchange exchange = HTTPSecurityExchange.get(request);
+
+        if (exchange == null) {
+            return this.protectedResourceManager.getProtectedResource(createWebResource(request, response));
+        }
+
+        return getProtectedResource(exchange);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProtectedResource getProtectedResource(Resource resource) {
+        if (resource instanceof WebResource) {
+            WebResource webResource = (WebResource) resource;
+
+            if (webResource.getRequest() != null) {
+                HTTPSecurityExchange exchange = HTTPSecurityExchange.get(webResource.getRequest());
+
+                if (exchange != null && exchange.getWebResource() == webResource) {
+                    return getProtectedResource(exchange);
+                }
+            }
+        }
+
+        return this.protectedResourceManager.getProtectedResource(resource);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProtectedResource getProtectedResource(HTTPSecurityExchange exchange) {
+        ProtectedResource protectedResource = exchange.getProtectedResource();
+
+        if (protectedResource == null) {
+            protectedResource = this.protectedResourceManager.getProtectedResource(exchange.getWebResource());
+            exchange.setProtectedResource(protectedResource);
+        }
+
+        return protectedResource;
+    }
+
     private WebResource createWebResource(HttpServletRequest request, HttpServletResponse response) {
         WebResource resource = new WebResource();
 
@@ -116,9 +174,127 @@ public class DefaultPicketBoxHTTPManager extends AbstractPicketBoxManager implem
 
         this.protectedResourceManager.start();
 
+        HTTPAuthenticationConfiguration authenticationConfig = null;
+
+        if (httpConfig.getAuthentication() instanceof HTTPAuthenticationConfiguration) {
+            authenticationConfig = (HTTPAuthenticationConfiguration) httpConfig.getAuthentication();
+            registerHA1Cache(authenticationConfig);
+        }
+
+        // the mechanisms take a validated snapshot of their settings, so they do not read the configuration on each request
+        for (AbstractHTTPAuthentication mechanism : getHTTPMechanisms()) {
+            mechanism.configure(authenticationConfig);
+        }
+
         setSessionManager(new HTTPSessionManager(this));
     }
 
+    /**
+     * <p>
+     * Reloads the settings of the HTTP authentication mechanisms from the given configuration. The settings of all mechanisms
+     * are validated before any of them is changed, so an invalid configuration leaves the settings in use untouched. Each
+     * mechanism swaps its settings atomically, requests being processed finish with the settings they started with.
+     * </p>
+     * <p>
+     * Only the settings of the mechanisms are reloaded: the realm, the pages, the request cache and the DIGEST and
+     * CLIENT-CERT settings. The mechanisms themselves and the other configurations are kept. A {@link HA1Cache} replaced by
+     * the new settings is unregistered from the event manager and cleared.
+     * </p>
+     *
+     * @param configuration
+     * @throws ConfigurationException if the settings for any of the mechanisms are invalid.
+     */
+    public synchronized void reloadAuthenticationConfiguration(HTTPAuthenticationConfiguration configuration)
+            throws ConfigurationException {
+        if (configuration == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("Authentication Configuration");
+        }
+
+        checkIfStarted();
+
+        List<AbstractHTTPAuthentication> mechanisms = getHTTPMechanisms();
+        List<HTTPMechanismConfiguration> mechanismConfigurations = new ArrayList<HTTPMechanismConfiguration>(mechanisms.size());
+
+        for (AbstractHTTPAuthentication mechanism : mechanisms) {
+            mechanismConfigurations.add(mechanism.createMechanismConfiguration(configuration));
+        }
+
+        HA1Cache replacedCache = registerHA1Cache(configuration);
+
+        for (int i = 0; i < mechanisms.size(); i++) {
+            mechanisms.get(i).setMechanismConfiguration(mechanismConfigurations.get(i));
+        }
+
+        // only unregistered once no mechanism uses it anymore, so no invalidation is missed in between
+        unregisterHA1Cache(replacedCache);
+    }
+
+    /**
+     * <p>
+     * Registers the {@link HA1Cache} from the given configuration, if any, to invalidate the cached HA1 when users are
+     * updated or removed. Nothing is done if the cache is the one already in use.
+     * </p>
+     *
+     * @param configuration
+     * @return the cache registered for the previous configuration, if it was replaced, or null.
+     */
+    private HA1Cache registerHA1Cache(HTTPAuthenticationConfiguration configuration) {
+        HA1Cache newCache = null;
+
+        if (configuration.getDigestConfiguration() != null) {
+            newCache = configuration.getDigestConfiguration().getHA1Cache();
+        }
+
+        if (newCache == this.ha1Cache) {
+            return null;
+        }
+
+        if (newCache != null) {
+            getEventManager().addHandler(newCache);
+        }
+
+        HA1Cache replacedCache = this.ha1Cache;
+
+        this.ha1Cache = newCache;
+
+        return replacedCache;
+    }
+
+    /**
+     * <p>
+     * Unregisters a replaced {@link HA1Cache} and clears it, so it neither keeps observing events nor holds the HA1 values.
+     * </p>
+     *
+     * @param replacedCache
+     */
+    private void unregisterHA1Cache(HA1Cache replacedCache) {
+        if (replacedCache == null) {
+            return;
+        }
+
+        getEventManager().removeHandler(replacedCache);
+        replacedCache.clear();
+    }
+
+    /**
+     * <p>
+     * Returns the configured mechanisms that extend {@link AbstractHTTPAuthentication}.
+     * </p>
+     *
+     * @return
+     */
+    private List<AbstractHTTPAuthentication> getHTTPMechanisms() {
+        List<AbstractHTTPAuthentication> mechanisms = new ArrayList<AbstractHTTPAuthentication>();
+
+        for (AuthenticationMechanism mechanism : getConfiguration().getAuthentication().getMechanisms()) {
+            if (mechanism instanceof AbstractHTTPAuthentication) {
+                mechanisms.add((AbstractHTTPAuthentication) mechanism);
+            }
+        }
+
+        return mechanisms;
+    }
+
     /* (non-Javadoc)
      * @see org.picketbox.http.IPicketBoxHTTPManager#getUserContext(javax.servlet.http.HttpServletRequest)
      */
@@ -152,10 +328,7 @@ public class DefaultPicketBoxHTTPManager extends AbstractPicketBoxManager implem
         return (PicketBoxHTTPConfiguration) getConfiguration();
     }
 
-    @SuppressWarnings("unchecked")
     public boolean requiresAuthentication(HttpServletRequest request, HttpServletResponse response) {
-        return this.protectedResourceManager != null
-                && this.protectedResourceManager.getProtectedResource(createWebResource(request, response))
-                        .requiresAuthentication();
+        return this.protectedResourceManager != null && getProtectedResource(request, response).requiresAuthentication();
     }
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.picketbox.core.UserContext;
+import org.picketbox.http.authorization.resource.WebResource;
+import org.picketbox.http.resource.ProtectedResource;
+
+/**
+ * <p>
+ * Holds the security state resolved while a single request is processed, so the {@link WebResource}, the matching
+ * {@link ProtectedResource} and the {@link UserContext} are resolved only once per request. An exchange is bound to a request
+ * as an attribute by {@link #bind(HttpServletRequest, HttpServletResponse, PicketBoxHTTPManager)} and must be released by
+ * {@link #unbind(HttpServletRequest, HTTPSecurityExchange)} when the request is done.
+ * </p>
+ * <p>
+ * Instances are not thread-safe. They are meant to be used only by the thread processing the request.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class HTTPSecurityExchange {
+
+    private static final String EXCHANGE_ATTRIBUTE_NAME = HTTPSecurityExchange.class.getName();
+
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+    private final PicketBoxHTTPManager picketBoxManager;
+    private final HTTPSecurityExchange previous;
+
+    private WebResource webResource;
+    private ProtectedResource protectedResource;
+    private UserContext userContext;
+    private boolean userContextResolved;
+
+    private HTTPSecurityExchange(HttpServletRequest request, HttpServletResponse response,
+            PicketBoxHTTPManager picketBoxManager, HTTPSecurityExchange previous) {
+        this.request = request;
+        this.response = response;
+        this.picketBoxManager = picketBoxManager;
+        this.previous = previous;
+    }
+
+    /**
+     * <p>
+     * Creates a new exchange and binds it to the given request. Any exchange already bound to the request, for example when
+     * the request is dispatched again through the same filter, is restored when the new exchange is unbound.
+     * </p>
+     *
+     * @param request
+     * @param response
+     * @param picketBoxManager
+     * @return
+     */
+    public static HTTPSecurityExchange bind(HttpServletRequest request, HttpServletResponse response,
+            PicketBoxHTTPManager picketBoxManager) {
+        HTTPSecurityExchange exchange = new HTTPSecurityExchange(request, response, picketBoxManager, get(request));
+
+        request.setAttribute(EXCHANGE_ATTRIBUTE_NAME, exchange);
+
+        return exchange;
+    }
+
+    /**
+     * <p>
+     * Unbinds the given exchange from the request, restoring the exchange that was bound before it, if any.
+     * </p>
+     *
+     * @param request
+     * @param exchange
+     */
+    public static void unbind(HttpServletRequest request, HTTPSecurityExchange exchange) {
+        if (exchange.previous != null) {
+            request.setAttribute(EXCHANGE_ATTRIBUTE_NAME, exchange.previous);
+        } else {
+            request.removeAttribute(EXCHANGE_ATTRIBUTE_NAME);
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the exchange bound to the given request, or null if the request is not being processed by PicketBox.
+     * </p>
+     *
+     * @param request
+     * @return
+     */
+    public static HTTPSecurityExchange get(HttpServletRequest request) {
+        Object exchange = request.getAttribute(EXCHANGE_ATTRIBUTE_NAME);
+
+        if (exchange instanceof HTTPSecurityExchange) {
+            return (HTTPSecurityExchange) exchange;
+        }
+
+        return null;
+    }
+
+    public HttpServletRequest getRequest() {
+        return this.request;
+    }
+
+    public HttpServletResponse getResponse() {
+        return this.response;
+    }
+
+    /**
+     * <p>
+     * Returns the {@link WebResource} that represents the request. The same instance is returned for the whole request.
+     * </p>
+     *
+     * @return
+     */
+    public WebResource getWebResource() {
+        if (this.webResource == null) {
+            WebResource resource = new WebResource();
+
+            resource.setContext(this.request.getServletContext());
+            resource.setRequest(this.request);
+            resource.setResponse(this.response);
+
+            this.webResource = resource;
+        }
+
+        return this.webResource;
+    }
+
+    /**
+     * <p>
+     * Returns the {@link ProtectedResource} resolved for the request, or null if it was not resolved yet.
+     * </p>
+     *
+     * @return
+     */
+    public ProtectedResource getProtectedResource() {
+        return this.protectedResource;
+    }
+
+    public void setProtectedResource(ProtectedResource protectedResource) {
+        this.protectedResource = protectedResource;
+    }
+
+    /**
+     * <p>
+     * Returns the {@link UserContext} associated with the request. It is retrieved from the {@link PicketBoxHTTPManager} only
+     * the first time this method is called or after a call to {@link #resetUserContext()}.
+     * </p>
+     *
+     * @return
+     */
+    public UserContext getUserContext() {
+        if (!this.userContextResolved) {
+            this.userContext = this.picketBoxManager.getUserContext(this.request);
+            this.userContextResolved = true;
+        }
+
+        return this.userContext;
+    }
+
+    /**
+     * <p>
+     * Discards the {@link UserContext} retrieved so far. This method should be called when the user is authenticated or logged
+     * out during the request.
+     * </p>
+     */
+    public void resetUserContext() {
+        this.userContext = null;
+        this.userContextResolved = false;
+    }
+}
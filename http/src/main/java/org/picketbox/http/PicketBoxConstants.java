@@ -43,6 +43,12 @@ public interface PicketBoxConstants {
 
     String CREDENTIAL = "picketbox.credential";
 
+    /**
+     * Defines the context parameter used to specify the class name of a custom
+     * {@link org.picketbox.http.authentication.credential.HttpServletCredentialFactory}.
+     */
+    String CREDENTIAL_FACTORY = "org.picketbox.authentication.credential.factory";
+
     String DIGEST = "DIGEST";
 
     String FORM = "FORM";
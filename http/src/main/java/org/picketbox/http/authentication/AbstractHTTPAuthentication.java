@@ -37,6 +37,7 @@ import org.picketbox.core.authentication.AuthenticationStatus;
 import org.picketbox.core.authentication.credential.UserCredential;
 import org.picketbox.core.authentication.impl.AbstractAuthenticationMechanism;
 import org.picketbox.core.exceptions.AuthenticationException;
+import org.picketbox.core.exceptions.ConfigurationException;
 import org.picketbox.http.DefaultPicketBoxHTTPManager;
 import org.picketbox.http.authentication.credential.HttpServletCredential;
 import org.picketbox.http.config.HTTPAuthenticationConfiguration;
@@ -49,7 +50,10 @@ import org.picketbox.http.config.HTTPAuthenticationConfiguration;
  */
 public abstract class AbstractHTTPAuthentication extends AbstractAuthenticationMechanism {
 
-    private RequestCache requestCache = new RequestCache();
+    /**
+     * The {@link RequestCache} used when none is configured.
+     */
+    protected RequestCache requestCache = new RequestCache();
 
     public static final String DEFAULT_REALM = "PicketBox Realm";
 
@@ -75,11 +79,17 @@ public abstract class AbstractHTTPAuthentication extends AbstractAuthenticationM
      */
     protected String formErrorPage = "/error.jsp";
 
+    /**
+     * The settings in use, swapped atomically when the mechanism is reconfigured.
+     */
+    private volatile HTTPMechanismConfiguration mechanismConfiguration;
+
     /**
      * The FORM login page. It should always start with a '/'
      */
     public void setFormAuthPage(String formAuthPage) {
         this.formAuthPage = formAuthPage;
+        refreshConfiguration();
     }
 
     /**
@@ -87,6 +97,7 @@ public abstract class AbstractHTTPAuthentication extends AbstractAuthenticationM
      */
     public void setFormErrorPage(String formErrorPage) {
         this.formErrorPage = formErrorPage;
+        refreshConfiguration();
     }
 
     /**
@@ -94,14 +105,112 @@ public abstract class AbstractHTTPAuthentication extends AbstractAuthenticationM
      */
     public void setDefaultPage(String defaultPage) {
         this.defaultPage = defaultPage;
+        refreshConfiguration();
     }
 
     public String getRealmName() {
-        return this.realmName;
+        return getMechanismConfiguration().getRealmName();
     }
 
     public void setRealmName(String realmName) {
         this.realmName = realmName;
+        refreshConfiguration();
+    }
+
+    /**
+     * <p>
+     * Creates a snapshot of the settings for this mechanism from the given configuration and starts using it. The snapshot
+     * replaces the one in use atomically, so requests being processed see either the old or the new settings.
+     * </p>
+     *
+     * @param configuration the configuration to read the settings from. If null only the values set on the mechanism are used.
+     * @throws ConfigurationException if the resulting settings are invalid. In this case the settings in use are kept.
+     */
+    public void configure(HTTPAuthenticationConfiguration configuration) throws ConfigurationException {
+        setMechanismConfiguration(createMechanismConfiguration(configuration));
+    }
+
+    /**
+     * <p>
+     * Creates and validates a snapshot of the settings for this mechanism from the given configuration, without using it.
+     * </p>
+     *
+     * @param configuration the configuration to read the settings from. If null only the values set on the mechanism are used.
+     * @return
+     * @throws ConfigurationException if the resulting settings are invalid.
+     */
+    public HTTPMechanismConfiguration createMechanismConfiguration(HTTPAuthenticationConfiguration configuration)
+            throws ConfigurationException {
+        HTTPMechanismConfiguration.Builder builder = new HTTPMechanismConfiguration.Builder(configuration);
+
+        configure(builder, configuration);
+
+        return builder.build();
+    }
+
+    /**
+     * <p>
+     * Starts using the given settings.
+     * </p>
+     *
+     * @param mechanismConfiguration
+     */
+    public void setMechanismConfiguration(HTTPMechanismConfiguration mechanismConfiguration) {
+        if (mechanismConfiguration == null) {
+            throw MESSAGES.invalidNullArgument("Mechanism Configuration");
+        }
+
+        this.mechanismConfiguration = mechanismConfiguration;
+    }
+
+    /**
+     * <p>
+     * Returns the settings in use. If the mechanism was not configured yet, a snapshot is created from the configuration of
+     * the {@link DefaultPicketBoxHTTPManager}, if any.
+     * </p>
+     *
+     * @return
+     */
+    public HTTPMechanismConfiguration getMechanismConfiguration() {
+        HTTPMechanismConfiguration configuration = this.mechanismConfiguration;
+
+        if (configuration == null) {
+            configuration = createMechanismConfiguration(getAuthenticationConfig());
+            this.mechanismConfiguration = configuration;
+        }
+
+        return configuration;
+    }
+
+    /**
+     * <p>
+     * Sub-classes should override this method to populate the {@link HTTPMechanismConfiguration.Builder} with their own
+     * settings. Values from the configuration take precedence over the values set on the mechanism.
+     * </p>
+     *
+     * @param builder
+     * @param configuration the configuration to read the settings from, or null.
+     */
+    protected void configure(HTTPMechanismConfiguration.Builder builder, HTTPAuthenticationConfiguration configuration) {
+        builder.realmName(this.realmName).defaultPage(this.defaultPage).formAuthPage(this.formAuthPage)
+                .formErrorPage(this.formErrorPage).requestCache(this.requestCache);
+
+        if (configuration != null && configuration.getRequestCache() != null) {
+            builder.requestCache(configuration.getRequestCache());
+        }
+    }
+
+    /**
+     * <p>
+     * Recreates the settings in use, if any, after a value was changed on the mechanism.
+     * </p>
+     */
+    protected void refreshConfiguration() {
+        HTTPMechanismConfiguration configuration = this.mechanismConfiguration;
+
+        if (configuration != null) {
+            configure(configuration.getSource());
+        }
     }
 
     @Override
@@ -125,7 +234,7 @@ public abstract class AbstractHTTPAuthentication extends AbstractAuthenticationM
 
         if (!jSecurityCheck) {
             if (getPicketBoxManager().requiresAuthentication(request, response)) {
-                this.requestCache.saveRequest(request);
+                getRequestCache().saveRequest(request);
                 result.setStatus(AuthenticationStatus.CONTINUE);
                 challengeClient(request, response);
             }
@@ -170,7 +279,7 @@ public abstract class AbstractHTTPAuthentication extends AbstractAuthenticationM
 
         if (principal != null) {
             // remove from the cache the saved request and store it in the session for further use.
-            SavedRequest savedRequest = this.requestCache.removeAndStoreSavedRequestInSession(request);
+            SavedRequest savedRequest = getRequestCache().removeAndStoreSavedRequestInSession(request);
             String requestedURI = null;
 
             if (savedRequest != null) {
@@ -246,19 +355,44 @@ public abstract class AbstractHTTPAuthentication extends AbstractAuthenticationM
         return (DefaultPicketBoxHTTPManager) super.getPicketBoxManager();
     }
 
+    /**
+     * <p>
+     * Returns the {@link RequestCache} configured for the {@link DefaultPicketBoxHTTPManager}, or a default one if none was
+     * configured.
+     * </p>
+     *
+     * @return
+     */
+    protected RequestCache getRequestCache() {
+        return getMechanismConfiguration().getRequestCache();
+    }
+
+    /**
+     * <p>
+     * Returns the {@link HTTPAuthenticationConfiguration} of the {@link DefaultPicketBoxHTTPManager}, or null if the mechanism
+     * is not bound to one.
+     * </p>
+     *
+     * @return
+     */
     protected HTTPAuthenticationConfiguration getAuthenticationConfig() {
+        if (super.getPicketBoxManager() == null
+                || !(super.getPicketBoxManager().getConfiguration().getAuthentication() instanceof HTTPAuthenticationConfiguration)) {
+            return null;
+        }
+
         return (HTTPAuthenticationConfiguration) getPicketBoxManager().getConfiguration().getAuthentication();
     }
 
     public String getDefaultPage() {
-        return this.defaultPage;
+        return getMechanismConfiguration().getDefaultPage();
     }
 
     public String getFormAuthPage() {
-        return this.formAuthPage;
+        return getMechanismConfiguration().getFormAuthPage();
     }
 
     public String getFormErrorPage() {
-        return this.formErrorPage;
+        return getMechanismConfiguration().getFormErrorPage();
     }
 }
\ No newline at end of file
@@ -0,0 +1,206 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.authentication;
+
+import java.util.Date;
+
+import org.picketbox.core.event.EventObserver;
+import org.picketbox.core.identity.event.UserRemovedEvent;
+import org.picketbox.core.identity.event.UserUpdatedEvent;
+import org.picketbox.core.util.BoundedCache;
+import org.picketbox.core.util.BoundedCache.Matcher;
+import org.picketbox.http.util.DigestAlgorithm;
+import org.picketbox.http.util.HTTPDigestUtil;
+import org.picketlink.idm.model.User;
+
+/**
+ * <p>
+ * Caches the HA1 values stored for users, so the HTTP Digest authentication does not need to load the user from the identity
+ * store for every request.
+ * </p>
+ * <p>
+ * Entries are keyed by username and hold the HA1 for a single realm and {@link DigestAlgorithm}, along with the effective and
+ * expiry dates stored with it. An entry expires after the configured time to live and the least recently used entries are
+ * evicted when the cache is full. Entries are invalidated when a {@link UserUpdatedEvent} or {@link UserRemovedEvent} is raised
+ * for the user, which is the case when its credentials or attributes are changed using the PicketBox identity manager. The
+ * {@link org.picketbox.http.DefaultPicketBoxHTTPManager} registers the cache as an event handler when it is started.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class HA1Cache {
+
+    public static final int DEFAULT_MAX_SIZE = BoundedCache.DEFAULT_MAX_SIZE;
+    public static final long DEFAULT_TIME_TO_LIVE = BoundedCache.DEFAULT_TIME_TO_LIVE;
+
+    private final BoundedCache<String, CachedHA1> entries;
+
+    public HA1Cache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * @param maxSize maximum number of users held by the cache
+     * @param timeToLive time in milliseconds a HA1 is used without checking the identity store again
+     */
+    public HA1Cache(int maxSize, long timeToLive) {
+        this.entries = new BoundedCache<String, CachedHA1>(maxSize, timeToLive);
+    }
+
+    /**
+     * <p>
+     * Returns the cached HA1 for the given user, realm and algorithm. A HA1 that is not effective at the moment, given the
+     * effective and expiry dates stored with it, is never returned.
+     * </p>
+     *
+     * @param userName
+     * @param realm
+     * @param algorithm
+     * @return the hex encoded HA1 or null if it must be loaded from the identity store.
+     */
+    public String lookup(String userName, final String realm, final DigestAlgorithm algorithm) {
+        final long now = System.currentTimeMillis();
+
+        CachedHA1 entry = this.entries.get(userName, new Matcher<CachedHA1>() {
+            @Override
+            public boolean matches(CachedHA1 value) {
+                return value.algorithm == algorithm && value.realm.equals(realm)
+                        && HTTPDigestUtil.isHA1Effective(value.effectiveDate, value.expiryDate, now);
+            }
+        });
+
+        if (entry == null) {
+            return null;
+        }
+
+        return entry.ha1;
+    }
+
+    /**
+     * <p>
+     * Returns the current generation of the cache, which must be read before the HA1 is loaded from the identity store and
+     * passed to {@link #put(String, String, DigestAlgorithm, String, Date, Date, long)}.
+     * </p>
+     *
+     * @return
+     */
+    public long getGeneration() {
+        return this.entries.getGeneration();
+    }
+
+    /**
+     * <p>
+     * Caches the HA1 loaded from the identity store for the given user. Nothing is cached if an entry was invalidated since
+     * the given generation was read, as the loaded value may be outdated.
+     * </p>
+     *
+     * @param userName
+     * @param realm
+     * @param algorithm
+     * @param ha1
+     * @param effectiveDate the date from which the HA1 is valid or null
+     * @param expiryDate the date after which the HA1 is no longer valid or null
+     * @param generation the value returned by {@link #getGeneration()} before the HA1 was loaded.
+     */
+    public void put(String userName, String realm, DigestAlgorithm algorithm, String ha1, Date effectiveDate,
+            Date expiryDate, long generation) {
+        if (userName == null || realm == null || algorithm == null || ha1 == null) {
+            return;
+        }
+
+        this.entries.put(userName, new CachedHA1(realm, algorithm, ha1, effectiveDate, expiryDate), generation);
+    }
+
+    /**
+     * <p>
+     * Removes the cached HA1 for the given user.
+     * </p>
+     *
+     * @param userName
+     */
+    public void invalidate(String userName) {
+        this.entries.invalidate(userName);
+    }
+
+    /**
+     * <p>
+     * Removes all cached values.
+     * </p>
+     */
+    public void clear() {
+        this.entries.clear();
+    }
+
+    @EventObserver
+    public void onUserUpdated(UserUpdatedEvent event) {
+        invalidate(event.getUser());
+    }
+
+    @EventObserver
+    public void onUserRemoved(UserRemovedEvent event) {
+        invalidate(event.getUser());
+    }
+
+    public int getMaxSize() {
+        return this.entries.getMaxSize();
+    }
+
+    public long getTimeToLive() {
+        return this.entries.getTimeToLive();
+    }
+
+    public int getSize() {
+        return this.entries.getSize();
+    }
+
+    public long getHitCount() {
+        return this.entries.getHitCount();
+    }
+
+    public long getMissCount() {
+        return this.entries.getMissCount();
+    }
+
+    private void invalidate(User user) {
+        if (user != null && user.getLoginName() != null) {
+            invalidate(user.getLoginName());
+        }
+    }
+
+    private static class CachedHA1 {
+
+        private final String realm;
+        private final DigestAlgorithm algorithm;
+        private final String ha1;
+        private final Date effectiveDate;
+        private final Date expiryDate;
+
+        CachedHA1(String realm, DigestAlgorithm algorithm, String ha1, Date effectiveDate, Date expiryDate) {
+            this.realm = realm;
+            this.algorithm = algorithm;
+            this.ha1 = ha1;
+            this.effectiveDate = effectiveDate;
+            this.expiryDate = expiryDate;
+        }
+    }
+}
@@ -22,21 +22,18 @@
 package org.picketbox.http.authentication;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.security.Principal;
+import java.util.Collections;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.picketbox.core.PicketBoxPrincipal;
 import org.picketbox.core.authentication.AuthenticationInfo;
 import org.picketbox.core.exceptions.AuthenticationException;
 import org.picketbox.http.PicketBoxConstants;
 import org.picketbox.http.authentication.credential.HTTPBasicCredential;
 import org.picketbox.http.authentication.credential.HttpServletCredential;
-import org.picketlink.idm.credential.Credentials;
-import org.picketlink.idm.credential.Credentials.Status;
-import org.picketlink.idm.model.User;
 
 /**
  * Perform HTTP Basic Authentication
@@ -46,16 +43,15 @@ import org.picketlink.idm.model.User;
  */
 public class HTTPBasicAuthentication extends AbstractHTTPAuthentication {
 
+    private static final List<AuthenticationInfo> AUTHENTICATION_INFO = Collections.singletonList(
+            new AuthenticationInfo("HTTP BASIC Authentication Credential", "Authenticates users using the HTTP BASIC Authentication scheme.", HTTPBasicCredential.class));
+
     /* (non-Javadoc)
      * @see org.picketbox.core.authentication.AuthenticationMechanism#getAuthenticationInfo()
      */
     @Override
     public List<AuthenticationInfo> getAuthenticationInfo() {
-        List<AuthenticationInfo> info = new ArrayList<AuthenticationInfo>();
-
-        info.add(new AuthenticationInfo("HTTP BASIC Authentication Credential", "Authenticates users using the HTTP BASIC Authentication scheme.", HTTPBasicCredential.class));
-
-        return info;
+        return AUTHENTICATION_INFO;
     }
 
     /*
@@ -82,21 +78,11 @@ public class HTTPBasicAuthentication extends AbstractHTTPAuthentication {
      * HttpServletRequest, javax.servlet.http.HttpServletResponse)
      */
     @Override
-    protected PicketBoxPrincipal doHTTPAuthentication(HttpServletCredential credential) {
+    protected Principal doHTTPAuthentication(HttpServletCredential credential) {
         HTTPBasicCredential basicCredential = (HTTPBasicCredential) credential;
 
         if (basicCredential.getCredential() != null) {
-            String username = basicCredential.getUserName();
-
-            User user = getIdentityManager().getUser(username);
-
-            Credentials userCredential = basicCredential.getCredential();
-
-            getIdentityManager().validateCredentials(userCredential);
-
-            if (user != null && userCredential.getStatus().equals(Status.VALID)) {
-                return new PicketBoxPrincipal(username);
-            }
+            return validateCredentials(basicCredential.getUserName(), basicCredential.getCredential());
         }
 
         return null;
@@ -104,7 +90,7 @@ public class HTTPBasicAuthentication extends AbstractHTTPAuthentication {
 
     @Override
     protected void challengeClient(HttpServletRequest request, HttpServletResponse response) throws AuthenticationException {
-        response.setHeader(PicketBoxConstants.HTTP_WWW_AUTHENTICATE, "basic realm=\"" + this.realmName + '"');
+        response.setHeader(PicketBoxConstants.HTTP_WWW_AUTHENTICATE, "basic realm=\"" + getRealmName() + '"');
 
         try {
             response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
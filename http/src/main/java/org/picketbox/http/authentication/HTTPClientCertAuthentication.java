@@ -25,7 +25,7 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.security.Principal;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
@@ -52,11 +52,15 @@ import org.picketlink.idm.model.User;
  */
 public class HTTPClientCertAuthentication extends AbstractHTTPAuthentication {
 
+    private static final List<AuthenticationInfo> AUTHENTICATION_INFO = Collections.singletonList(
+            new AuthenticationInfo("HTTP CLIENT-CERT Authentication Credential",
+                    "Authenticates users using the HTTP CLIENT-CERT Authentication scheme.", HTTPClientCertCredential.class));
+
     /**
      * Use Certificate validation directly rather than username/cred model
      */
     protected boolean useCertificateValidation = false;
-    private boolean useCNAsPrincipal = true;
+    protected boolean useCNAsPrincipal = true;
 
     /*
      * (non-Javadoc)
@@ -65,12 +69,7 @@ public class HTTPClientCertAuthentication extends AbstractHTTPAuthentication {
      */
     @Override
     public List<AuthenticationInfo> getAuthenticationInfo() {
-        List<AuthenticationInfo> info = new ArrayList<AuthenticationInfo>();
-
-        info.add(new AuthenticationInfo("HTTP CLIENT-CERT Authentication Credential",
-                "Authenticates users using the HTTP CLIENT-CERT Authentication scheme.", HTTPClientCertCredential.class));
-
-        return info;
+        return AUTHENTICATION_INFO;
     }
 
     /**
@@ -80,6 +79,7 @@ public class HTTPClientCertAuthentication extends AbstractHTTPAuthentication {
      */
     public void setUseCertificateValidation(boolean useCertificateValidation) {
         this.useCertificateValidation = useCertificateValidation;
+        refreshConfiguration();
     }
 
     @Override
@@ -100,10 +100,11 @@ public class HTTPClientCertAuthentication extends AbstractHTTPAuthentication {
         if (certCredential.getCredential() != null) {
             X509CertificateCredentials x509Credential = (X509CertificateCredentials) certCredential.getCredential();
             X509Certificate clientCertificate = x509Credential.getCertificate().getValue();
+            HTTPMechanismConfiguration configuration = getMechanismConfiguration();
 
             String username = getCertificatePrincipal(clientCertificate).getName();
 
-            if (isUseCNAsPrincipal()) {
+            if (configuration.isUseCNAsPrincipal()) {
                 Properties prop = new Properties();
                 try {
                     prop.load(new StringReader(username.replaceAll(",", "\n")));
@@ -117,7 +118,7 @@ public class HTTPClientCertAuthentication extends AbstractHTTPAuthentication {
             User user = getIdentityManager().getUser(username);
 
             if (user != null) {
-                if (isUseCertificateValidation()) {
+                if (configuration.isUseCertificateValidation()) {
                     getIdentityManager().validateCredentials(x509Credential);
 
                     if (!x509Credential.getStatus().equals(Status.VALID)) {
@@ -147,33 +148,31 @@ public class HTTPClientCertAuthentication extends AbstractHTTPAuthentication {
     }
 
     public boolean isUseCertificateValidation() {
-        ClientCertConfiguration clientCertConfig = getClientCertAuthenticationConfig();
-
-        if (clientCertConfig != null) {
-            this.useCertificateValidation = clientCertConfig.isUseCertificateValidation();
-        }
-
-        return this.useCertificateValidation;
+        return getMechanismConfiguration().isUseCertificateValidation();
     }
 
-    private ClientCertConfiguration getClientCertAuthenticationConfig() {
-        HTTPAuthenticationConfiguration authenticationConfig = getAuthenticationConfig();
+    public boolean isUseCNAsPrincipal() {
+        return getMechanismConfiguration().isUseCNAsPrincipal();
+    }
 
-        if (authenticationConfig != null) {
-            return authenticationConfig.getCertConfiguration();
-        }
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.http.authentication.AbstractHTTPAuthentication#configure(org.picketbox.http.authentication.
+     * HTTPMechanismConfiguration.Builder, org.picketbox.http.config.HTTPAuthenticationConfiguration)
+     */
+    @Override
+    protected void configure(HTTPMechanismConfiguration.Builder builder, HTTPAuthenticationConfiguration configuration) {
+        super.configure(builder, configuration);
 
-        return null;
-    }
+        builder.useCertificateValidation(this.useCertificateValidation).useCNAsPrincipal(this.useCNAsPrincipal);
 
-    public boolean isUseCNAsPrincipal() {
-        ClientCertConfiguration clientCertConfig = getClientCertAuthenticationConfig();
+        if (configuration != null && configuration.getCertConfiguration() != null) {
+            ClientCertConfiguration clientCertConfig = configuration.getCertConfiguration();
 
-        if (clientCertConfig != null) {
-            this.useCNAsPrincipal = clientCertConfig.isUseCNAsPrincipal();
+            builder.useCertificateValidation(clientCertConfig.isUseCertificateValidation());
+            builder.useCNAsPrincipal(clientCertConfig.isUseCNAsPrincipal());
         }
-
-        return this.useCNAsPrincipal;
     }
 
 }
\ No newline at end of file
@@ -22,30 +22,39 @@
 package org.picketbox.http.authentication;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.security.Principal;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
 
 import org.picketbox.core.PicketBoxPrincipal;
 import org.picketbox.core.authentication.AuthenticationInfo;
 import org.picketbox.core.exceptions.AuthenticationException;
+import org.picketbox.core.nonce.InMemoryNonceStore;
 import org.picketbox.core.nonce.NonceGenerator;
+import org.picketbox.core.nonce.NonceStatus;
+import org.picketbox.core.nonce.NonceStore;
 import org.picketbox.core.nonce.UUIDNonceGenerator;
 import org.picketbox.http.PicketBoxConstants;
 import org.picketbox.http.authentication.credential.HTTPDigestCredential;
 import org.picketbox.http.authentication.credential.HttpServletCredential;
 import org.picketbox.http.config.HTTPAuthenticationConfiguration;
 import org.picketbox.http.config.HTTPDigestConfiguration;
+import org.picketbox.http.util.DigestAlgorithm;
+import org.picketbox.http.util.DigestEngine;
+import org.picketbox.http.util.HTTPDigestUtil;
 import org.picketlink.idm.credential.Credentials.Status;
 import org.picketlink.idm.credential.Digest;
 import org.picketlink.idm.credential.DigestCredentials;
+import org.picketlink.idm.model.Attribute;
 import org.picketlink.idm.model.User;
 
 /**
@@ -56,19 +65,27 @@ import org.picketlink.idm.model.User;
  */
 public class HTTPDigestAuthentication extends AbstractHTTPAuthentication {
 
+    private static final List<AuthenticationInfo> AUTHENTICATION_INFO = Collections.singletonList(
+            new AuthenticationInfo("HTTP DIGEST Authentication Credential",
+                    "Authenticates users using the HTTP DIGEST Authentication scheme.", HTTPDigestCredential.class));
+
+    private static final String NONCE_SCOPE_ATTRIBUTE_NAME = HTTPDigestAuthentication.class.getName() + ".NONCE_SCOPE";
+
     protected String opaque = UUID.randomUUID().toString();
 
     protected String qop = PicketBoxConstants.HTTP_DIGEST_QOP_AUTH;
 
     // How long is the nonce valid? By default, it is set at 3 minutes
-    protected long nonceMaxValid = 3 * 60 * 1000;
+    protected long nonceMaxValid = HTTPDigestConfiguration.DEFAULT_NONCE_MAX_VALID;
 
     protected NonceGenerator nonceGenerator = new UUIDNonceGenerator();
 
     /**
-     * A simple lookup map of session id versus the nonces issued
+     * Keeps the nonces issued for each session
      */
-    protected ConcurrentMap<String, List<String>> idVersusNonce = new ConcurrentHashMap<String, List<String>>();
+    protected NonceStore nonceStore = new InMemoryNonceStore();
+
+    protected DigestAlgorithm algorithm = DigestAlgorithm.MD5;
 
     /*
      * (non-Javadoc)
@@ -77,64 +94,127 @@ public class HTTPDigestAuthentication extends AbstractHTTPAuthentication {
      */
     @Override
     public List<AuthenticationInfo> getAuthenticationInfo() {
-        List<AuthenticationInfo> info = new ArrayList<AuthenticationInfo>();
-
-        info.add(new AuthenticationInfo("HTTP DIGEST Authentication Credential",
-                "Authenticates users using the HTTP DIGEST Authentication scheme.", HTTPDigestCredential.class));
-
-        return info;
+        return AUTHENTICATION_INFO;
     }
 
     public NonceGenerator getNonceGenerator() {
-        return this.nonceGenerator;
+        return getMechanismConfiguration().getNonceGenerator();
     }
 
     public void setNonceGenerator(NonceGenerator nonceGenerator) {
         this.nonceGenerator = nonceGenerator;
+        refreshConfiguration();
     }
 
     public void setNonceMaxValid(String nonceMaxValidStr) {
         this.nonceMaxValid = Long.parseLong(nonceMaxValidStr);
+        refreshConfiguration();
     }
 
-    public String getOpaque() {
-        HTTPAuthenticationConfiguration authenticationConfig = getAuthenticationConfig();
+    public long getNonceMaxValid() {
+        return getMechanismConfiguration().getNonceMaxValid();
+    }
 
-        if (authenticationConfig != null) {
-            HTTPDigestConfiguration digestConfiguration = authenticationConfig.getDigestConfiguration();
+    public NonceStore getNonceStore() {
+        return getMechanismConfiguration().getNonceStore();
+    }
 
-            if (digestConfiguration != null && digestConfiguration.getOpaque() != null) {
-                this.opaque = digestConfiguration.getOpaque();
-            }
-        }
+    public void setNonceStore(NonceStore nonceStore) {
+        this.nonceStore = nonceStore;
+        refreshConfiguration();
+    }
 
-        return this.opaque;
+    public DigestAlgorithm getAlgorithm() {
+        return getMechanismConfiguration().getAlgorithm();
+    }
+
+    public void setAlgorithm(DigestAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        refreshConfiguration();
+    }
+
+    /**
+     * <p>
+     * Returns the cache for the HA1 stored for users, or null if no cache is configured.
+     * </p>
+     *
+     * @return
+     */
+    public HA1Cache getHA1Cache() {
+        return getMechanismConfiguration().getHA1Cache();
+    }
+
+    public String getOpaque() {
+        return getMechanismConfiguration().getOpaque();
     }
 
     public void setOpaque(String opaque) {
         this.opaque = opaque;
+        refreshConfiguration();
     }
 
-    private static enum NONCE_VALIDATION_RESULT {
-        INVALID, STALE, VALID
-    }
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.http.authentication.AbstractHTTPAuthentication#configure(org.picketbox.http.authentication.
+     * HTTPMechanismConfiguration.Builder, org.picketbox.http.config.HTTPAuthenticationConfiguration)
+     */
+    @Override
+    protected void configure(HTTPMechanismConfiguration.Builder builder, HTTPAuthenticationConfiguration configuration) {
+        super.configure(builder, configuration);
 
-    private NONCE_VALIDATION_RESULT validateNonce(Digest digest, String sessionId) {
-        String nonce = digest.getNonce();
+        builder.opaque(this.opaque).qop(this.qop).nonceMaxValid(this.nonceMaxValid).nonceGenerator(this.nonceGenerator)
+                .nonceStore(this.nonceStore).algorithm(this.algorithm);
 
-        List<String> storedNonces = this.idVersusNonce.get(sessionId);
-        if (storedNonces == null) {
-            return NONCE_VALIDATION_RESULT.INVALID;
-        }
-        if (storedNonces.contains(nonce) == false) {
-            return NONCE_VALIDATION_RESULT.INVALID;
+        if (configuration != null && configuration.getDigestConfiguration() != null) {
+            HTTPDigestConfiguration digestConfiguration = configuration.getDigestConfiguration();
+
+            if (digestConfiguration.getRealm() != null) {
+                builder.realmName(digestConfiguration.getRealm());
+            }
+
+            if (digestConfiguration.getOpaque() != null) {
+                builder.opaque(digestConfiguration.getOpaque());
+            }
+
+            if (digestConfiguration.getNonceMaxValid() > 0) {
+                builder.nonceMaxValid(digestConfiguration.getNonceMaxValid());
+            }
+
+            if (digestConfiguration.getNonceGenerator() != null) {
+                builder.nonceGenerator(digestConfiguration.getNonceGenerator());
+            }
+
+            if (digestConfiguration.getNonceStore() != null) {
+                builder.nonceStore(digestConfiguration.getNonceStore());
+            }
+
+            if (digestConfiguration.getAlgorithm() != null) {
+                builder.algorithm(digestConfiguration.getAlgorithm());
+            }
+
+            builder.ha1Cache(digestConfiguration.getHA1Cache());
         }
+    }
 
-        boolean hasExpired = this.nonceGenerator.hasExpired(nonce, this.nonceMaxValid);
-        if (hasExpired)
-            return NONCE_VALIDATION_RESULT.STALE;
+    /**
+     * <p>
+     * Parses the hexadecimal nonce count sent by the client. Returns -1 if the value is missing or malformed.
+     * </p>
+     *
+     * @param nc
+     * @return
+     */
+    private long parseNonceCount(String nc) {
+        if (nc == null || nc.length() == 0 || nc.length() > 8) {
+            return -1;
+        }
 
-        return NONCE_VALIDATION_RESULT.VALID;
+        try {
+            return Long.parseLong(nc, 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     @Override
@@ -158,7 +238,13 @@ public class HTTPDigestAuthentication extends AbstractHTTPAuthentication {
         String sessionId = session.getId();
 
         DigestCredentials digCredential = digestCredential.getCredential();
+
+        if (digCredential == null) {
+            return null;
+        }
+
         Digest digest = digCredential.getDigest();
+        HTTPMechanismConfiguration configuration = getMechanismConfiguration();
 
         // Pre-verify the client response
         if (digest.getUsername() == null || digest.getRealm() == null || digest.getNonce() == null || digest.getUri() == null
@@ -167,36 +253,97 @@ public class HTTPDigestAuthentication extends AbstractHTTPAuthentication {
         }
 
         // Validate Opaque
-        if (digest.getOpaque() != null && digest.getOpaque().equals(getOpaque()) == false) {
+        if (digest.getOpaque() != null && digest.getOpaque().equals(configuration.getOpaque()) == false) {
             return null;
         }
 
         // Validate realm
-        if (digest.getRealm().equals(getRealmName()) == false) {
+        if (digest.getRealm().equals(configuration.getRealmName()) == false) {
             return null;
         }
 
         // Validate qop
-        if (digest.getQop().equals(this.qop) == false) {
+        if (digest.getQop().equals(configuration.getQop()) == false) {
+            return null;
+        }
+
+        long nonceCount = parseNonceCount(digest.getNc());
+
+        if (nonceCount < 0) {
             return null;
         }
 
         // Validate the nonce
-        NONCE_VALIDATION_RESULT nonceResult = validateNonce(digest, sessionId);
+        NonceStore nonceStore = configuration.getNonceStore();
 
-        if (nonceResult == NONCE_VALIDATION_RESULT.VALID) {
+        // the nonce count is only recorded for valid responses, so it can not be consumed by forged requests
+        if (nonceStore.validate(sessionId, digest.getNonce()) == NonceStatus.VALID && verifyResponse(digCredential, configuration)
+                && nonceStore.acceptNonceCount(sessionId, digest.getNonce(), nonceCount)) {
+            return new PicketBoxPrincipal(digest.getUsername());
+        }
+
+        return null;
+    }
+
+    /**
+     * <p>
+     * Verifies the response sent by the client. If the user has a HA1 stored for the realm and algorithm, the response is
+     * computed from it and the identity store is not asked to validate the credentials, but the HA1 is only accepted between
+     * the effective and expiry dates stored with it. The stored HA1 is cached, when a {@link HA1Cache} is configured.
+     * </p>
+     *
+     * @param credentials
+     * @param configuration
+     * @return
+     */
+    private boolean verifyResponse(DigestCredentials credentials, HTTPMechanismConfiguration configuration) {
+        Digest digest = credentials.getDigest();
+        DigestAlgorithm algorithm = configuration.getAlgorithm();
+        HA1Cache ha1Cache = configuration.getHA1Cache();
+        String ha1 = null;
+        long cacheGeneration = 0;
+
+        if (ha1Cache != null) {
+            cacheGeneration = ha1Cache.getGeneration();
+            ha1 = ha1Cache.lookup(digest.getUsername(), digest.getRealm(), algorithm);
+        }
+
+        if (ha1 == null) {
             User user = getIdentityManager().getUser(digest.getUsername());
 
-            if (user != null) {
-                getIdentityManager().validateCredentials(digCredential);
+            if (user == null) {
+                return false;
+            }
+
+            Attribute<Serializable> storedHA1 = user.getAttribute(HTTPDigestUtil.ha1AttributeName(digest.getRealm(), algorithm));
 
-                if (digCredential.getStatus().equals(Status.VALID)) {
-                    return new PicketBoxPrincipal(digest.getUsername());
+            if (storedHA1 == null || storedHA1.getValue() == null) {
+                // the identity store only knows how to validate MD5 responses
+                if (algorithm != DigestAlgorithm.MD5) {
+                    return false;
                 }
+
+                getIdentityManager().validateCredentials(credentials);
+
+                return Status.VALID.equals(credentials.getStatus());
+            }
+
+            ha1 = storedHA1.getValue().toString();
+
+            Date effectiveDate = HTTPDigestUtil.getHA1EffectiveDate(user, digest.getRealm(), algorithm);
+            Date expiryDate = HTTPDigestUtil.getHA1ExpiryDate(user, digest.getRealm(), algorithm);
+
+            if (ha1Cache != null) {
+                ha1Cache.put(digest.getUsername(), digest.getRealm(), algorithm, ha1, effectiveDate, expiryDate,
+                        cacheGeneration);
+            }
+
+            if (!HTTPDigestUtil.isHA1Effective(effectiveDate, expiryDate, System.currentTimeMillis())) {
+                return false;
             }
         }
 
-        return null;
+        return DigestEngine.getInstance(algorithm).matchesHA1(digest, ha1);
     }
 
     @Override
@@ -208,22 +355,24 @@ public class HTTPDigestAuthentication extends AbstractHTTPAuthentication {
         if (domain == null)
             domain = "/";
 
-        String newNonce = this.nonceGenerator.get();
+        HTTPMechanismConfiguration configuration = getMechanismConfiguration();
+        String newNonce = configuration.getNonceGenerator().get();
+        NonceStore nonceStore = configuration.getNonceStore();
+
+        nonceStore.store(sessionId, newNonce, configuration.getNonceMaxValid());
 
-        List<String> storedNonces = this.idVersusNonce.get(sessionId);
-        if (storedNonces == null) {
-            storedNonces = new ArrayList<String>();
-            this.idVersusNonce.put(sessionId, storedNonces);
+        // removes the nonces from the store when the session ends
+        if (session.getAttribute(NONCE_SCOPE_ATTRIBUTE_NAME) == null) {
+            session.setAttribute(NONCE_SCOPE_ATTRIBUTE_NAME, new NonceScopeBinding(nonceStore, sessionId));
         }
-        storedNonces.add(newNonce);
 
         StringBuilder str = new StringBuilder("Digest realm=\"");
-        str.append(getRealmName()).append("\",");
+        str.append(configuration.getRealmName()).append("\",");
         str.append("domain=\"").append(domain).append("\",");
         str.append("nonce=\"").append(newNonce).append("\",");
-        str.append("algorithm=MD5,");
-        str.append("qop=").append(this.qop).append(",");
-        str.append("opaque=\"").append(getOpaque()).append("\",");
+        str.append("algorithm=").append(configuration.getAlgorithm().getToken()).append(",");
+        str.append("qop=").append(configuration.getQop()).append(",");
+        str.append("opaque=\"").append(configuration.getOpaque()).append("\",");
         str.append("stale=\"").append(false).append("\"");
 
         response.setHeader(PicketBoxConstants.HTTP_WWW_AUTHENTICATE, str.toString());
@@ -235,23 +384,33 @@ public class HTTPDigestAuthentication extends AbstractHTTPAuthentication {
         }
     }
 
-    /*
-     * (non-Javadoc)
-     *
-     * @see org.picketbox.http.authentication.AbstractHTTPAuthentication#getRealmName()
+    /**
+     * <p>
+     * Session attribute that removes the nonces issued for a session from the {@link NonceStore} when the session is
+     * invalidated or expires.
+     * </p>
      */
-    @Override
-    public String getRealmName() {
-        HTTPAuthenticationConfiguration authenticationConfig = getAuthenticationConfig();
+    private static class NonceScopeBinding implements HttpSessionBindingListener, Serializable {
 
-        if (authenticationConfig != null) {
-            HTTPDigestConfiguration digestConfiguration = authenticationConfig.getDigestConfiguration();
+        private static final long serialVersionUID = -2695738271635126342L;
 
-            if (digestConfiguration != null && digestConfiguration.getRealm() != null) {
-                this.realmName = digestConfiguration.getRealm();
-            }
+        private final transient NonceStore nonceStore;
+        private final String scope;
+
+        NonceScopeBinding(NonceStore nonceStore, String scope) {
+            this.nonceStore = nonceStore;
+            this.scope = scope;
+        }
+
+        @Override
+        public void valueBound(HttpSessionBindingEvent event) {
         }
 
-        return this.realmName;
+        @Override
+        public void valueUnbound(HttpSessionBindingEvent event) {
+            if (this.nonceStore != null) {
+                this.nonceStore.remove(this.scope);
+            }
+        }
     }
 }
\ No newline at end of file
@@ -22,13 +22,12 @@
 package org.picketbox.http.authentication;
 
 import java.security.Principal;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.picketbox.core.PicketBoxPrincipal;
 import org.picketbox.core.authentication.AuthenticationInfo;
 import org.picketbox.core.exceptions.AuthenticationException;
 import org.picketbox.http.PicketBoxConstants;
@@ -36,9 +35,6 @@ import org.picketbox.http.authentication.credential.HTTPFormCredential;
 import org.picketbox.http.authentication.credential.HttpServletCredential;
 import org.picketbox.http.config.HTTPAuthenticationConfiguration;
 import org.picketbox.http.config.HTTPFormConfiguration;
-import org.picketlink.idm.credential.Credentials;
-import org.picketlink.idm.credential.Credentials.Status;
-import org.picketlink.idm.model.User;
 
 /**
  * Perform HTTP Form Authentication
@@ -48,13 +44,12 @@ import org.picketlink.idm.model.User;
  */
 public class HTTPFormAuthentication extends AbstractHTTPAuthentication {
 
+    private static final List<AuthenticationInfo> AUTHENTICATION_INFO = Collections.singletonList(
+            new AuthenticationInfo("HTTP FORM Authentication Credential", "Authenticates users using the HTTP FORM Authentication scheme.", HTTPFormCredential.class));
+
     @Override
     public List<AuthenticationInfo> getAuthenticationInfo() {
-        List<AuthenticationInfo> info = new ArrayList<AuthenticationInfo>();
-
-        info.add(new AuthenticationInfo("HTTP FORM Authentication Credential", "Authenticates users using the HTTP FORM Authentication scheme.", HTTPFormCredential.class));
-
-        return info;
+        return AUTHENTICATION_INFO;
     }
 
     @Override
@@ -67,15 +62,7 @@ public class HTTPFormAuthentication extends AbstractHTTPAuthentication {
         HTTPFormCredential formCredential = (HTTPFormCredential) credential;
 
         if (formCredential.getCredential() != null) {
-            User user = getIdentityManager().getUser(formCredential.getUserName());
-
-            Credentials passwordCredential = formCredential.getCredential();
-
-            getIdentityManager().validateCredentials(passwordCredential);
-
-            if (user != null && passwordCredential.getStatus().equals(Status.VALID)) {
-                return new PicketBoxPrincipal(formCredential.getUserName());
-            }
+            return validateCredentials(formCredential.getUserName(), formCredential.getCredential());
         }
 
         return null;
@@ -86,48 +73,30 @@ public class HTTPFormAuthentication extends AbstractHTTPAuthentication {
         forwardLoginPage(request, response);
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.http.authentication.AbstractHTTPAuthentication#configure(org.picketbox.http.authentication.
+     * HTTPMechanismConfiguration.Builder, org.picketbox.http.config.HTTPAuthenticationConfiguration)
+     */
     @Override
-    public String getFormAuthPage() {
-        HTTPAuthenticationConfiguration authenticationConfig = getAuthenticationConfig();
+    protected void configure(HTTPMechanismConfiguration.Builder builder, HTTPAuthenticationConfiguration configuration) {
+        super.configure(builder, configuration);
 
-        if (authenticationConfig != null) {
-            HTTPFormConfiguration formConfiguration = authenticationConfig.getFormConfiguration();
+        if (configuration != null && configuration.getFormConfiguration() != null) {
+            HTTPFormConfiguration formConfiguration = configuration.getFormConfiguration();
 
-            if (formConfiguration != null && formConfiguration.getFormAuthPage() != null) {
-                super.formAuthPage = formConfiguration.getFormAuthPage();
+            if (formConfiguration.getFormAuthPage() != null) {
+                builder.formAuthPage(formConfiguration.getFormAuthPage());
             }
-        }
-
-        return super.formAuthPage;
-    }
 
-    @Override
-    public String getDefaultPage() {
-        HTTPAuthenticationConfiguration authenticationConfig = getAuthenticationConfig();
-
-        if (authenticationConfig != null) {
-            HTTPFormConfiguration formConfiguration = authenticationConfig.getFormConfiguration();
-
-            if (formConfiguration != null && formConfiguration.getDefaultPage() != null) {
-                super.defaultPage = formConfiguration.getDefaultPage();
+            if (formConfiguration.getDefaultPage() != null) {
+                builder.defaultPage(formConfiguration.getDefaultPage());
             }
-        }
-
-        return super.defaultPage;
-    }
-
-    @Override
-    public String getFormErrorPage() {
-        HTTPAuthenticationConfiguration authenticationConfig = getAuthenticationConfig();
 
-        if (authenticationConfig != null) {
-            HTTPFormConfiguration formConfiguration = authenticationConfig.getFormConfiguration();
-
-            if (formConfiguration != null && formConfiguration.getErrorPage() != null) {
-                super.formErrorPage = formConfiguration.getErrorPage();
+            if (formConfiguration.getErrorPage() != null) {
+                builder.formErrorPage(formConfiguration.getErrorPage());
             }
         }
-
-        return super.formErrorPage;
     }
 }
\ No newline at end of file
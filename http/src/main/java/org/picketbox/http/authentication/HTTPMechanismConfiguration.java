@@ -0,0 +1,309 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.authentication;
+
+import org.picketbox.core.exceptions.ConfigurationException;
+import org.picketbox.core.nonce.NonceGenerator;
+import org.picketbox.core.nonce.NonceStore;
+import org.picketbox.http.config.HTTPAuthenticationConfiguration;
+import org.picketbox.http.util.DigestAlgorithm;
+
+/**
+ * <p>
+ * Immutable snapshot of the settings used by a {@link AbstractHTTPAuthentication} mechanism. The snapshot is created and
+ * validated when the manager starts, from the values set on the mechanism and the {@link HTTPAuthenticationConfiguration}.
+ * Mechanisms read their settings from the snapshot on every request instead of walking the configuration again.
+ * </p>
+ * <p>
+ * Settings that do not apply to a mechanism, like the nonce settings for a FORM mechanism, are null.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public final class HTTPMechanismConfiguration {
+
+    private final HTTPAuthenticationConfiguration source;
+    private final String realmName;
+    private final String defaultPage;
+    private final String formAuthPage;
+    private final String formErrorPage;
+    private final RequestCache requestCache;
+    private final String opaque;
+    private final String qop;
+    private final long nonceMaxValid;
+    private final NonceGenerator nonceGenerator;
+    private final NonceStore nonceStore;
+    private final DigestAlgorithm algorithm;
+    private final HA1Cache ha1Cache;
+    private final boolean useCertificateValidation;
+    private final boolean useCNAsPrincipal;
+
+    private HTTPMechanismConfiguration(Builder builder) {
+        this.source = builder.source;
+        this.realmName = builder.realmName;
+        this.defaultPage = builder.defaultPage;
+        this.formAuthPage = builder.formAuthPage;
+        this.formErrorPage = builder.formErrorPage;
+        this.requestCache = builder.requestCache;
+        this.opaque = builder.opaque;
+        this.qop = builder.qop;
+        this.nonceMaxValid = builder.nonceMaxValid;
+        this.nonceGenerator = builder.nonceGenerator;
+        this.nonceStore = builder.nonceStore;
+        this.algorithm = builder.algorithm;
+        this.ha1Cache = builder.ha1Cache;
+        this.useCertificateValidation = builder.useCertificateValidation;
+        this.useCNAsPrincipal = builder.useCNAsPrincipal;
+    }
+
+    /**
+     * <p>
+     * Returns the configuration this snapshot was created from, or null if it was created only from the values set on the
+     * mechanism.
+     * </p>
+     *
+     * @return
+     */
+    public HTTPAuthenticationConfiguration getSource() {
+        return this.source;
+    }
+
+    public String getRealmName() {
+        return this.realmName;
+    }
+
+    public String getDefaultPage() {
+        return this.defaultPage;
+    }
+
+    public String getFormAuthPage() {
+        return this.formAuthPage;
+    }
+
+    public String getFormErrorPage() {
+        return this.formErrorPage;
+    }
+
+    public RequestCache getRequestCache() {
+        return this.requestCache;
+    }
+
+    public String getOpaque() {
+        return this.opaque;
+    }
+
+    public String getQop() {
+        return this.qop;
+    }
+
+    public long getNonceMaxValid() {
+        return this.nonceMaxValid;
+    }
+
+    public NonceGenerator getNonceGenerator() {
+        return this.nonceGenerator;
+    }
+
+    public NonceStore getNonceStore() {
+        return this.nonceStore;
+    }
+
+    public DigestAlgorithm getAlgorithm() {
+        return this.algorithm;
+    }
+
+    /**
+     * <p>
+     * Returns the cache for the HA1 stored for users, or null if no cache is configured.
+     * </p>
+     *
+     * @return
+     */
+    public HA1Cache getHA1Cache() {
+        return this.ha1Cache;
+    }
+
+    public boolean isUseCertificateValidation() {
+        return this.useCertificateValidation;
+    }
+
+    public boolean isUseCNAsPrincipal() {
+        return this.useCNAsPrincipal;
+    }
+
+    /**
+     * <p>
+     * Collects the settings of a mechanism and creates a validated {@link HTTPMechanismConfiguration}.
+     * </p>
+     *
+     * @author <a href="mailto:agent@local">agent</a>
+     *
+     */
+    public static final class Builder {
+
+        private final HTTPAuthenticationConfiguration source;
+        private String realmName;
+        private String defaultPage;
+        private String formAuthPage;
+        private String formErrorPage;
+        private RequestCache requestCache;
+        private String opaque;
+        private String qop;
+        private long nonceMaxValid;
+        private NonceGenerator nonceGenerator;
+        private NonceStore nonceStore;
+        private DigestAlgorithm algorithm;
+        private HA1Cache ha1Cache;
+        private boolean useCertificateValidation;
+        private boolean useCNAsPrincipal;
+
+        public Builder(HTTPAuthenticationConfiguration source) {
+            this.source = source;
+        }
+
+        public Builder realmName(String realmName) {
+            this.realmName = realmName;
+            return this;
+        }
+
+        public Builder defaultPage(String defaultPage) {
+            this.defaultPage = defaultPage;
+            return this;
+        }
+
+        public Builder formAuthPage(String formAuthPage) {
+            this.formAuthPage = formAuthPage;
+            return this;
+        }
+
+        public Builder formErrorPage(String formErrorPage) {
+            this.formErrorPage = formErrorPage;
+            return this;
+        }
+
+        public Builder requestCache(RequestCache requestCache) {
+            this.requestCache = requestCache;
+            return this;
+        }
+
+        public Builder opaque(String opaque) {
+            this.opaque = opaque;
+            return this;
+        }
+
+        public Builder qop(String qop) {
+            this.qop = qop;
+            return this;
+        }
+
+        public Builder nonceMaxValid(long nonceMaxValid) {
+            this.nonceMaxValid = nonceMaxValid;
+            return this;
+        }
+
+        public Builder nonceGenerator(NonceGenerator nonceGenerator) {
+            this.nonceGenerator = nonceGenerator;
+            return this;
+        }
+
+        public Builder nonceStore(NonceStore nonceStore) {
+            this.nonceStore = nonceStore;
+            return this;
+        }
+
+        public Builder algorithm(DigestAlgorithm algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        public Builder ha1Cache(HA1Cache ha1Cache) {
+            this.ha1Cache = ha1Cache;
+            return this;
+        }
+
+        public Builder useCertificateValidation(boolean useCertificateValidation) {
+            this.useCertificateValidation = useCertificateValidation;
+            return this;
+        }
+
+        public Builder useCNAsPrincipal(boolean useCNAsPrincipal) {
+            this.useCNAsPrincipal = useCNAsPrincipal;
+            return this;
+        }
+
+        /**
+         * <p>
+         * Validates the collected settings and creates the {@link HTTPMechanismConfiguration}.
+         * </p>
+         *
+         * @return
+         * @throws ConfigurationException if any of the settings is invalid.
+         */
+        public HTTPMechanismConfiguration build() throws ConfigurationException {
+            checkNotEmpty("realm", this.realmName);
+            checkPage("default page", this.defaultPage);
+            checkPage("form authentication page", this.formAuthPage);
+            checkPage("form error page", this.formErrorPage);
+
+            if (this.requestCache == null) {
+                throw new ConfigurationException("No request cache provided.");
+            }
+
+            if (this.algorithm != null) {
+                if (!this.algorithm.isSupported()) {
+                    throw new ConfigurationException("Digest algorithm [" + this.algorithm.getJcaName()
+                            + "] is not supported by this platform.");
+                }
+
+                checkNotEmpty("opaque", this.opaque);
+                checkNotEmpty("qop", this.qop);
+
+                if (this.nonceMaxValid <= 0) {
+                    throw new ConfigurationException("Invalid nonce max valid [" + this.nonceMaxValid
+                            + "]. It must be greater than zero.");
+                }
+
+                if (this.nonceGenerator == null || this.nonceStore == null) {
+                    throw new ConfigurationException("A nonce generator and a nonce store must be provided.");
+                }
+            }
+
+            return new HTTPMechanismConfiguration(this);
+        }
+
+        private void checkNotEmpty(String name, String value) {
+            if (value == null || value.trim().isEmpty()) {
+                throw new ConfigurationException("No " + name + " provided.");
+            }
+        }
+
+        private void checkPage(String name, String page) {
+            checkNotEmpty(name, page);
+
+            if (!page.startsWith("/")) {
+                throw new ConfigurationException("Invalid " + name + " [" + page + "]. It should always start with a '/'.");
+            }
+        }
+    }
+}
@@ -22,10 +22,21 @@
 
 package org.picketbox.http.authentication;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
 
 import org.picketbox.http.PicketBoxConstants;
 
@@ -35,23 +46,107 @@ import org.picketbox.http.PicketBoxConstants;
  * is to be used during authentication to help to retrieve previous informations from the request made for the first time before
  * the authentication process begins. It also stores the cached request in the user session for later use, if necessary.
  * </p>
+ * <p>
+ * Requests are keyed by the id of the user session. The cache holds at most <code>maxSize</code> requests, evicting the oldest
+ * ones when it is full, and a request expires after the configured time to live. A request is also removed when the session it
+ * belongs to is invalidated or expires, so clients that never finish the authentication do not make the cache grow.
+ * </p>
+ * <p>
+ * Only the headers and parameters whose names were allowed are copied to the {@link SavedRequest}.
+ * </p>
  *
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  */
 public class RequestCache {
 
-    private ConcurrentHashMap<String, SavedRequest> requestCache = new ConcurrentHashMap<String, SavedRequest>();
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    public static final long DEFAULT_TIME_TO_LIVE = 10 * 60 * 1000L;
+
+    private static final String SCOPE_ATTRIBUTE_NAME = RequestCache.class.getName() + ".SCOPE";
+
+    private final int maxSize;
+    private final long timeToLive;
+    private final Set<String> headerNames;
+    private final Set<String> parameterNames;
+
+    /**
+     * Insertion ordered, so the eldest entries are also the first to expire.
+     */
+    private final LinkedHashMap<String, CachedRequest> requestCache;
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public RequestCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * @param maxSize maximum number of requests held by the cache
+     * @param timeToLive time in milliseconds a request is kept while the user authenticates
+     */
+    public RequestCache(int maxSize, long timeToLive) {
+        this(maxSize, timeToLive, Collections.<String> emptySet(), Collections.<String> emptySet());
+    }
+
+    /**
+     * @param maxSize maximum number of requests held by the cache
+     * @param timeToLive time in milliseconds a request is kept while the user authenticates
+     * @param headerNames the names of the headers copied from the original request
+     * @param parameterNames the names of the parameters copied from the original request
+     */
+    public RequestCache(final int maxSize, long timeToLive, Collection<String> headerNames, Collection<String> parameterNames) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than zero.");
+        }
+
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be greater than zero.");
+        }
+
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.headerNames = toLowerCase(headerNames);
+        this.parameterNames = Collections.unmodifiableSet(new HashSet<String>(parameterNames));
+        this.requestCache = new LinkedHashMap<String, CachedRequest>(16, 0.75f, false) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRequest> eldest) {
+                if (size() > maxSize) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
 
     /**
      * <p>
-     * Saves a {@link HttpServletRequest} as a {@link SavedRequest} instance. All the state from the original request will be
+     * Saves a {@link HttpServletRequest} as a {@link SavedRequest} instance. Only the allowed headers and parameters are
      * copied.
      * </p>
      *
      * @param request
      */
     public void saveRequest(HttpServletRequest request) {
-        this.requestCache.put(getCurrentSession(request).getId(), new SavedRequest(request));
+        HttpSession session = getCurrentSession(request);
+        String sessionId = session.getId();
+        CachedRequest entry = new CachedRequest(new SavedRequest(request, this.headerNames, this.parameterNames),
+                System.currentTimeMillis() + this.timeToLive);
+
+        synchronized (this.requestCache) {
+            // re-inserted, so the entry moves to the end of the expiration order
+            this.requestCache.remove(sessionId);
+            this.requestCache.put(sessionId, entry);
+            purgeExpired(System.currentTimeMillis());
+        }
+
+        // removes the request from the cache when the session ends
+        if (session.getAttribute(SCOPE_ATTRIBUTE_NAME) == null) {
+            session.setAttribute(SCOPE_ATTRIBUTE_NAME, new RequestCacheBinding(this, sessionId));
+        }
     }
 
     /**
@@ -71,15 +166,148 @@ public class RequestCache {
 
     /**
      * <p>
-     * Removes a cached request and stores it in the session.
+     * Removes a cached request and stores it in the session. Expired requests are discarded.
      * </p>
      */
     public SavedRequest removeAndStoreSavedRequestInSession(HttpServletRequest request) {
         HttpSession session = getCurrentSession(request);
-        SavedRequest savedRequest = this.requestCache.remove(session.getId());
+        SavedRequest savedRequest = remove(session.getId());
 
         session.setAttribute(PicketBoxConstants.SAVED_REQUEST, savedRequest);
 
         return savedRequest;
     }
+
+    /**
+     * <p>
+     * Removes the request cached for the given session.
+     * </p>
+     *
+     * @param sessionId
+     * @return the cached request or null if there is none or it has expired.
+     */
+    public SavedRequest remove(String sessionId) {
+        CachedRequest entry;
+
+        synchronized (this.requestCache) {
+            entry = this.requestCache.remove(sessionId);
+        }
+
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+
+        return entry.savedRequest;
+    }
+
+    /**
+     * <p>
+     * Removes all cached requests.
+     * </p>
+     */
+    public void clear() {
+        synchronized (this.requestCache) {
+            this.requestCache.clear();
+        }
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    public long getTimeToLive() {
+        return this.timeToLive;
+    }
+
+    public Set<String> getHeaderNames() {
+        return this.headerNames;
+    }
+
+    public Set<String> getParameterNames() {
+        return this.parameterNames;
+    }
+
+    public int getSize() {
+        synchronized (this.requestCache) {
+            return this.requestCache.size();
+        }
+    }
+
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * <p>
+     * Removes the expired entries. All entries have the same time to live, so it stops at the first one that did not expire.
+     * Must be called while holding the lock on {@link #requestCache}.
+     * </p>
+     *
+     * @param now
+     */
+    private void purgeExpired(long now) {
+        Iterator<CachedRequest> iterator = this.requestCache.values().iterator();
+
+        while (iterator.hasNext()) {
+            if (!iterator.next().isExpired(now)) {
+                break;
+            }
+
+            iterator.remove();
+        }
+    }
+
+    private static Set<String> toLowerCase(Collection<String> names) {
+        Set<String> result = new HashSet<String>();
+
+        for (String name : names) {
+            result.add(name.toLowerCase(Locale.ENGLISH));
+        }
+
+        return Collections.unmodifiableSet(result);
+    }
+
+    private static class CachedRequest {
+
+        private final SavedRequest savedRequest;
+        private final long expiration;
+
+        CachedRequest(SavedRequest savedRequest, long expiration) {
+            this.savedRequest = savedRequest;
+            this.expiration = expiration;
+        }
+
+        boolean isExpired(long now) {
+            return now >= this.expiration;
+        }
+    }
+
+    /**
+     * <p>
+     * Session attribute that removes the request cached for a session when the session is invalidated or expires.
+     * </p>
+     */
+    private static class RequestCacheBinding implements HttpSessionBindingListener, Serializable {
+
+        private static final long serialVersionUID = 4712285094741254637L;
+
+        private final transient RequestCache requestCache;
+        private final String sessionId;
+
+        RequestCacheBinding(RequestCache requestCache, String sessionId) {
+            this.requestCache = requestCache;
+            this.sessionId = sessionId;
+        }
+
+        @Override
+        public void valueBound(HttpSessionBindingEvent event) {
+        }
+
+        @Override
+        public void valueUnbound(HttpSessionBindingEvent event) {
+            if (this.requestCache != null) {
+                this.requestCache.remove(this.sessionId);
+            }
+        }
+    }
 }
@@ -22,12 +22,12 @@
 
 package org.picketbox.http.authentication;
 
-import java.util.ArrayList;
-import java.util.Enumeration;
+import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import javax.servlet.http.Cookie;
@@ -37,29 +37,49 @@ import javax.servlet.http.HttpServletRequest;
  * <p>
  * This class is a representation of the state of a previous {@link HttpServletRequest} instance.
  * </p>
+ * <p>
+ * Only the state needed to redirect the user back to the original request is kept. Headers and parameters are only copied if
+ * their names are in the allow-lists given when the instance is created. Cookies are never copied, they are sent again by the
+ * client.
+ * </p>
  *
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  */
-public class SavedRequest {
+public class SavedRequest implements Serializable {
 
-    private List<Cookie> cookies = new ArrayList<Cookie>();
-    private Map<String, String> headers = new HashMap<String, String>();
-    private Map<String, String[]> parameters = new HashMap<String, String[]>();
-    private String method;
-    private String queryString;
-    private String requestURI;
-    private String scheme;
-    private String contextPath;
+    private static final long serialVersionUID = -6304962468335786291L;
+
+    private final Map<String, String> headers;
+    private final Map<String, String[]> parameters;
+    private final String method;
+    private final String queryString;
+    private final String requestURI;
+    private final String scheme;
+    private final String contextPath;
 
     /**
      * <p>
-     * Create a new instance copying the state from the request passed as argument.
+     * Create a new instance copying the general state from the request passed as argument. No headers or parameters are
+     * copied.
      * </p>
      */
     public SavedRequest(HttpServletRequest request) {
-        copyCookies(request);
-        copyHeaders(request);
-        copyParameters(request);
+        this(request, Collections.<String> emptySet(), Collections.<String> emptySet());
+    }
+
+    /**
+     * <p>
+     * Create a new instance copying the state from the request passed as argument, including the given headers and
+     * parameters.
+     * </p>
+     *
+     * @param request
+     * @param headerNames the names, in lower case, of the headers to copy
+     * @param parameterNames the names of the parameters to copy
+     */
+    public SavedRequest(HttpServletRequest request, Set<String> headerNames, Set<String> parameterNames) {
+        this.headers = copyHeaders(request, headerNames);
+        this.parameters = copyParameters(request, parameterNames);
 
         // copy general properties from the original request
         this.method = request.getMethod();
@@ -80,7 +100,7 @@ public class SavedRequest {
 
     /**
      * <p>
-     * Returns the headers copied from the original request.
+     * Returns the headers copied from the original request, keyed by their lower case names.
      * </p>
      */
     public Map<String, String> getHeaders() {
@@ -89,11 +109,23 @@ public class SavedRequest {
 
     /**
      * <p>
-     * Returns the cookies copied from the original request.
+     * Returns the cookies copied from the original request. Cookies are no longer copied, so the list is always empty.
      * </p>
+     *
+     * @deprecated cookies are sent again by the client, read them from the current request instead.
      */
+    @Deprecated
     public List<Cookie> getCookies() {
-        return this.cookies;
+        return Collections.emptyList();
+    }
+
+    /**
+     * <p>
+     * Returns the value of a header copied from the original request. The name is case insensitive.
+     * </p>
+     */
+    public String getHeader(String name) {
+        return this.headers.get(name.toLowerCase(Locale.ENGLISH));
     }
 
     /**
@@ -143,47 +175,47 @@ public class SavedRequest {
 
     /**
      * <p>
-     * Copy the parameters from the original {@link HttpServletRequest}.
+     * Copy the allowed parameters from the original {@link HttpServletRequest}.
      * </p>
      */
-    private void copyParameters(HttpServletRequest request) {
-        Set<Entry<String, String[]>> parametersEntries = request.getParameterMap().entrySet();
-
-        for (Entry<String, String[]> parameter : parametersEntries) {
-            this.getParameters().put(parameter.getKey(), (String[]) parameter.getValue());
+    private static Map<String, String[]> copyParameters(HttpServletRequest request, Set<String> parameterNames) {
+        if (parameterNames.isEmpty()) {
+            return Collections.emptyMap();
         }
-    }
 
-    /**
-     * <p>
-     * Copy the headers from the original {@link HttpServletRequest}.
-     * </p>
-     */
-    private void copyHeaders(HttpServletRequest request) {
-        Enumeration<String> headerNames = request.getHeaderNames();
+        Map<String, String[]> parameters = new HashMap<String, String[]>(parameterNames.size() * 2);
 
-        while (headerNames.hasMoreElements()) {
-            String headerName = (String) headerNames.nextElement();
-            String headerValue = request.getHeader(headerName);
+        for (String parameterName : parameterNames) {
+            String[] values = request.getParameterValues(parameterName);
 
-            this.getHeaders().put(headerName, headerValue);
+            if (values != null) {
+                parameters.put(parameterName, values);
+            }
         }
+
+        return Collections.unmodifiableMap(parameters);
     }
 
     /**
      * <p>
-     * Copy the cookies from the original {@link HttpServletRequest}.
+     * Copy the allowed headers from the original {@link HttpServletRequest}.
      * </p>
      */
-    private void copyCookies(HttpServletRequest request) {
-        Cookie[] cookies = request.getCookies();
-
-        if (cookies == null) {
-            return;
+    private static Map<String, String> copyHeaders(HttpServletRequest request, Set<String> headerNames) {
+        if (headerNames.isEmpty()) {
+            return Collections.emptyMap();
         }
 
-        for (Cookie cookie : cookies) {
-            this.getCookies().add(cookie);
+        Map<String, String> headers = new HashMap<String, String>(headerNames.size() * 2);
+
+        for (String headerName : headerNames) {
+            String headerValue = request.getHeader(headerName);
+
+            if (headerValue != null) {
+                headers.put(headerName, headerValue);
+            }
         }
+
+        return Collections.unmodifiableMap(headers);
     }
 }
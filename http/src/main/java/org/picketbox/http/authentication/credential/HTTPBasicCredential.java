@@ -26,9 +26,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.picketbox.core.authentication.credential.AbstractUserCredential;
-import org.picketbox.core.util.Base64;
 import org.picketbox.http.PicketBoxConstants;
-import org.picketlink.idm.credential.Password;
+import org.picketbox.http.util.AuthorizationHeaderParser;
 import org.picketlink.idm.credential.UsernamePasswordCredentials;
 
 /**
@@ -46,26 +45,11 @@ public class HTTPBasicCredential extends AbstractUserCredential implements HttpS
 
         String authorizationHeader = request.getHeader(PicketBoxConstants.HTTP_AUTHORIZATION_HEADER);
 
-        if (authorizationHeader != null) {
-            int whitespaceIndex = authorizationHeader.indexOf(' ');
+        UsernamePasswordCredentials credentials = AuthorizationHeaderParser.parseBasic(authorizationHeader);
 
-            if (whitespaceIndex > 0) {
-                String method = authorizationHeader.substring(0, whitespaceIndex);
-
-                if (PicketBoxConstants.HTTP_BASIC.equalsIgnoreCase(method)) {
-                    authorizationHeader = authorizationHeader.substring(whitespaceIndex + 1);
-                    authorizationHeader = new String(Base64.decode(authorizationHeader));
-                    int indexOfColon = authorizationHeader.indexOf(':');
-
-                    if (indexOfColon > 0) {
-                        String username = authorizationHeader.substring(0, indexOfColon);
-                        String password = authorizationHeader.substring(indexOfColon + 1);
-
-                        setUserName(username);
-                        setCredential(new UsernamePasswordCredentials(username, new Password(password.toCharArray())));
-                    }
-                }
-            }
+        if (credentials != null) {
+            setUserName(credentials.getUsername());
+            setCredential(credentials);
         }
     }
 
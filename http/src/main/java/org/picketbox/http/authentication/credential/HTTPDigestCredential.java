@@ -27,7 +27,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.picketbox.core.authentication.credential.AbstractUserCredential;
 import org.picketbox.http.PicketBoxConstants;
-import org.picketbox.http.util.HTTPDigestUtil;
+import org.picketbox.http.util.AuthorizationHeaderParser;
 import org.picketlink.idm.credential.Digest;
 import org.picketlink.idm.credential.DigestCredentials;
 
@@ -73,19 +73,12 @@ public class HTTPDigestCredential extends AbstractUserCredential implements Http
         String authorizationHeader = getRequest().getHeader(PicketBoxConstants.HTTP_AUTHORIZATION_HEADER);
 
         if (authorizationHeader != null && authorizationHeader.isEmpty() == false) {
-            if (authorizationHeader.startsWith(PicketBoxConstants.HTTP_DIGEST)) {
-                authorizationHeader = authorizationHeader.substring(7).trim();
-            }
-
-            String[] tokens = HTTPDigestUtil.quoteTokenize(authorizationHeader);
+            Digest digest = AuthorizationHeaderParser.parseDigest(authorizationHeader);
 
-            int len = tokens.length;
-            if (len == 0) {
+            if (digest == null) {
                 return null;
             }
 
-            Digest digest = HTTPDigestUtil.digest(tokens);
-
             digest.setMethod(getRequest().getMethod());
 
             return new DigestCredentials(digest);
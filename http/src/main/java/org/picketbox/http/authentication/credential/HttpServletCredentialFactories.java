@@ -0,0 +1,195 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.authentication.credential;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.picketbox.core.PicketBoxMessages;
+import org.picketbox.http.PicketBoxConstants;
+
+/**
+ * <p>
+ * The {@link HttpServletCredentialFactory} instances for the built-in HTTP credentials.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class HttpServletCredentialFactories {
+
+    /**
+     * Creates {@link HTTPBasicCredential} instances. Supports requests with a <code>Basic</code> authorization header.
+     */
+    public static final HttpServletCredentialFactory BASIC = new HttpServletCredentialFactory() {
+        @Override
+        public boolean supports(HttpServletRequest request) {
+            return hasAuthorizationScheme(request, PicketBoxConstants.HTTP_BASIC);
+        }
+
+        @Override
+        public HttpServletCredential create(HttpServletRequest request, HttpServletResponse response) {
+            return new HTTPBasicCredential(request, response);
+        }
+    };
+
+    /**
+     * Creates {@link HTTPDigestCredential} instances. Supports requests with a <code>Digest</code> authorization header.
+     */
+    public static final HttpServletCredentialFactory DIGEST = new HttpServletCredentialFactory() {
+        @Override
+        public boolean supports(HttpServletRequest request) {
+            return hasAuthorizationScheme(request, PicketBoxConstants.HTTP_DIGEST);
+        }
+
+        @Override
+        public HttpServletCredential create(HttpServletRequest request, HttpServletResponse response) {
+            return new HTTPDigestCredential(request, response);
+        }
+    };
+
+    /**
+     * Creates {@link HTTPClientCertCredential} instances. Supports requests with a client certificate.
+     */
+    public static final HttpServletCredentialFactory CLIENT_CERT = new HttpServletCredentialFactory() {
+        @Override
+        public boolean supports(HttpServletRequest request) {
+            return request.getAttribute(PicketBoxConstants.HTTP_CERTIFICATE) != null;
+        }
+
+        @Override
+        public HttpServletCredential create(HttpServletRequest request, HttpServletResponse response) {
+            return new HTTPClientCertCredential(request, response);
+        }
+    };
+
+    /**
+     * Creates {@link HTTPFormCredential} instances. Supports requests sent to the <code>j_security_check</code> URI.
+     */
+    public static final HttpServletCredentialFactory FORM = new HttpServletCredentialFactory() {
+        @Override
+        public boolean supports(HttpServletRequest request) {
+            String requestURI = request.getRequestURI();
+
+            return requestURI != null && requestURI.contains(PicketBoxConstants.HTTP_FORM_J_SECURITY_CHECK);
+        }
+
+        @Override
+        public HttpServletCredential create(HttpServletRequest request, HttpServletResponse response) {
+            return new HTTPFormCredential(request, response);
+        }
+    };
+
+    private HttpServletCredentialFactories() {
+    }
+
+    /**
+     * <p>
+     * Returns the factory for one of the authentication types: <code>BASIC</code>, <code>DIGEST</code>,
+     * <code>CLIENT_CERT</code> or <code>FORM</code>. The type is case insensitive.
+     * </p>
+     *
+     * @param authenticationType
+     * @return the factory or null if the type is unknown.
+     */
+    public static HttpServletCredentialFactory forType(String authenticationType) {
+        String type = authenticationType.trim();
+
+        if (type.equalsIgnoreCase(PicketBoxConstants.BASIC)) {
+            return BASIC;
+        } else if (type.equalsIgnoreCase(PicketBoxConstants.DIGEST)) {
+            return DIGEST;
+        } else if (type.equalsIgnoreCase(PicketBoxConstants.CLIENT_CERT)) {
+            return CLIENT_CERT;
+        } else if (type.equalsIgnoreCase(PicketBoxConstants.FORM)) {
+            return FORM;
+        }
+
+        return null;
+    }
+
+    /**
+     * <p>
+     * Returns a factory that tries the given factories in order, using the first one that supports the request. If none of
+     * them supports it, the last one is used so the client is challenged by its authentication mechanism.
+     * </p>
+     *
+     * @param factories
+     * @return
+     */
+    public static HttpServletCredentialFactory chain(HttpServletCredentialFactory... factories) {
+        if (factories == null || factories.length == 0) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("factories");
+        }
+
+        if (factories.length == 1) {
+            return factories[0];
+        }
+
+        return new ChainedCredentialFactory(factories);
+    }
+
+    private static boolean hasAuthorizationScheme(HttpServletRequest request, String scheme) {
+        String authorizationHeader = request.getHeader(PicketBoxConstants.HTTP_AUTHORIZATION_HEADER);
+
+        return authorizationHeader != null && authorizationHeader.length() > scheme.length()
+                && authorizationHeader.regionMatches(true, 0, scheme, 0, scheme.length())
+                && authorizationHeader.charAt(scheme.length()) == ' ';
+    }
+
+    private static class ChainedCredentialFactory implements HttpServletCredentialFactory {
+
+        private final HttpServletCredentialFactory[] factories;
+
+        ChainedCredentialFactory(HttpServletCredentialFactory[] factories) {
+            for (HttpServletCredentialFactory factory : factories) {
+                if (factory == null) {
+                    throw PicketBoxMessages.MESSAGES.invalidNullArgument("factory");
+                }
+            }
+
+            this.factories = factories.clone();
+        }
+
+        @Override
+        public boolean supports(HttpServletRequest request) {
+            for (HttpServletCredentialFactory factory : this.factories) {
+                if (factory.supports(request)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public HttpServletCredential create(HttpServletRequest request, HttpServletResponse response) {
+            for (HttpServletCredentialFactory factory : this.factories) {
+                if (factory.supports(request)) {
+                    return factory.create(request, response);
+                }
+            }
+
+            return this.factories[this.factories.length - 1].create(request, response);
+        }
+    }
+}
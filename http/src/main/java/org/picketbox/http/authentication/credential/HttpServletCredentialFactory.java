@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.authentication.credential;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>
+ * Creates the {@link HttpServletCredential} used to authenticate an unauthenticated request. Implementations are resolved once
+ * when the filter is initialized and must be thread safe.
+ * </p>
+ * <p>
+ * Factories can be chained using {@link HttpServletCredentialFactories#chain(HttpServletCredentialFactory...)}. In that case
+ * the first factory that supports the request is used.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public interface HttpServletCredentialFactory {
+
+    /**
+     * <p>
+     * Indicates if the request carries the credentials created by this factory, for example an <code>Authorization</code>
+     * header using the expected scheme.
+     * </p>
+     *
+     * @param request
+     * @return
+     */
+    boolean supports(HttpServletRequest request);
+
+    /**
+     * <p>
+     * Creates a new credential for the given request and response.
+     * </p>
+     *
+     * @param request
+     * @param response
+     * @return
+     */
+    HttpServletCredential create(HttpServletRequest request, HttpServletResponse response);
+
+}
@@ -24,10 +24,12 @@ package org.picketbox.http.config;
 
 import java.util.List;
 
+import org.picketbox.core.authentication.AuthenticationCache;
 import org.picketbox.core.authentication.AuthenticationMechanism;
 import org.picketbox.core.config.AuthenticationConfiguration;
 import org.picketbox.core.config.ClientCertConfiguration;
 import org.picketbox.core.config.EventManagerConfiguration;
+import org.picketbox.http.authentication.RequestCache;
 
 /**
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
@@ -37,12 +39,27 @@ public class HTTPAuthenticationConfiguration extends AuthenticationConfiguration
 
     private HTTPDigestConfiguration digestConfiguration;
     private HTTPFormConfiguration formConfiguration;
+    private RequestCache requestCache;
 
     public HTTPAuthenticationConfiguration(List<AuthenticationMechanism> mechanisms, EventManagerConfiguration eventManager,
             ClientCertConfiguration clientCertConfiguration, HTTPDigestConfiguration digestConfiguration, HTTPFormConfiguration formConfiguration) {
-        super(mechanisms, eventManager, clientCertConfiguration);
+        this(mechanisms, eventManager, clientCertConfiguration, digestConfiguration, formConfiguration, null);
+    }
+
+    public HTTPAuthenticationConfiguration(List<AuthenticationMechanism> mechanisms, EventManagerConfiguration eventManager,
+            ClientCertConfiguration clientCertConfiguration, HTTPDigestConfiguration digestConfiguration,
+            HTTPFormConfiguration formConfiguration, AuthenticationCache authenticationCache) {
+        this(mechanisms, eventManager, clientCertConfiguration, digestConfiguration, formConfiguration, authenticationCache,
+                null);
+    }
+
+    public HTTPAuthenticationConfiguration(List<AuthenticationMechanism> mechanisms, EventManagerConfiguration eventManager,
+            ClientCertConfiguration clientCertConfiguration, HTTPDigestConfiguration digestConfiguration,
+            HTTPFormConfiguration formConfiguration, AuthenticationCache authenticationCache, RequestCache requestCache) {
+        super(mechanisms, eventManager, clientCertConfiguration, authenticationCache);
         this.digestConfiguration = digestConfiguration;
         this.formConfiguration = formConfiguration;
+        this.requestCache = requestCache;
     }
 
     public HTTPDigestConfiguration getDigestConfiguration() {
@@ -52,4 +69,15 @@ public class HTTPAuthenticationConfiguration extends AuthenticationConfiguration
     public HTTPFormConfiguration getFormConfiguration() {
         return this.formConfiguration;
     }
+
+    /**
+     * <p>
+     * Returns the {@link RequestCache} shared by the HTTP authentication mechanisms.
+     * </p>
+     *
+     * @return
+     */
+    public RequestCache getRequestCache() {
+        return this.requestCache;
+    }
 }
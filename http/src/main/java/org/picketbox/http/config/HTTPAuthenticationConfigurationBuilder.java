@@ -38,11 +38,13 @@ public class HTTPAuthenticationConfigurationBuilder extends AuthenticationConfig
 
     private final HTTPDigestConfigurationBuilder digestAuthentication;
     private HTTPFormConfigurationBuilder formAuthentication;
+    private final RequestCacheConfigurationBuilder requestCache;
 
     public HTTPAuthenticationConfigurationBuilder(ConfigurationBuilder builder) {
         super(builder);
         this.digestAuthentication = new HTTPDigestConfigurationBuilder(builder);
         this.formAuthentication = new HTTPFormConfigurationBuilder(builder);
+        this.requestCache = new RequestCacheConfigurationBuilder(builder);
     }
 
     /* (non-Javadoc)
@@ -67,13 +69,18 @@ public class HTTPAuthenticationConfigurationBuilder extends AuthenticationConfig
         return this.formAuthentication;
     }
 
+    public RequestCacheConfigurationBuilder requestCache() {
+        return this.requestCache;
+    }
+
     /* (non-Javadoc)
      * @see org.picketbox.core.config.AuthenticationConfigurationBuilder#doBuild()
      */
     @Override
     public AuthenticationConfiguration doBuild() {
         return new HTTPAuthenticationConfiguration(this.mechanisms, this.builder.eventManager().build(),
-                super.certAuthentication.build(), this.digestAuthentication.build(), this.formAuthentication.build());
+                super.certAuthentication.build(), this.digestAuthentication.build(), this.formAuthentication.build(),
+                this.authenticationCache, this.requestCache.build());
     }
 
 }
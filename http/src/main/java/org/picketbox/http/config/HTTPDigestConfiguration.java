@@ -22,14 +22,29 @@
 
 package org.picketbox.http.config;
 
+import org.picketbox.core.nonce.NonceGenerator;
+import org.picketbox.core.nonce.NonceStore;
+import org.picketbox.http.authentication.HA1Cache;
+import org.picketbox.http.util.DigestAlgorithm;
+
 /**
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  *
  */
 public class HTTPDigestConfiguration {
 
+    /**
+     * Default time, in milliseconds, a nonce is valid.
+     */
+    public static final long DEFAULT_NONCE_MAX_VALID = 3 * 60 * 1000;
+
     private String realm;
     private String opaque;
+    private NonceStore nonceStore;
+    private NonceGenerator nonceGenerator;
+    private long nonceMaxValid;
+    private DigestAlgorithm algorithm;
+    private HA1Cache ha1Cache;
 
     public String getRealm() {
         return this.realm;
@@ -47,4 +62,58 @@ public class HTTPDigestConfiguration {
         this.opaque = opaque;
     }
 
+    public NonceStore getNonceStore() {
+        return this.nonceStore;
+    }
+
+    public void setNonceStore(NonceStore nonceStore) {
+        this.nonceStore = nonceStore;
+    }
+
+    public NonceGenerator getNonceGenerator() {
+        return this.nonceGenerator;
+    }
+
+    public void setNonceGenerator(NonceGenerator nonceGenerator) {
+        this.nonceGenerator = nonceGenerator;
+    }
+
+    /**
+     * <p>
+     * Returns how long, in milliseconds, a nonce is valid, or zero if not configured.
+     * </p>
+     *
+     * @return
+     */
+    public long getNonceMaxValid() {
+        return this.nonceMaxValid;
+    }
+
+    public void setNonceMaxValid(long nonceMaxValid) {
+        this.nonceMaxValid = nonceMaxValid;
+    }
+
+    public DigestAlgorithm getAlgorithm() {
+        return this.algorithm;
+    }
+
+    public void setAlgorithm(DigestAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * <p>
+     * Returns the cache used for the HA1 values stored for users, or null if caching is disabled.
+     * </p>
+     *
+     * @return
+     */
+    public HA1Cache getHA1Cache() {
+        return this.ha1Cache;
+    }
+
+    public void setHA1Cache(HA1Cache ha1Cache) {
+        this.ha1Cache = ha1Cache;
+    }
+
 }
@@ -24,6 +24,14 @@ package org.picketbox.http.config;
 
 import org.picketbox.core.config.ConfigurationBuilder;
 import org.picketbox.core.config.builder.AbstractConfigurationBuilder;
+import org.picketbox.core.nonce.HMACNonceGenerator;
+import org.picketbox.core.nonce.NonceGenerator;
+import org.picketbox.core.nonce.NonceReplayFilter;
+import org.picketbox.core.nonce.NonceStore;
+import org.picketbox.core.nonce.StatelessNonceStore;
+import org.picketbox.http.authentication.HA1Cache;
+import org.picketbox.http.util.DigestAlgorithm;
+import org.picketbox.http.util.HTTPDigestUtil;
 
 /**
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
@@ -32,6 +40,9 @@ import org.picketbox.core.config.builder.AbstractConfigurationBuilder;
 public class HTTPDigestConfigurationBuilder extends AbstractConfigurationBuilder<HTTPDigestConfiguration> {
 
     private HTTPDigestConfiguration configuration = new HTTPDigestConfiguration();
+    private byte[] nonceSecret;
+    private boolean detectReplays;
+    private boolean ha1CacheConfigured;
 
     public HTTPDigestConfigurationBuilder(ConfigurationBuilder builder) {
         super(builder);
@@ -39,6 +50,9 @@ public class HTTPDigestConfigurationBuilder extends AbstractConfigurationBuilder
 
     @Override
     protected void setDefaults() {
+        if (!this.ha1CacheConfigured && this.configuration.getHA1Cache() == null) {
+            this.configuration.setHA1Cache(new HA1Cache());
+        }
     }
 
     public HTTPDigestConfigurationBuilder Digest() {
@@ -55,11 +69,139 @@ public class HTTPDigestConfigurationBuilder extends AbstractConfigurationBuilder
         return this;
     }
 
+    /**
+     * <p>
+     * Sets the {@link NonceStore} used to keep track of the nonces issued to clients.
+     * </p>
+     *
+     * @param nonceStore
+     * @return
+     */
+    public HTTPDigestConfigurationBuilder nonceStore(NonceStore nonceStore) {
+        this.configuration.setNonceStore(nonceStore);
+        return this;
+    }
+
+    /**
+     * <p>
+     * Sets the {@link NonceGenerator} used to create the nonces sent to clients.
+     * </p>
+     *
+     * @param nonceGenerator
+     * @return
+     */
+    public HTTPDigestConfigurationBuilder nonceGenerator(NonceGenerator nonceGenerator) {
+        this.configuration.setNonceGenerator(nonceGenerator);
+        return this;
+    }
+
+    /**
+     * <p>
+     * Sets how long, in milliseconds, a nonce is valid.
+     * </p>
+     *
+     * @param nonceMaxValid
+     * @return
+     */
+    public HTTPDigestConfigurationBuilder nonceMaxValid(long nonceMaxValid) {
+        this.configuration.setNonceMaxValid(nonceMaxValid);
+        return this;
+    }
+
+    /**
+     * <p>
+     * Uses self-validating nonces signed with the given secret. Nonces are not stored, so any server configured with the same
+     * secret can validate them. See {@link HMACNonceGenerator}.
+     * </p>
+     *
+     * @param secret
+     * @return
+     */
+    public HTTPDigestConfigurationBuilder statelessNonces(byte[] secret) {
+        return statelessNonces(secret, false);
+    }
+
+    /**
+     * <p>
+     * Uses self-validating nonces signed with the given secret. If <code>detectReplays</code> is true each server rejects
+     * requests that reuse a nonce and nonce count it has already accepted. See {@link NonceReplayFilter}.
+     * </p>
+     *
+     * @param secret
+     * @param detectReplays
+     * @return
+     */
+    public HTTPDigestConfigurationBuilder statelessNonces(byte[] secret, boolean detectReplays) {
+        this.nonceSecret = secret;
+        this.detectReplays = detectReplays;
+        return this;
+    }
+
+    /**
+     * <p>
+     * Sets the algorithm advertised to clients and used to verify their responses. Algorithms other than
+     * {@link DigestAlgorithm#MD5} require the users to have a stored HA1, see
+     * {@link HTTPDigestUtil#updateHA1(org.picketlink.idm.IdentityManager, org.picketlink.idm.model.User, String, DigestAlgorithm, char[])}.
+     * </p>
+     *
+     * @param algorithm
+     * @return
+     */
+    public HTTPDigestConfigurationBuilder algorithm(DigestAlgorithm algorithm) {
+        this.configuration.setAlgorithm(algorithm);
+        return this;
+    }
+
+    /**
+     * <p>
+     * Caches the HA1 stored for users using the given size and time to live.
+     * </p>
+     *
+     * @param maxSize
+     * @param timeToLiveInMillis
+     * @return
+     */
+    public HTTPDigestConfigurationBuilder ha1Cache(int maxSize, long timeToLiveInMillis) {
+        return ha1Cache(new HA1Cache(maxSize, timeToLiveInMillis));
+    }
+
+    /**
+     * <p>
+     * Sets the cache for the HA1 stored for users. A null value disables the cache.
+     * </p>
+     *
+     * @param ha1Cache
+     * @return
+     */
+    public HTTPDigestConfigurationBuilder ha1Cache(HA1Cache ha1Cache) {
+        this.configuration.setHA1Cache(ha1Cache);
+        this.ha1CacheConfigured = true;
+        return this;
+    }
+
     /* (non-Javadoc)
      * @see org.picketbox.core.config.AbstractConfigurationBuilder#doBuild()
      */
     @Override
     public HTTPDigestConfiguration doBuild() {
+        if (this.nonceSecret != null) {
+            long nonceMaxValid = this.configuration.getNonceMaxValid();
+
+            if (nonceMaxValid <= 0) {
+                nonceMaxValid = HTTPDigestConfiguration.DEFAULT_NONCE_MAX_VALID;
+            }
+
+            HMACNonceGenerator nonceGenerator = new HMACNonceGenerator(this.nonceSecret);
+            NonceReplayFilter replayFilter = null;
+
+            if (this.detectReplays) {
+                replayFilter = new NonceReplayFilter(nonceMaxValid);
+            }
+
+            this.configuration.setNonceGenerator(nonceGenerator);
+            this.configuration.setNonceStore(new StatelessNonceStore(nonceGenerator, nonceMaxValid, replayFilter));
+        }
+
         return this.configuration ;
     }
 }
@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.config.builder.AbstractConfigurationBuilder;
+import org.picketbox.http.authentication.RequestCache;
+
+/**
+ * <p>
+ * Configures the {@link RequestCache} used by the HTTP authentication mechanisms to remember the request made before the
+ * authentication.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class RequestCacheConfigurationBuilder extends AbstractConfigurationBuilder<RequestCache> {
+
+    private int maxSize = RequestCache.DEFAULT_MAX_SIZE;
+    private long timeToLive = RequestCache.DEFAULT_TIME_TO_LIVE;
+    private final List<String> headerNames = new ArrayList<String>();
+    private final List<String> parameterNames = new ArrayList<String>();
+    private RequestCache requestCache;
+
+    public RequestCacheConfigurationBuilder(ConfigurationBuilder builder) {
+        super(builder);
+    }
+
+    @Override
+    protected void setDefaults() {
+    }
+
+    /**
+     * <p>
+     * Sets the maximum number of requests held by the cache.
+     * </p>
+     *
+     * @param maxSize
+     * @return
+     */
+    public RequestCacheConfigurationBuilder maxSize(int maxSize) {
+        this.maxSize = maxSize;
+        this.requestCache = null;
+        return this;
+    }
+
+    /**
+     * <p>
+     * Sets how long, in milliseconds, a request is kept while the user authenticates.
+     * </p>
+     *
+     * @param timeToLiveInMillis
+     * @return
+     */
+    public RequestCacheConfigurationBuilder timeToLive(long timeToLiveInMillis) {
+        this.timeToLive = timeToLiveInMillis;
+        this.requestCache = null;
+        return this;
+    }
+
+    /**
+     * <p>
+     * Adds the names of the headers copied from the original request.
+     * </p>
+     *
+     * @param headerNames
+     * @return
+     */
+    public RequestCacheConfigurationBuilder headers(String... headerNames) {
+        this.headerNames.addAll(Arrays.asList(headerNames));
+        this.requestCache = null;
+        return this;
+    }
+
+    /**
+     * <p>
+     * Adds the names of the parameters copied from the original request.
+     * </p>
+     *
+     * @param parameterNames
+     * @return
+     */
+    public RequestCacheConfigurationBuilder parameters(String... parameterNames) {
+        this.parameterNames.addAll(Arrays.asList(parameterNames));
+        this.requestCache = null;
+        return this;
+    }
+
+    /* (non-Javadoc)
+     * @see org.picketbox.core.config.AbstractConfigurationBuilder#doBuild()
+     */
+    @Override
+    public RequestCache doBuild() {
+        // the same cache is returned until the configuration changes, so managers built from this builder share it
+        if (this.requestCache == null) {
+            this.requestCache = new RequestCache(this.maxSize, this.timeToLive, this.headerNames, this.parameterNames);
+        }
+
+        return this.requestCache;
+    }
+}
@@ -22,7 +22,8 @@
 package org.picketbox.http.filters;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -44,16 +45,16 @@ import org.picketbox.core.ctx.SecurityContext;
 import org.picketbox.core.ctx.SecurityContextPropagation;
 import org.picketbox.core.exceptions.AuthenticationException;
 import org.picketbox.core.exceptions.ProcessingException;
+import org.picketbox.core.session.SessionTouchBatch;
 import org.picketbox.http.DefaultPicketBoxHTTPManager;
+import org.picketbox.http.HTTPSecurityExchange;
 import org.picketbox.http.HTTPUserContext;
 import org.picketbox.http.PicketBoxConstants;
 import org.picketbox.http.PicketBoxHTTPManager;
-import org.picketbox.http.authentication.credential.HTTPBasicCredential;
-import org.picketbox.http.authentication.credential.HTTPClientCertCredential;
-import org.picketbox.http.authentication.credential.HTTPDigestCredential;
 import org.picketbox.http.authentication.credential.HTTPFormCredential;
 import org.picketbox.http.authentication.credential.HttpServletCredential;
-import org.picketbox.http.authorization.resource.WebResource;
+import org.picketbox.http.authentication.credential.HttpServletCredentialFactories;
+import org.picketbox.http.authentication.credential.HttpServletCredentialFactory;
 import org.picketbox.http.config.ConfigurationBuilderProvider;
 import org.picketbox.http.config.HTTPConfigurationBuilder;
 import org.picketbox.http.config.PicketBoxHTTPConfiguration;
@@ -78,18 +79,20 @@ import org.picketbox.http.wrappers.ResponseWrapper;
 public class DelegatingSecurityFilter implements Filter {
 
     private PicketBoxHTTPManager securityManager;
-    private Class<? extends HttpServletCredential> credentialType;
+    private HttpServletCredentialFactory credentialFactory;
 
     @Override
     public void init(FilterConfig fc) throws ServletException {
+        // configures how credentials are created during authentication, unless a factory was already provided
+        if (this.credentialFactory == null) {
+            this.credentialFactory = getCredentialFactory(fc.getServletContext());
+        }
+
         // no need to configure a PicketBoxManager. A valid instance was used to create this filter.
         if (this.securityManager != null) {
             return;
         }
 
-        // configures the credential to be used during authentication
-        this.credentialType = getSupporttedCredential(fc.getServletContext());
-
         this.securityManager = doInitSecurityManager(fc);
 
         // sets the manager as a context attribute and make it available for the application
@@ -156,20 +159,34 @@ public class DelegatingSecurityFilter implements Filter {
         RequestWrapper wrappedRequest = new RequestWrapper(httpRequest, this.securityManager);
         ResponseWrapper wrappedResponse = new ResponseWrapper(httpResponse);
 
+        // resolves the protected resource and the user context only once for the whole request
+        HTTPSecurityExchange exchange = HTTPSecurityExchange.bind(wrappedRequest, wrappedResponse, this.securityManager);
+
+        // raises at most one touch event per session for the whole request
+        SessionTouchBatch.begin();
+
         try {
-            propagateSecurityContext(wrappedRequest);
+            propagateSecurityContext(exchange);
 
-            logout(wrappedRequest, wrappedResponse);
+            logout(exchange);
 
-            authenticate(wrappedRequest, wrappedResponse);
+            authenticate(exchange);
 
-            authorize(wrappedRequest, wrappedResponse);
+            authorize(exchange);
 
             if (!response.isCommitted()) {
                 chain.doFilter(wrappedRequest, wrappedResponse);
             }
         } finally {
-            clearPropagatedSecurityContext();
+            try {
+                clearPropagatedSecurityContext();
+            } finally {
+                try {
+                    SessionTouchBatch.end();
+                } finally {
+                    HTTPSecurityExchange.unbind(wrappedRequest, exchange);
+                }
+            }
         }
 
     }
@@ -194,11 +211,11 @@ public class DelegatingSecurityFilter implements Filter {
      * Propagates the authenticated {@link UserContext}.
      * </p>
      *
-     * @param httpRequest
+     * @param exchange
      * @throws ServletException
      */
-    private void propagateSecurityContext(HttpServletRequest httpRequest) throws ServletException {
-        UserContext subject = this.securityManager.getUserContext(httpRequest);
+    private void propagateSecurityContext(HTTPSecurityExchange exchange) throws ServletException {
+        UserContext subject = exchange.getUserContext();
 
         if (subject != null) {
             try {
@@ -209,70 +226,58 @@ public class DelegatingSecurityFilter implements Filter {
         }
     }
 
-    private void authorize(HttpServletRequest httpRequest, HttpServletResponse httpResponse) throws IOException {
+    private void authorize(HTTPSecurityExchange exchange) throws IOException {
+        HttpServletResponse httpResponse = exchange.getResponse();
+
         if (httpResponse.isCommitted()) {
             return;
         }
 
-        boolean authorize = this.securityManager.authorize(getAuthenticatedUser(httpRequest),
-                createWebResource(httpRequest, httpResponse));
+        boolean authorize = this.securityManager.authorize(exchange.getUserContext(), exchange.getWebResource());
 
         if (!authorize && !httpResponse.isCommitted()) {
             httpResponse.sendError(HttpServletResponse.SC_FORBIDDEN);
         }
     }
 
-    private WebResource createWebResource(HttpServletRequest request, HttpServletResponse response) {
-        WebResource resource = new WebResource();
-
-        resource.setContext(request.getServletContext());
-        resource.setRequest(request);
-        resource.setResponse(response);
-
-        return resource;
-    }
-
     public UserContext getAuthenticatedUser(HttpServletRequest request) {
         return this.securityManager.getUserContext(request);
     }
 
-    private void authenticate(HttpServletRequest httpRequest, HttpServletResponse httpResponse) throws ServletException {
+    private void authenticate(HTTPSecurityExchange exchange) throws ServletException {
+        HttpServletRequest httpRequest = exchange.getRequest();
+        HttpServletResponse httpResponse = exchange.getResponse();
+
         if (httpResponse.isCommitted()) {
             return;
         }
 
+        UserContext userContext = exchange.getUserContext();
+
         // user is already authenticated
-        if (this.securityManager.getUserContext(httpRequest) != null
-                && this.securityManager.getUserContext(httpRequest).isAuthenticated()) {
+        if (userContext != null && userContext.isAuthenticated()) {
             return;
         }
 
         try {
-            HttpServletCredential credential = this.credentialType.getConstructor(
-                    new Class[] { HttpServletRequest.class, HttpServletResponse.class }).newInstance(
-                    new Object[] { httpRequest, httpResponse });
+            HttpServletCredential credential = this.credentialFactory.create(httpRequest, httpResponse);
 
             this.securityManager.authenticate(new HTTPUserContext(httpRequest, httpResponse, credential));
         } catch (AuthenticationException e) {
             throw new ServletException(e);
-        } catch (IllegalArgumentException e) {
-            e.printStackTrace();
-        } catch (SecurityException e) {
-            e.printStackTrace();
-        } catch (InstantiationException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
+        } finally {
+            // the authentication may have stored a new user context in the session
+            exchange.resetUserContext();
         }
     }
 
-    private void logout(HttpServletRequest httpRequest, HttpServletResponse httpResponse) throws ServletException {
+    private void logout(HTTPSecurityExchange exchange) throws ServletException {
+        HttpServletRequest httpRequest = exchange.getRequest();
+        HttpServletResponse httpResponse = exchange.getResponse();
+
         if (isLogoutRequest(httpRequest)) {
-            this.securityManager.logout(getAuthenticatedUser(httpRequest));
+            this.securityManager.logout(exchange.getUserContext());
+            exchange.resetUserContext();
             try {
                 httpResponse.sendRedirect(httpRequest.getContextPath());
             } catch (IOException e) {
@@ -302,35 +307,61 @@ public class DelegatingSecurityFilter implements Filter {
 
     /**
      * <p>
-     * Returns a {@link HttpServletCredential} class that should be used to create user credentials when authenticating users.
-     * The specific class is returned according with the <code>PicketBoxConstants.AUTHENTICATION_KEY</code> context parameter.
-     * Possible values are BASIC, DIGEST AND CLIENT_CERT. If none of them is provided the default credential will be of type
-     * {@link HTTPFormCredential}.
+     * Sets the {@link HttpServletCredentialFactory} used to create user credentials when authenticating users. When not set,
+     * the factory is resolved from the context parameters when the filter is initialized.
+     * </p>
+     *
+     * @param credentialFactory
+     */
+    public void setCredentialFactory(HttpServletCredentialFactory credentialFactory) {
+        this.credentialFactory = credentialFactory;
+    }
+
+    /**
+     * <p>
+     * Returns the {@link HttpServletCredentialFactory} that should be used to create user credentials when authenticating
+     * users. If the <code>PicketBoxConstants.CREDENTIAL_FACTORY</code> context parameter is set, an instance of the given
+     * class is used. Otherwise the factory is chosen according with the <code>PicketBoxConstants.AUTHENTICATION_KEY</code>
+     * context parameter. Possible values are BASIC, DIGEST, CLIENT_CERT and FORM, or a comma separated list of them to try
+     * each one in order. If none of them is provided the default credential will be of type {@link HTTPFormCredential}.
      * </p>
      *
      * @param servletContext
      * @return
      * @throws ServletException
      */
-    private Class<? extends HttpServletCredential> getSupporttedCredential(ServletContext servletContext)
-            throws ServletException {
+    private HttpServletCredentialFactory getCredentialFactory(ServletContext servletContext) throws ServletException {
+        String factoryClassName = servletContext.getInitParameter(PicketBoxConstants.CREDENTIAL_FACTORY);
+
+        if (factoryClassName != null) {
+            Object factory = SecurityActions.instance(getClass(), factoryClassName.trim());
+
+            if (!(factory instanceof HttpServletCredentialFactory)) {
+                throw new ServletException("Class [" + factoryClassName + "] is not a "
+                        + HttpServletCredentialFactory.class.getName() + ".");
+            }
+
+            return (HttpServletCredentialFactory) factory;
+        }
+
         String authenticationType = servletContext.getInitParameter(PicketBoxConstants.AUTHENTICATION_KEY);
+        List<HttpServletCredentialFactory> factories = new ArrayList<HttpServletCredentialFactory>();
 
         if (authenticationType != null) {
-            if (authenticationType.equalsIgnoreCase(PicketBoxConstants.BASIC)) {
-                this.credentialType = HTTPBasicCredential.class;
-            } else if (authenticationType.equalsIgnoreCase(PicketBoxConstants.DIGEST)) {
-                this.credentialType = HTTPDigestCredential.class;
-            } else if (authenticationType.equalsIgnoreCase(PicketBoxConstants.CLIENT_CERT)) {
-                this.credentialType = HTTPClientCertCredential.class;
+            for (String type : authenticationType.split(",")) {
+                HttpServletCredentialFactory factory = HttpServletCredentialFactories.forType(type);
+
+                if (factory != null) {
+                    factories.add(factory);
+                }
             }
         }
 
-        if (this.credentialType == null) {
-            this.credentialType = HTTPFormCredential.class;
+        if (factories.isEmpty()) {
+            return HttpServletCredentialFactories.FORM;
         }
 
-        return this.credentialType;
+        return HttpServletCredentialFactories.chain(factories.toArray(new HttpServletCredentialFactory[factories.size()]));
     }
 
     /**
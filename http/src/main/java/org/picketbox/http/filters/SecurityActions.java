@@ -47,6 +47,11 @@ class SecurityActions {
     static Object instance(final Class<?> theClass, final String fqn) {
         try {
             Class<?> clazz = loadClass(theClass, fqn);
+
+            if (clazz == null) {
+                throw new RuntimeException("Class [" + fqn + "] not found.");
+            }
+
             return clazz.newInstance();
         } catch (InstantiationException e) {
             throw new RuntimeException(e);
@@ -40,6 +40,7 @@ public class HTTPProtectedResourceManager extends AbstractProtectedResourceManag
         ProtectedResourceManager<WebResource> {
 
     private List<ProtectedResource> resources = new ArrayList<ProtectedResource>();
+    private volatile ProtectedResourceMatcher matcher;
 
     /**
      * @return the resources
@@ -55,6 +56,10 @@ public class HTTPProtectedResourceManager extends AbstractProtectedResourceManag
     @Override
     public void setResources(List<ProtectedResource> resources) {
         this.resources = resources;
+
+        if (started()) {
+            this.matcher = new ProtectedResourceMatcher(this.resources);
+        }
     }
 
     /**
@@ -62,6 +67,10 @@ public class HTTPProtectedResourceManager extends AbstractProtectedResourceManag
      * Returns a {@link ProtectedResource} instance that matches the specified {@link HttpServletRequest} instance. If no match
      * is found, it will be returned a default resource. See <code>ProtectedResource.DEFAULT_RESOURCE</code>.
      * </p>
+     * <p>
+     * The resources are compiled into a {@link ProtectedResourceMatcher} when this manager is started, so the lookup does not
+     * depend on the number of configured resources.
+     * </p>
      *
      * @param servletReq
      * @return
@@ -70,16 +79,16 @@ public class HTTPProtectedResourceManager extends AbstractProtectedResourceManag
     public ProtectedResource getProtectedResource(WebResource servletReq) {
         checkIfStarted();
 
-        String requestURI = servletReq.getRequest().getRequestURI()
-                .substring(servletReq.getRequest().getContextPath().length());
+        String requestURI = servletReq.getRequest().getRequestURI();
+        int contextPathLength = servletReq.getRequest().getContextPath().length();
 
-        for (ProtectedResource resource : this.resources) {
-            if (resource.matches(requestURI)) {
-                return resource;
-            }
+        ProtectedResource resource = this.matcher.match(requestURI, contextPathLength);
+
+        if (resource == null) {
+            return ProtectedResource.DEFAULT_RESOURCE;
         }
 
-        return ProtectedResource.DEFAULT_RESOURCE;
+        return resource;
     }
 
     /*
@@ -92,6 +101,8 @@ public class HTTPProtectedResourceManager extends AbstractProtectedResourceManag
         if (this.resources.isEmpty()) {
             PicketBoxLogger.LOGGER.allResourcesWillBeProteced();
         }
+
+        this.matcher = new ProtectedResourceMatcher(this.resources);
     }
 
     /*
@@ -124,6 +135,10 @@ public class HTTPProtectedResourceManager extends AbstractProtectedResourceManag
     @Override
     public void addProtectedResource(ProtectedResource protectedResource) {
         this.resources.add(protectedResource);
+
+        if (started()) {
+            this.matcher = new ProtectedResourceMatcher(this.resources);
+        }
     }
 
 }
@@ -62,12 +62,20 @@ public class ProtectedResource {
      */
     private String constraint = ProtectedResourceConstraint.ALL.name();
 
+    /**
+     * <p>
+     * The pattern with every <code>/*</code> replaced by <code>/</code>, computed once instead of on every match.
+     * </p>
+     */
+    private String formattedPattern;
+
     private String[] roles;
     private String[] groups;
 
     public ProtectedResource(String pattern, ProtectedResourceConstraint constraint) {
         this.pattern = pattern;
         this.constraint = constraint.name();
+        this.formattedPattern = pattern.replaceAll("/[*]", "/");
     }
 
     public ProtectedResource(String pattern, ProtectedResourceConstraint constraint, String[] roles) {
@@ -91,6 +99,13 @@ public class ProtectedResource {
         return this.pattern;
     }
 
+    /**
+     * @return the pattern with every <code>/*</code> replaced by <code>/</code>
+     */
+    String getFormattedPattern() {
+        return this.formattedPattern;
+    }
+
     /**
      * @return the constraint
      */
@@ -149,9 +164,7 @@ public class ProtectedResource {
         }
 
         if (getPattern().endsWith(ANY_RESOURCE_PATTERN)) {
-            String formattedPattern = getPattern().replaceAll("/[*]", "/");
-
-            if (uri.contains(formattedPattern)) {
+            if (uri.contains(this.formattedPattern)) {
                 return true;
             }
         }
@@ -0,0 +1,333 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.resource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * Compiled form of a list of {@link ProtectedResource} patterns. It returns the same resource as calling
+ * {@link ProtectedResource#matches(String)} on each resource in order and taking the first match, without walking the whole
+ * list:
+ * </p>
+ * <ul>
+ * <li>Exact patterns are kept in a hash table.</li>
+ * <li>Patterns ending with <code>/*</code> are kept in a trie of path segments, which is walked from every <code>/</code> of
+ * the URI.</li>
+ * <li>Patterns starting with <code>/*</code> are kept in a suffix index, grouped by suffix length.</li>
+ * </ul>
+ * <p>
+ * Each index keeps the position of the first resource that registered a key, so the lowest position found among all indexes
+ * is the first matching resource. Lookups work on a region of the request URI and do not allocate.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+final class ProtectedResourceMatcher {
+
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    private final ProtectedResource[] resources;
+
+    private int anyResource = NO_MATCH;
+    private final RegionTable<Integer> exactPatterns = new RegionTable<Integer>();
+    private final Node prefixPatterns = new Node();
+    private final RegionTable<Integer> suffixPatterns = new RegionTable<Integer>();
+    private final int[] suffixLengths;
+
+    /**
+     * Patterns ending with <code>/*</code> that can not be split into path segments, in the order they were defined.
+     */
+    private final String[] containsPatterns;
+    private final int[] containsIndexes;
+
+    ProtectedResourceMatcher(List<ProtectedResource> resources) {
+        this.resources = resources.toArray(new ProtectedResource[resources.size()]);
+
+        TreeSet<Integer> lengths = new TreeSet<Integer>();
+        List<String> irregularPatterns = new ArrayList<String>();
+        List<Integer> irregularIndexes = new ArrayList<Integer>();
+
+        for (int i = 0; i < this.resources.length; i++) {
+            String pattern = this.resources[i].getPattern();
+
+            if (pattern.equals(ProtectedResource.ANY_RESOURCE_PATTERN) || pattern.equals("*")) {
+                this.anyResource = Math.min(this.anyResource, i);
+                continue;
+            }
+
+            if (this.exactPatterns.get(pattern) == null) {
+                this.exactPatterns.put(pattern, i);
+            }
+
+            if (pattern.endsWith(ProtectedResource.ANY_RESOURCE_PATTERN)) {
+                String formattedPattern = this.resources[i].getFormattedPattern();
+
+                if (!addPrefixPattern(formattedPattern, i)) {
+                    irregularPatterns.add(formattedPattern);
+                    irregularIndexes.add(i);
+                }
+            }
+
+            if (pattern.startsWith(ProtectedResource.ANY_RESOURCE_PATTERN)) {
+                String suffix = pattern.substring(ProtectedResource.ANY_RESOURCE_PATTERN.length() + 1);
+
+                if (this.suffixPatterns.get(suffix) == null) {
+                    this.suffixPatterns.put(suffix, i);
+                    lengths.add(suffix.length());
+                }
+            }
+        }
+
+        this.suffixLengths = new int[lengths.size()];
+
+        int position = 0;
+
+        for (Integer length : lengths) {
+            this.suffixLengths[position++] = length;
+        }
+
+        this.containsPatterns = irregularPatterns.toArray(new String[irregularPatterns.size()]);
+        this.containsIndexes = new int[irregularIndexes.size()];
+
+        for (int i = 0; i < this.containsIndexes.length; i++) {
+            this.containsIndexes[i] = irregularIndexes.get(i);
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the first resource matching the URI that starts at the given offset of the request URI, or null.
+     * </p>
+     *
+     * @param requestURI
+     * @param offset
+     * @return
+     */
+    ProtectedResource match(String requestURI, int offset) {
+        int end = requestURI.length();
+        int best = this.anyResource;
+
+        Integer exact = this.exactPatterns.get(requestURI, offset, end);
+
+        if (exact != null && exact < best) {
+            best = exact;
+        }
+
+        best = matchPrefixPatterns(requestURI, offset, best);
+        best = matchSuffixPatterns(requestURI, offset, end, best);
+
+        for (int i = 0; i < this.containsIndexes.length && this.containsIndexes[i] < best; i++) {
+            if (requestURI.indexOf(this.containsPatterns[i], offset) >= 0) {
+                best = this.containsIndexes[i];
+                break;
+            }
+        }
+
+        if (best == NO_MATCH) {
+            return null;
+        }
+
+        return this.resources[best];
+    }
+
+    private int matchPrefixPatterns(String requestURI, int offset, int best) {
+        if (this.prefixPatterns.children == null) {
+            return best;
+        }
+
+        for (int start = requestURI.indexOf('/', offset); start >= 0; start = requestURI.indexOf('/', start + 1)) {
+            Node node = this.prefixPatterns;
+            int segmentStart = start;
+
+            while (node.children != null) {
+                int segmentEnd = requestURI.indexOf('/', segmentStart + 1);
+
+                if (segmentEnd < 0) {
+                    break;
+                }
+
+                node = node.children.get(requestURI, segmentStart + 1, segmentEnd);
+
+                if (node == null) {
+                    break;
+                }
+
+                if (node.index < best) {
+                    best = node.index;
+                }
+
+                segmentStart = segmentEnd;
+            }
+        }
+
+        return best;
+    }
+
+    private int matchSuffixPatterns(String requestURI, int offset, int end, int best) {
+        for (int length : this.suffixLengths) {
+            if (length > end - offset) {
+                break;
+            }
+
+            Integer index = this.suffixPatterns.get(requestURI, end - length, end);
+
+            if (index != null && index < best) {
+                best = index;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * <p>
+     * Adds a pattern of the form <code>/segment/.../segment/</code> to the segment trie.
+     * </p>
+     *
+     * @return false if the pattern does not have that form.
+     */
+    private boolean addPrefixPattern(String formattedPattern, int index) {
+        if (formattedPattern.length() < 2 || !formattedPattern.startsWith("/") || !formattedPattern.endsWith("/")
+                || formattedPattern.contains("//")) {
+            return false;
+        }
+
+        Node node = this.prefixPatterns;
+
+        for (String segment : formattedPattern.substring(1, formattedPattern.length() - 1).split("/")) {
+            if (node.children == null) {
+                node.children = new RegionTable<Node>();
+            }
+
+            Node child = node.children.get(segment);
+
+            if (child == null) {
+                child = new Node();
+                node.children.put(segment, child);
+            }
+
+            node = child;
+        }
+
+        node.index = Math.min(node.index, index);
+
+        return true;
+    }
+
+    private static class Node {
+
+        private RegionTable<Node> children;
+        private int index = NO_MATCH;
+    }
+
+    /**
+     * <p>
+     * Open addressing hash table with {@link String} keys that can be queried with a region of another string.
+     * </p>
+     */
+    private static class RegionTable<V> {
+
+        private String[] keys = new String[8];
+        private Object[] values = new Object[8];
+        private int size;
+
+        V get(String key) {
+            return get(key, 0, key.length());
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(String source, int start, int end) {
+            int length = end - start;
+            int mask = this.keys.length - 1;
+            int i = hash(source, start, end) & mask;
+            String key;
+
+            while ((key = this.keys[i]) != null) {
+                if (key.length() == length && key.regionMatches(0, source, start, length)) {
+                    return (V) this.values[i];
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            return null;
+        }
+
+        void put(String key, V value) {
+            if ((this.size + 1) * 2 > this.keys.length) {
+                resize();
+            }
+
+            if (insert(this.keys, this.values, key, value)) {
+                this.size++;
+            }
+        }
+
+        private void resize() {
+            String[] newKeys = new String[this.keys.length * 2];
+            Object[] newValues = new Object[this.values.length * 2];
+
+            for (int i = 0; i < this.keys.length; i++) {
+                if (this.keys[i] != null) {
+                    insert(newKeys, newValues, this.keys[i], this.values[i]);
+                }
+            }
+
+            this.keys = newKeys;
+            this.values = newValues;
+        }
+
+        private static boolean insert(String[] keys, Object[] values, String key, Object value) {
+            int mask = keys.length - 1;
+            int i = hash(key, 0, key.length()) & mask;
+
+            while (keys[i] != null) {
+                if (keys[i].equals(key)) {
+                    values[i] = value;
+                    return false;
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            keys[i] = key;
+            values[i] = value;
+
+            return true;
+        }
+
+        private static int hash(String source, int start, int end) {
+            int hash = 0;
+
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + source.charAt(i);
+            }
+
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
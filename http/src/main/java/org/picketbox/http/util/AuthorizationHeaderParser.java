@@ -0,0 +1,518 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.util;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+import org.picketbox.http.PicketBoxConstants;
+import org.picketlink.idm.credential.Digest;
+import org.picketlink.idm.credential.Password;
+import org.picketlink.idm.credential.UsernamePasswordCredentials;
+
+/**
+ * <p>
+ * Parses the credentials sent in the <code>Authorization</code> header for the Basic (RFC 7617) and Digest (RFC 7616)
+ * authentication schemes.
+ * </p>
+ * <p>
+ * Headers are read in a single pass over their characters. No intermediate tokens are created, only the values of the known
+ * parameters are copied. Headers longer than {@link #MAX_HEADER_LENGTH} or not well-formed are rejected and the parse methods
+ * return null.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class AuthorizationHeaderParser {
+
+    /**
+     * <p>
+     * The maximum number of characters accepted in a header.
+     * </p>
+     */
+    public static final int MAX_HEADER_LENGTH = 8 * 1024;
+
+    private static final Charset UTF8 = Charset.forName(PicketBoxConstants.UTF8);
+
+    private static final int USERNAME = 0;
+    private static final int REALM = 1;
+    private static final int NONCE = 2;
+    private static final int URI = 3;
+    private static final int QOP = 4;
+    private static final int NC = 5;
+    private static final int CNONCE = 6;
+    private static final int RESPONSE = 7;
+    private static final int OPAQUE = 8;
+    private static final int DOMAIN = 9;
+    private static final int STALE = 10;
+
+    private static final String[] DIGEST_PARAMETERS = new String[] { "username", "realm", "nonce", "uri", "qop", "nc",
+            "cnonce", "response", "opaque", "domain", "stale" };
+
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private AuthorizationHeaderParser() {
+    }
+
+    /**
+     * <p>
+     * Parses the parameters of a Digest header. The header may start with the <code>Digest</code> scheme or with the first
+     * parameter. Unknown parameters are ignored.
+     * </p>
+     *
+     * @param header
+     * @return a {@link Digest} with the parameters sent by the client, or null if the header is malformed, too long, uses
+     *         another scheme or repeats a parameter.
+     */
+    public static Digest parseDigest(CharSequence header) {
+        if (header == null || header.length() > MAX_HEADER_LENGTH) {
+            return null;
+        }
+
+        int end = header.length();
+        int position = skipWhitespace(header, 0, end);
+        int tokenEnd = skipToken(header, position, end);
+
+        // the first token is the scheme if it is not followed by '='
+        int next = skipWhitespace(header, tokenEnd, end);
+
+        if (tokenEnd > position && (next == end || header.charAt(next) != '=')) {
+            if (!regionEqualsIgnoreCase(header, position, tokenEnd, PicketBoxConstants.HTTP_DIGEST)) {
+                return null;
+            }
+
+            position = next;
+        }
+
+        String[] values = new String[DIGEST_PARAMETERS.length];
+
+        while (true) {
+            // skips empty list elements
+            while (position < end && (header.charAt(position) == ',' || isWhitespace(header.charAt(position)))) {
+                position++;
+            }
+
+            if (position == end) {
+                break;
+            }
+
+            int nameStart = position;
+            int nameEnd = skipToken(header, nameStart, end);
+
+            if (nameEnd == nameStart) {
+                return null;
+            }
+
+            position = skipWhitespace(header, nameEnd, end);
+
+            if (position == end || header.charAt(position) != '=') {
+                return null;
+            }
+
+            position = skipWhitespace(header, position + 1, end);
+
+            int parameter = findParameter(header, nameStart, nameEnd);
+            String value;
+
+            if (position < end && header.charAt(position) == '"') {
+                int valueEnd = skipQuotedString(header, position, end);
+
+                if (valueEnd < 0) {
+                    return null;
+                }
+
+                value = parameter < 0 ? null : unquote(header, position + 1, valueEnd - 1);
+                position = valueEnd;
+            } else {
+                int valueEnd = skipToken(header, position, end);
+
+                value = parameter < 0 ? null : substring(header, position, valueEnd);
+                position = valueEnd;
+            }
+
+            if (parameter >= 0) {
+                if (values[parameter] != null) {
+                    return null;
+                }
+
+                values[parameter] = value;
+            }
+
+            position = skipWhitespace(header, position, end);
+
+            if (position < end && header.charAt(position) != ',') {
+                return null;
+            }
+        }
+
+        Digest digest = new Digest();
+
+        digest.setUsername(values[USERNAME]).setRealm(values[REALM]).setNonce(values[NONCE]).setUri(values[URI])
+                .setQop(values[QOP]).setNc(values[NC]).setCnonce(values[CNONCE]).setDigest(values[RESPONSE])
+                .setOpaque(values[OPAQUE]);
+
+        digest.setStale(values[STALE] != null ? values[STALE] : "false").setDomain(values[DOMAIN]);
+
+        return digest;
+    }
+
+    /**
+     * <p>
+     * Parses a Basic header. The user-id and password are decoded as UTF-8. The decoded bytes are cleared before returning.
+     * </p>
+     *
+     * @param header
+     * @return the credentials sent by the client, or null if the header is malformed, too long, uses another scheme or has an
+     *         empty user-id.
+     */
+    public static UsernamePasswordCredentials parseBasic(CharSequence header) {
+        if (header == null || header.length() > MAX_HEADER_LENGTH) {
+            return null;
+        }
+
+        int end = header.length();
+        int position = skipWhitespace(header, 0, end);
+        int schemeEnd = skipToken(header, position, end);
+
+        if (!regionEqualsIgnoreCase(header, position, schemeEnd, PicketBoxConstants.HTTP_BASIC)) {
+            return null;
+        }
+
+        position = skipWhitespace(header, schemeEnd, end);
+
+        while (end > position && isWhitespace(header.charAt(end - 1))) {
+            end--;
+        }
+
+        if (position == schemeEnd || position == end) {
+            return null;
+        }
+
+        byte[] decoded = decodeBase64(header, position, end);
+
+        if (decoded == null) {
+            return null;
+        }
+
+        try {
+            int colon = -1;
+
+            for (int i = 0; i < decoded.length; i++) {
+                if (decoded[i] == ':') {
+                    colon = i;
+                    break;
+                }
+            }
+
+            if (colon <= 0) {
+                return null;
+            }
+
+            CharsetDecoder decoder = UTF8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+            String userName = decoder.decode(ByteBuffer.wrap(decoded, 0, colon)).toString();
+
+            decoder.reset();
+
+            CharBuffer passwordBuffer = decoder.decode(ByteBuffer.wrap(decoded, colon + 1, decoded.length - colon - 1));
+            char[] password = new char[passwordBuffer.remaining()];
+
+            passwordBuffer.get(password);
+
+            if (passwordBuffer.hasArray()) {
+                Arrays.fill(passwordBuffer.array(), '\0');
+            }
+
+            return new UsernamePasswordCredentials(userName, new Password(password));
+        } catch (CharacterCodingException e) {
+            return null;
+        } finally {
+            Arrays.fill(decoded, (byte) 0);
+        }
+    }
+
+    /**
+     * <p>
+     * Splits a comma separated list of parameters, keeping the quotes around the values. Commas inside quoted strings do not
+     * split the list.
+     * </p>
+     *
+     * @param value
+     * @return
+     */
+    static String[] splitParameters(String value) {
+        int count = 1;
+        boolean quoted = false;
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (quoted && c == '\\') {
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                count++;
+            }
+        }
+
+        String[] tokens = new String[count];
+        int token = 0;
+        int start = 0;
+
+        quoted = false;
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (quoted && c == '\\') {
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                tokens[token++] = value.substring(start, i);
+                start = i + 1;
+            }
+        }
+
+        tokens[token] = value.substring(start);
+
+        return tokens;
+    }
+
+    private static int findParameter(CharSequence header, int start, int end) {
+        for (int i = 0; i < DIGEST_PARAMETERS.length; i++) {
+            if (regionEqualsIgnoreCase(header, start, end, DIGEST_PARAMETERS[i])) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * <p>
+     * Returns the position after the closing quote of the quoted string starting at <code>start</code>, or -1 if it is not
+     * terminated.
+     * </p>
+     */
+    private static int skipQuotedString(CharSequence header, int start, int end) {
+        for (int i = start + 1; i < end; i++) {
+            char c = header.charAt(i);
+
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    private static String unquote(CharSequence header, int start, int end) {
+        int escape = -1;
+
+        for (int i = start; i < end; i++) {
+            if (header.charAt(i) == '\\') {
+                escape = i;
+                break;
+            }
+        }
+
+        if (escape < 0) {
+            return substring(header, start, end);
+        }
+
+        StringBuilder value = new StringBuilder(end - start - 1);
+
+        value.append(header, start, escape);
+
+        for (int i = escape; i < end; i++) {
+            char c = header.charAt(i);
+
+            if (c == '\\' && i + 1 < end) {
+                c = header.charAt(++i);
+            }
+
+            value.append(c);
+        }
+
+        return value.toString();
+    }
+
+    private static String substring(CharSequence header, int start, int end) {
+        if (header instanceof String) {
+            return ((String) header).substring(start, end);
+        }
+
+        return new StringBuilder(end - start).append(header, start, end).toString();
+    }
+
+    private static int skipToken(CharSequence header, int start, int end) {
+        int position = start;
+
+        while (position < end && isTokenChar(header.charAt(position))) {
+            position++;
+        }
+
+        return position;
+    }
+
+    private static int skipWhitespace(CharSequence header, int start, int end) {
+        int position = start;
+
+        while (position < end && isWhitespace(header.charAt(position))) {
+            position++;
+        }
+
+        return position;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    /**
+     * <p>
+     * Token characters as defined by RFC 7230, plus '/' and ':' so unquoted URIs and token68 values sent by some clients are
+     * accepted.
+     * </p>
+     */
+    private static boolean isTokenChar(char c) {
+        if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9') {
+            return true;
+        }
+
+        switch (c) {
+            case '!':
+            case '#':
+            case '$':
+            case '%':
+            case '&':
+            case '\'':
+            case '*':
+            case '+':
+            case '-':
+            case '.':
+            case '^':
+            case '_':
+            case '`':
+            case '|':
+            case '~':
+            case '/':
+            case ':':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean regionEqualsIgnoreCase(CharSequence header, int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = header.charAt(start + i);
+            char expected = value.charAt(i);
+
+            if (c != expected && toLowerCase(c) != toLowerCase(expected)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * <p>
+     * Decodes standard Base64, with or without padding. Returns null if the value has characters outside the alphabet or an
+     * invalid length.
+     * </p>
+     */
+    private static byte[] decodeBase64(CharSequence value, int start, int end) {
+        int length = end - start;
+
+        if (length > 0 && value.charAt(end - 1) == '=') {
+            length--;
+
+            if (length > 0 && value.charAt(end - 2) == '=') {
+                length--;
+            }
+
+            if ((end - start) % 4 != 0) {
+                return null;
+            }
+        }
+
+        if (length % 4 == 1) {
+            return null;
+        }
+
+        byte[] decoded = new byte[length * 3 / 4];
+        int buffer = 0;
+        int bits = 0;
+        int position = 0;
+
+        for (int i = start; i < start + length; i++) {
+            char c = value.charAt(i);
+            int sextet = c < 128 ? BASE64_VALUES[c] : -1;
+
+            if (sextet < 0) {
+                Arrays.fill(decoded, (byte) 0);
+                return null;
+            }
+
+            buffer = (buffer << 6) | sextet;
+            bits += 6;
+
+            if (bits >= 8) {
+                bits -= 8;
+                decoded[position++] = (byte) (buffer >> bits);
+            }
+        }
+
+        return decoded;
+    }
+}
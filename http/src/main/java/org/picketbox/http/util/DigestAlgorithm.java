@@ -0,0 +1,127 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <p>
+ * The hash algorithms that can be used by the HTTP Digest Authentication scheme (RFC 2617 and RFC 7616).
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public enum DigestAlgorithm {
+
+    MD5("MD5", "MD5"),
+
+    SHA_256("SHA-256", "SHA-256"),
+
+    SHA_512_256("SHA-512-256", "SHA-512/256");
+
+    private final String token;
+    private final String jcaName;
+
+    private DigestAlgorithm(String token, String jcaName) {
+        this.token = token;
+        this.jcaName = jcaName;
+    }
+
+    /**
+     * <p>
+     * Returns the value used in the <code>algorithm</code> parameter of the challenge.
+     * </p>
+     *
+     * @return
+     */
+    public String getToken() {
+        return this.token;
+    }
+
+    /**
+     * <p>
+     * Returns the name used to obtain a {@link MessageDigest} for this algorithm.
+     * </p>
+     *
+     * @return
+     */
+    public String getJcaName() {
+        return this.jcaName;
+    }
+
+    /**
+     * <p>
+     * Creates a new {@link MessageDigest} for this algorithm.
+     * </p>
+     *
+     * @return
+     * @throws IllegalStateException if the algorithm is not provided by the running JVM
+     */
+    public MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(this.jcaName);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Digest algorithm [" + this.jcaName + "] is not supported.", e);
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if the running JVM provides this algorithm. <code>SHA-512/256</code> is only available from Java 9.
+     * </p>
+     *
+     * @return
+     */
+    public boolean isSupported() {
+        try {
+            MessageDigest.getInstance(this.jcaName);
+            return true;
+        } catch (NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the algorithm for the given <code>algorithm</code> parameter value, ignoring case. A null value means MD5,
+     * as defined by RFC 2617. Returns null if the value is unknown.
+     * </p>
+     *
+     * @param token
+     * @return
+     */
+    public static DigestAlgorithm fromToken(String token) {
+        if (token == null) {
+            return MD5;
+        }
+
+        for (DigestAlgorithm algorithm : values()) {
+            if (algorithm.token.equalsIgnoreCase(token)) {
+                return algorithm;
+            }
+        }
+
+        return null;
+    }
+}
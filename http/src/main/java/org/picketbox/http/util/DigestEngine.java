@@ -0,0 +1,442 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.util;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.picketbox.core.PicketBoxMessages;
+import org.picketlink.idm.credential.Digest;
+
+/**
+ * <p>
+ * Computes and verifies HTTP Digest responses for a given {@link DigestAlgorithm}.
+ * </p>
+ * <p>
+ * Instances are confined to the calling thread and are obtained using {@link #getInstance(DigestAlgorithm)}. Each one keeps
+ * its {@link MessageDigest} and the buffers used to encode the request fields, so they are hashed without intermediate
+ * strings or byte arrays. Client responses are compared in constant time.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class DigestEngine {
+
+    private static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private static final ThreadLocal<DigestEngine[]> ENGINES = new ThreadLocal<DigestEngine[]>() {
+        @Override
+        protected DigestEngine[] initialValue() {
+            return new DigestEngine[DigestAlgorithm.values().length];
+        }
+    };
+
+    private final DigestAlgorithm algorithm;
+    private final MessageDigest messageDigest;
+    private final byte[] rawDigest;
+    private final byte[] ha1;
+    private final byte[] ha2;
+    private final byte[] response;
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+    private DigestEngine(DigestAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        this.messageDigest = algorithm.newMessageDigest();
+
+        int length = this.messageDigest.getDigestLength();
+
+        this.rawDigest = new byte[length];
+        this.ha1 = new byte[length * 2];
+        this.ha2 = new byte[length * 2];
+        this.response = new byte[length * 2];
+    }
+
+    /**
+     * <p>
+     * Returns the engine for the given algorithm bound to the calling thread. The returned instance must not be shared with
+     * other threads.
+     * </p>
+     *
+     * @param algorithm
+     * @return
+     * @throws IllegalStateException if the algorithm is not provided by the running JVM
+     */
+    public static DigestEngine getInstance(DigestAlgorithm algorithm) {
+        if (algorithm == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("algorithm");
+        }
+
+        DigestEngine[] engines = ENGINES.get();
+        DigestEngine engine = engines[algorithm.ordinal()];
+
+        if (engine == null) {
+            engine = new DigestEngine(algorithm);
+            engines[algorithm.ordinal()] = engine;
+        }
+
+        return engine;
+    }
+
+    public DigestAlgorithm getAlgorithm() {
+        return this.algorithm;
+    }
+
+    /**
+     * <p>
+     * Returns the {@link MessageDigest} used by this engine, after resetting it.
+     * </p>
+     *
+     * @return
+     */
+    MessageDigest getMessageDigest() {
+        this.messageDigest.reset();
+        return this.messageDigest;
+    }
+
+    /**
+     * <p>
+     * Returns the hex encoded <code>H(username:realm:password)</code>.
+     * </p>
+     *
+     * @param username
+     * @param realm
+     * @param password
+     * @return
+     */
+    public String ha1(String username, String realm, char[] password) {
+        computeHA1(required(username, "username"), required(realm, "realm"), required(password, "password"));
+        return new String(toChars(this.ha1));
+    }
+
+    /**
+     * <p>
+     * Computes the client response value for the given digest and password.
+     * </p>
+     *
+     * @param digest
+     * @param password
+     * @return the hex encoded response
+     */
+    public String clientResponseValue(Digest digest, char[] password) {
+        computeHA1(required(digest.getUsername(), "username"), required(digest.getRealm(), "realm"),
+                required(password, "password"));
+        computeResponse(digest);
+        return new String(toChars(this.response));
+    }
+
+    /**
+     * <p>
+     * Checks if the response sent by the client matches the one computed for the given password. Returns false if any of
+     * the required fields is missing.
+     * </p>
+     *
+     * @param digest
+     * @param password
+     * @return
+     */
+    public boolean matches(Digest digest, char[] password) {
+        if (password == null || !hasRequiredFields(digest)) {
+            return false;
+        }
+
+        computeHA1(digest.getUsername(), digest.getRealm(), password);
+        computeResponse(digest);
+
+        return isEqualHex(this.response, digest.getDigest());
+    }
+
+    /**
+     * <p>
+     * Checks if the response sent by the client matches the one computed for a precomputed, hex encoded HA1. Returns false
+     * if any of the required fields is missing or if the HA1 does not have the length produced by this algorithm.
+     * </p>
+     *
+     * @param digest
+     * @param ha1
+     * @return
+     */
+    public boolean matchesHA1(Digest digest, String ha1) {
+        if (ha1 == null || ha1.length() != this.ha1.length || !hasRequiredFields(digest)) {
+            return false;
+        }
+
+        for (int i = 0; i < this.ha1.length; i++) {
+            char c = ha1.charAt(i);
+
+            if (c >= 'A' && c <= 'F') {
+                c += 'a' - 'A';
+            }
+
+            this.ha1[i] = (byte) c;
+        }
+
+        computeResponse(digest);
+
+        return isEqualHex(this.response, digest.getDigest());
+    }
+
+    private boolean hasRequiredFields(Digest digest) {
+        if (digest == null || digest.getUsername() == null || digest.getRealm() == null || digest.getNonce() == null
+                || digest.getUri() == null || digest.getMethod() == null || digest.getDigest() == null) {
+            return false;
+        }
+
+        return digest.getQop() == null || (digest.getNc() != null && digest.getCnonce() != null);
+    }
+
+    private void computeHA1(String username, String realm, char[] password) {
+        this.messageDigest.reset();
+
+        update(username);
+        this.messageDigest.update((byte) ':');
+        update(realm);
+        this.messageDigest.update((byte) ':');
+        update(password);
+
+        finish(this.ha1);
+    }
+
+    /**
+     * <p>
+     * Computes the response using the HA1 previously stored in {@link #ha1}.
+     * </p>
+     *
+     * @param digest
+     */
+    private void computeResponse(Digest digest) {
+        String nonce = required(digest.getNonce(), "nonce");
+        String qop = digest.getQop();
+
+        // A2 digest
+        this.messageDigest.reset();
+        update(required(digest.getMethod(), "method"));
+        this.messageDigest.update((byte) ':');
+        update(required(digest.getUri(), "uri"));
+        finish(this.ha2);
+
+        this.messageDigest.update(this.ha1);
+        this.messageDigest.update((byte) ':');
+        update(nonce);
+        this.messageDigest.update((byte) ':');
+
+        // RFC 2069 compatibility when no qop was sent by the client
+        if (qop != null) {
+            update(required(digest.getNc(), "nc"));
+            this.messageDigest.update((byte) ':');
+            update(required(digest.getCnonce(), "cnonce"));
+            this.messageDigest.update((byte) ':');
+            update(qop);
+            this.messageDigest.update((byte) ':');
+        }
+
+        this.messageDigest.update(this.ha2);
+        finish(this.response);
+    }
+
+    /**
+     * <p>
+     * Completes the current digest and stores its lower case hex representation in the given array.
+     * </p>
+     *
+     * @param hex
+     */
+    private void finish(byte[] hex) {
+        try {
+            this.messageDigest.digest(this.rawDigest, 0, this.rawDigest.length);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (int i = 0; i < this.rawDigest.length; i++) {
+            int value = this.rawDigest[i] & 0xff;
+
+            hex[i * 2] = HEX_DIGITS[value >>> 4];
+            hex[i * 2 + 1] = HEX_DIGITS[value & 0x0f];
+        }
+    }
+
+    private void update(CharSequence value) {
+        int length = encode(value, value.length());
+        this.messageDigest.update(this.buffer, 0, length);
+    }
+
+    private void update(final char[] value) {
+        int length = encode(new CharArraySequence(value), value.length);
+
+        this.messageDigest.update(this.buffer, 0, length);
+
+        // do not keep the encoded password around
+        Arrays.fill(this.buffer, 0, length, (byte) 0);
+    }
+
+    /**
+     * <p>
+     * Encodes the given characters as UTF-8 into {@link #buffer}. Unpaired surrogates are replaced by '?', as done by
+     * {@link String#getBytes(String)}.
+     * </p>
+     *
+     * @param value
+     * @param length
+     * @return the number of bytes written
+     */
+    private int encode(CharSequence value, int length) {
+        ensureCapacity(length * 3);
+
+        byte[] out = this.buffer;
+        int position = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+
+            if (c < 0x80) {
+                out[position++] = (byte) c;
+            } else if (c < 0x800) {
+                out[position++] = (byte) (0xc0 | (c >> 6));
+                out[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+
+                out[position++] = (byte) (0xf0 | (codePoint >> 18));
+                out[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                out[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                out[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                out[position++] = '?';
+            } else {
+                out[position++] = (byte) (0xe0 | (c >> 12));
+                out[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                out[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        return position;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (this.buffer.length < capacity) {
+            Arrays.fill(this.buffer, (byte) 0);
+            this.buffer = new byte[Math.max(capacity, this.buffer.length * 2)];
+        }
+    }
+
+    /**
+     * <p>
+     * Compares a lower case hex value with the one provided by the client, ignoring the case of the latter. The time taken
+     * only depends on the length of the values.
+     * </p>
+     *
+     * @param expected
+     * @param provided
+     * @return
+     */
+    private static boolean isEqualHex(byte[] expected, String provided) {
+        if (provided.length() != expected.length) {
+            return false;
+        }
+
+        int result = 0;
+
+        for (int i = 0; i < expected.length; i++) {
+            int c = provided.charAt(i);
+
+            if (c >= 'A' && c <= 'F') {
+                c += 'a' - 'A';
+            }
+
+            result |= c ^ expected[i];
+        }
+
+        return result == 0;
+    }
+
+    /**
+     * <p>
+     * Converts the given bytes to a lower case hex string.
+     * </p>
+     *
+     * @param bytes
+     * @return
+     */
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+
+        for (int i = 0; i < bytes.length; i++) {
+            int value = bytes[i] & 0xff;
+
+            hex[i * 2] = (char) HEX_DIGITS[value >>> 4];
+            hex[i * 2 + 1] = (char) HEX_DIGITS[value & 0x0f];
+        }
+
+        return new String(hex);
+    }
+
+    private static char[] toChars(byte[] ascii) {
+        char[] chars = new char[ascii.length];
+
+        for (int i = 0; i < ascii.length; i++) {
+            chars[i] = (char) ascii[i];
+        }
+
+        return chars;
+    }
+
+    private static <T> T required(T value, String name) {
+        if (value == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument(name);
+        }
+
+        return value;
+    }
+
+    /**
+     * <p>
+     * Exposes a password as a {@link CharSequence} without copying it into a {@link String}.
+     * </p>
+     */
+    private static final class CharArraySequence implements CharSequence {
+
+        private final char[] value;
+
+        CharArraySequence(char[] value) {
+            this.value = value;
+        }
+
+        @Override
+        public int length() {
+            return this.value.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return this.value[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -21,11 +21,16 @@
  */
 package org.picketbox.http.util;
 
-import java.security.MessageDigest;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.util.Date;
 
 import org.picketbox.core.PicketBoxMessages;
-import org.picketbox.core.exceptions.FormatException;
+import org.picketbox.core.identity.PicketBoxIdentityManager;
+import org.picketlink.idm.IdentityManager;
 import org.picketlink.idm.credential.Digest;
+import org.picketlink.idm.model.Attribute;
+import org.picketlink.idm.model.User;
 
 /**
  * Utility class to support HTTP Digest Authentication
@@ -36,10 +41,13 @@ import org.picketlink.idm.credential.Digest;
 public class HTTPDigestUtil {
 
     private static final String UTF8 = "UTF-8";
-    private static final String MD5_ALGORITHM = "MD5";
+    private static final String HA1_ATTRIBUTE_PREFIX = PicketBoxIdentityManager.CREDENTIAL_ATTRIBUTE_PREFIX + "digestHA1:";
+    private static final String HA1_EFFECTIVE_DATE_SUFFIX = ":effectiveDate";
+    private static final String HA1_EXPIRY_DATE_SUFFIX = ":expiryDate";
 
     /**
-     * Given the standard client response in HTTP/Digest mechanism, generate a set of string tokens that retains the quotes
+     * Given the standard client response in HTTP/Digest mechanism, generate a set of string tokens that retains the quotes.
+     * To read the parameters of a client response use {@link AuthorizationHeaderParser#parseDigest(CharSequence)} instead.
      *
      * @param val
      * @return
@@ -48,8 +56,7 @@ public class HTTPDigestUtil {
         if (val == null)
             throw PicketBoxMessages.MESSAGES.invalidNullArgument("val");
 
-        // Derived from http://issues.apache.org/bugzilla/show_bug.cgi?id=37132
-        return val.split(",(?=(?:[^\"]*\"[^\"]*\")+$)");
+        return AuthorizationHeaderParser.splitParameters(val);
     }
 
     /**
@@ -142,13 +149,11 @@ public class HTTPDigestUtil {
      *
      * @param str
      * @return
-     * @throws FormatException
      */
     public static byte[] md5(String str) {
         try {
-            MessageDigest md = MessageDigest.getInstance(MD5_ALGORITHM);
-            return md.digest(str.getBytes(UTF8));
-        } catch (Exception e) {
+            return DigestEngine.getInstance(DigestAlgorithm.MD5).getMessageDigest().digest(str.getBytes(UTF8));
+        } catch (UnsupportedEncodingException e) {
             throw new RuntimeException(e);
         }
     }
@@ -159,56 +164,45 @@ public class HTTPDigestUtil {
      * @param digest
      * @param password
      * @return
-     * @throws FormatException
      */
     public static String clientResponseValue(Digest digest, char[] password) {
-        try {
-            MessageDigest messageDigest = MessageDigest.getInstance(MD5_ALGORITHM);
-            byte[] ha1;
-            // A1 digest
-            messageDigest.update(digest.getUsername().getBytes(UTF8));
-            messageDigest.update((byte) ':');
-            messageDigest.update(digest.getRealm().getBytes(UTF8));
-            messageDigest.update((byte) ':');
-            messageDigest.update(new String(password).getBytes(UTF8));
-            ha1 = messageDigest.digest();
-
-            // A2 digest
-            messageDigest.reset();
-            messageDigest.update(digest.getMethod().getBytes(UTF8));
-            messageDigest.update((byte) ':');
-            messageDigest.update(digest.getUri().getBytes(UTF8));
-            byte[] ha2 = messageDigest.digest();
-
-            messageDigest.update(convertBytesToHex(ha1).getBytes(UTF8));
-            messageDigest.update((byte) ':');
-            messageDigest.update(digest.getNonce().getBytes(UTF8));
-            messageDigest.update((byte) ':');
-            messageDigest.update(digest.getNc().getBytes(UTF8));
-            messageDigest.update((byte) ':');
-            messageDigest.update(digest.getCnonce().getBytes(UTF8));
-            messageDigest.update((byte) ':');
-            messageDigest.update(digest.getQop().getBytes(UTF8));
-            messageDigest.update((byte) ':');
-            messageDigest.update(convertBytesToHex(ha2).getBytes(UTF8));
-            byte[] digestedValue = messageDigest.digest();
-
-            return convertBytesToHex(digestedValue);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return clientResponseValue(DigestAlgorithm.MD5, digest, password);
     }
 
     /**
-     * Match the Client Response value with a generated digest based on the password
+     * Given the digest, construct the client response value using the given algorithm
+     *
+     * @param algorithm
+     * @param digest
+     * @param password
+     * @return
+     */
+    public static String clientResponseValue(DigestAlgorithm algorithm, Digest digest, char[] password) {
+        return DigestEngine.getInstance(algorithm).clientResponseValue(digest, password);
+    }
+
+    /**
+     * Match the Client Response value with a generated digest based on the password. The values are compared in constant
+     * time.
      *
      * @param digest
      * @param password
      * @return
-     * @throws FormatException
      */
     public static boolean matchCredential(Digest digest, char[] password) {
-        return clientResponseValue(digest, password).equalsIgnoreCase(digest.getDigest());
+        return matchCredential(DigestAlgorithm.MD5, digest, password);
+    }
+
+    /**
+     * Match the Client Response value with a generated digest based on the password, using the given algorithm.
+     *
+     * @param algorithm
+     * @param digest
+     * @param password
+     * @return
+     */
+    public static boolean matchCredential(DigestAlgorithm algorithm, Digest digest, char[] password) {
+        return DigestEngine.getInstance(algorithm).matches(digest, password);
     }
 
     /**
@@ -218,22 +212,142 @@ public class HTTPDigestUtil {
      * @return
      */
     public static String convertBytesToHex(byte[] bytes) {
-        int base = 16;
-
-        int ALL_ON = 0xff;
-
-        StringBuilder buf = new StringBuilder();
-        for (byte byteValue : bytes) {
-            int bit = ALL_ON & byteValue;
-            int c = '0' + (bit / base) % base;
-            if (c > '9')
-                c = 'a' + (c - '0' - 10);
-            buf.append((char) c);
-            c = '0' + bit % base;
-            if (c > '9')
-                c = 'a' + (c - '0' - 10);
-            buf.append((char) c);
+        return DigestEngine.toHex(bytes);
+    }
+
+    /**
+     * Returns the name of the user attribute that holds the HA1 for the given realm and algorithm.
+     *
+     * @param realm
+     * @param algorithm
+     * @return
+     */
+    public static String ha1AttributeName(String realm, DigestAlgorithm algorithm) {
+        return HA1_ATTRIBUTE_PREFIX + algorithm.getToken() + ":" + realm;
+    }
+
+    /**
+     * Returns the name of the user attribute that holds the date from which the HA1 for the given realm and algorithm is
+     * valid.
+     *
+     * @param realm
+     * @param algorithm
+     * @return
+     */
+    public static String ha1EffectiveDateAttributeName(String realm, DigestAlgorithm algorithm) {
+        return ha1AttributeName(realm, algorithm) + HA1_EFFECTIVE_DATE_SUFFIX;
+    }
+
+    /**
+     * Returns the name of the user attribute that holds the date after which the HA1 for the given realm and algorithm is no
+     * longer valid.
+     *
+     * @param realm
+     * @param algorithm
+     * @return
+     */
+    public static String ha1ExpiryDateAttributeName(String realm, DigestAlgorithm algorithm) {
+        return ha1AttributeName(realm, algorithm) + HA1_EXPIRY_DATE_SUFFIX;
+    }
+
+    /**
+     * Stores the HA1 computed from the given password as an attribute of the user, so HTTP Digest authentication does not
+     * need the plain text password. The HA1 is valid from now on and does not expire.
+     *
+     * @param identityManager
+     * @param user
+     * @param realm
+     * @param algorithm
+     * @param password
+     * @see #updateHA1(IdentityManager, User, String, DigestAlgorithm, char[], Date, Date)
+     */
+    public static void updateHA1(IdentityManager identityManager, User user, String realm, DigestAlgorithm algorithm,
+            char[] password) {
+        updateHA1(identityManager, user, realm, algorithm, password, null, null);
+    }
+
+    /**
+     * Stores the HA1 computed from the given password as an attribute of the user, so HTTP Digest authentication does not
+     * need the plain text password. The user is updated using the given identity manager.
+     * <p>
+     * The HA1 is only accepted between the given effective and expiry dates, which should be the same used to update the
+     * credential of the user. The stored HA1 and its dates are removed when the credentials of the user are updated using the
+     * {@link PicketBoxIdentityManager}, so they must be stored again after every password change.
+     *
+     * @param identityManager
+     * @param user
+     * @param realm
+     * @param algorithm
+     * @param password
+     * @param effectiveDate the date from which the HA1 is valid or null if it is valid from now on.
+     * @param expiryDate the date after which the HA1 is no longer valid or null if it does not expire.
+     */
+    public static void updateHA1(IdentityManager identityManager, User user, String realm, DigestAlgorithm algorithm,
+            char[] password, Date effectiveDate, Date expiryDate) {
+        String ha1 = DigestEngine.getInstance(algorithm).ha1(user.getLoginName(), realm, password);
+
+        user.setAttribute(new Attribute<String>(ha1AttributeName(realm, algorithm), ha1));
+        setDateAttribute(user, ha1EffectiveDateAttributeName(realm, algorithm), effectiveDate);
+        setDateAttribute(user, ha1ExpiryDateAttributeName(realm, algorithm), expiryDate);
+
+        identityManager.update(user);
+    }
+
+    /**
+     * Checks if a HA1 with the given effective and expiry dates is valid at the given time.
+     *
+     * @param effectiveDate the date from which the HA1 is valid or null
+     * @param expiryDate the date after which the HA1 is no longer valid or null
+     * @param now
+     * @return
+     */
+    public static boolean isHA1Effective(Date effectiveDate, Date expiryDate, long now) {
+        if (effectiveDate != null && now < effectiveDate.getTime()) {
+            return false;
+        }
+
+        return expiryDate == null || now < expiryDate.getTime();
+    }
+
+    /**
+     * Returns the date from which the HA1 stored for the given realm and algorithm is valid.
+     *
+     * @param user
+     * @param realm
+     * @param algorithm
+     * @return the date or null if the HA1 is valid since it was stored
+     */
+    public static Date getHA1EffectiveDate(User user, String realm, DigestAlgorithm algorithm) {
+        return getDateAttribute(user, ha1EffectiveDateAttributeName(realm, algorithm));
+    }
+
+    /**
+     * Returns the date after which the HA1 stored for the given realm and algorithm is no longer valid.
+     *
+     * @param user
+     * @param realm
+     * @param algorithm
+     * @return the date or null if the HA1 does not expire
+     */
+    public static Date getHA1ExpiryDate(User user, String realm, DigestAlgorithm algorithm) {
+        return getDateAttribute(user, ha1ExpiryDateAttributeName(realm, algorithm));
+    }
+
+    private static Date getDateAttribute(User user, String attributeName) {
+        Attribute<Serializable> attribute = user.getAttribute(attributeName);
+
+        if (attribute == null || !(attribute.getValue() instanceof Date)) {
+            return null;
+        }
+
+        return (Date) attribute.getValue();
+    }
+
+    private static void setDateAttribute(User user, String attributeName, Date value) {
+        if (value == null) {
+            user.removeAttribute(attributeName);
+        } else {
+            user.setAttribute(new Attribute<Date>(attributeName, value));
         }
-        return buf.toString();
     }
-}
\ No newline at end of file
+}
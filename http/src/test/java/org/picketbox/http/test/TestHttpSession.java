@@ -21,12 +21,15 @@
  */
 package org.picketbox.http.test;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
 import javax.servlet.http.HttpSessionContext;
 
 /**
@@ -40,6 +43,16 @@ public class TestHttpSession implements HttpSession {
 
     private Map<String, Object> attributes = new HashMap<String, Object>();
 
+    private final String id;
+
+    public TestHttpSession() {
+        this("xyz");
+    }
+
+    public TestHttpSession(String id) {
+        this.id = id;
+    }
+
     @Override
     public long getCreationTime() {
         return 0;
@@ -47,7 +60,7 @@ public class TestHttpSession implements HttpSession {
 
     @Override
     public String getId() {
-        return "xyz";
+        return this.id;
     }
 
     @Override
@@ -105,6 +118,11 @@ public class TestHttpSession implements HttpSession {
 
     @Override
     public void removeAttribute(String name) {
+        Object value = this.attributes.remove(name);
+
+        if (value instanceof HttpSessionBindingListener) {
+            ((HttpSessionBindingListener) value).valueUnbound(new HttpSessionBindingEvent(this, name, value));
+        }
     }
 
     @Override
@@ -113,6 +131,9 @@ public class TestHttpSession implements HttpSession {
 
     @Override
     public void invalidate() {
+        for (String name : new ArrayList<String>(this.attributes.keySet())) {
+            removeAttribute(name);
+        }
     }
 
     @Override
@@ -303,7 +303,13 @@ public class TestServletRequest implements HttpServletRequest {
 
     @Override
     public String[] getParameterValues(String name) {
-        return null;
+        String value = this.parameters.get(name);
+
+        if (value == null) {
+            return null;
+        }
+
+        return new String[] { value };
     }
 
     @Override
@@ -443,4 +449,8 @@ public class TestServletRequest implements HttpServletRequest {
     public void setParameter(String key, String val) {
         this.parameters.put(key, val);
     }
+
+    public void setSession(HttpSession session) {
+        this.session = session;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,290 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.test.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.picketbox.core.util.Base64;
+import org.picketbox.http.util.AuthorizationHeaderParser;
+import org.picketbox.http.util.HTTPDigestUtil;
+import org.picketlink.idm.credential.Digest;
+import org.picketlink.idm.credential.UsernamePasswordCredentials;
+
+/**
+ * <p>
+ * Tests the {@link AuthorizationHeaderParser}, including randomly generated headers.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class AuthorizationHeaderParserTestCase {
+
+    private static final String DIGEST_HEADER = "Digest username=\"Mufasa\",realm=\"testrealm@host.com\","
+            + "nonce=\"dcd98b7102dd2f0e8b11d0f600bfb0c093\",uri=\"/dir/index.html\",qop=auth,nc=00000001,cnonce=\"0a4f113b\","
+            + "response=\"6629fae49393a05397450978507c4ef1\",opaque=\"5ccc069c403ebaf9f0171e9517f40e41\"";
+
+    private static final char[] FUZZ_CHARACTERS = "aZ09=,\" \t\\/:;@-_.~%{}\u00e9".toCharArray();
+
+    @Test
+    public void testParseDigest() throws Exception {
+        Digest digest = AuthorizationHeaderParser.parseDigest(DIGEST_HEADER);
+
+        assertNotNull(digest);
+        assertEquals("Mufasa", digest.getUsername());
+        assertEquals("testrealm@host.com", digest.getRealm());
+        assertEquals("dcd98b7102dd2f0e8b11d0f600bfb0c093", digest.getNonce());
+        assertEquals("/dir/index.html", digest.getUri());
+        assertEquals("auth", digest.getQop());
+        assertEquals("00000001", digest.getNc());
+        assertEquals("0a4f113b", digest.getCnonce());
+        assertEquals("6629fae49393a05397450978507c4ef1", digest.getDigest());
+        assertEquals("5ccc069c403ebaf9f0171e9517f40e41", digest.getOpaque());
+    }
+
+    @Test
+    public void testParseDigestSyntax() throws Exception {
+        Digest digest = AuthorizationHeaderParser.parseDigest("  digest  USERNAME = \"Mu\\\"fa\\\\sa\" ,, Realm=\"a, b\","
+                + " unknown=\"ignored\", qop=auth , uri=\"/dir/index.html?a=b,c\"");
+
+        assertNotNull(digest);
+        assertEquals("Mu\"fa\\sa", digest.getUsername());
+        assertEquals("a, b", digest.getRealm());
+        assertEquals("auth", digest.getQop());
+        assertEquals("/dir/index.html?a=b,c", digest.getUri());
+        assertNull(digest.getNonce());
+
+        // the challenge sent by the server does not have a scheme once parsed by clients
+        digest = AuthorizationHeaderParser.parseDigest("realm=\"testrealm@host.com\",nonce=\"abc\"");
+
+        assertEquals("testrealm@host.com", digest.getRealm());
+        assertEquals("abc", digest.getNonce());
+    }
+
+    @Test
+    public void testParseMalformedDigest() throws Exception {
+        assertNull(AuthorizationHeaderParser.parseDigest(null));
+        assertNull(AuthorizationHeaderParser.parseDigest("Basic QWxhZGRpbjpvcGVuIHNlc2FtZQ=="));
+        assertNull(AuthorizationHeaderParser.parseDigest("Digest username=\"Mufasa"));
+        assertNull(AuthorizationHeaderParser.parseDigest("Digest username=\"Mufasa\" realm=\"x\""));
+        assertNull(AuthorizationHeaderParser.parseDigest("Digest username=\"Mufasa\", username=\"Admin\""));
+        assertNull(AuthorizationHeaderParser.parseDigest("Digest username"));
+        assertNull(AuthorizationHeaderParser.parseDigest("Digest username=\"Mufasa\", =\"Admin\""));
+
+        StringBuilder longHeader = new StringBuilder("Digest username=\"");
+
+        while (longHeader.length() <= AuthorizationHeaderParser.MAX_HEADER_LENGTH) {
+            longHeader.append('a');
+        }
+
+        longHeader.append('"');
+
+        assertNull(AuthorizationHeaderParser.parseDigest(longHeader));
+    }
+
+    @Test(timeout = 5000)
+    public void testPathologicalDigest() throws Exception {
+        int maxLength = AuthorizationHeaderParser.MAX_HEADER_LENGTH;
+        StringBuilder quotes = new StringBuilder("Digest ");
+        StringBuilder commas = new StringBuilder("Digest ");
+        StringBuilder escapes = new StringBuilder("Digest username=\"");
+
+        while (quotes.length() <= maxLength - 5) {
+            quotes.append("a=\"\",");
+        }
+
+        while (commas.length() <= maxLength - 2) {
+            commas.append(",\"");
+        }
+
+        while (escapes.length() <= maxLength - 3) {
+            escapes.append("\\\\");
+        }
+
+        escapes.append('"');
+
+        for (int i = 0; i < 1000; i++) {
+            assertNotNull(AuthorizationHeaderParser.parseDigest(quotes));
+            assertNull(AuthorizationHeaderParser.parseDigest(commas));
+            assertNotNull(AuthorizationHeaderParser.parseDigest(escapes));
+        }
+    }
+
+    @Test
+    public void testParseBasic() throws Exception {
+        UsernamePasswordCredentials credentials = AuthorizationHeaderParser
+                .parseBasic("Basic QWxhZGRpbjpvcGVuIHNlc2FtZQ==");
+
+        assertEquals("Aladdin", credentials.getUsername());
+        assertEquals("open sesame", new String(credentials.getPassword().getValue()));
+
+        credentials = AuthorizationHeaderParser.parseBasic("basic   " + encode("us\u00e9r:pass:word") + " ");
+
+        assertEquals("us\u00e9r", credentials.getUsername());
+        assertEquals("pass:word", new String(credentials.getPassword().getValue()));
+
+        // unpadded values are accepted
+        credentials = AuthorizationHeaderParser.parseBasic("Basic QWxhZGRpbjpvcGVuIHNlc2FtZQ");
+
+        assertEquals("open sesame", new String(credentials.getPassword().getValue()));
+
+        assertEquals("", new String(AuthorizationHeaderParser.parseBasic("Basic " + encode("user:")).getPassword().getValue()));
+    }
+
+    @Test
+    public void testParseMalformedBasic() throws Exception {
+        assertNull(AuthorizationHeaderParser.parseBasic(null));
+        assertNull(AuthorizationHeaderParser.parseBasic("Basic"));
+        assertNull(AuthorizationHeaderParser.parseBasic("Basic "));
+        assertNull(AuthorizationHeaderParser.parseBasic("BasicQWxhZGRpbjpvcGVuIHNlc2FtZQ=="));
+        assertNull(AuthorizationHeaderParser.parseBasic("Digest QWxhZGRpbjpvcGVuIHNlc2FtZQ=="));
+        assertNull(AuthorizationHeaderParser.parseBasic("Basic " + encode("no colon")));
+        assertNull(AuthorizationHeaderParser.parseBasic("Basic " + encode(":password")));
+        assertNull(AuthorizationHeaderParser.parseBasic("Basic QWxhZGRpbjpvc*GVuIHNlc2FtZQ=="));
+        assertNull(AuthorizationHeaderParser.parseBasic("Basic QWxhZGRpbjpvcGVuIHNlc2FtZQ="));
+        assertNull(AuthorizationHeaderParser.parseBasic("Basic Q"));
+        assertNull(AuthorizationHeaderParser.parseBasic("Basic //79:"));
+    }
+
+    @Test
+    public void testFuzzDigest() throws Exception {
+        Random random = new Random(7616);
+
+        for (int i = 0; i < 20000; i++) {
+            // random input must never make the parser fail
+            AuthorizationHeaderParser.parseDigest(randomString(random, random.nextInt(64)));
+            AuthorizationHeaderParser.parseBasic("Basic " + randomString(random, random.nextInt(32)));
+
+            // generated headers must be read back with the same values
+            String username = randomString(random, random.nextInt(16));
+            String realm = randomString(random, random.nextInt(16));
+            String nonce = Integer.toHexString(random.nextInt());
+
+            StringBuilder header = new StringBuilder("Digest");
+
+            header.append(random.nextBoolean() ? " " : " \t ").append("username=").append(quote(username));
+            header.append(separator(random)).append("unknown=").append(quote(randomString(random, 8)));
+            header.append(separator(random)).append("realm").append(random.nextBoolean() ? "=" : " = ").append(quote(realm));
+            header.append(separator(random)).append("nonce=").append(random.nextBoolean() ? nonce : quote(nonce));
+
+            Digest digest = AuthorizationHeaderParser.parseDigest(header);
+
+            assertNotNull(header.toString(), digest);
+            assertEquals(header.toString(), username, digest.getUsername());
+            assertEquals(header.toString(), realm, digest.getRealm());
+            assertEquals(header.toString(), nonce, digest.getNonce());
+        }
+    }
+
+    @Test
+    public void testFuzzBasic() throws Exception {
+        Random random = new Random(7617);
+
+        for (int i = 0; i < 20000; i++) {
+            String username = "u" + randomString(random, random.nextInt(16)).replace(":", "");
+            String password = randomString(random, random.nextInt(16));
+
+            UsernamePasswordCredentials credentials = AuthorizationHeaderParser.parseBasic("Basic "
+                    + encode(username + ":" + password));
+
+            assertEquals(username, credentials.getUsername());
+            assertEquals(password, new String(credentials.getPassword().getValue()));
+        }
+    }
+
+    @Test
+    public void testQuoteTokenize() throws Exception {
+        Random random = new Random(37132);
+
+        for (int i = 0; i < 20000; i++) {
+            String value = randomString(random, random.nextInt(64)).replace("\\", "");
+            String[] tokens = HTTPDigestUtil.quoteTokenize(value);
+
+            StringBuilder joined = new StringBuilder();
+
+            for (int j = 0; j < tokens.length; j++) {
+                if (j > 0) {
+                    joined.append(',');
+                }
+
+                joined.append(tokens[j]);
+
+                // only the last token can have an unbalanced quote
+                if (j < tokens.length - 1) {
+                    assertTrue(value, countQuotes(tokens[j]) % 2 == 0);
+                }
+            }
+
+            assertEquals(value, joined.toString());
+        }
+    }
+
+    private String randomString(Random random, int length) {
+        StringBuilder value = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            value.append(FUZZ_CHARACTERS[random.nextInt(FUZZ_CHARACTERS.length)]);
+        }
+
+        return value.toString();
+    }
+
+    private String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private String separator(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return ",";
+            case 1:
+                return ", ";
+            case 2:
+                return " ,\t";
+            default:
+                return ",,";
+        }
+    }
+
+    private int countQuotes(String value) {
+        int count = 0;
+
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '"') {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private String encode(String value) throws Exception {
+        return Base64.encodeBytes(value.getBytes("UTF-8"), Base64.DONT_BREAK_LINES);
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.test.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.picketbox.http.util.DigestAlgorithm;
+import org.picketbox.http.util.DigestEngine;
+import org.picketbox.http.util.HTTPDigestUtil;
+import org.picketlink.idm.credential.Digest;
+
+/**
+ * <p>
+ * Tests the {@link DigestEngine} using the examples from RFC 2617 and RFC 7616.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class DigestEngineTestCase {
+
+    @Test
+    public void testRFC2617() throws Exception {
+        Digest digest = createDigest("Mufasa", "testrealm@host.com", "dcd98b7102dd2f0e8b11d0f600bfb0c093", "/dir/index.html",
+                "0a4f113b");
+
+        assertEquals("6629fae49393a05397450978507c4ef1", HTTPDigestUtil.clientResponseValue(digest, "Circle Of Life".toCharArray()));
+
+        digest.setDigest("6629fae49393a05397450978507c4ef1");
+
+        assertTrue(HTTPDigestUtil.matchCredential(digest, "Circle Of Life".toCharArray()));
+        assertFalse(HTTPDigestUtil.matchCredential(digest, "Circle of Life".toCharArray()));
+    }
+
+    @Test
+    public void testRFC7616() throws Exception {
+        Digest digest = createDigest("Mufasa", "http-auth@example.org", "7ypf/xlj9XXwfDPEoM4URrv/xwf94BcCAzFZH4GiTo0v",
+                "/dir/index.html", "f2/wE4q74E6zIJEtWaHKaf5wv/H5QzzpXusqGemxURZJ");
+        char[] password = "Circle of Life".toCharArray();
+
+        assertEquals("8ca523f5e9506fed4657c9700eebdbec", HTTPDigestUtil.clientResponseValue(DigestAlgorithm.MD5, digest, password));
+        assertEquals("753927fa0e85d155564e2e272a28d1802ca10daf4496794697cf8db5856cb6c1",
+                HTTPDigestUtil.clientResponseValue(DigestAlgorithm.SHA_256, digest, password));
+
+        digest.setDigest("753927FA0E85D155564E2E272A28D1802CA10DAF4496794697CF8DB5856CB6C1");
+
+        assertTrue(HTTPDigestUtil.matchCredential(DigestAlgorithm.SHA_256, digest, password));
+        assertFalse(HTTPDigestUtil.matchCredential(DigestAlgorithm.MD5, digest, password));
+    }
+
+    @Test
+    public void testSHA512256() throws Exception {
+        // SHA-512/256 is only provided from Java 9
+        if (!DigestAlgorithm.SHA_512_256.isSupported()) {
+            return;
+        }
+
+        // the SHA-512-256 example in RFC 7616 is known to be wrong, so only the truncated digest length is checked here.
+        // The values are compared with the ones produced by the JDK in testEquivalence.
+        Digest digest = createDigest("J\u00e4s\u00f8n Doe", "api@example.org", "5TsQWLVdgBdmrQ0XsxbDODV+57QdFR34I9HAbC/RVvkK",
+                "/doe.json", "NTg6RKcb9boFIAS3KrFK9BGeh+iDa/sm6jUMp2wds69v");
+        char[] password = "Secret, or not?".toCharArray();
+        String response = HTTPDigestUtil.clientResponseValue(DigestAlgorithm.SHA_512_256, digest, password);
+
+        assertEquals(64, response.length());
+
+        digest.setDigest(response);
+
+        assertTrue(HTTPDigestUtil.matchCredential(DigestAlgorithm.SHA_512_256, digest, password));
+        assertFalse(HTTPDigestUtil.matchCredential(DigestAlgorithm.SHA_256, digest, password));
+    }
+
+    @Test
+    public void testAlgorithmTokens() throws Exception {
+        assertSame(DigestAlgorithm.MD5, DigestAlgorithm.fromToken(null));
+        assertSame(DigestAlgorithm.MD5, DigestAlgorithm.fromToken("md5"));
+        assertSame(DigestAlgorithm.SHA_256, DigestAlgorithm.fromToken("SHA-256"));
+        assertSame(DigestAlgorithm.SHA_512_256, DigestAlgorithm.fromToken("sha-512-256"));
+        assertNull(DigestAlgorithm.fromToken("MD5-sess"));
+        assertNull(DigestAlgorithm.fromToken("SHA-1"));
+    }
+
+    @Test
+    public void testMalformedResponses() throws Exception {
+        Digest digest = createDigest("Mufasa", "testrealm@host.com", "dcd98b7102dd2f0e8b11d0f600bfb0c093", "/dir/index.html",
+                "0a4f113b");
+        char[] password = "Circle Of Life".toCharArray();
+
+        assertFalse(HTTPDigestUtil.matchCredential(digest, password));
+
+        digest.setDigest("6629fae49393a05397450978507c4ef");
+        assertFalse(HTTPDigestUtil.matchCredential(digest, password));
+
+        digest.setDigest("6629fae49393a05397450978507c4ef10");
+        assertFalse(HTTPDigestUtil.matchCredential(digest, password));
+
+        // characters that only differ from the expected ones by the case bit
+        digest.setDigest("\u0016629fae49393a05397450978507c4ef1");
+        assertFalse(HTTPDigestUtil.matchCredential(digest, password));
+
+        digest.setDigest("6629fae49393a05397450978507c4ef1");
+        assertTrue(HTTPDigestUtil.matchCredential(digest, password));
+
+        digest.setCnonce(null);
+        assertFalse(HTTPDigestUtil.matchCredential(digest, password));
+
+        digest.setCnonce("0a4f113b");
+        digest.setMethod(null);
+        assertFalse(HTTPDigestUtil.matchCredential(digest, password));
+        assertFalse(HTTPDigestUtil.matchCredential(null, password));
+    }
+
+    @Test
+    public void testPrecomputedHA1() throws Exception {
+        DigestEngine engine = DigestEngine.getInstance(DigestAlgorithm.MD5);
+        Digest digest = createDigest("Mufasa", "testrealm@host.com", "dcd98b7102dd2f0e8b11d0f600bfb0c093", "/dir/index.html",
+                "0a4f113b");
+
+        digest.setDigest("6629fae49393a05397450978507c4ef1");
+
+        String ha1 = engine.ha1("Mufasa", "testrealm@host.com", "Circle Of Life".toCharArray());
+
+        assertEquals(HTTPDigestUtil.convertBytesToHex(HTTPDigestUtil.md5("Mufasa:testrealm@host.com:Circle Of Life")), ha1);
+        assertTrue(engine.matchesHA1(digest, ha1));
+        assertTrue(engine.matchesHA1(digest, ha1.toUpperCase()));
+        assertFalse(engine.matchesHA1(digest, ha1.substring(1)));
+        assertFalse(engine.matchesHA1(digest, null));
+    }
+
+    @Test
+    public void testEquivalence() throws Exception {
+        Random random = new Random(7616);
+
+        for (DigestAlgorithm algorithm : DigestAlgorithm.values()) {
+            if (!algorithm.isSupported()) {
+                continue;
+            }
+
+            for (int i = 0; i < 500; i++) {
+                Digest digest = createDigest(randomString(random), randomString(random), randomString(random),
+                        randomString(random), randomString(random));
+
+                digest.setMethod(randomString(random));
+
+                if (random.nextInt(4) == 0) {
+                    digest.setQop(null);
+                }
+
+                char[] password = randomString(random).toCharArray();
+                String expected = referenceResponse(algorithm, digest, new String(password));
+
+                assertEquals(expected, HTTPDigestUtil.clientResponseValue(algorithm, digest, password));
+
+                digest.setDigest(random.nextBoolean() ? expected : expected.toUpperCase());
+                assertTrue(HTTPDigestUtil.matchCredential(algorithm, digest, password));
+            }
+        }
+    }
+
+    @Test
+    public void testHex() throws Exception {
+        byte[] bytes = new byte[256];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+
+        String hex = HTTPDigestUtil.convertBytesToHex(bytes);
+
+        assertEquals(512, hex.length());
+        assertTrue(hex.startsWith("000102"));
+        assertTrue(hex.endsWith("fdfeff"));
+        assertEquals("7f80", hex.substring(254, 258));
+    }
+
+    @Test
+    public void testThreadConfinement() throws Exception {
+        final DigestEngine engine = DigestEngine.getInstance(DigestAlgorithm.MD5);
+        final AtomicReference<DigestEngine> other = new AtomicReference<DigestEngine>();
+
+        assertSame(engine, DigestEngine.getInstance(DigestAlgorithm.MD5));
+        assertNotSame(engine, DigestEngine.getInstance(DigestAlgorithm.SHA_256));
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other.set(DigestEngine.getInstance(DigestAlgorithm.MD5));
+            }
+        });
+
+        thread.start();
+        thread.join();
+
+        assertNotSame(engine, other.get());
+    }
+
+    private Digest createDigest(String username, String realm, String nonce, String uri, String cnonce) {
+        Digest digest = new Digest();
+
+        digest.setUsername(username).setRealm(realm).setNonce(nonce).setUri(uri).setQop("auth").setNc("00000001")
+                .setCnonce(cnonce);
+        digest.setMethod("GET");
+
+        return digest;
+    }
+
+    private String randomString(Random random) {
+        StringBuilder builder = new StringBuilder();
+        int length = random.nextInt(20);
+
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    builder.append((char) (0x80 + random.nextInt(0x780)));
+                    break;
+                case 1:
+                    builder.append((char) (0x800 + random.nextInt(0xd000)));
+                    break;
+                case 2:
+                    builder.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                    break;
+                case 3:
+                    // unpaired surrogates
+                    builder.append((char) (0xd800 + random.nextInt(0x800)));
+                    break;
+                default:
+                    builder.append((char) (0x20 + random.nextInt(0x5f)));
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private String referenceResponse(DigestAlgorithm algorithm, Digest digest, String password) throws Exception {
+        String ha1 = hash(algorithm, digest.getUsername() + ":" + digest.getRealm() + ":" + password);
+        String ha2 = hash(algorithm, digest.getMethod() + ":" + digest.getUri());
+
+        if (digest.getQop() == null) {
+            return hash(algorithm, ha1 + ":" + digest.getNonce() + ":" + ha2);
+        }
+
+        return hash(algorithm, ha1 + ":" + digest.getNonce() + ":" + digest.getNc() + ":" + digest.getCnonce() + ":"
+                + digest.getQop() + ":" + ha2);
+    }
+
+    private String hash(DigestAlgorithm algorithm, String value) throws Exception {
+        MessageDigest messageDigest = MessageDigest.getInstance(algorithm.getJcaName());
+        byte[] bytes = messageDigest.digest(value.getBytes("UTF-8"));
+        StringBuilder builder = new StringBuilder();
+
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b & 0xff));
+        }
+
+        return builder.toString();
+    }
+}
@@ -128,6 +128,48 @@ public class HTTPDigestAuthenticationTestCase extends AbstractAuthenticationTest
         assertTrue(digestHeader.startsWith("Digest realm="));
     }
 
+    @Test
+    public void testReplayedNonceCount() throws Exception {
+        TestServletRequest req = new TestServletRequest(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return 0;
+            }
+        });
+
+        TestServletResponse resp = new TestServletResponse(new OutputStream() {
+
+            @Override
+            public void write(int b) throws IOException {
+            }
+        });
+
+        req.setMethod("GET");
+        req.setContextPath("/test");
+        req.setRequestURI(req.getContextPath() + "/index.html");
+
+        this.picketBoxManager.authenticate(new HTTPUserContext(req, resp, new HTTPDigestCredential(req, resp)));
+
+        String authorizationHeader = resp.getHeader(PicketBoxConstants.HTTP_WWW_AUTHENTICATE).substring(7);
+        Digest digest = HTTPDigestUtil.digest(HTTPDigestUtil.quoteTokenize(authorizationHeader));
+
+        req.addHeader(PicketBoxConstants.HTTP_AUTHORIZATION_HEADER, "Digest " + getPositive(digest));
+
+        UserContext authenticatedUser = this.picketBoxManager.authenticate(new HTTPUserContext(req, resp,
+                new HTTPDigestCredential(req, resp)));
+
+        Assert.assertTrue(authenticatedUser.isAuthenticated());
+
+        // sends the same response again, using the same nonce count
+        req.getSession().setAttribute(PicketBoxConstants.SUBJECT, null);
+
+        authenticatedUser = this.picketBoxManager.authenticate(new HTTPUserContext(req, resp, new HTTPDigestCredential(req,
+                resp)));
+
+        Assert.assertFalse(authenticatedUser.isAuthenticated());
+        Assert.assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, authenticatedUser.getAuthenticationResult().getStatus());
+    }
+
     private String getPositive(Digest digest) {
         String cnonce = "0a4f113b";
         String clientResponse = null;
@@ -0,0 +1,260 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.test.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.AuthenticationStatus;
+import org.picketbox.http.HTTPUserContext;
+import org.picketbox.http.PicketBoxConstants;
+import org.picketbox.http.authentication.HA1Cache;
+import org.picketbox.http.authentication.credential.HTTPDigestCredential;
+import org.picketbox.http.config.HTTPAuthenticationConfiguration;
+import org.picketbox.http.config.HTTPConfigurationBuilder;
+import org.picketbox.http.test.TestServletRequest;
+import org.picketbox.http.test.TestServletResponse;
+import org.picketbox.http.util.DigestAlgorithm;
+import org.picketbox.http.util.HTTPDigestUtil;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.credential.Digest;
+import org.picketlink.idm.credential.Password;
+import org.picketlink.idm.model.SimpleUser;
+import org.picketlink.idm.model.User;
+
+/**
+ * <p>
+ * Tests the HTTP Digest authentication for users with a stored HA1 instead of a password.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class HTTPDigestHA1TestCase extends AbstractAuthenticationTest {
+
+    private static final String REALM = "testrealm@host.com";
+
+    private HA1Cache ha1Cache;
+
+    @Before
+    public void setup() throws Exception {
+        super.initialize();
+
+        IdentityManager identityManager = this.picketBoxManager.getIdentityManager();
+        User user = new SimpleUser("Mufasa");
+
+        identityManager.add(user);
+
+        HTTPDigestUtil.updateHA1(identityManager, user, REALM, DigestAlgorithm.SHA_256, "Circle Of Life".toCharArray());
+
+        this.ha1Cache = ((HTTPAuthenticationConfiguration) this.picketBoxManager.getConfiguration().getAuthentication())
+                .getDigestConfiguration().getHA1Cache();
+    }
+
+    @Override
+    protected void doConfigureManager(HTTPConfigurationBuilder configuration) {
+        configuration.authentication().digest().realm(REALM).opaque("5ccc069c403ebaf9f0171e9517f40e41")
+                .algorithm(DigestAlgorithm.SHA_256);
+    }
+
+    @Test
+    public void testChallengeAlgorithm() throws Exception {
+        TestServletRequest req = createRequest();
+        TestServletResponse resp = createResponse();
+
+        this.picketBoxManager.authenticate(new HTTPUserContext(req, resp, new HTTPDigestCredential(req, resp)));
+
+        assertTrue(resp.getHeader(PicketBoxConstants.HTTP_WWW_AUTHENTICATE).contains("algorithm=SHA-256,"));
+    }
+
+    @Test
+    public void testStoredHA1() throws Exception {
+        TestServletRequest req = createRequest();
+
+        assertEquals(AuthenticationStatus.SUCCESS, authenticate(req, "Mufasa", "Circle Of Life", "00000001"));
+        assertEquals(0, this.ha1Cache.getHitCount());
+        assertEquals(1, this.ha1Cache.getSize());
+
+        assertEquals(AuthenticationStatus.SUCCESS, authenticate(req, "Mufasa", "Circle Of Life", "00000002"));
+        assertEquals(1, this.ha1Cache.getHitCount());
+
+        assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, authenticate(req, "Mufasa", "Circle of Life", "00000003"));
+    }
+
+    @Test
+    public void testHA1Updated() throws Exception {
+        TestServletRequest req = createRequest();
+
+        assertEquals(AuthenticationStatus.SUCCESS, authenticate(req, "Mufasa", "Circle Of Life", "00000001"));
+
+        IdentityManager identityManager = this.picketBoxManager.getIdentityManager();
+
+        HTTPDigestUtil.updateHA1(identityManager, identityManager.getUser("Mufasa"), REALM, DigestAlgorithm.SHA_256,
+                "Hakuna Matata".toCharArray());
+
+        assertEquals(0, this.ha1Cache.getSize());
+
+        assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, authenticate(req, "Mufasa", "Circle Of Life", "00000002"));
+        assertEquals(AuthenticationStatus.SUCCESS, authenticate(req, "Mufasa", "Hakuna Matata", "00000003"));
+    }
+
+    @Test
+    public void testCredentialUpdated() throws Exception {
+        TestServletRequest req = createRequest();
+
+        assertEquals(AuthenticationStatus.SUCCESS, authenticate(req, "Mufasa", "Circle Of Life", "00000001"));
+
+        IdentityManager identityManager = this.picketBoxManager.getIdentityManager();
+        User user = identityManager.getUser("Mufasa");
+
+        identityManager.updateCredential(user, new Password("Hakuna Matata".toCharArray()));
+
+        // the HA1 computed from the old password is gone until it is stored again
+        String attributeName = HTTPDigestUtil.ha1AttributeName(REALM, DigestAlgorithm.SHA_256);
+
+        assertNull(identityManager.getUser("Mufasa").getAttribute(attributeName));
+        assertEquals(0, this.ha1Cache.getSize());
+        assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, authenticate(req, "Mufasa", "Circle Of Life", "00000002"));
+
+        HTTPDigestUtil.updateHA1(identityManager, identityManager.getUser("Mufasa"), REALM, DigestAlgorithm.SHA_256,
+                "Hakuna Matata".toCharArray());
+
+        assertEquals(AuthenticationStatus.SUCCESS, authenticate(req, "Mufasa", "Hakuna Matata", "00000003"));
+    }
+
+    @Test
+    public void testHA1Expiration() throws Exception {
+        TestServletRequest req = createRequest();
+        IdentityManager identityManager = this.picketBoxManager.getIdentityManager();
+
+        HTTPDigestUtil.updateHA1(identityManager, identityManager.getUser("Mufasa"), REALM, DigestAlgorithm.SHA_256,
+                "Circle Of Life".toCharArray(), null, new Date(System.currentTimeMillis() + 500));
+
+        assertEquals(AuthenticationStatus.SUCCESS, authenticate(req, "Mufasa", "Circle Of Life", "00000001"));
+        assertEquals(AuthenticationStatus.SUCCESS, authenticate(req, "Mufasa", "Circle Of Life", "00000002"));
+        assertEquals(1, this.ha1Cache.getHitCount());
+
+        Thread.sleep(600);
+
+        // the cached HA1 must not outlive the expiry date
+        assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, authenticate(req, "Mufasa", "Circle Of Life", "00000003"));
+        assertEquals(1, this.ha1Cache.getHitCount());
+    }
+
+    @Test
+    public void testHA1NotEffective() throws Exception {
+        TestServletRequest req = createRequest();
+        IdentityManager identityManager = this.picketBoxManager.getIdentityManager();
+
+        HTTPDigestUtil.updateHA1(identityManager, identityManager.getUser("Mufasa"), REALM, DigestAlgorithm.SHA_256,
+                "Circle Of Life".toCharArray(), new Date(System.currentTimeMillis() + 60000), null);
+
+        assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, authenticate(req, "Mufasa", "Circle Of Life", "00000001"));
+        assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, authenticate(req, "Mufasa", "Circle Of Life", "00000002"));
+        assertEquals(0, this.ha1Cache.getHitCount());
+    }
+
+    @Test
+    public void testUserWithoutHA1() throws Exception {
+        // the identity store can not validate SHA-256 responses for users with a password only
+        assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, authenticate(createRequest(), "Aladdin", "Open Sesame",
+                "00000001"));
+        assertFalse(this.ha1Cache.getSize() > 0);
+    }
+
+    private AuthenticationStatus authenticate(TestServletRequest req, String userName, String password, String nc)
+            throws Exception {
+        TestServletResponse resp = createResponse();
+
+        req.clearHeaders();
+        req.getSession().setAttribute(PicketBoxConstants.SUBJECT, null);
+
+        UserContext authenticatedUser = this.picketBoxManager.authenticate(new HTTPUserContext(req, resp,
+                new HTTPDigestCredential(req, resp)));
+
+        assertEquals(AuthenticationStatus.CONTINUE, authenticatedUser.getAuthenticationResult().getStatus());
+
+        String challenge = resp.getHeader(PicketBoxConstants.HTTP_WWW_AUTHENTICATE).substring(7);
+        Digest digest = HTTPDigestUtil.digest(HTTPDigestUtil.quoteTokenize(challenge));
+        String cnonce = "0a4f113b";
+
+        digest.setUsername(userName);
+        digest.setMethod("GET");
+        digest.setUri("/dir/index.html");
+        digest.setCnonce(cnonce);
+        digest.setNc(nc);
+        digest.setQop("auth");
+
+        String clientResponse = HTTPDigestUtil.clientResponseValue(DigestAlgorithm.SHA_256, digest, password.toCharArray());
+
+        StringBuilder str = new StringBuilder("Digest username=\"").append(userName).append("\",");
+
+        str.append("realm=\"").append(digest.getRealm()).append("\",");
+        str.append("nonce=\"").append(digest.getNonce()).append("\",");
+        str.append("uri=\"/dir/index.html\",");
+        str.append("algorithm=SHA-256,");
+        str.append("qop=auth,").append("nc=").append(nc).append(",").append("cnonce=\"").append(cnonce).append("\",");
+        str.append("response=\"").append(clientResponse).append("\",");
+        str.append("opaque=\"").append(digest.getOpaque()).append("\"");
+
+        req.addHeader(PicketBoxConstants.HTTP_AUTHORIZATION_HEADER, str.toString());
+
+        resp = createResponse();
+
+        return this.picketBoxManager.authenticate(new HTTPUserContext(req, resp, new HTTPDigestCredential(req, resp)))
+                .getAuthenticationResult().getStatus();
+    }
+
+    private TestServletRequest createRequest() {
+        TestServletRequest req = new TestServletRequest(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return 0;
+            }
+        });
+
+        req.setMethod("GET");
+        req.setContextPath("/test");
+        req.setRequestURI(req.getContextPath() + "/index.html");
+
+        return req;
+    }
+
+    private TestServletResponse createResponse() {
+        return new TestServletResponse(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+            }
+        });
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.test.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.AuthenticationStatus;
+import org.picketbox.http.DefaultPicketBoxHTTPManager;
+import org.picketbox.http.HTTPUserContext;
+import org.picketbox.http.PicketBoxConstants;
+import org.picketbox.http.authentication.credential.HTTPDigestCredential;
+import org.picketbox.http.config.HTTPConfigurationBuilder;
+import org.picketbox.http.config.PicketBoxHTTPConfiguration;
+import org.picketbox.http.test.TestServletRequest;
+import org.picketbox.http.test.TestServletResponse;
+import org.picketbox.http.util.HTTPDigestUtil;
+import org.picketlink.idm.credential.Digest;
+
+/**
+ * <p>
+ * Tests the HTTP Digest authentication using stateless nonces, where a nonce issued by one node is accepted by another node
+ * configured with the same secret.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class HTTPDigestStatelessNonceTestCase extends AbstractAuthenticationTest {
+
+    private DefaultPicketBoxHTTPManager otherNode;
+
+    @Before
+    public void setup() throws Exception {
+        super.initialize();
+
+        this.otherNode = new DefaultPicketBoxHTTPManager((PicketBoxHTTPConfiguration) this.configuration.build());
+
+        this.otherNode.start();
+    }
+
+    @Override
+    protected void doConfigureManager(HTTPConfigurationBuilder configuration) {
+        configuration.authentication().digest().realm("testrealm@host.com").opaque("5ccc069c403ebaf9f0171e9517f40e41")
+                .statelessNonces("a secret shared by all the nodes".getBytes(), true);
+    }
+
+    @Test
+    public void testNonceAcceptedByOtherNode() throws Exception {
+        Digest digest = requestChallenge();
+
+        TestServletRequest req = createRequest();
+        TestServletResponse resp = createResponse();
+
+        req.addHeader(PicketBoxConstants.HTTP_AUTHORIZATION_HEADER, "Digest " + getPositive(digest, "00000001"));
+
+        UserContext authenticatedUser = this.otherNode.authenticate(new HTTPUserContext(req, resp, new HTTPDigestCredential(
+                req, resp)));
+
+        assertTrue(authenticatedUser.isAuthenticated());
+        assertEquals(AuthenticationStatus.SUCCESS, authenticatedUser.getAuthenticationResult().getStatus());
+    }
+
+    @Test
+    public void testReplayedRequest() throws Exception {
+        Digest digest = requestChallenge();
+        String authorizationHeader = "Digest " + getPositive(digest, "00000001");
+
+        TestServletRequest req = createRequest();
+        TestServletResponse resp = createResponse();
+
+        req.addHeader(PicketBoxConstants.HTTP_AUTHORIZATION_HEADER, authorizationHeader);
+
+        assertTrue(this.otherNode.authenticate(new HTTPUserContext(req, resp, new HTTPDigestCredential(req, resp)))
+                .isAuthenticated());
+
+        req = createRequest();
+        resp = createResponse();
+
+        req.addHeader(PicketBoxConstants.HTTP_AUTHORIZATION_HEADER, authorizationHeader);
+
+        UserContext authenticatedUser = this.otherNode.authenticate(new HTTPUserContext(req, resp, new HTTPDigestCredential(
+                req, resp)));
+
+        assertFalse(authenticatedUser.isAuthenticated());
+        assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, authenticatedUser.getAuthenticationResult().getStatus());
+    }
+
+    @Test
+    public void testForgedNonce() throws Exception {
+        Digest digest = requestChallenge();
+
+        digest.setNonce(digest.getNonce().substring(1) + "A");
+
+        TestServletRequest req = createRequest();
+        TestServletResponse resp = createResponse();
+
+        req.addHeader(PicketBoxConstants.HTTP_AUTHORIZATION_HEADER, "Digest " + getPositive(digest, "00000001"));
+
+        UserContext authenticatedUser = this.otherNode.authenticate(new HTTPUserContext(req, resp, new HTTPDigestCredential(
+                req, resp)));
+
+        assertFalse(authenticatedUser.isAuthenticated());
+    }
+
+    private Digest requestChallenge() throws Exception {
+        TestServletRequest req = createRequest();
+        TestServletResponse resp = createResponse();
+
+        UserContext authenticatedUser = this.picketBoxManager.authenticate(new HTTPUserContext(req, resp,
+                new HTTPDigestCredential(req, resp)));
+
+        assertEquals(AuthenticationStatus.CONTINUE, authenticatedUser.getAuthenticationResult().getStatus());
+
+        String authorizationHeader = resp.getHeader(PicketBoxConstants.HTTP_WWW_AUTHENTICATE).substring(7);
+
+        return HTTPDigestUtil.digest(HTTPDigestUtil.quoteTokenize(authorizationHeader));
+    }
+
+    private TestServletRequest createRequest() {
+        TestServletRequest req = new TestServletRequest(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return 0;
+            }
+        });
+
+        req.setMethod("GET");
+        req.setContextPath("/test");
+        req.setRequestURI(req.getContextPath() + "/index.html");
+
+        return req;
+    }
+
+    private TestServletResponse createResponse() {
+        return new TestServletResponse(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+            }
+        });
+    }
+
+    private String getPositive(Digest digest, String nc) {
+        String cnonce = "0a4f113b";
+
+        digest.setUsername("Aladdin");
+        digest.setMethod("GET");
+        digest.setUri("/dir/index.html");
+        digest.setCnonce(cnonce);
+        digest.setNc(nc);
+        digest.setQop("auth");
+
+        String clientResponse = HTTPDigestUtil.clientResponseValue(digest, "Open Sesame".toCharArray());
+
+        StringBuilder str = new StringBuilder(" username=\"Aladdin\",");
+
+        str.append("realm=\"" + digest.getRealm() + "\",");
+        str.append("nonce=\"").append(digest.getNonce()).append("\",");
+        str.append("uri=\"/dir/index.html\",");
+        str.append("qop=auth,").append("nc=").append(nc).append(",").append("cnonce=\"" + cnonce + "\",");
+        str.append("response=\"" + clientResponse + "\",");
+        str.append("opaque=\"").append(digest.getOpaque()).append("\"");
+        return str.toString();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.test.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.picketbox.core.authentication.AuthenticationMechanism;
+import org.picketbox.core.exceptions.ConfigurationException;
+import org.picketbox.http.DefaultPicketBoxHTTPManager;
+import org.picketbox.http.authentication.HA1Cache;
+import org.picketbox.http.authentication.HTTPBasicAuthentication;
+import org.picketbox.http.authentication.HTTPClientCertAuthentication;
+import org.picketbox.http.authentication.HTTPDigestAuthentication;
+import org.picketbox.http.authentication.HTTPFormAuthentication;
+import org.picketbox.http.authentication.HTTPMechanismConfiguration;
+import org.picketbox.http.config.HTTPAuthenticationConfiguration;
+import org.picketbox.http.config.HTTPConfigurationBuilder;
+import org.picketbox.http.config.PicketBoxHTTPConfiguration;
+import org.picketbox.http.util.DigestAlgorithm;
+import org.picketlink.idm.IdentityManager;
+
+/**
+ * <p>
+ * Tests the snapshot of the settings taken by the HTTP authentication mechanisms and how it is reloaded.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class HTTPMechanismConfigurationTestCase extends AbstractAuthenticationTest {
+
+    @Before
+    public void setup() throws Exception {
+        super.initialize();
+    }
+
+    @Override
+    protected void doConfigureManager(HTTPConfigurationBuilder configuration) {
+        configuration.authentication().digest().realm("testrealm@host.com").opaque("5ccc069c403ebaf9f0171e9517f40e41");
+        configuration.authentication().form().authPage("/customLogin.jsp");
+        configuration.authentication().clientCert().useCNAsPrincipal();
+    }
+
+    @Test
+    public void testSnapshotTakenAtStart() throws Exception {
+        HTTPDigestAuthentication digest = getMechanism(HTTPDigestAuthentication.class);
+
+        assertEquals("testrealm@host.com", digest.getRealmName());
+        assertEquals("5ccc069c403ebaf9f0171e9517f40e41", digest.getOpaque());
+        assertSame(digest.getMechanismConfiguration(), digest.getMechanismConfiguration());
+
+        assertEquals("/customLogin.jsp", getMechanism(HTTPFormAuthentication.class).getFormAuthPage());
+        assertTrue(getMechanism(HTTPClientCertAuthentication.class).isUseCNAsPrincipal());
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        HTTPDigestAuthentication digest = getMechanism(HTTPDigestAuthentication.class);
+        HTTPMechanismConfiguration previous = digest.getMechanismConfiguration();
+
+        HTTPConfigurationBuilder builder = new HTTPConfigurationBuilder();
+
+        builder.authentication().digest().realm("newrealm@host.com").opaque("7f1a2e43c18e4d2a9c6bf8f5ab2b5e10");
+        builder.authentication().form().authPage("/newLogin.jsp");
+        builder.authentication().clientCert().useCertificateValidation();
+
+        this.picketBoxManager.reloadAuthenticationConfiguration(getAuthenticationConfiguration(builder));
+
+        assertNotSame(previous, digest.getMechanismConfiguration());
+        assertEquals("newrealm@host.com", digest.getRealmName());
+        assertEquals("7f1a2e43c18e4d2a9c6bf8f5ab2b5e10", digest.getOpaque());
+        assertEquals("/newLogin.jsp", getMechanism(HTTPFormAuthentication.class).getFormAuthPage());
+        assertFalse(getMechanism(HTTPClientCertAuthentication.class).isUseCNAsPrincipal());
+        assertTrue(getMechanism(HTTPClientCertAuthentication.class).isUseCertificateValidation());
+    }
+
+    @Test
+    public void testReloadReplacesHA1Cache() throws Exception {
+        HA1Cache previousCache = getAuthenticationConfiguration().getDigestConfiguration().getHA1Cache();
+        HA1Cache newCache = new HA1Cache();
+
+        previousCache.put("Aladdin", "testrealm@host.com", DigestAlgorithm.MD5, "ha1", null, null,
+                previousCache.getGeneration());
+
+        HTTPConfigurationBuilder builder = new HTTPConfigurationBuilder();
+
+        builder.authentication().digest().realm("newrealm@host.com").ha1Cache(newCache);
+
+        this.picketBoxManager.reloadAuthenticationConfiguration(getAuthenticationConfiguration(builder));
+
+        assertEquals(0, previousCache.getSize());
+
+        previousCache.put("Aladdin", "newrealm@host.com", DigestAlgorithm.MD5, "ha1", null, null,
+                previousCache.getGeneration());
+        newCache.put("Aladdin", "newrealm@host.com", DigestAlgorithm.MD5, "ha1", null, null, newCache.getGeneration());
+
+        IdentityManager identityManager = this.picketBoxManager.getIdentityManager();
+
+        identityManager.update(identityManager.getUser("Aladdin"));
+
+        // only the cache in use observes the changes of the users
+        assertEquals(0, newCache.getSize());
+        assertEquals(1, previousCache.getSize());
+    }
+
+    @Test
+    public void testInvalidReloadKeepsSettings() throws Exception {
+        HTTPDigestAuthentication digest = getMechanism(HTTPDigestAuthentication.class);
+        HTTPMechanismConfiguration previous = digest.getMechanismConfiguration();
+
+        HTTPConfigurationBuilder builder = new HTTPConfigurationBuilder();
+
+        builder.authentication().digest().realm("newrealm@host.com");
+        builder.authentication().form().authPage("newLogin.jsp");
+
+        try {
+            this.picketBoxManager.reloadAuthenticationConfiguration(getAuthenticationConfiguration(builder));
+            fail("Form authentication page does not start with a '/'.");
+        } catch (ConfigurationException e) {
+        }
+
+        // the digest settings were valid, but they are not applied as the form settings are invalid
+        assertSame(previous, digest.getMechanismConfiguration());
+        assertEquals("testrealm@host.com", digest.getRealmName());
+        assertEquals("/customLogin.jsp", getMechanism(HTTPFormAuthentication.class).getFormAuthPage());
+    }
+
+    @Test
+    public void testInvalidConfigurationFailsStart() throws Exception {
+        HTTPConfigurationBuilder builder = new HTTPConfigurationBuilder();
+
+        builder.authentication().form().errorPage("error.jsp");
+
+        DefaultPicketBoxHTTPManager manager = new DefaultPicketBoxHTTPManager((PicketBoxHTTPConfiguration) builder.build());
+
+        try {
+            manager.start();
+            fail("Form error page does not start with a '/'.");
+        } catch (ConfigurationException e) {
+        }
+    }
+
+    @Test
+    public void testSetterRefreshesSnapshot() throws Exception {
+        HTTPBasicAuthentication basic = getMechanism(HTTPBasicAuthentication.class);
+
+        basic.setRealmName("Custom Realm");
+
+        assertEquals("Custom Realm", basic.getRealmName());
+
+        // values from the configuration take precedence
+        HTTPDigestAuthentication digest = getMechanism(HTTPDigestAuthentication.class);
+
+        digest.setOpaque("ignored");
+
+        assertEquals("5ccc069c403ebaf9f0171e9517f40e41", digest.getOpaque());
+    }
+
+    private HTTPAuthenticationConfiguration getAuthenticationConfiguration() {
+        return (HTTPAuthenticationConfiguration) this.picketBoxManager.getConfiguration().getAuthentication();
+    }
+
+    private HTTPAuthenticationConfiguration getAuthenticationConfiguration(HTTPConfigurationBuilder builder) {
+        return (HTTPAuthenticationConfiguration) ((PicketBoxHTTPConfiguration) builder.build()).getAuthentication();
+    }
+
+    private <T extends AuthenticationMechanism> T getMechanism(Class<T> type) {
+        for (AuthenticationMechanism mechanism : this.picketBoxManager.getConfiguration().getAuthentication().getMechanisms()) {
+            if (type.isInstance(mechanism)) {
+                return type.cast(mechanism);
+            }
+        }
+
+        fail("No mechanism of type [" + type.getName() + "].");
+
+        return null;
+    }
+}
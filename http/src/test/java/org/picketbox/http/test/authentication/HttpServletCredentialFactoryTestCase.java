@@ -0,0 +1,144 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.test.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Test;
+import org.picketbox.http.PicketBoxConstants;
+import org.picketbox.http.authentication.credential.HTTPBasicCredential;
+import org.picketbox.http.authentication.credential.HTTPDigestCredential;
+import org.picketbox.http.authentication.credential.HTTPFormCredential;
+import org.picketbox.http.authentication.credential.HttpServletCredential;
+import org.picketbox.http.authentication.credential.HttpServletCredentialFactories;
+import org.picketbox.http.authentication.credential.HttpServletCredentialFactory;
+import org.picketbox.http.test.TestServletRequest;
+import org.picketbox.http.test.TestServletResponse;
+
+/**
+ * <p>
+ * Tests the built-in {@link HttpServletCredentialFactory} instances and how they are chained.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class HttpServletCredentialFactoryTestCase {
+
+    @Test
+    public void testForType() throws Exception {
+        assertSame(HttpServletCredentialFactories.BASIC, HttpServletCredentialFactories.forType("basic"));
+        assertSame(HttpServletCredentialFactories.DIGEST, HttpServletCredentialFactories.forType(" DIGEST "));
+        assertSame(HttpServletCredentialFactories.CLIENT_CERT, HttpServletCredentialFactories.forType("CLIENT_CERT"));
+        assertSame(HttpServletCredentialFactories.FORM, HttpServletCredentialFactories.forType("Form"));
+        assertNull(HttpServletCredentialFactories.forType("BEARER"));
+    }
+
+    @Test
+    public void testSupports() throws Exception {
+        TestServletRequest request = createRequest("/test/index.html");
+
+        request.addHeader(PicketBoxConstants.HTTP_AUTHORIZATION_HEADER, "basic QWxhZGRpbjpPcGVuIFNlc2FtZQ==");
+
+        assertTrue(HttpServletCredentialFactories.BASIC.supports(request));
+        assertFalse(HttpServletCredentialFactories.DIGEST.supports(request));
+        assertFalse(HttpServletCredentialFactories.FORM.supports(request));
+        assertFalse(HttpServletCredentialFactories.CLIENT_CERT.supports(request));
+
+        request.addHeader(PicketBoxConstants.HTTP_AUTHORIZATION_HEADER, "Basically");
+
+        assertFalse(HttpServletCredentialFactories.BASIC.supports(request));
+        assertTrue(HttpServletCredentialFactories.FORM.supports(createRequest("/test/j_security_check")));
+    }
+
+    @Test
+    public void testChain() throws Exception {
+        HttpServletCredentialFactory factory = HttpServletCredentialFactories.chain(HttpServletCredentialFactories.DIGEST,
+                HttpServletCredentialFactories.BASIC, HttpServletCredentialFactories.FORM);
+
+        TestServletRequest request = createRequest("/test/index.html");
+
+        request.addHeader(PicketBoxConstants.HTTP_AUTHORIZATION_HEADER, "Basic QWxhZGRpbjpPcGVuIFNlc2FtZQ==");
+
+        assertCreated(HTTPBasicCredential.class, factory, request);
+
+        request.addHeader(PicketBoxConstants.HTTP_AUTHORIZATION_HEADER, "Digest username=\"Aladdin\"");
+
+        assertCreated(HTTPDigestCredential.class, factory, request);
+
+        // no credentials, the last factory challenges the client
+        assertFalse(factory.supports(createRequest("/test/index.html")));
+        assertCreated(HTTPFormCredential.class, factory, createRequest("/test/index.html"));
+    }
+
+    @Test
+    public void testChainOfOne() throws Exception {
+        assertSame(HttpServletCredentialFactories.BASIC, HttpServletCredentialFactories.chain(HttpServletCredentialFactories.BASIC));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testChainWithNullFactory() throws Exception {
+        HttpServletCredentialFactories.chain(HttpServletCredentialFactories.BASIC, null);
+    }
+
+    private void assertCreated(Class<? extends HttpServletCredential> expectedType, HttpServletCredentialFactory factory,
+            TestServletRequest request) {
+        TestServletResponse response = createResponse();
+        HttpServletCredential credential = factory.create(request, response);
+
+        assertEquals(expectedType, credential.getClass());
+        assertSame(request, credential.getRequest());
+        assertSame(response, credential.getResponse());
+    }
+
+    private TestServletRequest createRequest(String requestURI) {
+        TestServletRequest request = new TestServletRequest(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return 0;
+            }
+        });
+
+        request.setMethod("GET");
+        request.setContextPath("/test");
+        request.setRequestURI(requestURI);
+
+        return request;
+    }
+
+    private TestServletResponse createResponse() {
+        return new TestServletResponse(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+            }
+        });
+    }
+}
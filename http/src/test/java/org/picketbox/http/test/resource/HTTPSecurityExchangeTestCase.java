@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.test.resource;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.picketbox.core.UserContext;
+import org.picketbox.http.DefaultPicketBoxHTTPManager;
+import org.picketbox.http.HTTPSecurityExchange;
+import org.picketbox.http.PicketBoxConstants;
+import org.picketbox.http.authorization.resource.WebResource;
+import org.picketbox.http.config.HTTPConfigurationBuilder;
+import org.picketbox.http.config.PicketBoxHTTPConfiguration;
+import org.picketbox.http.resource.HTTPProtectedResourceManager;
+import org.picketbox.http.resource.ProtectedResource;
+import org.picketbox.http.resource.ProtectedResourceConstraint;
+import org.picketbox.http.test.TestServletRequest;
+import org.picketbox.http.test.TestServletResponse;
+
+/**
+ * <p>
+ * Tests if the {@link HTTPSecurityExchange} avoids resolving the same protected resource and user context more than once per
+ * request.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class HTTPSecurityExchangeTestCase {
+
+    private CountingProtectedResourceManager resourceManager;
+    private DefaultPicketBoxHTTPManager picketBoxManager;
+    private TestServletRequest request;
+    private TestServletResponse response;
+
+    @Before
+    public void onSetup() {
+        this.resourceManager = new CountingProtectedResourceManager();
+
+        HTTPConfigurationBuilder configuration = new HTTPConfigurationBuilder();
+
+        configuration.protectedResource().manager(this.resourceManager)
+                .restrict("/secure/*", ProtectedResourceConstraint.AUTHENTICATION);
+
+        this.picketBoxManager = new DefaultPicketBoxHTTPManager((PicketBoxHTTPConfiguration) configuration.build());
+
+        this.picketBoxManager.start();
+
+        this.request = new TestServletRequest(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return 0;
+            }
+        });
+
+        this.request.setContextPath("/test-app");
+        this.request.setRequestURI("/test-app/secure/index.html");
+
+        this.response = new TestServletResponse(new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void testProtectedResourceResolvedOnce() throws Exception {
+        HTTPSecurityExchange exchange = HTTPSecurityExchange.bind(this.request, this.response, this.picketBoxManager);
+
+        assertTrue(this.picketBoxManager.requiresAuthentication(this.request, this.response));
+        assertTrue(this.picketBoxManager.requiresAuthentication(this.request, this.response));
+        assertTrue(this.picketBoxManager.authorize(new UserContext(), exchange.getWebResource()));
+
+        assertEquals(1, this.resourceManager.resolveCount);
+        assertSame(exchange.getWebResource(), exchange.getWebResource());
+        assertEquals("/secure/*", exchange.getProtectedResource().getPattern());
+
+        HTTPSecurityExchange.unbind(this.request, exchange);
+    }
+
+    @Test
+    public void testProtectedResourceResolvedPerCallWithoutExchange() throws Exception {
+        assertTrue(this.picketBoxManager.requiresAuthentication(this.request, this.response));
+        assertTrue(this.picketBoxManager.requiresAuthentication(this.request, this.response));
+
+        assertEquals(2, this.resourceManager.resolveCount);
+        assertNull(HTTPSecurityExchange.get(this.request));
+    }
+
+    @Test
+    public void testUserContextResolvedOnce() throws Exception {
+        HTTPSecurityExchange exchange = HTTPSecurityExchange.bind(this.request, this.response, this.picketBoxManager);
+
+        assertNull(exchange.getUserContext());
+
+        UserContext userContext = new UserContext();
+
+        this.request.getSession().setAttribute(PicketBoxConstants.SUBJECT, userContext);
+
+        assertNull(exchange.getUserContext());
+
+        exchange.resetUserContext();
+
+        assertSame(userContext, exchange.getUserContext());
+
+        HTTPSecurityExchange.unbind(this.request, exchange);
+    }
+
+    @Test
+    public void testNestedExchanges() throws Exception {
+        HTTPSecurityExchange outer = HTTPSecurityExchange.bind(this.request, this.response, this.picketBoxManager);
+        HTTPSecurityExchange inner = HTTPSecurityExchange.bind(this.request, this.response, this.picketBoxManager);
+
+        assertSame(inner, HTTPSecurityExchange.get(this.request));
+
+        HTTPSecurityExchange.unbind(this.request, inner);
+
+        assertSame(outer, HTTPSecurityExchange.get(this.request));
+    }
+
+    private static class CountingProtectedResourceManager extends HTTPProtectedResourceManager {
+
+        private int resolveCount;
+
+        @Override
+        public ProtectedResource getProtectedResource(WebResource resource) {
+            this.resolveCount++;
+            return super.getProtectedResource(resource);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.http.test.resource;
+
+import static junit.framework.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.picketbox.http.authorization.resource.WebResource;
+import org.picketbox.http.resource.HTTPProtectedResourceManager;
+import org.picketbox.http.resource.ProtectedResource;
+import org.picketbox.http.resource.ProtectedResourceConstraint;
+import org.picketbox.http.test.TestServletRequest;
+
+/**
+ * <p>
+ * Tests if the {@link HTTPProtectedResourceManager} returns the same resources as matching each {@link ProtectedResource} in
+ * the order they were defined.
+ * </p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ *
+ */
+public class ProtectedResourceMatchingTestCase {
+
+    private static final String CONTEXT_PATH = "/test-app";
+
+    private static final String[] SEGMENTS = new String[] { "secure", "admin", "public", "images", "a", "index.html",
+            "app.jsp", "logo.png", "" };
+
+    @Test
+    public void testDefinitionOrder() throws Exception {
+        List<ProtectedResource> resources = new ArrayList<ProtectedResource>();
+
+        resources.add(new ProtectedResource("/secure/public/*", ProtectedResourceConstraint.NOT_PROTECTED));
+        resources.add(new ProtectedResource("/secure/*", ProtectedResourceConstraint.AUTHORIZATION));
+        resources.add(new ProtectedResource("/*.jsp", ProtectedResourceConstraint.AUTHENTICATION));
+        resources.add(new ProtectedResource("/login.html", ProtectedResourceConstraint.NOT_PROTECTED));
+
+        HTTPProtectedResourceManager manager = createManager(resources);
+
+        assertSame(resources.get(0), manager.getProtectedResource(createWebResource("/secure/public/index.html")));
+        assertSame(resources.get(1), manager.getProtectedResource(createWebResource("/secure/app.jsp")));
+        assertSame(resources.get(1), manager.getProtectedResource(createWebResource("/other/secure/index.html")));
+        assertSame(resources.get(2), manager.getProtectedResource(createWebResource("/public/app.jsp")));
+        assertSame(resources.get(3), manager.getProtectedResource(createWebResource("/login.html")));
+        assertSame(ProtectedResource.DEFAULT_RESOURCE, manager.getProtectedResource(createWebResource("/secure")));
+    }
+
+    @Test
+    public void testMatchesLinearScan() throws Exception {
+        Random random = new Random(42);
+
+        for (int run = 0; run < 20; run++) {
+            List<ProtectedResource> resources = new ArrayList<ProtectedResource>();
+            int patternCount = 1 + random.nextInt(200);
+
+            for (int i = 0; i < patternCount; i++) {
+                resources.add(new ProtectedResource(createPattern(random), ProtectedResourceConstraint.ALL));
+            }
+
+            HTTPProtectedResourceManager manager = createManager(resources);
+
+            for (int i = 0; i < 500; i++) {
+                String uri = createPath(random, 1 + random.nextInt(4));
+
+                assertSame(uri, linearScan(resources, uri), manager.getProtectedResource(createWebResource(uri)));
+            }
+        }
+    }
+
+    private String createPattern(Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return createPath(random, 1 + random.nextInt(3));
+            case 1:
+            case 2:
+                return createPath(random, 1 + random.nextInt(2)) + "/*";
+            case 3:
+                return "/*." + (random.nextBoolean() ? "jsp" : "png");
+            case 4:
+                return "/*" + createPath(random, 1) + "/*";
+            default:
+                return random.nextBoolean() ? "/*" : "*";
+        }
+    }
+
+    private String createPath(Random random, int segments) {
+        StringBuilder path = new StringBuilder();
+
+        for (int i = 0; i < segments; i++) {
+            path.append('/').append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+
+        return path.toString();
+    }
+
+    private ProtectedResource linearScan(List<ProtectedResource> resources, String uri) {
+        for (ProtectedResource resource : resources) {
+            if (resource.matches(uri)) {
+                return resource;
+            }
+        }
+
+        return ProtectedResource.DEFAULT_RESOURCE;
+    }
+
+    private HTTPProtectedResourceManager createManager(List<ProtectedResource> resources) {
+        HTTPProtectedResourceManager manager = new HTTPProtectedResourceManager();
+
+        for (ProtectedResource resource : resources) {
+            manager.addProtectedResource(resource);
+        }
+
+        manager.start();
+
+        return manager;
+    }
+
+    private WebResource createWebResource(String uri) {
+        TestServletRequest request = new TestServletRequest(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return 0;
+            }
+        });
+
+        request.setContextPath(CONTEXT_PATH);
+        request.setRequestURI(CONTEXT_PATH + uri);
+
+        WebResource resource = new WebResource();
+
+        resource.setRequest(request);
+
+        return resource;
+    }
+}
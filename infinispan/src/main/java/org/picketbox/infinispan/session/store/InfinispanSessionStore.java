@@ -23,6 +23,8 @@
 package org.picketbox.infinispan.session.store;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 
 import org.infinispan.Cache;
 import org.infinispan.manager.DefaultCacheManager;
@@ -153,6 +155,16 @@ public class InfinispanSessionStore extends AbstractPicketBoxLifeCycle implement
         this.cache.put(session.getId().getId(), session);
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#getSessions()
+     */
+    @Override
+    public Collection<PicketBoxSession> getSessions() {
+        return new ArrayList<PicketBoxSession>(this.cache.values());
+    }
+
     @Override
     protected void doStart() {
         startCache(this.configurationFile);